@@ -0,0 +1,229 @@
+package googleSendgridJava;
+
+import java.util.Arrays;
+
+/**
+ * AdaptiveConcurrencyLimiter - Bounds the number of requests in flight, and moves the bound
+ * to follow what the API can take.
+ *
+ * The limit is judged once per round of completed requests, as many as the limit and at
+ * least 10. It is cut by the backoff ratio when a request in the round is rate limited (429)
+ * or fails with a 5xx or a transport error, or when the round's requests took on average more
+ * than latencyTolerance times the fastest recent request of their size (multiplicative
+ * decrease). Otherwise it grows by one when it held requests back during the round (additive
+ * increase). A failure cuts the limit at once, but a round cuts it at most once, so a burst of
+ * failures that all come back together is one signal, not many. Under a steady load the limit
+ * settles just below the point where the API starts pushing back, instead of swinging between
+ * overload and idle.
+ *
+ * Requests are sorted by body size into buckets that grow by a factor of four from 4 KiB up to
+ * 16 MiB, and each bucket keeps its own fastest latency. A 1000 recipient or attachment request
+ * is thus only compared with others as large, and a mix of small and large requests does not
+ * read as overload.
+ *
+ * A limiter is thread-safe, and is meant to be shared by every client sending with the same
+ * account.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int LATENCY_WINDOW = 1000,
+                             SIZE_BUCKETS = 8,
+                             MIN_ROUND = 10;
+
+    private final int minLimit,
+                      maxLimit;
+    private double limit;
+    private double backoffRatio = 0.9,
+                   latencyTolerance = 2.0;
+    private int inFlight = 0;
+    // Per size bucket: the fastest latency, its value over the current window, and the
+    // samples in that window
+    private final long[] minLatency = new long[SIZE_BUCKETS],
+                         windowMinLatency = new long[SIZE_BUCKETS];
+    private final int[] windowSamples = new int[SIZE_BUCKETS];
+    // The current round: its length, the requests completed, the sum of their latencies over
+    // their size's baseline, how many of those there are, and whether the limit was cut or in
+    // the way during it
+    private int roundLength,
+                roundRequests = 0,
+                roundSamples = 0;
+    private double roundRatios = 0;
+    private boolean roundCut = false,
+                    roundLimited = false;
+
+    /**
+     * @param  initialLimit   the limit to start at
+     * @param  minLimit       the limit never drops below this
+     * @param  maxLimit       the limit never grows above this
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("need 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.roundLength = Math.max(MIN_ROUND, initialLimit);
+        Arrays.fill(this.minLatency, Long.MAX_VALUE);
+        Arrays.fill(this.windowMinLatency, Long.MAX_VALUE);
+    }
+
+    /**
+     * setBackoffRatio - Set the factor the limit is multiplied by on overload, 0.9 by default
+     *
+     * @param  ratio   between 0 and 1
+     * @return         the limiter.
+     */
+    public synchronized AdaptiveConcurrencyLimiter setBackoffRatio(double ratio) {
+        if (ratio <= 0 || ratio >= 1) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1");
+        }
+        this.backoffRatio = ratio;
+
+        return this;
+    }
+
+    /**
+     * setLatencyTolerance - Set how many times slower than the fastest recent request of
+     * their size the requests of a round may be on average before it counts as overload, 2.0
+     * by default
+     *
+     * @param  tolerance   greater than 1
+     * @return             the limiter.
+     */
+    public synchronized AdaptiveConcurrencyLimiter setLatencyTolerance(double tolerance) {
+        if (tolerance <= 1) {
+            throw new IllegalArgumentException("tolerance must be greater than 1");
+        }
+        this.latencyTolerance = tolerance;
+
+        return this;
+    }
+
+    /**
+     * getLimit - Get the current limit
+     *
+     * @return  the most requests allowed in flight right now
+     */
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * getInFlight - Get the number of requests in flight
+     *
+     * @return  requests acquired and not yet released
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * acquire - Wait until another request may be sent. Every acquire must be followed by
+     * release() once the request completes.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (this.inFlight >= (int) this.limit) {
+            this.wait();
+        }
+        this.inFlight++;
+    }
+
+    /**
+     * release - Report the outcome of a request and free its slot
+     *
+     * @param  result         the outcome
+     * @param  latencyNanos   how long the request took once the transport had a connection
+     *                        for it
+     * @param  bodyLength     the size of the request body in bytes, or -1 when unknown
+     */
+    public synchronized void release(SendResult result, long latencyNanos, long bodyLength) {
+        this.inFlight--;
+        if (CircuitBreaker.isFailure(result)) {
+            this._cut();
+        } else {
+            this.roundRatios += this._ratio(latencyNanos, _bucket(bodyLength));
+            this.roundSamples++;
+            if (this.inFlight + 1 >= (int) this.limit) {
+                // Only grow when the limit was actually in the way
+                this.roundLimited = true;
+            }
+        }
+        if (++this.roundRequests >= this.roundLength) {
+            this._endRound();
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * cancel - Free the slot of a request that was never sent, without adjusting the limit
+     */
+    public synchronized void cancel() {
+        this.inFlight--;
+        this.notifyAll();
+    }
+
+    /**
+     * _cut - Apply the multiplicative decrease, unless the round has already had it
+     */
+    private void _cut() {
+        if (this.roundCut == false) {
+            this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+            this.roundCut = true;
+        }
+    }
+
+    /**
+     * _endRound - Judge the round's latency, grow the limit if nothing held it back, and
+     * start the next round
+     */
+    private void _endRound() {
+        if (this.roundSamples > 0 && this.roundRatios / this.roundSamples > this.latencyTolerance) {
+            this._cut();
+        } else if (this.roundCut == false && this.roundLimited) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1);
+        }
+        this.roundLength = Math.max(MIN_ROUND, (int) this.limit);
+        this.roundRequests = 0;
+        this.roundSamples = 0;
+        this.roundRatios = 0;
+        this.roundCut = false;
+        this.roundLimited = false;
+    }
+
+    /**
+     * _ratio - How many times slower than the fastest recent request of its size a request
+     * was
+     */
+    private double _ratio(long latencyNanos, int bucket) {
+        // Track the fastest request of each size over a sliding window of samples, so the
+        // baseline can move up again if the API gets slower for good
+        this.windowMinLatency[bucket] = Math.min(this.windowMinLatency[bucket], latencyNanos);
+        if (++this.windowSamples[bucket] >= LATENCY_WINDOW) {
+            this.minLatency[bucket] = this.windowMinLatency[bucket];
+            this.windowMinLatency[bucket] = Long.MAX_VALUE;
+            this.windowSamples[bucket] = 0;
+        }
+        this.minLatency[bucket] = Math.min(this.minLatency[bucket], latencyNanos);
+
+        return (double) latencyNanos / Math.max(1, this.minLatency[bucket]);
+    }
+
+    /**
+     * _bucket - The size bucket of a request: 0 up to 4 KiB, then one more for every factor
+     * of four. Bodies of unknown length are streamed, so they go in the largest.
+     */
+    static int _bucket(long bodyLength) {
+        if (bodyLength < 0) {
+            return SIZE_BUCKETS - 1;
+        }
+        int bucket = 0;
+        for (long size = (bodyLength - 1) >> 12; size > 0 && bucket < SIZE_BUCKETS - 1; size >>= 2) {
+            bucket++;
+        }
+
+        return bucket;
+    }
+}
@@ -0,0 +1,375 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Attachment - A file attached to a message, read from its source only while the request is
+ * written to the connection.
+ *
+ * An attachment never holds its content on the heap. A file is read straight from disk each
+ * time the message is sent, and a ByteBuffer (which may be a direct or memory-mapped buffer)
+ * is written from where it is. An InputStream can only be read once, so a message with a
+ * stream attachment can only be sent once: SendgridClient does not retry it, and sending it
+ * again fails with a Transport.LocalException. Content that cannot be read, and a stream that
+ * ends before or runs past its declared length, fail the same way, so they are not taken for
+ * trouble at the API.
+ */
+public final class Attachment {
+
+    private final String name,
+                         contentType;
+    private final Path path;
+    private final ByteBuffer bytes;
+    private final InputStream stream;
+    private final long length;
+    private final AtomicBoolean consumed = new AtomicBoolean(false);
+
+    private Attachment(String name, String contentType, Path path, ByteBuffer bytes, InputStream stream, long length) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("An attachment needs a file name");
+        }
+        this.name = name;
+        this.contentType = (contentType == null) ? "application/octet-stream" : contentType;
+        this.path = path;
+        this.bytes = bytes;
+        this.stream = stream;
+        this.length = length;
+    }
+
+    /**
+     * fromPath - Attach a file under its own name
+     *
+     * @param  path   the file
+     * @return        the attachment
+     * @throws IOException   when the file size cannot be read
+     */
+    public static Attachment fromPath(Path path) throws IOException {
+        return fromPath(path.getFileName().toString(), path);
+    }
+
+    /**
+     * fromPath - Attach a file
+     *
+     * @param  name   the file name the recipient sees
+     * @param  path   the file
+     * @return        the attachment
+     * @throws IOException   when the file size cannot be read
+     */
+    public static Attachment fromPath(String name, Path path) throws IOException {
+        String contentType = Files.probeContentType(path);
+        if (contentType != null && _isMediaType(contentType) == false) {
+            contentType = null;
+        }
+
+        return new Attachment(name, contentType, path, null, null, Files.size(path));
+    }
+
+    /**
+     * fromBytes - Attach the remaining bytes of a buffer. The buffer is not copied, and
+     * must not be changed until the message has been sent.
+     *
+     * @param  name    the file name the recipient sees
+     * @param  bytes   the content
+     * @return         the attachment
+     */
+    public static Attachment fromBytes(String name, ByteBuffer bytes) {
+        return new Attachment(name, null, null, bytes.asReadOnlyBuffer(), null, bytes.remaining());
+    }
+
+    /**
+     * fromStream - Attach the content of a stream, which is read and closed when the message
+     * is sent
+     *
+     * @param  name     the file name the recipient sees
+     * @param  stream   the content
+     * @param  length   the number of bytes the stream holds, or -1 when not known. With an
+     *                  unknown length the request is sent in chunks.
+     * @return          the attachment
+     */
+    public static Attachment fromStream(String name, InputStream stream, long length) {
+        return new Attachment(name, null, null, null, stream, length);
+    }
+
+    /**
+     * withContentType - A copy of this attachment with another content type
+     *
+     * @param  contentType   the MIME type, "application/octet-stream" by default. A type and
+     *                       subtype, optionally followed by parameters, such as
+     *                       "text/plain; charset=utf-8".
+     * @return               the attachment
+     * @throws IllegalArgumentException   when the value is not a media type, which also
+     *                                    keeps CR and LF out of the part headers
+     */
+    public Attachment withContentType(String contentType) {
+        if (contentType != null && _isMediaType(contentType) == false) {
+            throw new IllegalArgumentException("Not a media type: " + contentType);
+        }
+
+        return new Attachment(this.name, contentType, this.path, this.bytes, this.stream, this.length);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * getLength - Get the size of the content
+     *
+     * @return  the size in bytes, or -1 when not known
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * getPath - Get the file this attachment reads from
+     *
+     * @return  the file, or null when the attachment is not a file
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * getBytes - Get the buffer this attachment reads from
+     *
+     * @return  a read-only view of the buffer, or null when the attachment is not a buffer
+     */
+    public ByteBuffer getBytes() {
+        return (this.bytes == null) ? null : this.bytes.duplicate();
+    }
+
+    /**
+     * isRepeatable - Whether the content can be read more than once
+     *
+     * @return  false for a stream
+     */
+    public boolean isRepeatable() {
+        return this.stream == null;
+    }
+
+    /**
+     * writeTo - Copy the content to a stream
+     *
+     * @param  out   the stream
+     * @throws IOException   a Transport.LocalException when the source cannot be read, is a
+     *                       stream already read or not of its declared length, or is a file
+     *                       now shorter than when attached
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (this.path != null) {
+            FileChannel file;
+            try {
+                file = FileChannel.open(this.path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new Transport.LocalException("Cannot read attachment " + this.name, e);
+            }
+            Target target = new Target(Channels.newChannel(out));
+            try {
+                // The request length was fixed from the size at attach time, so send exactly that
+                long position = 0;
+                while (position < this.length) {
+                    long sent = file.transferTo(position, this.length - position, target);
+                    if (sent == 0 && position >= file.size()) {
+                        throw new Transport.LocalException("Attachment " + this.name + " is shorter than when it was attached");
+                    }
+                    position += sent;
+                }
+            } catch (IOException e) {
+                // transferTo fails the same way whether the file or the connection broke
+                if (e instanceof Transport.LocalException || target.failed) {
+                    throw e;
+                }
+                throw new Transport.LocalException("Cannot read attachment " + this.name, e);
+            } finally {
+                file.close();
+            }
+        } else if (this.bytes != null) {
+            ByteBuffer bytes = this.bytes.duplicate();
+            if (bytes.hasArray()) {
+                out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } else {
+                Channels.newChannel(out).write(bytes);
+            }
+        } else {
+            if (this.consumed.getAndSet(true)) {
+                throw new Transport.LocalException("The stream of attachment " + this.name + " has already been sent");
+            }
+            try {
+                // A fixed length request cannot take more or fewer bytes than it announced, and
+                // the connection would report the mismatch as its own failure
+                byte[] buffer = new byte[8192];
+                long written = 0;
+                while (this.length < 0 || written < this.length) {
+                    int wanted = (this.length < 0) ? buffer.length : (int) Math.min(buffer.length, this.length - written);
+                    int read = _read(this.stream, buffer, wanted);
+                    if (read == -1) {
+                        if (this.length < 0) {
+                            break;
+                        }
+                        throw new Transport.LocalException("Attachment " + this.name + " is shorter than its declared length");
+                    }
+                    out.write(buffer, 0, read);
+                    written += read;
+                }
+                if (this.length >= 0 && _read(this.stream, buffer, 1) != -1) {
+                    throw new Transport.LocalException("Attachment " + this.name + " is longer than its declared length");
+                }
+            } finally {
+                this.stream.close();
+            }
+        }
+    }
+
+    /**
+     * _read - Read from an attachment stream, telling its failures apart from those of the
+     * connection
+     */
+    private int _read(InputStream in, byte[] buffer, int length) throws IOException {
+        try {
+            return in.read(buffer, 0, length);
+        } catch (IOException e) {
+            throw new Transport.LocalException("Cannot read attachment " + this.name, e);
+        }
+    }
+
+    /**
+     * A channel to the connection that remembers whether writing to it failed.
+     */
+    private static class Target implements WritableByteChannel {
+        private final WritableByteChannel channel;
+        boolean failed = false;
+
+        Target(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        public int write(ByteBuffer source) throws IOException {
+            try {
+                return this.channel.write(source);
+            } catch (IOException e) {
+                this.failed = true;
+                throw e;
+            }
+        }
+
+        public boolean isOpen() {
+            return this.channel.isOpen();
+        }
+
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * _isMediaType - Whether a value is token "/" token, followed by any number of
+     * ";" token "=" (token or quoted-string) parameters, as in RFC 7231
+     */
+    private static boolean _isMediaType(String value) {
+        int i = _token(value, 0);
+        if (i == 0 || i == value.length() || value.charAt(i) != '/') {
+            return false;
+        }
+        int end = _token(value, i + 1);
+        if (end == i + 1) {
+            return false;
+        }
+        i = end;
+        while (i < value.length()) {
+            i = _space(value, i);
+            if (i == value.length() || value.charAt(i) != ';') {
+                return false;
+            }
+            i = _space(value, i + 1);
+            end = _token(value, i);
+            if (end == i || end == value.length() || value.charAt(end) != '=') {
+                return false;
+            }
+            i = end + 1;
+            if (i < value.length() && value.charAt(i) == '"') {
+                i = _quoted(value, i + 1);
+                if (i < 0) {
+                    return false;
+                }
+            } else {
+                end = _token(value, i);
+                if (end == i) {
+                    return false;
+                }
+                i = end;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * _token - The end of the run of token characters starting at start
+     */
+    private static int _token(String value, int start) {
+        int i = start;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c >= 127 || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) {
+                break;
+            }
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * _space - Skip the spaces and tabs starting at start
+     */
+    private static int _space(String value, int start) {
+        int i = start;
+        while (i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '\t')) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * _quoted - The end of a quoted string whose opening quote is just before start, or -1
+     * when it is not closed or holds a control or non-ASCII character
+     */
+    private static int _quoted(String value, int start) {
+        int i = start;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c == '\\') {
+                i++;
+                if (i == value.length()) {
+                    return -1;
+                }
+                c = value.charAt(i);
+            }
+            if ((c < ' ' && c != '\t') || c >= 127) {
+                return -1;
+            }
+            i++;
+        }
+
+        return -1;
+    }
+}
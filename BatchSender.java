@@ -0,0 +1,278 @@
+package googleSendgridJava;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * BatchSender - Coalesces many single-recipient sends of the same message into multi-recipient
+ * requests.
+ *
+ * Every recipient added is queued together with its own substitution values. A batch is sent
+ * as soon as it holds maxBatchSize recipients, or lingerMillis after its first recipient was
+ * added, whichever comes first. The recipients of a batch go in the X-SMTPAPI "to" list and
+ * their substitutions in aligned "sub" arrays, so one request delivers the whole batch.
+ *
+ * The future returned for each recipient completes with the result of the request that
+ * carried it. A recipient whose address is not well formed is never queued: its future
+ * fails at once, and the batch goes out without it. BatchSender is thread-safe.
+ */
+public class BatchSender implements Closeable {
+
+    private final MessageSender client;
+    private final Message template;
+    private final Object lock = new Object();
+    private int maxBatchSize = 1000;
+    private long lingerMillis = 100;
+    private List<Recipient> pending = new ArrayList<Recipient>();
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> lingerTask;
+    // Counts the batches taken, so a linger task that fires late leaves the next batch alone
+    private long generation = 0;
+    private boolean closed = false;
+
+    /**
+     * @param  client     the client that sends the batches
+     * @param  template   the message every recipient receives. Its recipients are ignored and
+     *                    its substitutions are replaced by those of each batch.
+     */
+    public BatchSender(MessageSender client, Message template) {
+        if (template.isUseHeaders() == false) {
+            throw new IllegalArgumentException("Batching requires a message that uses X-SMTPAPI headers");
+        }
+        this.client = client;
+        this.template = template;
+    }
+
+    /**
+     * setMaxBatchSize - Set the most recipients sent in one request, 1000 by default
+     *
+     * @param  maxBatchSize   recipients per request
+     * @return                the BatchSender.
+     */
+    public BatchSender setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        synchronized (this.lock) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        return this;
+    }
+
+    /**
+     * setLinger - Set how long a partly filled batch waits for more recipients, 100ms by
+     * default. With 0, a batch is only sent once full or on flush().
+     *
+     * @param  lingerMillis   the wait in milliseconds
+     * @return                the BatchSender.
+     */
+    public BatchSender setLinger(long lingerMillis) {
+        synchronized (this.lock) {
+            this.lingerMillis = lingerMillis;
+        }
+
+        return this;
+    }
+
+    /**
+     * add - Queue a recipient
+     *
+     * @param  email   recipient email address
+     * @return         a future completed with the result of the request carrying the recipient
+     */
+    public CompletableFuture<SendResult> add(String email) {
+        return this.add(email, "", Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * add - Queue a recipient with its substitution values
+     *
+     * @param  email           recipient email address
+     * @param  substitutions   substitution tag to value, for this recipient only
+     * @return                 a future completed with the result of the request carrying
+     *                          the recipient
+     */
+    public CompletableFuture<SendResult> add(String email, Map<String, String> substitutions) {
+        return this.add(email, "", substitutions);
+    }
+
+    /**
+     * add - Queue a recipient with its name and substitution values
+     *
+     * @param  email           recipient email address
+     * @param  name            recipient name, or ""
+     * @param  substitutions   substitution tag to value, for this recipient only. Recipients
+     *                         without a value for a tag used by others in the batch get "".
+     * @return                 a future completed with the result of the request carrying
+     *                          the recipient
+     */
+    public CompletableFuture<SendResult> add(String email, String name, Map<String, String> substitutions) {
+        String address = EmailAddress.normalize(email);
+        if (address == null) {
+            return CompletableFuture.completedFuture(SendResult.failure("Invalid email address: " + email, null));
+        }
+        Recipient recipient = new Recipient(address, name, substitutions);
+        List<Recipient> full = null;
+        synchronized (this.lock) {
+            if (this.closed) {
+                throw new IllegalStateException("BatchSender is closed");
+            }
+            this.pending.add(recipient);
+            if (this.pending.size() >= this.maxBatchSize) {
+                full = this._takePending();
+            } else if (this.pending.size() == 1 && this.lingerMillis > 0) {
+                final long batch = this.generation;
+                this.lingerTask = this._timer().schedule(new Runnable() {
+                    public void run() {
+                        _flush(batch);
+                    }
+                }, this.lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            this._dispatch(full);
+        }
+
+        return recipient.result;
+    }
+
+    /**
+     * flush - Send the current batch now, however full it is
+     */
+    public void flush() {
+        List<Recipient> batch;
+        synchronized (this.lock) {
+            batch = this._takePending();
+        }
+        if (batch.size() > 0) {
+            this._dispatch(batch);
+        }
+    }
+
+    /**
+     * _flush - Send the batch a linger task was scheduled for, unless it was taken already
+     *
+     * @param  generation   the generation of that batch
+     */
+    private void _flush(long generation) {
+        List<Recipient> batch;
+        synchronized (this.lock) {
+            if (this.generation != generation) {
+                return;
+            }
+            batch = this._takePending();
+        }
+        if (batch.size() > 0) {
+            this._dispatch(batch);
+        }
+    }
+
+    /**
+     * close - Send the current batch and stop accepting recipients
+     */
+    public void close() {
+        synchronized (this.lock) {
+            this.closed = true;
+        }
+        this.flush();
+        synchronized (this.lock) {
+            if (this.timer != null) {
+                this.timer.shutdown();
+            }
+        }
+    }
+
+    /**
+     * _takePending - Detach the current batch. Callers hold the lock.
+     */
+    private List<Recipient> _takePending() {
+        List<Recipient> batch = this.pending;
+        this.pending = new ArrayList<Recipient>(Math.min(this.maxBatchSize, 1024));
+        this.generation++;
+        if (this.lingerTask != null) {
+            this.lingerTask.cancel(false);
+            this.lingerTask = null;
+        }
+
+        return batch;
+    }
+
+    private ScheduledExecutorService _timer() {
+        if (this.timer == null) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "sendgrid-batch-linger");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return this.timer;
+    }
+
+    /**
+     * _dispatch - Build the message for one batch, with aligned to and sub arrays, and send it
+     */
+    private void _dispatch(final List<Recipient> batch) {
+        Set<String> tags = new LinkedHashSet<String>();
+        for (Recipient recipient : batch) {
+            tags.addAll(recipient.substitutions.keySet());
+        }
+
+        Message.Builder message = this.template.toBuilder().clearTos().removeHeader("sub");
+        for (Recipient recipient : batch) {
+            message.addTo(recipient.email, recipient.name);
+        }
+        for (String tag : tags) {
+            String[] values = new String[batch.size()];
+            for (int i = 0; i < values.length; i++) {
+                String value = batch.get(i).substitutions.get(tag);
+                values[i] = (value == null) ? "" : value;
+            }
+            message.addSubstitution(tag, values);
+        }
+
+        this.client.sendAsync(message.build()).whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable t) {
+                for (Recipient recipient : batch) {
+                    if (t != null) {
+                        recipient.result.completeExceptionally(t);
+                    } else {
+                        recipient.result.complete(result);
+                    }
+                }
+            }
+        });
+    }
+
+    private static class Recipient {
+        final String email;
+        final String name;
+        final Map<String, String> substitutions;
+        final CompletableFuture<SendResult> result = new CompletableFuture<SendResult>();
+
+        Recipient(String email, String name, Map<String, String> substitutions) {
+            this.email = email;
+            this.name = (name == null) ? "" : name;
+            // Copied, so later changes to the caller's map do not reach the queued batch
+            this.substitutions = (substitutions == null || substitutions.isEmpty())
+                ? Collections.<String, String>emptyMap()
+                : new HashMap<String, String>(substitutions);
+        }
+    }
+}
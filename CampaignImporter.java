@@ -0,0 +1,856 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import com.google.appengine.labs.repackaged.org.json.JSONException;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+/**
+ * CampaignImporter - Streams a recipient file into sends of a Template, one chunk of
+ * recipients per request.
+ *
+ * The file is CSV, with a header row naming its columns, or JSONL, one JSON object per line.
+ * Every row gives a recipient's email address, optionally a name, and the values of the
+ * columns mapped to substitution tags ("sub") or unique arguments ("unique_args"). Rows
+ * whose address EmailAddress does not accept, or with the wrong number of CSV fields, are
+ * skipped and handed to the Listener; other addresses are sent in canonical form.
+ *
+ * The file is read in blocks through a channel and decoded as it is parsed. Recipients are
+ * gathered into chunks of chunkSize, each sent as soon as it is full while the next one is
+ * read, and at most parallelism chunks are in flight at once: reading waits for a send to
+ * complete before it starts another. Memory therefore stays at a few chunks whatever the
+ * size of the file. A record longer than maxRecordLength characters, which is what an
+ * unclosed quote in a CSV file turns the rest of the file into, is rejected without being
+ * held in memory. Since unique arguments apply to a whole request, a chunk is also cut
+ * short wherever the value of a unique argument column changes, so sort the file by those
+ * columns.
+ *
+ * An importer is immutable once built and may run any number of files, also at once.
+ */
+public final class CampaignImporter {
+
+    /**
+     * The format of a recipient file.
+     */
+    public static enum Format { CSV, JSONL }
+
+    /**
+     * Notified of rows that were skipped and of chunks as they complete. Called from the
+     * thread running the import and from the sender's threads.
+     */
+    public static interface Listener {
+        /**
+         * rejected - A row was skipped
+         *
+         * @param  line     the line the row starts on, counting from 1
+         * @param  reason   why it was skipped
+         */
+        public void rejected(long line, String reason);
+
+        /**
+         * completed - A chunk was sent, or failed
+         *
+         * @param  recipients   the recipients of the chunk
+         * @param  result       the outcome of the send
+         */
+        public void completed(RecipientList recipients, SendResult result);
+    }
+
+    private final MessageSender sender;
+    private final Template template;
+    private final Format format;
+    private final char delimiter;
+    private final int chunkSize,
+                      parallelism,
+                      maxRecordLength;
+    private final String emailColumn,
+                         nameColumn;
+    private final Map<String, String> substitutions,
+                                      uniqueArguments;
+    private final Listener listener;
+
+    private CampaignImporter(Builder builder) {
+        this.sender = builder.sender;
+        this.template = builder.template;
+        this.format = builder.format;
+        this.delimiter = builder.delimiter;
+        this.chunkSize = builder.chunkSize;
+        this.parallelism = builder.parallelism;
+        this.maxRecordLength = builder.maxRecordLength;
+        this.emailColumn = builder.emailColumn;
+        this.nameColumn = builder.nameColumn;
+        this.substitutions = Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.substitutions));
+        this.uniqueArguments = Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.uniqueArguments));
+        this.listener = builder.listener;
+    }
+
+    /**
+     * builder - Start configuring an importer
+     *
+     * @param  sender     sends the chunks
+     * @param  template   the message every recipient receives
+     * @return            a new builder
+     */
+    public static Builder builder(MessageSender sender, Template template) {
+        return new Builder(sender, template);
+    }
+
+    /**
+     * run - Import a file and send it, returning once every chunk has completed
+     *
+     * @param  file   the recipient file, UTF-8 encoded
+     * @return        the counts of rows and sends
+     * @throws IOException   when the file cannot be read, or lacks a mapped CSV column
+     */
+    public Report run(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return this.run(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * run - Import a stream of rows and send it, returning once every chunk has completed.
+     * The channel is not closed.
+     *
+     * @param  channel   the recipient rows, UTF-8 encoded
+     * @return           the counts of rows and sends
+     * @throws IOException   when the channel cannot be read, or lacks a mapped CSV column
+     */
+    public Report run(ReadableByteChannel channel) throws IOException {
+        Report report = new Report();
+        Semaphore slots = new Semaphore(this.parallelism);
+        Source in = new Source(channel);
+        Reader reader = (this.format == Format.CSV) ? new CsvReader(in) : new JsonReader(in);
+        boolean interrupted = false;
+        try {
+            Row row = new Row(this.substitutions.size(), this.uniqueArguments.size());
+            Chunk chunk = null;
+            while (reader.next(row)) {
+                report.rows.incrementAndGet();
+                String reason = row.reject;
+                if (reason == null) {
+                    reason = _check(row);
+                }
+                if (reason != null) {
+                    report.rejected.incrementAndGet();
+                    if (this.listener != null) {
+                        this.listener.rejected(row.line, reason);
+                    }
+                    continue;
+                }
+                if (chunk != null && (chunk.size == this.chunkSize
+                                      || Arrays.equals(chunk.uniqueArguments, row.uniqueArguments) == false)) {
+                    this._dispatch(chunk, slots, report);
+                    chunk = null;
+                }
+                if (chunk == null) {
+                    chunk = new Chunk(row.uniqueArguments.clone());
+                }
+                chunk.add(row);
+                report.recipients.incrementAndGet();
+            }
+            if (chunk != null) {
+                this._dispatch(chunk, slots, report);
+            }
+        } catch (InterruptedIOException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            if (interrupted == false) {
+                // Wait for the chunks in flight, also when reading failed
+                slots.acquireUninterruptibly(this.parallelism);
+            }
+        }
+
+        return report;
+    }
+
+    /**
+     * _check - Why a row's address is not valid, or null when it is, in which case the row
+     * now holds it in canonical form
+     */
+    private static String _check(Row row) {
+        if (row.email.isEmpty()) {
+            return "Missing email";
+        }
+        String email = EmailAddress.normalize(row.email);
+        if (email == null) {
+            return "Invalid email: " + row.email;
+        }
+        row.email = email;
+
+        return null;
+    }
+
+    /**
+     * _dispatch - Send a chunk once fewer than parallelism chunks are in flight
+     */
+    private void _dispatch(Chunk chunk, final Semaphore slots, final Report report) throws IOException {
+        Template.Instance instance = this.template.instance();
+        for (int i = 0; i < chunk.size; i++) {
+            instance.addTo(chunk.emails[i], chunk.names[i]);
+        }
+        int t = 0;
+        for (String tag : this.substitutions.values()) {
+            String[] values = chunk.substitutions[t++];
+            instance.addSubstitution(tag, (values.length == chunk.size) ? values : Arrays.copyOf(values, chunk.size));
+        }
+        int u = 0;
+        for (String key : this.uniqueArguments.values()) {
+            instance.addUniqueArgument(key, chunk.uniqueArguments[u++]);
+        }
+        Message message = instance.build();
+        final RecipientList recipients = message.getRecipients();
+
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a chunk to complete");
+        }
+        report.chunks.incrementAndGet();
+        CompletableFuture<SendResult> future;
+        try {
+            future = this.sender.sendAsync(message);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.completedFuture(SendResult.failure(e.getMessage(), e));
+        }
+        future.whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable error) {
+                try {
+                    if (error != null) {
+                        result = SendResult.failure(error.getMessage(), error);
+                    }
+                    if (result.isSuccess()) {
+                        report.sentRecipients.addAndGet(recipients.size());
+                    } else {
+                        report.failedChunks.incrementAndGet();
+                        report.failedRecipients.addAndGet(recipients.size());
+                    }
+                    if (listener != null) {
+                        listener.completed(recipients, result);
+                    }
+                } finally {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * The counts of one import. They are final once run() has returned.
+     */
+    public static final class Report {
+        private final AtomicLong rows = new AtomicLong(),
+                                 rejected = new AtomicLong(),
+                                 recipients = new AtomicLong(),
+                                 chunks = new AtomicLong(),
+                                 failedChunks = new AtomicLong(),
+                                 sentRecipients = new AtomicLong(),
+                                 failedRecipients = new AtomicLong();
+
+        private Report() {
+        }
+
+        /**
+         * getRows - Get the rows read, not counting the CSV header or blank lines
+         *
+         * @return  the number of rows
+         */
+        public long getRows() {
+            return this.rows.get();
+        }
+
+        public long getRejected() {
+            return this.rejected.get();
+        }
+
+        /**
+         * getRecipients - Get the rows accepted and sent, successfully or not
+         *
+         * @return  the number of recipients
+         */
+        public long getRecipients() {
+            return this.recipients.get();
+        }
+
+        public long getChunks() {
+            return this.chunks.get();
+        }
+
+        public long getFailedChunks() {
+            return this.failedChunks.get();
+        }
+
+        public long getSentRecipients() {
+            return this.sentRecipients.get();
+        }
+
+        public long getFailedRecipients() {
+            return this.failedRecipients.get();
+        }
+
+        public String toString() {
+            return "rows=" + this.getRows() + " rejected=" + this.getRejected() + " chunks=" + this.getChunks()
+                + " failedChunks=" + this.getFailedChunks() + " sent=" + this.getSentRecipients()
+                + " failed=" + this.getFailedRecipients();
+        }
+    }
+
+    /**
+     * One row, reused for every row of a file: the values of the columns the importer maps,
+     * or why the row cannot be used.
+     */
+    private static final class Row {
+        long line;
+        String email,
+               name,
+               reject;
+        final String[] substitutions,
+                       uniqueArguments;
+
+        Row(int substitutions, int uniqueArguments) {
+            this.substitutions = new String[substitutions];
+            this.uniqueArguments = new String[uniqueArguments];
+        }
+    }
+
+    /**
+     * The recipients of one request, with their substitution values column by column.
+     */
+    private final class Chunk {
+        final String[] emails = new String[chunkSize],
+                       names = new String[chunkSize];
+        final String[][] substitutions = new String[CampaignImporter.this.substitutions.size()][chunkSize];
+        final String[] uniqueArguments;
+        int size = 0;
+
+        Chunk(String[] uniqueArguments) {
+            this.uniqueArguments = uniqueArguments;
+        }
+
+        void add(Row row) {
+            this.emails[this.size] = row.email;
+            this.names[this.size] = row.name;
+            for (int t = 0; t < this.substitutions.length; t++) {
+                this.substitutions[t][this.size] = row.substitutions[t];
+            }
+            this.size++;
+        }
+    }
+
+    private abstract class Reader {
+        /**
+         * next - Read the next row, skipping blank lines
+         *
+         * @return  false at the end of the input
+         */
+        abstract boolean next(Row row) throws IOException;
+    }
+
+    /**
+     * Reads RFC 4180 CSV: fields may be quoted, with "" for a quote, and a quoted field may
+     * hold delimiters and line breaks. The first record names the columns.
+     */
+    private final class CsvReader extends Reader {
+        private final Source in;
+        private final List<String> fields = new ArrayList<String>();
+        private final StringBuilder field = new StringBuilder();
+        // Why the last record read is not usable, or null
+        private String problem;
+        private int columns = -1,
+                    email,
+                    name;
+        private int[] substitutions,
+                      uniqueArguments;
+
+        CsvReader(Source in) {
+            this.in = in;
+        }
+
+        boolean next(Row row) throws IOException {
+            if (this.columns < 0) {
+                this._header();
+            }
+            long line;
+            do {
+                line = this.in.line;
+                if (this._record() == false) {
+                    return false;
+                }
+            } while (this.problem == null && this.fields.size() == 1 && this.fields.get(0).isEmpty());
+
+            row.line = line;
+            row.reject = this.problem;
+            if (row.reject != null) {
+                return true;
+            }
+            if (this.fields.size() != this.columns) {
+                row.reject = "Expected " + this.columns + " fields, found " + this.fields.size();
+                return true;
+            }
+            row.email = this.fields.get(this.email).trim();
+            row.name = (this.name < 0) ? "" : this.fields.get(this.name).trim();
+            for (int i = 0; i < this.substitutions.length; i++) {
+                row.substitutions[i] = this.fields.get(this.substitutions[i]);
+            }
+            for (int i = 0; i < this.uniqueArguments.length; i++) {
+                row.uniqueArguments[i] = this.fields.get(this.uniqueArguments[i]);
+            }
+
+            return true;
+        }
+
+        private void _header() throws IOException {
+            if (this._record() == false) {
+                throw new IOException("Empty CSV file, expected a header row");
+            }
+            if (this.problem != null) {
+                throw new IOException("Unreadable CSV header: " + this.problem);
+            }
+            List<String> header = new ArrayList<String>(this.fields.size());
+            for (String column : this.fields) {
+                header.add(column.trim());
+            }
+            this.columns = header.size();
+            this.email = _index(header, emailColumn, true);
+            this.name = _index(header, nameColumn, false);
+            this.substitutions = new int[CampaignImporter.this.substitutions.size()];
+            int i = 0;
+            for (String column : CampaignImporter.this.substitutions.keySet()) {
+                this.substitutions[i++] = _index(header, column, true);
+            }
+            this.uniqueArguments = new int[CampaignImporter.this.uniqueArguments.size()];
+            i = 0;
+            for (String column : CampaignImporter.this.uniqueArguments.keySet()) {
+                this.uniqueArguments[i++] = _index(header, column, true);
+            }
+        }
+
+        private int _index(List<String> header, String column, boolean required) throws IOException {
+            int index = header.indexOf(column);
+            if (index < 0 && required) {
+                throw new IOException("No column \"" + column + "\" in the CSV header " + header);
+            }
+
+            return index;
+        }
+
+        /**
+         * _record - Read one record into fields, or set problem when it is unterminated or
+         * too long. The fields of a record found too long are dropped as it is read.
+         *
+         * @return  false at the end of the input
+         */
+        private boolean _record() throws IOException {
+            this.fields.clear();
+            this.field.setLength(0);
+            this.problem = null;
+            int c = this.in.read();
+            if (c == -1) {
+                return false;
+            }
+            boolean quoted = false,
+                    wasQuoted = false;
+            // Characters kept so far, counting a delimiter for each field
+            int length = 0;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        this.problem = "Unterminated quoted field";
+                        break;
+                    }
+                    if (c == '"') {
+                        c = this.in.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    this.field.append((char) c);
+                    length++;
+                } else if (c == '"' && this.field.length() == 0 && wasQuoted == false) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == delimiter) {
+                    this.fields.add(this.field.toString());
+                    this.field.setLength(0);
+                    wasQuoted = false;
+                    length++;
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c != '\r') {
+                    this.field.append((char) c);
+                    length++;
+                }
+                if (length > maxRecordLength) {
+                    this._tooLong();
+                    length = 0;
+                }
+                c = this.in.read();
+            }
+            this.fields.add(this.field.toString());
+            if (this.problem != null) {
+                this.fields.clear();
+            }
+
+            return true;
+        }
+
+        private void _tooLong() {
+            if (this.problem == null) {
+                this.problem = "Record longer than " + maxRecordLength + " characters";
+            }
+            this.fields.clear();
+            this.field.setLength(0);
+        }
+    }
+
+    /**
+     * Reads one JSON object per line. Columns are the object's top level members; a missing
+     * or null member is "", and any other value is written as its string form.
+     */
+    private final class JsonReader extends Reader {
+        private final Source in;
+        private final StringBuilder text = new StringBuilder();
+        private boolean tooLong;
+        private final String[] substitutions = CampaignImporter.this.substitutions.keySet().toArray(new String[0]),
+                               uniqueArguments = CampaignImporter.this.uniqueArguments.keySet().toArray(new String[0]);
+
+        JsonReader(Source in) {
+            this.in = in;
+        }
+
+        boolean next(Row row) throws IOException {
+            long line;
+            do {
+                line = this.in.line;
+                if (this._line() == false) {
+                    return false;
+                }
+            } while (this.tooLong == false && _blank(this.text));
+
+            row.line = line;
+            row.reject = null;
+            if (this.tooLong) {
+                row.reject = "Line longer than " + maxRecordLength + " characters";
+                return true;
+            }
+            JSONObject object;
+            try {
+                object = new JSONObject(this.text.toString());
+            } catch (JSONException e) {
+                row.reject = "Malformed JSON: " + e.getMessage();
+                return true;
+            }
+            row.email = _value(object, emailColumn).trim();
+            row.name = _value(object, nameColumn).trim();
+            for (int i = 0; i < this.substitutions.length; i++) {
+                row.substitutions[i] = _value(object, this.substitutions[i]);
+            }
+            for (int i = 0; i < this.uniqueArguments.length; i++) {
+                row.uniqueArguments[i] = _value(object, this.uniqueArguments[i]);
+            }
+
+            return true;
+        }
+
+        /**
+         * _line - Read one line into text, or only to its end when it is too long
+         *
+         * @return  false at the end of the input
+         */
+        private boolean _line() throws IOException {
+            this.text.setLength(0);
+            this.tooLong = false;
+            int c = this.in.read();
+            if (c == -1) {
+                return false;
+            }
+            while (c != '\n' && c != -1) {
+                if (this.tooLong == false) {
+                    if (this.text.length() < maxRecordLength) {
+                        this.text.append((char) c);
+                    } else {
+                        this.tooLong = true;
+                        this.text.setLength(0);
+                    }
+                }
+                c = this.in.read();
+            }
+
+            return true;
+        }
+
+        private String _value(JSONObject object, String key) {
+            Object value = object.opt(key);
+
+            return (value == null || value == JSONObject.NULL) ? "" : String.valueOf(value);
+        }
+
+        private boolean _blank(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isWhitespace(text.charAt(i)) == false) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Decodes a channel as UTF-8 a block at a time, skipping a byte order mark, and counts
+     * the lines it has passed. Malformed bytes become U+FFFD.
+     */
+    private static final class Source {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+        private final CharBuffer chars = CharBuffer.allocate(64 * 1024);
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean eof = false,
+                        flushed = false,
+                        started = false;
+        long line = 1;
+
+        Source(ReadableByteChannel channel) {
+            this.channel = channel;
+            this.chars.flip();
+        }
+
+        /**
+         * read - Read the next character
+         *
+         * @return  the character, or -1 at the end of the input
+         */
+        int read() throws IOException {
+            if (this.chars.hasRemaining() == false && this._fill() == false) {
+                return -1;
+            }
+            char c = this.chars.get();
+            if (c == '\n') {
+                this.line++;
+            } else if (c == '\uFEFF' && this.started == false) {
+                this.started = true;
+                return this.read();
+            }
+            this.started = true;
+
+            return c;
+        }
+
+        private boolean _fill() throws IOException {
+            this.chars.clear();
+            while (this.chars.position() == 0 && this.flushed == false) {
+                if (this.eof == false && this.channel.read(this.bytes) < 0) {
+                    this.eof = true;
+                }
+                this.bytes.flip();
+                CoderResult result = this.decoder.decode(this.bytes, this.chars, this.eof);
+                this.bytes.compact();
+                if (this.eof && result.isUnderflow()) {
+                    this.flushed = this.decoder.flush(this.chars).isUnderflow();
+                }
+            }
+            this.chars.flip();
+
+            return this.chars.hasRemaining();
+        }
+    }
+
+    /**
+     * Configures a CampaignImporter.
+     */
+    public static final class Builder {
+        private final MessageSender sender;
+        private final Template template;
+        private Format format = Format.CSV;
+        private char delimiter = ',';
+        private int chunkSize = 1000,
+                    parallelism = 4,
+                    maxRecordLength = 1024 * 1024;
+        private String emailColumn = "email",
+                       nameColumn = "name";
+        private final Map<String, String> substitutions = new LinkedHashMap<String, String>(),
+                                          uniqueArguments = new LinkedHashMap<String, String>();
+        private Listener listener;
+
+        private Builder(MessageSender sender, Template template) {
+            if (template.getMessage().isUseHeaders() == false) {
+                throw new IllegalArgumentException("Importing requires a message that uses X-SMTPAPI headers");
+            }
+            this.sender = sender;
+            this.template = template;
+        }
+
+        /**
+         * setFormat - Set the format of the files, CSV by default
+         *
+         * @param  format   the format
+         * @return          The builder.
+         */
+        public Builder setFormat(Format format) {
+            this.format = format;
+
+            return this;
+        }
+
+        /**
+         * setDelimiter - Set the CSV field delimiter, ',' by default
+         *
+         * @param  delimiter   the delimiter, such as '\t' or ';'
+         * @return             The builder.
+         */
+        public Builder setDelimiter(char delimiter) {
+            if (delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+                throw new IllegalArgumentException("Invalid delimiter");
+            }
+            this.delimiter = delimiter;
+
+            return this;
+        }
+
+        /**
+         * setChunkSize - Set the most recipients sent in one request, 1000 by default
+         *
+         * @param  chunkSize   recipients per request
+         * @return             The builder.
+         */
+        public Builder setChunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be at least 1");
+            }
+            this.chunkSize = chunkSize;
+
+            return this;
+        }
+
+        /**
+         * setParallelism - Set the most chunks in flight at once, 4 by default. The sender's
+         * own limits, such as its transport's, apply as well.
+         *
+         * @param  parallelism   chunks in flight
+         * @return               The builder.
+         */
+        public Builder setParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+
+            return this;
+        }
+
+        /**
+         * setMaxRecordLength - Set the most characters in a record, a CSV record or a JSONL
+         * line, 1M by default. Longer records are rejected, and skipped without being kept
+         * in memory.
+         *
+         * @param  maxRecordLength   characters per record
+         * @return                   The builder.
+         */
+        public Builder setMaxRecordLength(int maxRecordLength) {
+            if (maxRecordLength < 1) {
+                throw new IllegalArgumentException("maxRecordLength must be at least 1");
+            }
+            this.maxRecordLength = maxRecordLength;
+
+            return this;
+        }
+
+        /**
+         * setEmailColumn - Set the column holding the address, "email" by default
+         *
+         * @param  column   the column name
+         * @return          The builder.
+         */
+        public Builder setEmailColumn(String column) {
+            this.emailColumn = column;
+
+            return this;
+        }
+
+        /**
+         * setNameColumn - Set the column holding the name, "name" by default. Without such
+         * a column, recipients have no name.
+         *
+         * @param  column   the column name
+         * @return          The builder.
+         */
+        public Builder setNameColumn(String column) {
+            this.nameColumn = column;
+
+            return this;
+        }
+
+        /**
+         * mapSubstitution - Substitute a column's value for a tag, recipient by recipient
+         *
+         * @param  column   the column name
+         * @param  tag      the substitution tag, such as "%name%"
+         * @return          The builder.
+         */
+        public Builder mapSubstitution(String column, String tag) {
+            this.substitutions.put(column, tag);
+
+            return this;
+        }
+
+        /**
+         * mapUniqueArgument - Send a column's value as a unique argument. A chunk holds rows
+         * with the same value only.
+         *
+         * @param  column   the column name
+         * @param  key      the unique argument key
+         * @return          The builder.
+         */
+        public Builder mapUniqueArgument(String column, String key) {
+            this.uniqueArguments.put(column, key);
+
+            return this;
+        }
+
+        /**
+         * setListener - Set the listener for skipped rows and completed chunks, none by
+         * default
+         *
+         * @param  listener   the listener
+         * @return            The builder.
+         */
+        public Builder setListener(Listener listener) {
+            this.listener = listener;
+
+            return this;
+        }
+
+        public CampaignImporter build() {
+            return new CampaignImporter(this);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+
+/**
+ * CircuitBreaker - Stops sending for a while once the API keeps failing.
+ *
+ * The breaker starts closed and lets every request through. After failureThreshold
+ * consecutive failures (transport errors, 429 and 5xx responses) it opens, and for the next
+ * openMillis every send fails at once with an OpenException instead of tying up a thread in
+ * a request that is likely to fail. It then half-opens: a single trial request is let
+ * through, and its outcome closes the breaker again or reopens it for another period.
+ * Local failures, such as an attachment that cannot be read, are not counted (see
+ * SendResult.isLocalFailure).
+ *
+ * Every change of state starts a new generation, and a request is admitted with the
+ * generation it was let through in. Only outcomes of the current generation count: a late
+ * success of a request admitted before the breaker opened does not close it, and in the
+ * half-open state only the trial request decides.
+ *
+ * A breaker is thread-safe and is meant to be shared by every client sending to the same
+ * account.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of the breaker.
+     */
+    public static enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Thrown (as the cause of a failed SendResult) for sends refused by an open breaker.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt = 0;
+    private long generation = 0;
+    private boolean trialInFlight = false;
+
+    /**
+     * What tryAcquire() returns for a request that may not be sent.
+     */
+    public static final long REFUSED = -1;
+
+    /**
+     * @param  failureThreshold   consecutive failures that open the breaker
+     * @param  openMillis         how long the breaker stays open before a trial request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * getState - Get the current state
+     *
+     * @return  the state
+     */
+    public synchronized State getState() {
+        if (this.state == State.OPEN && this._now() - this.openedAt >= this.openMillis) {
+            return State.HALF_OPEN;
+        }
+
+        return this.state;
+    }
+
+    /**
+     * tryAcquire - Ask to send a request. Every request let through must be followed by
+     * record() once it completes.
+     *
+     * @return  the ticket to pass to record(), or REFUSED when the request may not be sent
+     */
+    public synchronized long tryAcquire() {
+        switch (this.state) {
+            case CLOSED:
+                return this.generation;
+            case OPEN:
+                if (this._now() - this.openedAt < this.openMillis) {
+                    return REFUSED;
+                }
+                this._enter(State.HALF_OPEN);
+                this.trialInFlight = true;
+                return this.generation;
+            default:
+                if (this.trialInFlight) {
+                    return REFUSED;
+                }
+                this.trialInFlight = true;
+                return this.generation;
+        }
+    }
+
+    /**
+     * record - Report the outcome of a request let through by tryAcquire(). Outcomes of
+     * requests admitted in an earlier generation are ignored.
+     *
+     * @param  ticket   what tryAcquire() returned for the request
+     * @param  result   the outcome
+     */
+    public synchronized void record(long ticket, SendResult result) {
+        if (ticket != this.generation) {
+            return;
+        }
+        if (result.isLocalFailure()) {
+            // Says nothing about the API: neither count it nor let it decide a trial, but let
+            // the next request be the trial instead
+            this.trialInFlight = false;
+            return;
+        }
+        if (isFailure(result)) {
+            this.failures++;
+            if (this.state == State.HALF_OPEN || this.failures >= this.failureThreshold) {
+                this._enter(State.OPEN);
+                this.openedAt = this._now();
+            }
+        } else {
+            this.failures = 0;
+            if (this.state != State.CLOSED) {
+                this._enter(State.CLOSED);
+            }
+        }
+    }
+
+    /**
+     * _enter - Change state, starting a new generation
+     */
+    private void _enter(State state) {
+        this.state = state;
+        this.generation++;
+        this.trialInFlight = false;
+    }
+
+    /**
+     * isFailure - Whether a result says the API is unhealthy, as opposed to the request
+     * being wrong
+     *
+     * @param  result   the outcome of a request
+     * @return          true for transport errors other than local failures, 429 and 5xx
+     *                  responses
+     */
+    static boolean isFailure(SendResult result) {
+        if (result.isSuccess() || result.isLocalFailure()) {
+            return false;
+        }
+
+        return result.getStatus() == 0 || result.getStatus() == 429 || result.getStatus() >= 500;
+    }
+
+    long _now() {
+        return System.nanoTime() / 1000000;
+    }
+}
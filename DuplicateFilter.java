@@ -0,0 +1,160 @@
+package googleSendgridJava;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * DuplicateFilter - Suppresses repeated sends of the same message before they reach the
+ * network.
+ *
+ * Messages are keyed by their content hash. While a message is being sent, a second send of
+ * it waits for the first and gets its result instead of making a request. Once it has been
+ * sent successfully, further sends get that result until the time to live has passed.
+ * A failed send is forgotten at once, so it can be sent again.
+ *
+ * The filter remembers at most maxEntries messages, dropping the oldest first, and lives in
+ * memory only: after a restart every message can be sent again. It is thread-safe, and may
+ * be shared by several clients; a message sent through clients with different credentials
+ * or urls is not a duplicate.
+ */
+public class DuplicateFilter {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<Long, Record> entries;
+    private long suppressed = 0;
+
+    /**
+     * @param  maxEntries   the most messages remembered at once
+     * @param  ttlMillis    how long a message sent successfully is remembered
+     */
+    public DuplicateFilter(final int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<Long, Record>(Math.min(maxEntries, 1024) * 2) {
+            protected boolean removeEldestEntry(Map.Entry<Long, Record> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * getMaxEntries - Get the most messages remembered at once
+     *
+     * @return  the number of messages
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * getTtlMillis - Get how long a message sent successfully is remembered
+     *
+     * @return  the time to live in milliseconds
+     */
+    public long getTtlMillis() {
+        return this.ttlMillis;
+    }
+
+    /**
+     * size - Get the number of messages remembered, in flight or sent
+     *
+     * @return  the number of messages
+     */
+    public synchronized int size() {
+        this._expire(System.currentTimeMillis());
+
+        return this.entries.size();
+    }
+
+    /**
+     * getSuppressedCount - Get how many sends were answered without a request
+     *
+     * @return  the number of suppressed sends
+     */
+    public synchronized long getSuppressedCount() {
+        return this.suppressed;
+    }
+
+    /**
+     * clear - Forget every message
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * claim - Register a send of a message, unless it duplicates one in flight or recently
+     * sent
+     *
+     * @param  key      the idempotency key of the message
+     * @param  result   the future the send will complete
+     * @return          null when the caller should send the message, otherwise the result of
+     *                  the earlier send
+     */
+    synchronized CompletableFuture<SendResult> claim(long key, CompletableFuture<SendResult> result) {
+        long now = System.currentTimeMillis();
+        this._expire(now);
+        Record record = this.entries.get(key);
+        if (record != null && record.expiresAt > now) {
+            this.suppressed++;
+            return record.result;
+        }
+        this.entries.put(key, new Record(result));
+
+        return null;
+    }
+
+    /**
+     * complete - Record the outcome of a send registered with claim()
+     *
+     * @param  key      the idempotency key of the message
+     * @param  result   the future passed to claim()
+     * @param  outcome  the result of the send
+     */
+    synchronized void complete(long key, CompletableFuture<SendResult> result, SendResult outcome) {
+        Record record = this.entries.get(key);
+        if (record == null || record.result != result) {
+            // Evicted, or cleared and claimed again since
+            return;
+        }
+        if (outcome != null && outcome.isSuccess()) {
+            // Re-insert so the map stays ordered by expiry
+            this.entries.remove(key);
+            record.expiresAt = System.currentTimeMillis() + this.ttlMillis;
+            this.entries.put(key, record);
+        } else {
+            this.entries.remove(key);
+        }
+    }
+
+    /**
+     * _expire - Drop the sent messages whose time to live is over. Entries are ordered by
+     * when they were sent, with those in flight among them, so the scan stops at the first
+     * that is still live.
+     */
+    private void _expire(long now) {
+        Iterator<Record> it = this.entries.values().iterator();
+        while (it.hasNext()) {
+            Record record = it.next();
+            if (record.expiresAt > now) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private static class Record {
+        final CompletableFuture<SendResult> result;
+        long expiresAt = Long.MAX_VALUE;
+
+        Record(CompletableFuture<SendResult> result) {
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package googleSendgridJava;
+
+import java.net.IDN;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * EmailAddress - Checks the syntax of email addresses and puts them in a canonical form
+ * before they are sent, so a malformed address is rejected locally instead of costing a
+ * request, or failing a whole batch, at the API.
+ *
+ * An address is a local part, "@" and a domain. The local part is a dot-atom, where
+ * characters outside ASCII are allowed (RFC 6531), or a quoted string; it may not exceed 64
+ * characters. The domain is a dot-separated host name of letters, digits and hyphens, with
+ * labels of at most 63 characters and a top level label that is not all digits, an
+ * internationalized domain name, or an IPv4 literal such as [192.0.2.1]. The whole address
+ * may not exceed 254 characters.
+ *
+ * Canonical addresses keep their local part as given, since only the receiving server may
+ * interpret it, and have their domain in lower case and, for an internationalized domain,
+ * converted to its ASCII form ("xn--"). Checking an address whose domain is already
+ * canonical allocates nothing; other domains are converted once and remembered in a
+ * bounded least-recently-used cache shared by all threads.
+ */
+public final class EmailAddress {
+
+    private static final int MAX_LENGTH = 254,
+                             MAX_LOCAL = 64,
+                             MAX_LABEL = 63;
+    static final int MAX_CACHED_DOMAINS = 4096;
+
+    // Stands for a domain found to be invalid in the cache
+    private static final String INVALID = "";
+
+    // Whether each ASCII character may appear in an atom of the local part
+    private static final boolean[] ATEXT = new boolean[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            ATEXT[c] = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "!#$%&'*+-/=?^_`{|}~".indexOf(c) >= 0;
+        }
+    }
+
+    // Guarded by itself
+    static final Map<String, String> domains = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return this.size() > MAX_CACHED_DOMAINS;
+        }
+    };
+
+    private EmailAddress() {
+    }
+
+    /**
+     * isValid - Check the syntax of an address
+     *
+     * @param  address   the address, without a display name or angle brackets
+     * @return           true when it is well formed
+     */
+    public static boolean isValid(String address) {
+        return normalize(address) != null;
+    }
+
+    /**
+     * normalize - Put an address in canonical form
+     *
+     * @param  address   the address, without a display name or angle brackets
+     * @return           the canonical address, the same String when it is canonical
+     *                   already, or null when it is not well formed
+     */
+    public static String normalize(String address) {
+        if (address == null) {
+            return null;
+        }
+        int length = address.length();
+        int at = _localEnd(address, length);
+        if (at < 0 || length > MAX_LENGTH) {
+            return null;
+        }
+        int domain = _canonicalDomain(address, at + 1, length);
+        if (domain == 1) {
+            return address;
+        }
+        if (domain == 0) {
+            return null;
+        }
+        String canonical = _convertDomain(address.substring(at + 1));
+        if (canonical == null || at + 1 + canonical.length() > MAX_LENGTH) {
+            return null;
+        }
+
+        return address.substring(0, at + 1) + canonical;
+    }
+
+    /**
+     * dedupeKey - A key that is equal for addresses that reach the same mailbox in
+     * practice: the canonical address with its local part in lower case as well
+     *
+     * @param  address   the address
+     * @return           the key, or null when the address is not well formed
+     */
+    public static String dedupeKey(String address) {
+        String canonical = normalize(address);
+        if (canonical == null) {
+            return null;
+        }
+        int at = canonical.lastIndexOf('@');
+        for (int i = 0; i < at; i++) {
+            char c = canonical.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 0x80 && Character.toLowerCase(c) != c)) {
+                return canonical.substring(0, at).toLowerCase(Locale.ROOT) + canonical.substring(at);
+            }
+        }
+
+        return canonical;
+    }
+
+    /**
+     * require - Put an address in canonical form, or fail
+     *
+     * @param  address   the address, or null
+     * @return           the canonical address, or null for null
+     * @throws IllegalArgumentException   when the address is not well formed
+     */
+    static String require(String address) {
+        if (address == null) {
+            return null;
+        }
+        String canonical = normalize(address);
+        if (canonical == null) {
+            throw new IllegalArgumentException("Invalid email address: " + address);
+        }
+
+        return canonical;
+    }
+
+    /**
+     * _localEnd - Check the local part at the start of an address
+     *
+     * @return  the index of the "@" after it, or -1 when it is not well formed
+     */
+    private static int _localEnd(String address, int length) {
+        if (length == 0) {
+            return -1;
+        }
+        int i = 0;
+        if (address.charAt(0) == '"') {
+            // Quoted string: any printable character, with \ escaping the next one
+            i = 1;
+            while (i < length && address.charAt(i) != '"') {
+                char c = address.charAt(i);
+                if (c < ' ' || c == 0x7F) {
+                    return -1;
+                }
+                i += (c == '\\') ? 2 : 1;
+            }
+            i++;
+        } else {
+            // Dot-atom: atoms of atext, joined by single dots
+            boolean dot = true;
+            while (i < length && address.charAt(i) != '@') {
+                char c = address.charAt(i);
+                if (c == '.') {
+                    if (dot) {
+                        return -1;
+                    }
+                    dot = true;
+                } else if (_atext(c)) {
+                    dot = false;
+                } else {
+                    return -1;
+                }
+                i++;
+            }
+            if (dot) {
+                return -1;
+            }
+        }
+        if (i >= length || i > MAX_LOCAL || address.charAt(i) != '@') {
+            return -1;
+        }
+
+        return i;
+    }
+
+    private static boolean _atext(char c) {
+        if (c < 0x80) {
+            return ATEXT[c];
+        }
+        return Character.isISOControl(c) == false && Character.isWhitespace(c) == false;
+    }
+
+    /**
+     * _canonicalDomain - Check a domain that may already be canonical
+     *
+     * @return  1 when it is canonical and valid, 0 when it is invalid, and -1 when it needs
+     *          converting: it has upper case letters or characters outside ASCII
+     */
+    private static int _canonicalDomain(String address, int start, int end) {
+        if (start < end && address.charAt(start) == '[') {
+            return _ipLiteral(address, start, end) ? 1 : 0;
+        }
+        int labelStart = start;
+        boolean digitsOnly = true;
+        for (int i = start; i <= end; i++) {
+            char c = (i < end) ? address.charAt(i) : '.';
+            if (c == '.') {
+                int label = i - labelStart;
+                if (label == 0 || label > MAX_LABEL
+                    || address.charAt(labelStart) == '-' || address.charAt(i - 1) == '-') {
+                    return 0;
+                }
+                if (i == end) {
+                    // A host name needs a dot, and a top level label that is not a number
+                    return (labelStart == start || digitsOnly) ? 0 : 1;
+                }
+                labelStart = i + 1;
+                digitsOnly = true;
+            } else if ((c >= 'a' && c <= 'z') || c == '-') {
+                digitsOnly = false;
+            } else if (c >= '0' && c <= '9') {
+                continue;
+            } else if ((c >= 'A' && c <= 'Z') || c >= 0x80) {
+                return -1;
+            } else {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * _ipLiteral - Check an address literal of the form [a.b.c.d]
+     */
+    private static boolean _ipLiteral(String address, int start, int end) {
+        if (address.charAt(end - 1) != ']') {
+            return false;
+        }
+        int parts = 0,
+            value = -1;
+        for (int i = start + 1; i < end; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0) ? c - '0' : value * 10 + (c - '0');
+                if (value > 255) {
+                    return false;
+                }
+            } else if ((c == '.' || i == end - 1) && value >= 0) {
+                parts++;
+                value = -1;
+            } else {
+                return false;
+            }
+        }
+
+        return parts == 4;
+    }
+
+    /**
+     * _convertDomain - Lower case a domain and convert it to its ASCII form, through the
+     * cache
+     *
+     * @return  the canonical domain, or null when it is not valid
+     */
+    private static String _convertDomain(String domain) {
+        String canonical;
+        synchronized (domains) {
+            canonical = domains.get(domain);
+        }
+        if (canonical == null) {
+            canonical = INVALID;
+            try {
+                String ascii = IDN.toASCII(domain.toLowerCase(Locale.ROOT), IDN.USE_STD3_ASCII_RULES).toLowerCase(Locale.ROOT);
+                if (_canonicalDomain(ascii, 0, ascii.length()) == 1) {
+                    canonical = ascii;
+                }
+            } catch (IllegalArgumentException e) {
+                // Not a valid internationalized domain name
+            }
+            synchronized (domains) {
+                domains.put(domain, canonical);
+            }
+        }
+
+        return (canonical == INVALID) ? null : canonical;
+    }
+}
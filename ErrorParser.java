@@ -0,0 +1,222 @@
+package googleSendgridJava;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ErrorParser - Pulls the "errors" list out of an API error response in a single pass.
+ *
+ * The response is scanned token by token instead of being built into a JSONObject: values
+ * other than the errors are skipped without being copied, and each error string is decoded
+ * as it is reached. Error documents are tiny, but so is the time budget of a client that
+ * retries them, and a proxy error page should not cost a full parse and an exception.
+ */
+final class ErrorParser {
+
+    private final String json;
+    private int position = 0;
+
+    private ErrorParser(String json) {
+        this.json = json;
+    }
+
+    /**
+     * parse - Read the errors of an API error response
+     *
+     * @param  body   the response body
+     * @return        the errors, in order, or null when the body is not a JSON object with an
+     *                "errors" array
+     */
+    static List<String> parse(String body) {
+        try {
+            return new ErrorParser(body)._document();
+        } catch (IllegalArgumentException e) {
+            // Not JSON, e.g. an HTML error page
+            return null;
+        }
+    }
+
+    private List<String> _document() {
+        List<String> errors = null;
+        this._expect('{');
+        if (this._peek() == '}') {
+            this.position++;
+            return null;
+        }
+        do {
+            this._skipWhitespace();
+            String key = this._string();
+            this._expect(':');
+            if (key.equals("errors") && this._peek() == '[') {
+                errors = this._errors();
+            } else {
+                this._skipValue();
+            }
+        } while (this._next() == ',');
+        if (this.json.charAt(this.position - 1) != '}') {
+            throw new IllegalArgumentException("expected }");
+        }
+
+        return errors;
+    }
+
+    /**
+     * _errors - Read the errors array. Strings are decoded; anything else is kept as its
+     * JSON text, the way JSONArray would print it.
+     */
+    private List<String> _errors() {
+        List<String> errors = new ArrayList<String>();
+        this._expect('[');
+        if (this._peek() == ']') {
+            this.position++;
+            return errors;
+        }
+        do {
+            if (this._peek() == '"') {
+                errors.add(this._string());
+            } else {
+                int start = this.position;
+                this._skipValue();
+                errors.add(this.json.substring(start, this.position));
+            }
+        } while (this._next() == ',');
+        if (this.json.charAt(this.position - 1) != ']') {
+            throw new IllegalArgumentException("expected ]");
+        }
+
+        return errors;
+    }
+
+    private void _skipValue() {
+        char c = this._peek();
+        if (c == '"') {
+            this._skipString();
+        } else if (c == '{' || c == '[') {
+            // Strings are skipped whole, so any bracket seen here is structural
+            int depth = 0;
+            do {
+                c = this._char(this.position);
+                if (c == '"') {
+                    this._skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                this.position++;
+            } while (depth > 0);
+        } else {
+            int start = this.position;
+            while (this.position < this.json.length() && ",}] \t\r\n".indexOf(this.json.charAt(this.position)) < 0) {
+                this.position++;
+            }
+            if (this.position == start) {
+                throw new IllegalArgumentException("expected a value at " + start);
+            }
+        }
+    }
+
+    private void _skipString() {
+        this.position++;
+        while (true) {
+            char c = this._char(this.position++);
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                this.position++;
+            }
+        }
+    }
+
+    private String _string() {
+        if (this._char(this.position) != '"') {
+            throw new IllegalArgumentException("expected a string at " + this.position);
+        }
+        int start = ++this.position;
+        // Copy straight out of the body unless there is an escape to decode
+        while (true) {
+            char c = this._char(this.position);
+            if (c == '"') {
+                return this.json.substring(start, this.position++);
+            }
+            if (c == '\\') {
+                break;
+            }
+            this.position++;
+        }
+        StringBuilder value = new StringBuilder(this.json.substring(start, this.position));
+        while (true) {
+            char c = this._char(this.position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            c = this._char(this.position++);
+            switch (c) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (this.position + 4 > this.json.length()) {
+                        throw new IllegalArgumentException("truncated escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(this.json.substring(this.position, this.position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad escape at " + this.position);
+                    }
+                    this.position += 4;
+                    break;
+                default: value.append(c);
+            }
+        }
+    }
+
+    private void _expect(char expected) {
+        if (this._peek() != expected) {
+            throw new IllegalArgumentException("expected " + expected + " at " + this.position);
+        }
+        this.position++;
+    }
+
+    /**
+     * _next - Consume the next non-whitespace character
+     */
+    private char _next() {
+        char c = this._peek();
+        this.position++;
+
+        return c;
+    }
+
+    /**
+     * _peek - Skip whitespace and look at the next character
+     */
+    private char _peek() {
+        this._skipWhitespace();
+
+        return this._char(this.position);
+    }
+
+    private void _skipWhitespace() {
+        while (this.position < this.json.length() && Character.isWhitespace(this.json.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    private char _char(int index) {
+        if (index >= this.json.length()) {
+            throw new IllegalArgumentException("unexpected end of input");
+        }
+
+        return this.json.charAt(index);
+    }
+}
@@ -0,0 +1,283 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * FormEncoder - Writes application/x-www-form-urlencoded parameters straight to a stream.
+ *
+ * Values are percent-encoded as UTF-8 exactly like URLEncoder.encode(value, "UTF-8"),
+ * straight into a small reusable buffer, so no encoded copy of a value is ever built in
+ * memory. Characters are classified with TextEncoding's lookup table, and runs that need no
+ * encoding are copied in bulk. An encoder created without a stream only counts the bytes it
+ * would have written, which is how a body computes its Content-Length before it is sent.
+ *
+ * As an Appendable, the encoder percent-encodes whatever is appended into the value of the
+ * parameter last started with beginParam(), so a value can be serialized straight into it.
+ */
+final class FormEncoder implements Appendable {
+
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+    private long count = 0;
+    private boolean first;
+
+    /**
+     * @param  out   the stream to write to, or null to only count bytes
+     */
+    FormEncoder(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * @param  out         the stream to write to, or null to only count bytes
+     * @param  continued   true when parameters have already been written before this
+     *                     encoder's, so its first parameter starts with '&'
+     */
+    FormEncoder(OutputStream out, boolean continued) {
+        this.out = out;
+        this.buffer = (out == null) ? null : new byte[8192];
+        this.first = (continued == false);
+    }
+
+    /**
+     * param - Write one key=value pair, skipped when the value is null
+     *
+     * @param  key     the parameter name
+     * @param  value   the parameter value
+     * @throws IOException
+     */
+    void param(String key, CharSequence value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        this.beginParam(key);
+        this._encode(value, 0, value.length());
+    }
+
+    /**
+     * param - Write one key=value pair whose value is UTF-8 bytes. Percent-encoding the bytes
+     * gives the same output as encoding the string they decode to.
+     *
+     * @param  key     the parameter name
+     * @param  utf8    the bytes holding the value
+     * @param  start   the first byte of the value
+     * @param  end     the end of the value, exclusive
+     * @throws IOException
+     */
+    void param(String key, byte[] utf8, int start, int end) throws IOException {
+        this.beginParam(key);
+        for (int i = start; i < end; i++) {
+            int b = utf8[i] & 0xFF;
+            if (b >= 0x80) {
+                this._pct(b);
+                continue;
+            }
+            byte kind = TextEncoding.FORM[b];
+            if (kind == TextEncoding.SAFE) {
+                int run = i + 1;
+                while (run < end && utf8[run] >= 0 && TextEncoding.FORM[utf8[run]] == TextEncoding.SAFE) {
+                    run++;
+                }
+                this._bytes(utf8, i, run);
+                i = run - 1;
+            } else if (kind == TextEncoding.SPACE) {
+                this._byte('+');
+            } else {
+                this._pct(b);
+            }
+        }
+    }
+
+    /**
+     * beginParam - Start a parameter whose value will be appended to the encoder
+     *
+     * @param  key   the parameter name
+     * @throws IOException
+     */
+    void beginParam(String key) throws IOException {
+        if (this.first == false) {
+            this._byte('&');
+        }
+        this.first = false;
+        this._encode(key, 0, key.length());
+        this._byte('=');
+    }
+
+    public FormEncoder append(CharSequence value) throws IOException {
+        this._encode(value, 0, value.length());
+
+        return this;
+    }
+
+    public FormEncoder append(CharSequence value, int start, int end) throws IOException {
+        this._encode(value, start, end);
+
+        return this;
+    }
+
+    public FormEncoder append(char c) throws IOException {
+        if (c < 0x80) {
+            this._ascii(c);
+        } else {
+            this._encode(String.valueOf(c), 0, 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * raw - Write bytes that are already form encoded, such as the output of another
+     * encoder, as they are
+     *
+     * @param  bytes   the encoded bytes
+     * @throws IOException
+     */
+    void raw(byte[] bytes) throws IOException {
+        if (bytes.length == 0) {
+            return;
+        }
+        this.first = false;
+        this._bytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * count - The number of bytes written (or counted) so far
+     *
+     * @return  the byte count
+     */
+    long count() {
+        return this.count + this.position;
+    }
+
+    /**
+     * flush - Write out whatever is left in the buffer
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        if (this.out != null && this.position > 0) {
+            this.out.write(this.buffer, 0, this.position);
+            this.count += this.position;
+            this.position = 0;
+        }
+    }
+
+    private void _encode(CharSequence value, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (TextEncoding.FORM[c] == TextEncoding.SAFE) {
+                    i = this._safe(value, i, end) - 1;
+                } else {
+                    this._ascii(c);
+                }
+            } else if (c < 0x800) {
+                this._pct(0xC0 | (c >> 6));
+                this._pct(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                this._pct(0xF0 | (code >> 18));
+                this._pct(0x80 | ((code >> 12) & 0x3F));
+                this._pct(0x80 | ((code >> 6) & 0x3F));
+                this._pct(0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, which the UTF-8 encoder replaces with '?'
+                this._pct('?');
+            } else {
+                this._pct(0xE0 | (c >> 12));
+                this._pct(0x80 | ((c >> 6) & 0x3F));
+                this._pct(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void _ascii(char c) throws IOException {
+        byte kind = TextEncoding.FORM[c];
+        if (kind == TextEncoding.SAFE) {
+            this._byte(c);
+        } else if (kind == TextEncoding.SPACE) {
+            this._byte('+');
+        } else {
+            this._pct(c);
+        }
+    }
+
+    private void _pct(int b) throws IOException {
+        if (this.buffer == null) {
+            this.count += 3;
+            return;
+        }
+        if (this.buffer.length - this.position < 3) {
+            this.flush();
+        }
+        this.buffer[this.position++] = '%';
+        this.buffer[this.position++] = HEX[(b >> 4) & 0xF];
+        this.buffer[this.position++] = HEX[b & 0xF];
+    }
+
+    /**
+     * _safe - Copy the run of characters that need no encoding starting at start
+     *
+     * @return  the end of the run
+     */
+    private int _safe(CharSequence value, int start, int end) throws IOException {
+        int i = start;
+        if (this.buffer == null) {
+            char c;
+            while (i < end && (c = value.charAt(i)) < 0x80 && TextEncoding.FORM[c] == TextEncoding.SAFE) {
+                i++;
+            }
+            this.count += i - start;
+            return i;
+        }
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        while (i < end) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || TextEncoding.FORM[c] != TextEncoding.SAFE) {
+                break;
+            }
+            if (position == buffer.length) {
+                this.position = position;
+                this.flush();
+                position = 0;
+            }
+            buffer[position++] = (byte) c;
+            i++;
+        }
+        this.position = position;
+
+        return i;
+    }
+
+    private void _bytes(byte[] bytes, int start, int end) throws IOException {
+        int length = end - start;
+        if (this.buffer == null) {
+            this.count += length;
+        } else if (length <= this.buffer.length - this.position) {
+            System.arraycopy(bytes, start, this.buffer, this.position, length);
+            this.position += length;
+        } else {
+            this.flush();
+            this.out.write(bytes, start, length);
+            this.count += length;
+        }
+    }
+
+    private void _byte(int b) throws IOException {
+        if (this.buffer == null) {
+            this.count++;
+            return;
+        }
+        if (this.position == this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.position++] = (byte) b;
+    }
+}
@@ -0,0 +1,145 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.appengine.labs.repackaged.org.json.JSONException;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+/**
+ * HeaderCache - The frozen value and JSON of each section of a Sendgrid object's X-SMTPAPI
+ * header ("category", "sub", "section", "unique_args", "filters" and any other top level
+ * key), kept between sends, so that only the sections changed since the last send are
+ * converted and encoded again.
+ *
+ * Sendgrid tells the cache about every change it makes. A section whose JSON the caller
+ * holds as well, such as the object given to setSubstitutions(), can change without the
+ * cache knowing, so it is encoded afresh on every send; once the whole header has been
+ * handed out by getHeaders() or taken in by setHeaders(), every section is.
+ */
+final class HeaderCache {
+
+    private final Map<String, Section> sections = new HashMap<String, Section>();
+    private final Set<String> shared = new HashSet<String>();
+    private boolean exposed = false;
+
+    /**
+     * changed - Drop a section that was modified in place
+     *
+     * @param  key   the section
+     */
+    void changed(String key) {
+        this.sections.remove(key);
+    }
+
+    /**
+     * replaced - Drop a section that now holds a new value
+     *
+     * @param  key      the section
+     * @param  shared   whether the caller holds the new value too
+     */
+    void replaced(String key, boolean shared) {
+        this.sections.remove(key);
+        if (shared) {
+            this.shared.add(key);
+        } else {
+            this.shared.remove(key);
+        }
+    }
+
+    /**
+     * exposed - Stop caching, because the caller holds the header itself
+     */
+    void exposed() {
+        this.exposed = true;
+        this.sections.clear();
+    }
+
+    /**
+     * apply - Set a message's header values, and their JSON, from a header
+     *
+     * @param  header    the header. Its "to" member, put there through getHeaders() or
+     *                   setHeaders(), is skipped: the recipients are set separately.
+     * @param  message   the message to set them on
+     * @throws JSONException
+     */
+    void apply(JSONObject header, Message.Builder message) throws JSONException {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        Map<String, String> encoded = new HashMap<String, String>();
+        Iterator<?> keys = header.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            if (key.equals("to")) {
+                continue;
+            }
+            Section section = this._section(header, key);
+            values.put(key, section.value);
+            encoded.put(key, section.json);
+        }
+        message._setEncodedHeaders(values, encoded);
+    }
+
+    /**
+     * write - Write a header's members, each followed by a comma
+     *
+     * @param  out      where to write
+     * @param  header   the header. Its "to" member is skipped, as the caller writes the
+     *                  recipients itself.
+     * @throws JSONException
+     */
+    void write(StringBuilder out, JSONObject header) throws JSONException {
+        Iterator<?> keys = header.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            if (key.equals("to")) {
+                continue;
+            }
+            try {
+                SmtpApiWriter.writeString(out, key);
+            } catch (IOException e) {
+                // Never thrown by a StringBuilder
+                throw new IllegalStateException(e);
+            }
+            out.append(':').append(this._section(header, key).json).append(',');
+        }
+    }
+
+    private Section _section(JSONObject header, String key) throws JSONException {
+        Section section = this.sections.get(key);
+        if (section != null) {
+            return section;
+        }
+        Object value = JsonValues.freeze(JsonValues.fromJson(header.get(key)));
+        StringBuilder json = new StringBuilder();
+        try {
+            SmtpApiWriter.writeValue(json, value);
+        } catch (IOException e) {
+            // Never thrown by a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        section = new Section(value, json.toString());
+        if (this.exposed == false && this.shared.contains(key) == false) {
+            this.sections.put(key, section);
+        }
+
+        return section;
+    }
+
+    /**
+     * One section: its frozen value and that value's JSON.
+     */
+    private static class Section {
+        final Object value;
+        final String json;
+
+        Section(Object value, String json) {
+            this.value = value;
+            this.json = json;
+        }
+    }
+}
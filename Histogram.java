@@ -0,0 +1,121 @@
+package googleSendgridJava;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram - A lock-free histogram of non-negative long values with about 1.5% precision.
+ *
+ * Values below 128 are counted exactly. Above that, each power of two is split into 64
+ * equal buckets, so a percentile is reported to within 1/64 of its value whatever its
+ * magnitude, from nanoseconds to hours, in a fixed 30KB of counters. Recording is a single
+ * atomic increment, so many threads can record at once.
+ */
+public class Histogram {
+
+    private static final int EXACT = 128,
+                             SUB_BUCKETS = 64,
+                             SUB_BITS = 6;
+    private static final int BUCKETS = EXACT + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(),
+                             sum = new AtomicLong(),
+                             max = new AtomicLong();
+
+    /**
+     * record - Count a value
+     *
+     * @param  value   the value; negative values count as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(_index(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long previous;
+        while (value > (previous = this.max.get()) && this.max.compareAndSet(previous, value) == false) {
+            // another thread raised the maximum; try again
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * getMean - Get the mean of the recorded values
+     *
+     * @return  the mean, or 0 when nothing was recorded
+     */
+    public double getMean() {
+        long count = this.count.get();
+
+        return (count == 0) ? 0 : (double) this.sum.get() / count;
+    }
+
+    /**
+     * getPercentile - Get the value below which the given share of the values fall
+     *
+     * @param  percentile   between 0 and 100
+     * @return              the upper bound of the bucket holding that value, or 0 when
+     *                      nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(_upperBound(i), this.max.get());
+            }
+        }
+
+        return this.max.get();
+    }
+
+    public String toString() {
+        return "count=" + this.getCount() + " mean=" + Math.round(this.getMean())
+            + " p50=" + this.getPercentile(50) + " p99=" + this.getPercentile(99)
+            + " max=" + this.getMax();
+    }
+
+    /**
+     * _index - The bucket a value is counted in
+     */
+    static int _index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        return EXACT + (exponent - 7) * SUB_BUCKETS + (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+    }
+
+    /**
+     * _upperBound - The largest value counted in a bucket
+     */
+    static long _upperBound(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int exponent = (index - EXACT) / SUB_BUCKETS + 7;
+        long subBucket = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,433 @@
+package googleSendgridJava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HttpUrlConnectionTransport - A Transport built on HttpURLConnection, which is also what
+ * URLFetch provides on App Engine.
+ *
+ * Every response, including error responses, is read to the end and closed, and connections
+ * are only disconnect()ed when an exchange fails part way. That hands the socket back to the
+ * JDK keep-alive cache, so subsequent requests to the same host skip the TCP and TLS
+ * handshake. The keep-alive cache holds at most "http.maxConnections" idle connections per
+ * host (see setMaxIdleConnections) and evicts a connection once it has been idle for the
+ * server's keep-alive timeout.
+ *
+ * The number of requests in flight at once is bounded by a semaphore, which also bounds the
+ * number of sockets the transport opens.
+ *
+ * Responses compressed with gzip or deflate (zlib wrapped or raw) are decoded transparently,
+ * and a response that decodes to more than MAX_RESPONSE bytes fails. Request bodies are
+ * only compressed when asked to with setRequestCompression(), since not every endpoint
+ * accepts a compressed request. Multipart bodies are never compressed: they carry the
+ * attachments, which are streamed from their source rather than held in memory.
+ */
+public class HttpUrlConnectionTransport implements Transport {
+
+    private static HttpUrlConnectionTransport defaultTransport;
+
+    /**
+     * The largest response buffer a thread keeps between requests; longer responses get a
+     * buffer of their own.
+     */
+    private static final int MAX_READ_BUFFER = 64 * 1024;
+
+    /**
+     * The longest response read, once decoded. API responses are a few hundred bytes; a
+     * longer one is not from the API, or is a compression bomb.
+     */
+    static final int MAX_RESPONSE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[4096];
+        }
+    };
+
+    /**
+     * A Content-Encoding for request bodies.
+     */
+    public static enum Compression {
+        NONE(null), GZIP("gzip"), DEFLATE("deflate");
+
+        private final String token;
+
+        private Compression(String token) {
+            this.token = token;
+        }
+
+        /**
+         * getToken - Get the Content-Encoding header value
+         *
+         * @return  the value, or null for NONE
+         */
+        public String getToken() {
+            return this.token;
+        }
+    }
+
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private int connectTimeout = 10000,
+                readTimeout    = 30000;
+    private long acquireTimeout = 0;
+    private Compression requestCompression = Compression.NONE;
+    private long compressionThreshold = 0;
+    private boolean acceptCompression = true;
+
+    /**
+     * getDefault - Return the transport shared by every Sendgrid object that has not been
+     * given one of its own
+     *
+     * @return  the shared transport
+     */
+    public static synchronized HttpUrlConnectionTransport getDefault() {
+        if (defaultTransport == null) {
+            defaultTransport = new HttpUrlConnectionTransport(64);
+        }
+
+        return defaultTransport;
+    }
+
+    /**
+     * setMaxIdleConnections - Set the number of idle keep-alive connections the JDK keeps
+     * per host. This is a process wide setting read by HttpURLConnection when it is first
+     * used, so it has to be called before the first request is sent. An explicit
+     * -Dhttp.maxConnections on the command line always wins.
+     *
+     * @param  max   idle connections to keep per host
+     */
+    public static void setMaxIdleConnections(int max) {
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(max));
+        }
+    }
+
+    /**
+     * @param  maxInFlight   the most requests this transport will have outstanding at once
+     */
+    public HttpUrlConnectionTransport(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight, true);
+    }
+
+    /**
+     * getMaxInFlight - Get the most requests this transport will have outstanding at once
+     *
+     * @return  the in-flight limit
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * setConnectTimeout - Set the connect timeout
+     *
+     * @param  millis   timeout in milliseconds, 0 for none
+     * @return          the transport.
+     */
+    public HttpUrlConnectionTransport setConnectTimeout(int millis) {
+        this.connectTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setReadTimeout - Set the read timeout
+     *
+     * @param  millis   timeout in milliseconds, 0 for none
+     * @return          the transport.
+     */
+    public HttpUrlConnectionTransport setReadTimeout(int millis) {
+        this.readTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setAcquireTimeout - Set how long a caller waits for a free in-flight slot before the
+     * request fails. By default callers wait as long as it takes.
+     *
+     * @param  millis   timeout in milliseconds, 0 to wait forever
+     * @return          the transport.
+     */
+    public HttpUrlConnectionTransport setAcquireTimeout(long millis) {
+        this.acquireTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setRequestCompression - Compress request bodies of at least minBytes, for endpoints
+     * that accept a compressed request. Smaller bodies, bodies that do not get any smaller,
+     * and multipart bodies with attachments are sent as they are. Off by default.
+     *
+     * @param  compression   the Content-Encoding to use, NONE to turn compression off
+     * @param  minBytes      the smallest body worth compressing
+     * @return               the transport.
+     */
+    public HttpUrlConnectionTransport setRequestCompression(Compression compression, long minBytes) {
+        this.requestCompression = compression;
+        this.compressionThreshold = minBytes;
+
+        return this;
+    }
+
+    /**
+     * setAcceptCompression - Ask for gzip or deflate compressed responses, which are decoded
+     * transparently. On by default.
+     *
+     * @param  accept   whether to send Accept-Encoding
+     * @return          the transport.
+     */
+    public HttpUrlConnectionTransport setAcceptCompression(boolean accept) {
+        this.acceptCompression = accept;
+
+        return this;
+    }
+
+    public Response post(String url, String contentType, Body body) throws IOException {
+        return this.post(url, contentType, body, SendMetrics.NONE);
+    }
+
+    public Response post(String url, String contentType, Body body, SendMetrics metrics) throws IOException {
+        long waiting = System.nanoTime();
+        this._acquire();
+        metrics.recordPhase(SendMetrics.Phase.ACQUIRE, System.nanoTime() - waiting);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(this.connectTimeout);
+            connection.setReadTimeout(this.readTimeout);
+            connection.setRequestProperty("Content-Type", contentType);
+            if (this.acceptCompression) {
+                connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            }
+            long length = body.contentLength();
+            if (this.requestCompression != Compression.NONE && length >= this.compressionThreshold
+                && contentType.startsWith("multipart/") == false) {
+                long start = System.nanoTime();
+                // Written once, so the smaller of the two can be sent without encoding it again
+                byte[] raw = _buffer(body, length);
+                byte[] compressed = this._compress(raw);
+                metrics.recordPhase(SendMetrics.Phase.COMPRESS, System.nanoTime() - start);
+                if (compressed.length < raw.length) {
+                    connection.setRequestProperty("Content-Encoding", this.requestCompression.getToken());
+                    body = new Bytes(compressed);
+                } else {
+                    body = new Bytes(raw);
+                }
+                length = body.contentLength();
+            }
+            // Stream straight to the socket instead of letting the connection buffer the
+            // whole body to compute Content-Length itself
+            if (length >= 0) {
+                connection.setFixedLengthStreamingMode(length);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+
+            try {
+                long start = System.nanoTime();
+                connection.connect();
+                long connected = System.nanoTime();
+                metrics.recordPhase(SendMetrics.Phase.CONNECT, connected - start);
+
+                OutputStream out = connection.getOutputStream();
+                try {
+                    body.writeTo(out);
+                    out.flush();
+                } catch (IOException | RuntimeException e) {
+                    // Closing a short body would either fail in place of e (fixed length) or
+                    // end it as if it were complete (chunked): abort the exchange instead
+                    _abort(connection, e);
+                    throw e;
+                }
+                out.close();
+                long written = System.nanoTime();
+                metrics.recordPhase(SendMetrics.Phase.WRITE, written - connected);
+
+                // The status comes first: getInputStream() throws for an error status, and the
+                // error body has to be read from getErrorStream() instead
+                int status = connection.getResponseCode();
+                long answered = System.nanoTime();
+                metrics.recordPhase(SendMetrics.Phase.FIRST_BYTE, answered - written);
+
+                InputStream in = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+                String response = readResponse(in, connection.getContentEncoding());
+                metrics.recordPhase(SendMetrics.Phase.READ, System.nanoTime() - answered);
+
+                return new Response(status, response, connection.getHeaderFields());
+            } catch (IOException e) {
+                // The exchange broke off part way, so the socket may still hold unread bytes:
+                // close it rather than hand it back to the keep-alive cache
+                connection.disconnect();
+                throw e;
+            }
+        } finally {
+            this.inFlight.release();
+        }
+    }
+
+    /**
+     * _abort - Drop a connection whose request body failed part way, keeping the body's
+     * exception as the one reported
+     */
+    private static void _abort(HttpURLConnection connection, Exception cause) {
+        try {
+            connection.disconnect();
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void _acquire() throws IOException {
+        try {
+            if (this.acquireTimeout <= 0) {
+                this.inFlight.acquire();
+            } else if (!this.inFlight.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS)) {
+                throw new Transport.LocalException("Timed out waiting for one of " + this.maxInFlight + " connections");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection");
+        }
+    }
+
+    /**
+     * _buffer - Write a request body into memory
+     */
+    private static byte[] _buffer(Body body, long length) throws IOException {
+        int size = (length > 0 && length < Integer.MAX_VALUE) ? (int) length : 8192;
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(size);
+        body.writeTo(raw);
+
+        return raw.toByteArray();
+    }
+
+    /**
+     * _compress - Compress a request body into memory, so it can still be sent with a
+     * Content-Length (URLFetch does not support chunked requests)
+     */
+    private byte[] _compress(byte[] raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        DeflaterOutputStream out = (this.requestCompression == Compression.GZIP)
+            ? new GZIPOutputStream(compressed, 8192)
+            : new DeflaterOutputStream(compressed);
+        out.write(raw);
+        out.close();
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * _decode - Wrap a response stream to undo its Content-Encoding
+     */
+    private static InputStream _decode(InputStream in, String contentEncoding) throws IOException {
+        if (in == null || contentEncoding == null) {
+            return in;
+        }
+        String encoding = contentEncoding.trim();
+        if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(in);
+        }
+        if (encoding.equalsIgnoreCase("deflate")) {
+            return _inflate(in);
+        }
+
+        return in;
+    }
+
+    /**
+     * _inflate - Undo "deflate", which should be zlib wrapped but which some servers send as
+     * raw deflate data: tell the two apart by the zlib header
+     */
+    private static InputStream _inflate(InputStream in) throws IOException {
+        PushbackInputStream header = new PushbackInputStream(in, 2);
+        int first = header.read();
+        if (first == -1) {
+            return header;
+        }
+        int second = header.read();
+        if (second != -1) {
+            header.unread(second);
+        }
+        header.unread(first);
+        // Compression method 8, and the two bytes taken together a multiple of 31
+        boolean zlib = second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+
+        return new InflaterInputStream(header, new Inflater(zlib == false)) {
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not ended by close(), since the stream was given its own Inflater
+                    this.inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * readResponse - Read a response stream to the end, undoing its Content-Encoding, and
+     * close it, so the underlying connection can go back to the keep-alive cache. The bytes
+     * are collected in a buffer kept by the calling thread.
+     *
+     * @param  in                the response body, or null when there is none
+     * @param  contentEncoding   the Content-Encoding header, or null
+     * @return                   the decoded body
+     * @throws IOException       when the body cannot be read or decoded, or decodes to more
+     *                           than MAX_RESPONSE bytes
+     */
+    static String readResponse(InputStream in, String contentEncoding) throws IOException {
+        if (in == null) {
+            // No body, e.g. an error status with Content-Length: 0
+            return "";
+        }
+        InputStream decoded = in;
+        try {
+            decoded = _decode(in, contentEncoding);
+            byte[] buffer = readBuffer.get();
+            int length = 0;
+            int read;
+            while ((read = decoded.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    if (length > MAX_RESPONSE) {
+                        throw new IOException("Response longer than " + MAX_RESPONSE + " bytes");
+                    }
+                    // One byte over, to tell a response of exactly MAX_RESPONSE from a longer one
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_RESPONSE + 1));
+                    if (buffer.length <= MAX_READ_BUFFER) {
+                        readBuffer.set(buffer);
+                    }
+                }
+            }
+
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        } finally {
+            // Closes the response stream too, and frees an Inflater
+            decoded.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package googleSendgridJava;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InMemorySendMetrics - A SendMetrics that keeps a Histogram per phase and a few counters in
+ * memory, for an application to read or log.
+ *
+ * Phase timings are kept in nanoseconds. API errors are counted per error string, up to
+ * MAX_ERROR_KEYS distinct strings; the rest are counted under "other".
+ */
+public class InMemorySendMetrics implements SendMetrics {
+
+    static final int MAX_ERROR_KEYS = 100;
+
+    private final Map<Phase, Histogram> phases = new EnumMap<Phase, Histogram>(Phase.class);
+    private final Histogram recipients = new Histogram();
+    private final AtomicLong successes = new AtomicLong(),
+                             apiErrors = new AtomicLong(),
+                             failures = new AtomicLong(),
+                             retries = new AtomicLong(),
+                             bytesSent = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    public InMemorySendMetrics() {
+        for (Phase phase : Phase.values()) {
+            this.phases.put(phase, new Histogram());
+        }
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        this.phases.get(phase).record(nanos);
+    }
+
+    public void recordRequest(long bytes, int recipients) {
+        if (bytes > 0) {
+            this.bytesSent.addAndGet(bytes);
+        }
+        this.recipients.record(recipients);
+    }
+
+    public void recordResult(SendResult result) {
+        if (result.isSuccess()) {
+            this.successes.incrementAndGet();
+        } else if (result.getStatus() == 0) {
+            this.failures.incrementAndGet();
+        } else {
+            this.apiErrors.incrementAndGet();
+            for (String error : result.getErrors()) {
+                this._errorCounter(error).incrementAndGet();
+            }
+        }
+    }
+
+    public void recordRetry(SendResult result) {
+        this.retries.incrementAndGet();
+    }
+
+    /**
+     * getPhase - Get the timings of a phase
+     *
+     * @param  phase   the phase
+     * @return         the histogram of its durations in nanoseconds
+     */
+    public Histogram getPhase(Phase phase) {
+        return this.phases.get(phase);
+    }
+
+    /**
+     * getRecipientsPerRequest - Get the distribution of recipients per request
+     *
+     * @return  the histogram
+     */
+    public Histogram getRecipientsPerRequest() {
+        return this.recipients;
+    }
+
+    public long getSuccesses() {
+        return this.successes.get();
+    }
+
+    /**
+     * getApiErrors - Get the number of attempts the API answered with an error
+     *
+     * @return  the count
+     */
+    public long getApiErrors() {
+        return this.apiErrors.get();
+    }
+
+    /**
+     * getFailures - Get the number of attempts that got no answer from the API
+     *
+     * @return  the count
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    public long getBytesSent() {
+        return this.bytesSent.get();
+    }
+
+    /**
+     * getErrorCounts - Get how often the API returned each error string
+     *
+     * @return  a sorted snapshot of the counts
+     */
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> error : this.errors.entrySet()) {
+            counts.put(error.getKey(), error.getValue().get());
+        }
+
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public String toString() {
+        StringBuilder string = new StringBuilder();
+        string.append("successes=").append(this.getSuccesses())
+              .append(" apiErrors=").append(this.getApiErrors())
+              .append(" failures=").append(this.getFailures())
+              .append(" retries=").append(this.getRetries())
+              .append(" bytesSent=").append(this.getBytesSent())
+              .append("\nrecipients/request: ").append(this.recipients);
+        for (Phase phase : Phase.values()) {
+            string.append('\n').append(phase).append(" (ns): ").append(this.phases.get(phase));
+        }
+        for (Map.Entry<String, Long> error : this.getErrorCounts().entrySet()) {
+            string.append("\nerror \"").append(error.getKey()).append("\": ").append(error.getValue());
+        }
+
+        return string.toString();
+    }
+
+    private AtomicLong _errorCounter(String error) {
+        AtomicLong counter = this.errors.get(error);
+        if (counter != null) {
+            return counter;
+        }
+        if (this.errors.size() >= MAX_ERROR_KEYS) {
+            error = "other";
+        }
+        counter = new AtomicLong();
+        AtomicLong existing = this.errors.putIfAbsent(error, counter);
+
+        return (existing == null) ? counter : existing;
+    }
+}
@@ -0,0 +1,87 @@
+package googleSendgridJava;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.labs.repackaged.org.json.JSONArray;
+import com.google.appengine.labs.repackaged.org.json.JSONException;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+/**
+ * JsonValues - Converts JSONObject/JSONArray trees into plain Java values (Map, List,
+ * String, Number, Boolean and null), which is how Message holds its headers.
+ */
+final class JsonValues {
+
+    private JsonValues() {
+    }
+
+    /**
+     * fromJson - Deep copy a JSON value into plain Java values
+     *
+     * @param  json   a JSONObject, JSONArray or scalar
+     * @return        the equivalent Map, List or scalar
+     * @throws JSONException
+     */
+    static Object fromJson(Object json) throws JSONException {
+        if (json instanceof JSONObject) {
+            JSONObject object = (JSONObject) json;
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                map.put(key, fromJson(object.get(key)));
+            }
+            return map;
+        }
+        if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            List<Object> list = new ArrayList<Object>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(fromJson(array.get(i)));
+            }
+            return list;
+        }
+        if (json == JSONObject.NULL) {
+            return null;
+        }
+
+        return json;
+    }
+
+    /**
+     * freeze - Deep copy plain Java values into unmodifiable collections
+     *
+     * @param  value   a Map, List or scalar
+     * @return         an unmodifiable copy
+     */
+    static Object freeze(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put((String) entry.getKey(), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                list.add(freeze(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object item : (Object[]) value) {
+                list.add(freeze(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,707 @@
+package googleSendgridJava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.labs.repackaged.org.json.JSONException;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+/**
+ * Message - An immutable email message, ready to be sent by a SendgridClient.
+ *
+ * Messages are created with a Message.Builder and can be shared freely between threads.
+ * The X-SMTPAPI header is held as plain, unmodifiable Java values: Maps, Lists, Strings,
+ * Numbers and Booleans. A message built by a Sendgrid object also carries the JSON encoding
+ * of those header values, and of its recipients, which that object keeps between sends; the
+ * encoder copies it rather than serializing the values again.
+ */
+public final class Message {
+
+    static final String LIB_CATEGORY = "google_sendgrid_java_lib";
+
+    private final String from,
+                         fromName,
+                         replyTo,
+                         subject,
+                         text,
+                         html;
+    private final boolean useHeaders;
+    private final RecipientList recipients;
+    private final List<String> bccs;
+    private final Map<String, Object> headers;
+    // The JSON of header values that are already encoded, by key, and of the "to" list
+    private final Map<String, String> encodedHeaders;
+    private final List<Attachment> attachments;
+    private final Template template;
+    private volatile long contentHash = 0;
+
+    @SuppressWarnings("unchecked")
+    private Message(Builder builder) {
+        this.from = builder.from;
+        this.fromName = builder.fromName;
+        this.replyTo = builder.replyTo;
+        this.subject = builder.subject;
+        this.text = builder.text;
+        this.html = builder.html;
+        this.useHeaders = builder.useHeaders;
+        this.recipients = builder.recipients.build();
+        this.bccs = Collections.unmodifiableList(new ArrayList<String>(builder.bccs));
+
+        Map<String, Object> headers = new LinkedHashMap<String, Object>(builder.headers);
+        Map<String, String> encoded = new HashMap<String, String>(builder.encoded);
+        // The recipients are written into the header when the message is encoded
+        headers.remove("to");
+        String lastBcc = (this.bccs.size() > 0) ? this.bccs.get(this.bccs.size() - 1) : null;
+        if (this.useHeaders && lastBcc != null && _hasBccFilter(headers, lastBcc) == false) {
+            Map<String, Object> bcc = new LinkedHashMap<String, Object>();
+            bcc.put("enable", "1");
+            bcc.put("email", lastBcc);
+            Map<String, Object> filter = new LinkedHashMap<String, Object>();
+            filter.put("settings", bcc);
+            Map<String, Object> filters = (headers.get("filters") instanceof Map)
+                ? new LinkedHashMap<String, Object>((Map<String, Object>) headers.get("filters"))
+                : new LinkedHashMap<String, Object>();
+            filters.put("bcc", filter);
+            headers.put("filters", filters);
+            encoded.remove("filters");
+        }
+        // Encoded values were frozen when they were encoded
+        Map<String, Object> frozen = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : headers.entrySet()) {
+            Object value = entry.getValue();
+            frozen.put(entry.getKey(), encoded.containsKey(entry.getKey()) ? value : JsonValues.freeze(value));
+        }
+        this.headers = Collections.unmodifiableMap(frozen);
+        this.encodedHeaders = encoded;
+        this.attachments = Collections.unmodifiableList(new ArrayList<Attachment>(builder.attachments));
+        this.template = null;
+    }
+
+    /**
+     * A message instantiated from a template: the template's message with its own
+     * recipients and header values, which are already frozen
+     */
+    Message(Template template, Message base, RecipientList recipients, Map<String, Object> headers) {
+        this.from = base.from;
+        this.fromName = base.fromName;
+        this.replyTo = base.replyTo;
+        this.subject = base.subject;
+        this.text = base.text;
+        this.html = base.html;
+        this.useHeaders = base.useHeaders;
+        this.recipients = recipients;
+        this.bccs = base.bccs;
+        this.headers = headers;
+        this.encodedHeaders = Collections.emptyMap();
+        this.attachments = base.attachments;
+        this.template = template;
+    }
+
+    /**
+     * _hasBccFilter - Whether the "filters" header already enables the bcc filter for an
+     * address, as Sendgrid.setBcc() and toBuilder() leave it, so its encoded JSON can be kept
+     */
+    private static boolean _hasBccFilter(Map<String, Object> headers, String email) {
+        Object filters = headers.get("filters");
+        Object filter = (filters instanceof Map) ? ((Map<?, ?>) filters).get("bcc") : null;
+        Object settings = (filter instanceof Map) ? ((Map<?, ?>) filter).get("settings") : null;
+        if ((settings instanceof Map) == false) {
+            return false;
+        }
+        Map<?, ?> bcc = (Map<?, ?>) settings;
+
+        return bcc.size() == 2 && "1".equals(bcc.get("enable")) && email.equals(bcc.get("email"));
+    }
+
+    /**
+     * builder - Start a new message
+     *
+     * @return  a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * toBuilder - Start a new message initialized with a copy of this one
+     *
+     * @return  a new builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public String getFrom() {
+        return this.from;
+    }
+
+    public String getFromName() {
+        return this.fromName;
+    }
+
+    public String getReplyTo() {
+        return this.replyTo;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    public String getHtml() {
+        return this.html;
+    }
+
+    /**
+     * isUseHeaders - Whether the recipients are sent in the X-SMTPAPI header
+     *
+     * @return  true when the recipients go in the header
+     */
+    public boolean isUseHeaders() {
+        return this.useHeaders;
+    }
+
+    /**
+     * getRecipients - Get the recipients, addresses and names together
+     *
+     * @return  the recipients
+     */
+    public RecipientList getRecipients() {
+        return this.recipients;
+    }
+
+    /**
+     * getTos - Get the recipient email addresses
+     *
+     * @return  an unmodifiable view of the addresses
+     */
+    public List<String> getTos() {
+        return this.recipients.emails();
+    }
+
+    /**
+     * getToNames - Get the recipient names, one per address, "" where there is none
+     *
+     * @return  an unmodifiable view of the names
+     */
+    public List<String> getToNames() {
+        return this.recipients.names();
+    }
+
+    /**
+     * getBccs - Get the Blind Carbon Copy recipients
+     *
+     * @return  an unmodifiable list of addresses
+     */
+    public List<String> getBccs() {
+        return this.bccs;
+    }
+
+    /**
+     * getAttachments - Get the attached files
+     *
+     * @return  an unmodifiable list of attachments
+     */
+    public List<Attachment> getAttachments() {
+        return this.attachments;
+    }
+
+    /**
+     * isRepeatable - Whether the message can be sent more than once
+     *
+     * @return  false when an attachment is a stream
+     */
+    public boolean isRepeatable() {
+        for (Attachment attachment : this.attachments) {
+            if (attachment.isRepeatable() == false) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * getTemplate - Get the template this message was instantiated from
+     *
+     * @return  the template, or null
+     */
+    public Template getTemplate() {
+        return this.template;
+    }
+
+    /**
+     * getContentHash - Get a 64 bit hash of everything the message sends, computed once.
+     * Equal messages have equal hashes, so the hash serves as an idempotency key; see
+     * DuplicateFilter. A message with a file attachment is hashed again on every call, as
+     * the file may have changed since.
+     *
+     * @return  the hash
+     */
+    public long getContentHash() {
+        // Threads that race here compute the same value, like String.hashCode()
+        long hash = this.contentHash;
+        if (hash == 0) {
+            hash = MessageEncoder.contentHash(this);
+            if (this._hasFile() == false) {
+                this.contentHash = hash;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * _hasFile - Whether an attachment is read from a file
+     */
+    private boolean _hasFile() {
+        for (Attachment attachment : this.attachments) {
+            if (attachment.getPath() != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * getHeaders - Get the X-SMTPAPI header, without the "to" list
+     *
+     * @return  an unmodifiable map of header values
+     */
+    public Map<String, Object> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * encodedHeaders - The JSON of the header values that are already encoded, by key, and
+     * of the recipients under "to"
+     */
+    Map<String, String> encodedHeaders() {
+        return this.encodedHeaders;
+    }
+
+    /**
+     * Builds Message objects. A builder is not thread-safe, but it may be used to build
+     * any number of messages; each build() takes a snapshot.
+     */
+    public static final class Builder {
+        private String from,
+                       fromName,
+                       replyTo,
+                       subject,
+                       text,
+                       html;
+        private boolean useHeaders = true;
+        private RecipientList.Builder recipients = RecipientList.builder();
+        private List<String> bccs = new ArrayList<String>();
+        private Map<String, Object> headers = new LinkedHashMap<String, Object>();
+        // Dropped for a key whenever its header value, or the recipients for "to", change
+        private Map<String, String> encoded = new HashMap<String, String>();
+        private List<Attachment> attachments = new ArrayList<Attachment>();
+
+        public Builder() {
+            this.addCategory(LIB_CATEGORY);
+        }
+
+        private Builder(Message message) {
+            this.from = message.from;
+            this.fromName = message.fromName;
+            this.replyTo = message.replyTo;
+            this.subject = message.subject;
+            this.text = message.text;
+            this.html = message.html;
+            this.useHeaders = message.useHeaders;
+            this.recipients = message.recipients.toBuilder();
+            this.bccs.addAll(message.bccs);
+            this.headers.putAll(message.headers);
+            this.encoded.putAll(message.encodedHeaders);
+            this.attachments.addAll(message.attachments);
+        }
+
+        /**
+         * setTo - Initialize a single email for the recipient 'to' field
+         * Destroy previous recipient 'to' data.
+         *
+         * @param    email   Recipient email address
+         * @return           The builder.
+         */
+        public Builder setTo(String email) {
+            this.recipients.clear();
+
+            return this.addTo(email);
+        }
+
+        /**
+         * addTo - Append an email address to the existing list of addresses
+         *
+         * @param    email   Recipient email address
+         * @param    name    Recipient name, or ""
+         * @return           The builder.
+         * @throws IllegalArgumentException   when the address is not well formed
+         */
+        public Builder addTo(String email, String name) {
+            this.recipients.add(email, name);
+            this.encoded.remove("to");
+
+            return this;
+        }
+
+        /**
+         * addTo - Append an email address to the existing list of addresses
+         *
+         * @param    email   Recipient email address
+         * @return           The builder.
+         */
+        public Builder addTo(String email) {
+            return this.addTo(email, "");
+        }
+
+        /**
+         * clearTos - Remove every recipient
+         *
+         * @return   The builder.
+         */
+        public Builder clearTos() {
+            this.recipients.clear();
+            this.encoded.remove("to");
+
+            return this;
+        }
+
+        /**
+         * setRecipients - Replace every recipient with a list, which is shared, not copied
+         *
+         * @param    recipients   the recipients
+         * @return                The builder.
+         */
+        public Builder setRecipients(RecipientList recipients) {
+            this.recipients = recipients.toBuilder();
+            this.encoded.remove("to");
+
+            return this;
+        }
+
+        /**
+         * addRecipients - Append every recipient of a list
+         *
+         * @param    recipients   the recipients
+         * @return                The builder.
+         */
+        public Builder addRecipients(RecipientList recipients) {
+            this.recipients.addAll(recipients);
+            this.encoded.remove("to");
+
+            return this;
+        }
+
+        public Builder setFrom(String email) {
+            this.from = EmailAddress.require(email);
+
+            return this;
+        }
+
+        public Builder setFromName(String name) {
+            this.fromName = name;
+
+            return this;
+        }
+
+        public Builder setReplyTo(String email) {
+            this.replyTo = EmailAddress.require(email);
+
+            return this;
+        }
+
+        /**
+         * setBcc - Set the Blind Carbon Copy recipient
+         * destroy previous recipient Blind Carbon Copy data
+         *
+         * @param  email   an email address
+         * @return         The builder.
+         * @throws IllegalArgumentException   when the address is not well formed
+         */
+        public Builder setBcc(String email) {
+            email = EmailAddress.require(email);
+            this.bccs.clear();
+            this.bccs.add(email);
+
+            return this;
+        }
+
+        public Builder setSubject(String subject) {
+            this.subject = subject;
+
+            return this;
+        }
+
+        public Builder setText(String text) {
+            this.text = text;
+
+            return this;
+        }
+
+        public Builder setHtml(String html) {
+            this.html = html;
+
+            return this;
+        }
+
+        /**
+         * setUseHeaders - Choose whether the recipients are sent in the X-SMTPAPI header
+         * (the default) or as plain to[] parameters
+         *
+         * @param  useHeaders   true to send the recipients in the header
+         * @return              The builder.
+         */
+        public Builder setUseHeaders(boolean useHeaders) {
+            this.useHeaders = useHeaders;
+
+            return this;
+        }
+
+        /**
+         * setCategories - Set the list of category headers
+         * destroys previous category header data
+         *
+         * @param  categories   the list of category values
+         * @return              The builder.
+         */
+        public Builder setCategories(String... categories) {
+            this.headers.put("category", new ArrayList<String>(Arrays.asList(categories)));
+            this.encoded.remove("category");
+
+            return this.addCategory(LIB_CATEGORY);
+        }
+
+        /**
+         * setCategory - Clears the category list and adds the given category
+         *
+         * @param  category   the new category
+         * @return            The builder.
+         */
+        public Builder setCategory(String category) {
+            return this.setCategories(category);
+        }
+
+        /**
+         * addCategory - Append a category to the list of categories
+         *
+         * @param  category   the new category to append
+         * @return            The builder.
+         */
+        public Builder addCategory(String category) {
+            this._list("category").add(category);
+
+            return this;
+        }
+
+        /**
+         * addSubstitution - Substitute a value for list of values, where each value corresponds
+         * to the list emails in a one to one relationship. (IE, value[0] = email[0],
+         * value[1] = email[1])
+         *
+         * @param  from_value   the value to be replaced
+         * @param  to_values    an array of values to replace the from_value
+         * @return              The builder.
+         */
+        public Builder addSubstitution(String from_value, String... to_values) {
+            this._map(this.headers, "sub").put(from_value, new ArrayList<String>(Arrays.asList(to_values)));
+
+            return this;
+        }
+
+        /**
+         * addSection - append a section value to the list of section values
+         *
+         * @param  from_value  the value to be replaced
+         * @param  to_value    the value to replace
+         * @return             The builder.
+         */
+        public Builder addSection(String from_value, String to_value) {
+            this._map(this.headers, "section").put(from_value, to_value);
+
+            return this;
+        }
+
+        /**
+         * addUniqueArgument - Set a key/value pair of unique arguments, to be used for tracking purposes
+         *
+         * @param  key     the key
+         * @param  value   the value
+         * @return         The builder.
+         */
+        public Builder addUniqueArgument(String key, String value) {
+            this._map(this.headers, "unique_args").put(key, value);
+
+            return this;
+        }
+
+        /**
+         * addFilterSetting - Append a filter setting to the list of filter settings
+         *
+         * @param  filter_name       filter name
+         * @param  parameter_name    parameter name
+         * @param  parameter_value   setting value
+         * @return                   The builder.
+         */
+        public Builder addFilterSetting(String filter_name, String parameter_name, String parameter_value) {
+            Map<String, Object> filter = this._map(this._map(this.headers, "filters"), filter_name);
+            this._map(filter, "settings").put(parameter_name, parameter_value);
+
+            return this;
+        }
+
+        /**
+         * setHeader - Set a top level X-SMTPAPI header value
+         *
+         * @param  key     the header key
+         * @param  value   a Map, List, String, Number or Boolean
+         * @return         The builder.
+         */
+        public Builder setHeader(String key, Object value) {
+            this.headers.put(key, JsonValues.freeze(value));
+            this.encoded.remove(key);
+
+            return this;
+        }
+
+        /**
+         * removeHeader - Remove a top level X-SMTPAPI header value
+         *
+         * @param  key   the header key
+         * @return       The builder.
+         */
+        public Builder removeHeader(String key) {
+            this.headers.remove(key);
+            this.encoded.remove(key);
+
+            return this;
+        }
+
+        /**
+         * setHeaders - Sets the list headers
+         * destroys previous header data
+         *
+         * @param  key_value_pairs   the list of header data
+         * @return                   The builder.
+         * @throws JSONException
+         */
+        @SuppressWarnings("unchecked")
+        public Builder setHeaders(JSONObject key_value_pairs) throws JSONException {
+            this.headers = (Map<String, Object>) JsonValues.fromJson(key_value_pairs);
+            this.encoded.keySet().retainAll(Collections.singleton("to"));
+
+            return this;
+        }
+
+        /**
+         * addAttachment - Attach a file. A message with attachments is sent as
+         * multipart/form-data, and its attachments are streamed from their source.
+         *
+         * @param  attachment   the attachment
+         * @return              The builder.
+         */
+        public Builder addAttachment(Attachment attachment) {
+            this.attachments.add(attachment);
+
+            return this;
+        }
+
+        /**
+         * clearAttachments - Remove every attachment
+         *
+         * @return   The builder.
+         */
+        public Builder clearAttachments() {
+            this.attachments.clear();
+
+            return this;
+        }
+
+        /**
+         * build - Take an immutable snapshot of the message
+         *
+         * @return  the message
+         */
+        public Message build() {
+            return new Message(this);
+        }
+
+        /**
+         * _setEncodedHeaders - Replace every header value with values that are frozen, along
+         * with their JSON
+         *
+         * @param  values    the frozen header values
+         * @param  encoded   the JSON of each value, by key
+         * @return           The builder.
+         */
+        Builder _setEncodedHeaders(Map<String, Object> values, Map<String, String> encoded) {
+            String to = this.encoded.get("to");
+            this.headers = new LinkedHashMap<String, Object>(values);
+            this.encoded = new HashMap<String, String>(encoded);
+            if (to != null) {
+                this.encoded.put("to", to);
+            }
+
+            return this;
+        }
+
+        /**
+         * _setEncodedRecipients - Replace every recipient with a list, along with the JSON of
+         * its "to" array, or null when it has not been encoded
+         *
+         * @param  recipients   the recipients
+         * @param  json         the "to" array
+         * @return              The builder.
+         */
+        Builder _setEncodedRecipients(RecipientList recipients, String json) {
+            this.setRecipients(recipients);
+            if (json != null) {
+                this.encoded.put("to", json);
+            }
+
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Object> _list(String key) {
+            Object value = this.headers.get(key);
+            this.encoded.remove(key);
+            if (value instanceof ArrayList) {
+                return (List<Object>) value;
+            }
+            List<Object> list = (value instanceof List)
+                ? new ArrayList<Object>((List<Object>) value)
+                : new ArrayList<Object>();
+            this.headers.put(key, list);
+
+            return list;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> _map(Map<String, Object> parent, String key) {
+            Object value = parent.get(key);
+            if (parent == this.headers) {
+                this.encoded.remove(key);
+            }
+            if (value instanceof LinkedHashMap) {
+                return (Map<String, Object>) value;
+            }
+            Map<String, Object> map = (value instanceof Map)
+                ? new LinkedHashMap<String, Object>((Map<String, Object>) value)
+                : new LinkedHashMap<String, Object>();
+            parent.put(key, map);
+
+            return map;
+        }
+    }
+}
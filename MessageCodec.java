@@ -0,0 +1,259 @@
+package googleSendgridJava;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageCodec - A compact binary form of a Message, used to store messages on disk.
+ *
+ * Strings are written as a length and UTF-8 bytes (a length of -1 for null), so they are not
+ * limited to the 64KB of DataOutput.writeUTF. Header values are written with a one byte tag
+ * for their type. File attachments are stored as their path, and buffer attachments as their
+ * bytes; stream attachments cannot be stored, since they could only be read once.
+ */
+final class MessageCodec {
+
+    private static final byte VERSION = 2;
+
+    private static final byte NULL    = 0,
+                              STRING  = 1,
+                              LONG    = 2,
+                              DOUBLE  = 3,
+                              BOOLEAN = 4,
+                              MAP     = 5,
+                              LIST    = 6;
+
+    private static final byte FILE  = 1,
+                              BYTES = 2;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * write - Write a message
+     *
+     * @param  out       where to write
+     * @param  message   the message
+     * @throws IOException
+     */
+    static void write(DataOutput out, Message message) throws IOException {
+        out.writeByte(VERSION);
+        _writeString(out, message.getFrom());
+        _writeString(out, message.getFromName());
+        _writeString(out, message.getReplyTo());
+        _writeString(out, message.getSubject());
+        _writeString(out, message.getText());
+        _writeString(out, message.getHtml());
+        out.writeBoolean(message.isUseHeaders());
+        RecipientList recipients = message.getRecipients();
+        out.writeInt(recipients.size());
+        for (int i = 0; i < recipients.size(); i++) {
+            // The same length and UTF-8 bytes _writeString() would write
+            _writeBytes(out, recipients.data(), recipients.emailStart(i), recipients.emailEnd(i));
+            _writeBytes(out, recipients.data(), recipients.emailEnd(i), recipients.nameEnd(i));
+        }
+        out.writeInt(message.getBccs().size());
+        for (String bcc : message.getBccs()) {
+            _writeString(out, bcc);
+        }
+        _writeValue(out, message.getHeaders());
+        out.writeInt(message.getAttachments().size());
+        for (Attachment attachment : message.getAttachments()) {
+            _writeString(out, attachment.getName());
+            _writeString(out, attachment.getContentType());
+            if (attachment.getPath() != null) {
+                out.writeByte(FILE);
+                _writeString(out, attachment.getPath().toString());
+            } else if (attachment.getBytes() != null) {
+                ByteBuffer bytes = attachment.getBytes();
+                out.writeByte(BYTES);
+                out.writeInt(bytes.remaining());
+                byte[] chunk = new byte[Math.min(8192, bytes.remaining())];
+                while (bytes.hasRemaining()) {
+                    int length = Math.min(chunk.length, bytes.remaining());
+                    bytes.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            } else {
+                throw new IOException("Attachment " + attachment.getName() + " is a stream and cannot be stored");
+            }
+        }
+    }
+
+    /**
+     * read - Read a message written by write()
+     *
+     * @param  in   where to read from
+     * @return      the message
+     * @throws IOException   when the data is not a message in a known version, or holds a
+     *                       sender or bcc address that is not well formed, or an attachment
+     *                       content type that is not a media type
+     */
+    @SuppressWarnings("unchecked")
+    static Message read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown message format version " + version);
+        }
+        Message.Builder message = Message.builder();
+        try {
+            message.setFrom(_readString(in))
+                .setFromName(_readString(in))
+                .setReplyTo(_readString(in))
+                .setSubject(_readString(in))
+                .setText(_readString(in))
+                .setHtml(_readString(in))
+                .setUseHeaders(in.readBoolean());
+            // The recipients were checked when the message was built, and are kept as stored
+            int tos = in.readInt();
+            RecipientList.Builder recipients = RecipientList.builder();
+            for (int i = 0; i < tos; i++) {
+                recipients._add(_readString(in), _readString(in));
+            }
+            message.setRecipients(recipients.build());
+            int bccs = in.readInt();
+            for (int i = 0; i < bccs; i++) {
+                message.setBcc(_readString(in));
+            }
+        } catch (IllegalArgumentException e) {
+            // An address stored before addresses were checked
+            throw new IOException(e.getMessage());
+        }
+        // The stored headers already hold the library category
+        message.removeHeader("category");
+        Object headers = _readValue(in);
+        if ((headers instanceof Map) == false) {
+            throw new IOException("Message headers are not a map");
+        }
+        for (Map.Entry<String, Object> header : ((Map<String, Object>) headers).entrySet()) {
+            message.setHeader(header.getKey(), header.getValue());
+        }
+        int attachments = (version >= 2) ? in.readInt() : 0;
+        for (int i = 0; i < attachments; i++) {
+            String name = _readString(in);
+            String contentType = _readString(in);
+            byte kind = in.readByte();
+            Attachment attachment;
+            if (kind == FILE) {
+                attachment = Attachment.fromPath(name, Paths.get(_readString(in)));
+            } else if (kind == BYTES) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                attachment = Attachment.fromBytes(name, ByteBuffer.wrap(bytes));
+            } else {
+                throw new IOException("Unknown attachment type " + kind);
+            }
+            try {
+                message.addAttachment(attachment.withContentType(contentType));
+            } catch (IllegalArgumentException e) {
+                // A content type stored before content types were checked
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        return message.build();
+    }
+
+    private static void _writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void _writeBytes(DataOutput out, byte[] bytes, int start, int end) throws IOException {
+        out.writeInt(end - start);
+        out.write(bytes, start, end - start);
+    }
+
+    private static String _readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void _writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                _writeString(out, String.valueOf(entry.getKey()));
+                _writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                _writeValue(out, item);
+            }
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long
+                   || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else {
+            out.writeByte(STRING);
+            _writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object _readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return _readString(in);
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < size; i++) {
+                    String key = _readString(in);
+                    map.put(key, _readValue(in));
+                }
+                return map;
+            }
+            case LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<Object>();
+                for (int i = 0; i < size; i++) {
+                    list.add(_readValue(in));
+                }
+                return list;
+            }
+            default:
+                throw new IOException("Unknown header value type " + tag);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * MessageEncoder - Encodes a Message as a mail.send form request: url-encoded, or
+ * multipart/form-data when the message has attachments.
+ */
+final class MessageEncoder {
+
+    static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private MessageEncoder() {
+    }
+
+    /**
+     * requestUrl - Build the url a message is posted to
+     *
+     * @param  baseUrl   the API endpoint url
+     * @param  message   the message
+     * @return           the url, with the bcc[] parameters appended
+     */
+    static String requestUrl(String baseUrl, Message message) {
+        if (message.getBccs().size() == 0) {
+            return baseUrl;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String bcc : message.getBccs()) {
+            _appendParam(query, "bcc[]", bcc);
+        }
+
+        return baseUrl + ((baseUrl.indexOf('?') < 0) ? "?" : "&") + query;
+    }
+
+    /**
+     * body - Encode a message as an application/x-www-form-urlencoded body, written
+     * straight to the connection, X-SMTPAPI header included
+     *
+     * @param  message    the message
+     * @param  apiUser    the SendGrid username
+     * @param  apiKey     the SendGrid password
+     * @return            the body
+     */
+    static Transport.Body body(Message message, String apiUser, String apiKey) {
+        if (message.getAttachments().size() > 0) {
+            return new MultipartBody(message, apiUser, apiKey);
+        }
+        if (message.getTemplate() != null) {
+            return message.getTemplate().body(message, apiUser, apiKey);
+        }
+        return new FormBody(message, apiUser, apiKey);
+    }
+
+    /**
+     * contentType - The Content-Type header of a body made by body()
+     *
+     * @param  body   the body
+     * @return        the content type
+     */
+    static String contentType(Transport.Body body) {
+        if (body instanceof MultipartBody) {
+            return "multipart/form-data; boundary=" + ((MultipartBody) body).boundary;
+        }
+
+        return CONTENT_TYPE;
+    }
+
+    /**
+     * contentHash - Hash the canonical encoding of a message: its form body without the
+     * credentials, its Bcc recipients and a description of each attachment. Everything is
+     * written in a fixed order, so equal messages always hash the same, and the encoding is
+     * streamed into the hash rather than held in memory.
+     *
+     * Attachments are hashed by their name, type and length, plus their content for a file
+     * or a buffer, so a file changed since an earlier send is not taken for a duplicate. A
+     * stream cannot be read without being used up and is not hashed, which is why a message
+     * with a stream attachment is never checked for duplicates; see Message.isRepeatable().
+     *
+     * @param  message   the message
+     * @return           the 64 bit xxHash of the encoding
+     */
+    static long contentHash(Message message) {
+        XxHash64 hash = new XxHash64();
+        try {
+            // A templated message encodes to the same bytes as the plain message it stands for
+            Transport.Body body = (message.getTemplate() != null)
+                ? message.getTemplate().body(message, "", "")
+                : new FormBody(message, "", "");
+            body.writeTo(hash);
+            FormEncoder form = new FormEncoder(hash, true);
+            for (String bcc : message.getBccs()) {
+                form.param("bcc[]", bcc);
+            }
+            for (Attachment attachment : message.getAttachments()) {
+                String source = (attachment.getPath() != null) ? "file"
+                    : (attachment.getBytes() != null) ? "bytes"
+                    : "stream";
+                form.param("files[" + attachment.getName() + "]",
+                    attachment.getContentType() + ";" + attachment.getLength() + ";" + source);
+                form.flush();
+                if (attachment.getPath() != null) {
+                    _hashFile(hash, attachment);
+                } else if (attachment.getBytes() != null) {
+                    attachment.writeTo(hash);
+                }
+            }
+            form.flush();
+        } catch (IOException e) {
+            // Neither the hash nor a buffer attachment throws
+            throw new IllegalStateException(e);
+        }
+
+        return hash.getValue();
+    }
+
+    /**
+     * _hashFile - Hash the bytes of a file attachment that a send would write. A file that
+     * cannot be read is hashed by its path, as sending it fails anyway and a failure is not
+     * remembered as a duplicate.
+     */
+    private static void _hashFile(XxHash64 hash, Attachment attachment) throws IOException {
+        XxHash64 content = new XxHash64();
+        try {
+            attachment.writeTo(content);
+        } catch (Transport.LocalException e) {
+            content = new XxHash64();
+            content.write(attachment.getPath().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        long value = content.getValue();
+        for (int i = 0; i < 8; i++) {
+            hash.write((int) (value >>> (i * 8)));
+        }
+    }
+
+    /**
+     * writeRecipientParams - Write the to[] and toname[] parameters of a message that does
+     * not use headers, straight from the recipients' UTF-8 bytes
+     *
+     * @param  form         where to write
+     * @param  recipients   the recipients
+     * @throws IOException
+     */
+    static void writeRecipientParams(FormEncoder form, RecipientList recipients) throws IOException {
+        for (int i = 0; i < recipients.size(); i++) {
+            form.param("to[]", recipients.data(), recipients.emailStart(i), recipients.emailEnd(i));
+        }
+        for (int i = 0; i < recipients.size(); i++) {
+            form.param("toname[]", recipients.data(), recipients.emailEnd(i), recipients.nameEnd(i));
+        }
+    }
+
+    /**
+     * A message encoded on demand. Every call to writeTo() encodes the message again, and
+     * contentLength() runs the same encoding once without writing anything.
+     */
+    private static class FormBody implements Transport.Body {
+        private final Message message;
+        private final String apiUser,
+                             apiKey;
+        private long length = -1;
+
+        FormBody(Message message, String apiUser, String apiKey) {
+            this.message = message;
+            this.apiUser = apiUser;
+            this.apiKey = apiKey;
+        }
+
+        public long contentLength() {
+            if (this.length < 0) {
+                FormEncoder counter = new FormEncoder(null);
+                try {
+                    this._encode(counter);
+                } catch (IOException e) {
+                    // Counting never touches a stream
+                    throw new IllegalStateException(e);
+                }
+                this.length = counter.count();
+            }
+
+            return this.length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            FormEncoder encoder = new FormEncoder(out);
+            this._encode(encoder);
+            encoder.flush();
+        }
+
+        private void _encode(FormEncoder form) throws IOException {
+            form.param("api_user", this.apiUser);
+            form.param("api_key", this.apiKey);
+            if (this.message.isUseHeaders()) {
+                form.param("to", this.message.getFrom());
+                form.beginParam("x-smtpapi");
+                SmtpApiWriter.writeHeader(form, this.message.getHeaders(), this.message.encodedHeaders(),
+                    this.message.getRecipients());
+            } else {
+                writeRecipientParams(form, this.message.getRecipients());
+            }
+            form.param("subject", this.message.getSubject());
+            form.param("text", this.message.getText());
+            form.param("html", this.message.getHtml());
+            form.param("from", this.message.getFrom());
+            form.param("fromname", this.message.getFromName());
+            form.param("replyto", this.message.getReplyTo());
+        }
+    }
+
+    /**
+     * A message with attachments, encoded on demand like FormBody. Attachments are copied
+     * from their source while the body is written, and are only counted, not read, by
+     * contentLength().
+     */
+    private static class MultipartBody implements Transport.Body {
+        private final Message message;
+        private final String apiUser,
+                             apiKey;
+        private final String boundary = "----sendgrid" + UUID.randomUUID().toString().replace("-", "");
+        private long length = -2;
+
+        MultipartBody(Message message, String apiUser, String apiKey) {
+            this.message = message;
+            this.apiUser = apiUser;
+            this.apiKey = apiKey;
+        }
+
+        public long contentLength() {
+            if (this.length == -2) {
+                MultipartEncoder counter = new MultipartEncoder(null, this.boundary);
+                try {
+                    this._encode(counter);
+                } catch (IOException e) {
+                    // Counting never touches a stream or a file
+                    throw new IllegalStateException(e);
+                }
+                this.length = counter.count();
+            }
+
+            return this.length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            this._encode(new MultipartEncoder(out, this.boundary));
+        }
+
+        public boolean isRepeatable() {
+            return this.message.isRepeatable();
+        }
+
+        private void _encode(MultipartEncoder form) throws IOException {
+            form.field("api_user", this.apiUser);
+            form.field("api_key", this.apiKey);
+            if (this.message.isUseHeaders()) {
+                form.field("to", this.message.getFrom());
+                form.beginField("x-smtpapi");
+                SmtpApiWriter.writeHeader(form, this.message.getHeaders(), this.message.encodedHeaders(),
+                    this.message.getRecipients());
+            } else {
+                RecipientList recipients = this.message.getRecipients();
+                for (int i = 0; i < recipients.size(); i++) {
+                    form.field("to[]", recipients.data(), recipients.emailStart(i), recipients.emailEnd(i));
+                }
+                for (int i = 0; i < recipients.size(); i++) {
+                    form.field("toname[]", recipients.data(), recipients.emailEnd(i), recipients.nameEnd(i));
+                }
+            }
+            form.field("subject", this.message.getSubject());
+            form.field("text", this.message.getText());
+            form.field("html", this.message.getHtml());
+            form.field("from", this.message.getFrom());
+            form.field("fromname", this.message.getFromName());
+            form.field("replyto", this.message.getReplyTo());
+            for (Attachment attachment : this.message.getAttachments()) {
+                form.file("files[" + attachment.getName() + "]", attachment);
+            }
+            form.finish();
+        }
+    }
+
+    private static void _appendParam(StringBuilder out, String key, String value) {
+        if (value == null) {
+            return;
+        }
+        if (out.length() > 0) {
+            out.append('&');
+        }
+        TextEncoding.urlEncode(out, key);
+        out.append('=');
+        TextEncoding.urlEncode(out, value);
+    }
+}
@@ -0,0 +1,29 @@
+package googleSendgridJava;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MessageSender - Something that sends Messages: a SendgridClient for a single account, or a
+ * ShardedClient spreading sends over several.
+ *
+ * BatchSender and Outbox send through a MessageSender, so they work with either.
+ * Implementations must be thread-safe.
+ */
+public interface MessageSender {
+
+    /**
+     * send - Send a message, blocking until it has been sent or has failed
+     *
+     * @param  message   the message
+     * @return           the outcome
+     */
+    public SendResult send(Message message);
+
+    /**
+     * sendAsync - Send a message without blocking the caller
+     *
+     * @param  message   the message
+     * @return           a future completed with the outcome
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message);
+}
@@ -0,0 +1,291 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MultipartEncoder - Writes multipart/form-data fields and files straight to a stream.
+ *
+ * Field values are written as UTF-8 into a small reusable buffer, with runs of ASCII copied
+ * in bulk, and files are copied from their Attachment source. Like FormEncoder, an encoder
+ * created without a stream only counts the bytes it would have written, so a body can
+ * compute its Content-Length before it is sent, as long as every attachment knows its length.
+ *
+ * As an Appendable, the encoder writes whatever is appended into the field last started
+ * with beginField(), so a value can be serialized straight into it.
+ */
+final class MultipartEncoder implements Appendable {
+
+    private final OutputStream out;
+    private final byte[] boundary;
+    private final byte[] buffer;
+    private int position = 0;
+    private long count = 0;
+    private boolean unknownLength = false,
+                    started = false;
+
+    /**
+     * @param  out        the stream to write to, or null to only count bytes
+     * @param  boundary   the part boundary, without the leading dashes
+     */
+    MultipartEncoder(OutputStream out, String boundary) {
+        this.out = out;
+        this.boundary = boundary.getBytes(StandardCharsets.US_ASCII);
+        this.buffer = (out == null) ? null : new byte[8192];
+    }
+
+    /**
+     * field - Write one field, skipped when the value is null
+     *
+     * @param  name    the field name
+     * @param  value   the field value
+     * @throws IOException
+     */
+    void field(String name, CharSequence value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        this.beginField(name);
+        this.append(value);
+    }
+
+    /**
+     * field - Write one field whose value is UTF-8 bytes, as they are
+     *
+     * @param  name    the field name
+     * @param  utf8    the bytes holding the value
+     * @param  start   the first byte of the value
+     * @param  end     the end of the value, exclusive
+     * @throws IOException
+     */
+    void field(String name, byte[] utf8, int start, int end) throws IOException {
+        this.beginField(name);
+        this._bytes(utf8, start, end);
+    }
+
+    /**
+     * beginField - Start a field whose value will be appended to the encoder
+     *
+     * @param  name   the field name
+     * @throws IOException
+     */
+    void beginField(String name) throws IOException {
+        this._boundary();
+        this._ascii("Content-Disposition: form-data; name=\"");
+        this._quoted(name);
+        this._ascii("\"\r\n\r\n");
+    }
+
+    /**
+     * file - Write a file part
+     *
+     * @param  name         the field name
+     * @param  attachment   the file
+     * @throws IOException
+     */
+    void file(String name, Attachment attachment) throws IOException {
+        this._boundary();
+        this._ascii("Content-Disposition: form-data; name=\"");
+        this._quoted(name);
+        this._ascii("\"; filename=\"");
+        this._quoted(attachment.getName());
+        this._ascii("\"\r\nContent-Type: ");
+        this._ascii(attachment.getContentType());
+        this._ascii("\r\n\r\n");
+        if (this.buffer == null) {
+            if (attachment.getLength() < 0) {
+                this.unknownLength = true;
+            }
+            this.count += Math.max(0, attachment.getLength());
+        } else {
+            this.flush();
+            CountingStream counted = new CountingStream(this.out);
+            attachment.writeTo(counted);
+            this.count += counted.count;
+        }
+    }
+
+    /**
+     * finish - Write the closing boundary and whatever is left in the buffer
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        this._ascii("\r\n--");
+        this._bytes(this.boundary, 0, this.boundary.length);
+        this._ascii("--\r\n");
+        this.flush();
+    }
+
+    /**
+     * count - The number of bytes written (or counted) so far
+     *
+     * @return  the byte count, or -1 when a file of unknown length was counted
+     */
+    long count() {
+        return this.unknownLength ? -1 : this.count + this.position;
+    }
+
+    void flush() throws IOException {
+        if (this.out != null && this.position > 0) {
+            this.out.write(this.buffer, 0, this.position);
+            this.count += this.position;
+            this.position = 0;
+        }
+    }
+
+    public MultipartEncoder append(CharSequence value) throws IOException {
+        return this.append(value, 0, value.length());
+    }
+
+    public MultipartEncoder append(CharSequence value, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                i = this._ascii(value, i, end) - 1;
+            } else if (c < 0x800) {
+                this._byte(0xC0 | (c >> 6));
+                this._byte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                this._byte(0xF0 | (code >> 18));
+                this._byte(0x80 | ((code >> 12) & 0x3F));
+                this._byte(0x80 | ((code >> 6) & 0x3F));
+                this._byte(0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, which the UTF-8 encoder replaces with '?'
+                this._byte('?');
+            } else {
+                this._byte(0xE0 | (c >> 12));
+                this._byte(0x80 | ((c >> 6) & 0x3F));
+                this._byte(0x80 | (c & 0x3F));
+            }
+        }
+
+        return this;
+    }
+
+    public MultipartEncoder append(char c) throws IOException {
+        return this.append(String.valueOf(c), 0, 1);
+    }
+
+    /**
+     * _boundary - End the previous part, if any, and start a new one
+     */
+    private void _boundary() throws IOException {
+        if (this.started) {
+            this._ascii("\r\n");
+        }
+        this.started = true;
+        this._ascii("--");
+        this._bytes(this.boundary, 0, this.boundary.length);
+        this._ascii("\r\n");
+    }
+
+    /**
+     * _quoted - Write a name inside a quoted header parameter, escaping quotes and line
+     * breaks the way browsers do
+     */
+    private void _quoted(String name) throws IOException {
+        StringBuilder escaped = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"') {
+                escaped.append("%22");
+            } else if (c == '\r') {
+                escaped.append("%0D");
+            } else if (c == '\n') {
+                escaped.append("%0A");
+            } else {
+                escaped.append(c);
+            }
+        }
+        this.append(escaped);
+    }
+
+    private void _ascii(String value) throws IOException {
+        this._ascii(value, 0, value.length());
+    }
+
+    /**
+     * _ascii - Copy the run of ASCII characters starting at start
+     *
+     * @return  the end of the run
+     */
+    private int _ascii(CharSequence value, int start, int end) throws IOException {
+        int i = start;
+        if (this.buffer == null) {
+            while (i < end && value.charAt(i) < 0x80) {
+                i++;
+            }
+            this.count += i - start;
+            return i;
+        }
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        while (i < end) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            if (position == buffer.length) {
+                this.position = position;
+                this.flush();
+                position = 0;
+            }
+            buffer[position++] = (byte) c;
+            i++;
+        }
+        this.position = position;
+
+        return i;
+    }
+
+    private void _bytes(byte[] bytes, int start, int end) throws IOException {
+        int length = end - start;
+        if (this.buffer == null) {
+            this.count += length;
+        } else if (length <= this.buffer.length - this.position) {
+            System.arraycopy(bytes, start, this.buffer, this.position, length);
+            this.position += length;
+        } else {
+            this.flush();
+            this.out.write(bytes, start, length);
+            this.count += length;
+        }
+    }
+
+    private void _byte(int b) throws IOException {
+        if (this.buffer == null) {
+            this.count++;
+            return;
+        }
+        if (this.position == this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.position++] = (byte) b;
+    }
+
+    /**
+     * Passes writes through to the connection, counting them.
+     */
+    private static class CountingStream extends OutputStream {
+        private final OutputStream out;
+        long count = 0;
+
+        CountingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
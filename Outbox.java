@@ -0,0 +1,654 @@
+package googleSendgridJava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Outbox - A durable queue of messages on local disk, drained to the SendGrid API in the
+ * background.
+ *
+ * append() writes a message to a memory-mapped, append-only log and returns as soon as it
+ * is on disk, so the caller never waits on the network. A daemon thread reads the log in
+ * batches, sends each batch through a MessageSender and then records the offset it has
+ * reached in a checkpoint file. When the JVM stops, whether cleanly or not, the next Outbox
+ * opened on the same directory resumes from the checkpoint. Delivery is at least once: the
+ * messages of a batch that was in flight during a crash are sent again.
+ *
+ * The log is split into segment files, named after the offset of their first byte. Each
+ * record is its length, a CRC32 of its contents, and the message in MessageCodec form; a
+ * record torn by a crash fails its check and is cut off when the outbox is reopened.
+ * Segments are deleted once every message in them has been sent.
+ *
+ * Sends that fail with a transport error, a 429 or a 5xx are retried until they succeed, on
+ * top of the client's own RetryPolicy. Sends that can never succeed are handed to the
+ * Listener and dropped, so they do not hold up the messages behind them: those the API
+ * rejects for good, such as a 400, local failures such as a missing attachment or a
+ * malformed url (see SendResult.isLocalFailure), and sends that throw. A Listener that
+ * throws, or any other unexpected error in the drainer thread, is logged and the drainer
+ * carries on. Only one Outbox may use a directory at a time.
+ */
+public final class Outbox implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log",
+                                CHECKPOINT = "checkpoint";
+    private static final int RECORD_HEADER = 8;
+    private static final Logger LOGGER = Logger.getLogger(Outbox.class.getName());
+
+    private final File directory;
+    private final MessageSender client;
+    private final int segmentSize,
+                      batchSize;
+    private final boolean syncOnAppend;
+    private final long retryDelay,
+                       maxRetryDelay;
+    private final Listener listener;
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private long appended;
+    private volatile long acknowledged;
+    private volatile boolean closed = false;
+    private final Thread drainer;
+
+    /**
+     * Notified of messages the API rejected, which the outbox drops.
+     */
+    public static interface Listener {
+        /**
+         * dropped - A message was rejected and will not be sent again
+         *
+         * @param  message   the message, or null when its record could not be read back
+         * @param  result    the outcome of the last attempt
+         */
+        public void dropped(Message message, SendResult result);
+    }
+
+    private Outbox(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.client = builder.client;
+        this.segmentSize = builder.segmentSize;
+        this.batchSize = builder.batchSize;
+        this.syncOnAppend = builder.syncOnAppend;
+        this.retryDelay = builder.retryDelay;
+        this.maxRetryDelay = builder.maxRetryDelay;
+        this.listener = builder.listener;
+
+        if (this.directory.isDirectory() == false && this.directory.mkdirs() == false) {
+            throw new IOException("Cannot create outbox directory " + this.directory);
+        }
+        this._recover();
+        this.drainer = new Thread(new Runnable() {
+            public void run() {
+                _drain();
+            }
+        }, "sendgrid-outbox-" + this.directory.getName());
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * builder - Start configuring an outbox
+     *
+     * @param  directory   the directory that holds the log, created if needed
+     * @param  client      the client that sends the messages
+     * @return             a new builder
+     */
+    public static Builder builder(File directory, MessageSender client) {
+        return new Builder(directory, client);
+    }
+
+    /**
+     * append - Store a message to be sent. Once this returns the message survives a crash
+     * of the JVM, and with syncOnAppend (the default) a crash of the machine too.
+     *
+     * @param  message   the message
+     * @return           the offset just past the message in the log
+     * @throws IOException   when the message could not be written
+     */
+    public long append(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        bytes.write(new byte[RECORD_HEADER]);
+        MessageCodec.write(new DataOutputStream(bytes), message);
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - RECORD_HEADER;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+
+        synchronized (this) {
+            if (this.closed) {
+                throw new IOException("Outbox is closed");
+            }
+            Segment tail = this.segments.get(this.segments.size() - 1);
+            if (tail.remaining() < record.capacity()) {
+                tail.buffer.force();
+                tail = new Segment(this._segmentFile(tail.end()), tail.end(),
+                                   Math.max(this.segmentSize, record.capacity() + RECORD_HEADER), true);
+                this.segments.add(tail);
+            }
+            tail.append(record);
+            if (this.syncOnAppend) {
+                tail.buffer.force();
+            }
+            this.appended = tail.base + tail.limit;
+            this.notifyAll();
+
+            return this.appended;
+        }
+    }
+
+    /**
+     * getAppendedOffset - Get the offset just past the last message appended
+     *
+     * @return  the log offset
+     */
+    public synchronized long getAppendedOffset() {
+        return this.appended;
+    }
+
+    /**
+     * getAcknowledgedOffset - Get the offset up to which every message has been sent, or
+     * dropped, and checkpointed
+     *
+     * @return  the log offset
+     */
+    public long getAcknowledgedOffset() {
+        return this.acknowledged;
+    }
+
+    /**
+     * awaitDrained - Wait until every message appended so far has been sent or dropped
+     *
+     * @param  timeoutMillis   how long to wait at most
+     * @return                 true when the outbox was drained in time
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.acknowledged < this.appended) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0 || this.closed) {
+                return false;
+            }
+            this.wait(wait);
+        }
+
+        return true;
+    }
+
+    /**
+     * close - Stop the drainer and flush the log. Messages not yet sent stay in the log and
+     * are sent by the next outbox opened on the directory.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        this.drainer.interrupt();
+        try {
+            this.drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : this.segments) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * _recover - Open the existing segments, cut off a torn last record and read the
+     * checkpoint
+     */
+    private void _recover() throws IOException {
+        File[] files = this.directory.listFiles();
+        List<Long> bases = new ArrayList<Long>();
+        for (File file : (files == null) ? new File[0] : files) {
+            String name = file.getName();
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        long[] sorted = new long[bases.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = bases.get(i);
+        }
+        Arrays.sort(sorted);
+
+        this.acknowledged = this._readCheckpoint((sorted.length > 0) ? sorted[0] : 0);
+        for (long base : sorted) {
+            Segment segment = new Segment(this._segmentFile(base), base, 0, false);
+            if (segment.buffer.capacity() < RECORD_HEADER
+                || (segment.end() <= this.acknowledged && base != sorted[sorted.length - 1])) {
+                // Created just before a crash, or fully sent but not yet deleted
+                segment.file.delete();
+                continue;
+            }
+            segment.recover();
+            this.segments.add(segment);
+        }
+        if (this.segments.isEmpty()) {
+            this.segments.add(new Segment(this._segmentFile(this.acknowledged), this.acknowledged,
+                                          this.segmentSize, true));
+        }
+        Segment tail = this.segments.get(this.segments.size() - 1);
+        this.appended = tail.base + tail.limit;
+        if (this.acknowledged < this.segments.get(0).base) {
+            this.acknowledged = this.segments.get(0).base;
+        }
+    }
+
+    /**
+     * _drain - The drainer thread: send batches and checkpoint them until closed
+     */
+    private void _drain() {
+        long position = this.acknowledged;
+        while (this.closed == false) {
+            try {
+                List<Message> batch = new ArrayList<Message>();
+                long end;
+                try {
+                    end = this._read(position, batch);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this._send(batch) == false) {
+                    // Closed with sends still failing; they stay in the log
+                    return;
+                }
+                position = end;
+                try {
+                    this._checkpoint(position);
+                } catch (IOException e) {
+                    // The next checkpoint covers these messages too; until then a restart
+                    // would only send them again
+                    LOGGER.log(Level.WARNING, "Outbox failed to checkpoint offset " + position
+                        + ", a restart would send the messages since the last checkpoint again", e);
+                }
+            } catch (RuntimeException e) {
+                // Keep the thread alive, or nothing would be sent again until a restart; the
+                // batch is read and sent again from the last position
+                LOGGER.log(Level.SEVERE, "Outbox drainer failed at offset " + position + ", retrying", e);
+                try {
+                    Thread.sleep(this.retryDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * _read - Wait for messages after position and read up to a batch of them
+     *
+     * @return  the offset just past the last message read
+     */
+    private long _read(long position, List<Message> batch) throws InterruptedException {
+        Segment segment;
+        long limit;
+        synchronized (this) {
+            while (this.closed == false && this.appended <= position) {
+                this.wait();
+            }
+            if (this.closed) {
+                throw new InterruptedException();
+            }
+            segment = this._segmentAt(position);
+            limit = segment.limit;
+        }
+        if (position >= segment.base + limit) {
+            // Past the last record of this segment: continue in the next one
+            synchronized (this) {
+                segment = this.segments.get(this.segments.indexOf(segment) + 1);
+                limit = segment.limit;
+            }
+            position = segment.base;
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = (int) (position - segment.base);
+        while (offset < limit && batch.size() < this.batchSize) {
+            int length = buffer.getInt(offset);
+            byte[] record = new byte[length];
+            buffer.position(offset + RECORD_HEADER);
+            buffer.get(record);
+            try {
+                batch.add(MessageCodec.read(new DataInputStream(new ByteArrayInputStream(record))));
+            } catch (IOException e) {
+                this._dropped(null, SendResult.failure("Unreadable Outbox Record", e));
+            }
+            offset += RECORD_HEADER + length;
+        }
+
+        return segment.base + offset;
+    }
+
+    /**
+     * _send - Send a batch, retrying the transient failures until every message has been
+     * sent or dropped
+     *
+     * @return  false when the outbox was closed first
+     */
+    private boolean _send(List<Message> batch) {
+        long delay = this.retryDelay;
+        while (batch.isEmpty() == false) {
+            List<CompletableFuture<SendResult>> futures = new ArrayList<CompletableFuture<SendResult>>();
+            for (Message message : batch) {
+                try {
+                    futures.add(this.client.sendAsync(message));
+                } catch (RuntimeException e) {
+                    futures.add(CompletableFuture.completedFuture(SendResult.failure("Send Rejected", e)));
+                }
+            }
+            List<Message> failed = new ArrayList<Message>();
+            for (int i = 0; i < batch.size(); i++) {
+                SendResult result;
+                try {
+                    result = futures.get(i).join();
+                } catch (RuntimeException e) {
+                    result = SendResult.failure("Send Rejected", e);
+                }
+                if (_isTransient(result)) {
+                    failed.add(batch.get(i));
+                } else if (result.isSuccess() == false) {
+                    this._dropped(batch.get(i), result);
+                }
+            }
+            batch = failed;
+            if (batch.isEmpty() == false) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                if (this.closed) {
+                    return false;
+                }
+                delay = Math.min(this.maxRetryDelay, delay * 2);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * _isTransient - Whether a failed send may succeed when it is sent again: a transport
+     * error, or an answer that the API is overloaded. Local failures and sends that threw
+     * would only fail the same way again.
+     */
+    private static boolean _isTransient(SendResult result) {
+        return CircuitBreaker.isFailure(result) && (result.getCause() instanceof RuntimeException) == false;
+    }
+
+    /**
+     * _dropped - Tell the listener about a dropped message, logging rather than letting an
+     * exception it throws reach the drainer
+     */
+    private void _dropped(Message message, SendResult result) {
+        try {
+            this.listener.dropped(message, result);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Outbox listener failed on a dropped message: " + result, e);
+        }
+    }
+
+    /**
+     * _checkpoint - Record that everything before position has been sent, and delete the
+     * segments that are no longer needed
+     */
+    private void _checkpoint(long position) throws IOException {
+        File temp = new File(this.directory, CHECKPOINT + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(Long.toString(position).getBytes(StandardCharsets.US_ASCII));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), new File(this.directory, CHECKPOINT).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            this.acknowledged = position;
+            while (this.segments.size() > 1 && this.segments.get(0).end() <= position) {
+                this.segments.remove(0).file.delete();
+            }
+            this.notifyAll();
+        }
+    }
+
+    private long _readCheckpoint(long otherwise) throws IOException {
+        File file = new File(this.directory, CHECKPOINT);
+        if (file.exists() == false) {
+            return otherwise;
+        }
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt outbox checkpoint: " + text, e);
+        }
+    }
+
+    private Segment _segmentAt(long position) {
+        for (int i = this.segments.size() - 1; i >= 0; i--) {
+            if (this.segments.get(i).base <= position) {
+                return this.segments.get(i);
+            }
+        }
+
+        return this.segments.get(0);
+    }
+
+    private File _segmentFile(long base) {
+        return new File(this.directory, String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * One memory-mapped log file. limit is the end of the last complete record; the bytes
+     * after it are zero.
+     */
+    private static class Segment {
+        final File file;
+        final long base;
+        final MappedByteBuffer buffer;
+        int limit = 0;
+
+        Segment(File file, long base, int capacity, boolean create) throws IOException {
+            this.file = file;
+            this.base = base;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (create) {
+                    raf.setLength(capacity);
+                }
+                // The mapping stays valid after the channel is closed
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+        }
+
+        long end() {
+            return this.base + this.buffer.capacity();
+        }
+
+        int remaining() {
+            return this.buffer.capacity() - this.limit;
+        }
+
+        void append(ByteBuffer record) {
+            ByteBuffer target = this.buffer.duplicate();
+            target.position(this.limit);
+            target.put(record);
+            this.limit += record.capacity();
+        }
+
+        /**
+         * recover - Find the end of the last complete record and zero what follows it
+         */
+        void recover() {
+            int capacity = this.buffer.capacity();
+            int offset = 0;
+            while (offset + RECORD_HEADER <= capacity) {
+                int length = this.buffer.getInt(offset);
+                if (length <= 0 || length > capacity - offset - RECORD_HEADER) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                ByteBuffer view = this.buffer.duplicate();
+                view.position(offset + RECORD_HEADER);
+                view.get(record);
+                CRC32 crc = new CRC32();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != this.buffer.getInt(offset + 4)) {
+                    break;
+                }
+                offset += RECORD_HEADER + length;
+            }
+            this.limit = offset;
+            for (int i = offset; i < capacity; i++) {
+                if (this.buffer.get(i) != 0) {
+                    this.buffer.put(i, (byte) 0);
+                }
+            }
+            this.buffer.force();
+        }
+    }
+
+    /**
+     * Configures an Outbox.
+     */
+    public static final class Builder {
+        private final File directory;
+        private final MessageSender client;
+        private int segmentSize = 16 * 1024 * 1024,
+                    batchSize = 100;
+        private boolean syncOnAppend = true;
+        private long retryDelay = 1000,
+                     maxRetryDelay = 60000;
+        private Listener listener = new Listener() {
+            public void dropped(Message message, SendResult result) {
+                LOGGER.log(Level.WARNING, "Outbox dropped a message: " + result, result.getCause());
+            }
+        };
+
+        private Builder(File directory, MessageSender client) {
+            this.directory = directory;
+            this.client = client;
+        }
+
+        /**
+         * setSegmentSize - Set the size of each log file, 16MB by default. A message larger
+         * than this gets a segment of its own.
+         *
+         * @param  bytes   the segment size
+         * @return         The builder.
+         */
+        public Builder setSegmentSize(int bytes) {
+            if (bytes < 1) {
+                throw new IllegalArgumentException("segmentSize must be at least 1");
+            }
+            this.segmentSize = bytes;
+
+            return this;
+        }
+
+        /**
+         * setBatchSize - Set how many messages are sent at once before a checkpoint, 100 by
+         * default. Larger batches checkpoint less often, and resend more after a crash.
+         *
+         * @param  batchSize   the batch size
+         * @return             The builder.
+         */
+        public Builder setBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be at least 1");
+            }
+            this.batchSize = batchSize;
+
+            return this;
+        }
+
+        /**
+         * setSyncOnAppend - Force every append to the storage device before append()
+         * returns, true by default. Without it an append survives a crash of the JVM but
+         * not of the machine, and costs no disk flush.
+         *
+         * @param  sync   whether to sync each append
+         * @return        The builder.
+         */
+        public Builder setSyncOnAppend(boolean sync) {
+            this.syncOnAppend = sync;
+
+            return this;
+        }
+
+        /**
+         * setRetryDelay - Set how long the drainer waits before resending messages that
+         * failed with a transient error, doubling up to the maximum; 1s and 60s by default
+         *
+         * @param  retryDelayMillis      the first delay, at least 1ms so that it can double
+         * @param  maxRetryDelayMillis   the longest delay
+         * @return                       The builder.
+         */
+        public Builder setRetryDelay(long retryDelayMillis, long maxRetryDelayMillis) {
+            if (retryDelayMillis < 1 || maxRetryDelayMillis < retryDelayMillis) {
+                throw new IllegalArgumentException("retryDelayMillis must be at least 1 and at most maxRetryDelayMillis");
+            }
+            this.retryDelay = retryDelayMillis;
+            this.maxRetryDelay = maxRetryDelayMillis;
+
+            return this;
+        }
+
+        /**
+         * setListener - Set who is told about dropped messages. By default they are logged
+         * as warnings through java.util.logging, to the logger named after this class.
+         *
+         * @param  listener   the listener
+         * @return            The builder.
+         */
+        public Builder setListener(Listener listener) {
+            this.listener = listener;
+
+            return this;
+        }
+
+        /**
+         * open - Open the outbox, recover its log and start draining it
+         *
+         * @return  the outbox
+         * @throws IOException   when the directory or its log cannot be opened
+         */
+        public Outbox open() throws IOException {
+            return new Outbox(this);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * PriorityScheduler - Queues sends in priority lanes in front of a MessageSender, so that
+ * transactional mail is not stuck behind a campaign.
+ *
+ * At most maxInFlight sends are handed to the sender at once; the rest wait in their lane.
+ * Each lane also has a cap of its own, kept below the total for the lower lanes so that they
+ * cannot hold every slot for long. When several lanes have sends waiting, slots are shared
+ * among them in proportion to their weights (stride scheduling), so a lower lane is slowed
+ * down but never starved. A lane that had nothing waiting rejoins level with the lowest lane
+ * that has, and wins the tie against lower lanes, so a transactional send arriving at an
+ * empty lane never waits for more than the first slot to free up.
+ *
+ * A send may be given a deadline: if it is still queued when the deadline passes it is
+ * dropped, and completes with a DeadlineException instead of being sent late. A lane may
+ * also escalate: a send that has waited longer than the lane's escalation delay moves up to
+ * the next lane. Deadlines and escalation are checked whenever a send is queued or
+ * completes, so a saturated scheduler notices them promptly.
+ *
+ * The scheduler runs no thread of its own. Sends are dispatched by the thread that queues
+ * them or by the one completing an earlier send. It is thread-safe.
+ */
+public class PriorityScheduler implements MessageSender {
+
+    /**
+     * The lanes, highest priority first.
+     */
+    public static enum Lane { TRANSACTIONAL, NORMAL, BULK }
+
+    /**
+     * Thrown (as the cause of a failed SendResult) for sends dropped at their deadline.
+     */
+    public static class DeadlineException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineException(String message) {
+            super(message);
+        }
+    }
+
+    private static final long STRIDE = 1L << 20;
+
+    private final MessageSender sender;
+    private final int maxInFlight;
+    private final Map<Lane, LaneState> lanes = new EnumMap<Lane, LaneState>(Lane.class);
+    private final Map<String, Lane> categoryLanes = new HashMap<String, Lane>();
+    private final Object lock = new Object();
+    private final AtomicInteger pumps = new AtomicInteger();
+    // Guarded by lock
+    private final PriorityQueue<Pending> deadlines = new PriorityQueue<Pending>(11, new Comparator<Pending>() {
+        public int compare(Pending a, Pending b) {
+            return Long.signum(a.deadline - b.deadline);
+        }
+    });
+    private int inFlight = 0;
+    private long pass = 0;
+    // Entries of deadlines dispatched before their deadline, still in the heap
+    private int staleDeadlines = 0;
+
+    /**
+     * @param  sender        where sends are dispatched
+     * @param  maxInFlight   the most sends handed to the sender at once. Keep it within what
+     *                       the sender takes without blocking, such as its SendExecutor's
+     *                       maxInFlight.
+     */
+    public PriorityScheduler(MessageSender sender, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.sender = sender;
+        this.maxInFlight = maxInFlight;
+        this.lanes.put(Lane.TRANSACTIONAL, new LaneState(Lane.TRANSACTIONAL, 16, maxInFlight));
+        this.lanes.put(Lane.NORMAL, new LaneState(Lane.NORMAL, 4, Math.max(1, maxInFlight - Math.max(1, maxInFlight / 8))));
+        this.lanes.put(Lane.BULK, new LaneState(Lane.BULK, 1, Math.max(1, maxInFlight - Math.max(1, maxInFlight / 4))));
+    }
+
+    /**
+     * setLane - Set a lane's share of the slots and its cap. By default TRANSACTIONAL has
+     * weight 16 and may use every slot, NORMAL weight 4 and all but an eighth of the slots,
+     * and BULK weight 1 and all but a quarter of them.
+     *
+     * @param  lane          the lane
+     * @param  weight        its share of the slots, when other lanes are waiting too
+     * @param  maxInFlight   the most sends of this lane in flight at once
+     * @return               the PriorityScheduler.
+     */
+    public PriorityScheduler setLane(Lane lane, int weight, int maxInFlight) {
+        if (weight < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("weight and maxInFlight must be at least 1");
+        }
+        synchronized (this.lock) {
+            LaneState state = this.lanes.get(lane);
+            state.weight = weight;
+            state.maxInFlight = maxInFlight;
+        }
+        this._pump();
+
+        return this;
+    }
+
+    /**
+     * setMaxQueued - Set the most sends waiting in a lane, unbounded by default. Sends beyond
+     * it fail at once with a RejectedExecutionException.
+     *
+     * @param  lane        the lane
+     * @param  maxQueued   the most sends waiting
+     * @return             the PriorityScheduler.
+     */
+    public PriorityScheduler setMaxQueued(Lane lane, int maxQueued) {
+        synchronized (this.lock) {
+            this.lanes.get(lane).maxQueued = maxQueued;
+        }
+
+        return this;
+    }
+
+    /**
+     * setEscalateAfter - Move sends that have waited this long in a lane up to the next lane.
+     * Off (0) by default.
+     *
+     * @param  lane     the lane, other than TRANSACTIONAL
+     * @param  millis   how long a send waits before it is escalated, 0 for never
+     * @return          the PriorityScheduler.
+     */
+    public PriorityScheduler setEscalateAfter(Lane lane, long millis) {
+        if (lane.ordinal() == 0 && millis > 0) {
+            throw new IllegalArgumentException(lane + " is the highest lane");
+        }
+        synchronized (this.lock) {
+            this.lanes.get(lane).escalateAfterNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        return this;
+    }
+
+    /**
+     * setCategoryLane - Queue messages in a category in this lane when they are sent without
+     * one. A message goes to the lane of its first category that has one, or to NORMAL.
+     *
+     * @param  category   the category
+     * @param  lane       the lane
+     * @return            the PriorityScheduler.
+     */
+    public PriorityScheduler setCategoryLane(String category, Lane lane) {
+        synchronized (this.lock) {
+            this.categoryLanes.put(category, lane);
+        }
+
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * getQueued - Get the sends waiting in a lane
+     *
+     * @param  lane   the lane
+     * @return        the number of sends
+     */
+    public int getQueued(Lane lane) {
+        synchronized (this.lock) {
+            return this.lanes.get(lane).queued;
+        }
+    }
+
+    /**
+     * getInFlight - Get the sends of a lane handed to the sender and not yet completed
+     *
+     * @param  lane   the lane
+     * @return        the number of sends
+     */
+    public int getInFlight(Lane lane) {
+        synchronized (this.lock) {
+            return this.lanes.get(lane).inFlight;
+        }
+    }
+
+    /**
+     * getDroppedCount - Get the sends of a lane dropped at their deadline
+     *
+     * @param  lane   the lane
+     * @return        the number of sends
+     */
+    public long getDroppedCount(Lane lane) {
+        synchronized (this.lock) {
+            return this.lanes.get(lane).dropped;
+        }
+    }
+
+    /**
+     * getEscalatedCount - Get the sends moved up out of a lane
+     *
+     * @param  lane   the lane
+     * @return        the number of sends
+     */
+    public long getEscalatedCount(Lane lane) {
+        synchronized (this.lock) {
+            return this.lanes.get(lane).escalated;
+        }
+    }
+
+    /**
+     * send - Queue a message in the lane of its category and wait for it to be sent
+     *
+     * @param  message   the message
+     * @return           the outcome
+     */
+    public SendResult send(Message message) {
+        return this.sendAsync(message).join();
+    }
+
+    /**
+     * sendAsync - Queue a message in the lane of its category
+     *
+     * @param  message   the message
+     * @return           a future completed with the outcome
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message) {
+        return this.sendAsync(message, this._laneOf(message), 0);
+    }
+
+    /**
+     * sendAsync - Queue a message in a lane
+     *
+     * @param  message   the message
+     * @param  lane      the lane
+     * @return           a future completed with the outcome
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message, Lane lane) {
+        return this.sendAsync(message, lane, 0);
+    }
+
+    /**
+     * sendAsync - Queue a message in a lane, to be dropped unless it is sent in time
+     *
+     * @param  message          the message
+     * @param  lane             the lane
+     * @param  timeoutMillis    how long the message may wait before it is sent, 0 for as
+     *                          long as it takes
+     * @return                  a future completed with the outcome, or with a failure
+     *                          caused by a DeadlineException when the message was dropped
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message, Lane lane, long timeoutMillis) {
+        long now = System.nanoTime();
+        Pending pending = new Pending(message, now,
+            (timeoutMillis > 0) ? now + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0);
+        synchronized (this.lock) {
+            LaneState state = this.lanes.get(lane);
+            if (state.queued >= state.maxQueued) {
+                pending.future.completeExceptionally(new RejectedExecutionException(
+                    state.queued + " sends already queued in lane " + lane));
+                return pending.future;
+            }
+            this._enqueue(state, pending);
+            if (pending.deadline != 0) {
+                this.deadlines.add(pending);
+            }
+        }
+        this._pump();
+
+        return pending.future;
+    }
+
+    /**
+     * _laneOf - The lane of a message's first category that has one
+     */
+    private Lane _laneOf(Message message) {
+        Object categories = message.getHeaders().get("category");
+        if (categories instanceof String) {
+            categories = Collections.singletonList(categories);
+        }
+        if (categories instanceof List) {
+            synchronized (this.lock) {
+                for (Object category : (List<?>) categories) {
+                    Lane lane = this.categoryLanes.get(String.valueOf(category));
+                    if (lane != null) {
+                        return lane;
+                    }
+                }
+            }
+        }
+
+        return Lane.NORMAL;
+    }
+
+    private void _enqueue(LaneState state, Pending pending) {
+        if (state.queued == 0) {
+            // A lane with nothing waiting starts level with the lowest lane that has sends
+            // waiting: it cannot claim the slots it left unused, nor queue behind lanes that
+            // ran ahead meanwhile. Ties go to the higher lane, so it takes the next free slot.
+            state.pass = this._lowestWaitingPass(state);
+        }
+        state.queue.addLast(pending);
+        state.queued++;
+        pending.lane = state;
+        pending.queued = true;
+    }
+
+    /**
+     * _lowestWaitingPass - The lowest pass of the other lanes with sends waiting, or the
+     * pass of the lane chosen last when none have any
+     */
+    private long _lowestWaitingPass(LaneState except) {
+        long lowest = 0;
+        boolean waiting = false;
+        for (LaneState state : this.lanes.values()) {
+            if (state != except && state.queued > 0 && (waiting == false || state.pass < lowest)) {
+                lowest = state.pass;
+                waiting = true;
+            }
+        }
+
+        return waiting ? lowest : Math.max(except.pass, this.pass);
+    }
+
+    /**
+     * _dequeue - Take the send at the head of a lane, or null when it is empty
+     */
+    private Pending _dequeue(LaneState state) {
+        Pending head = this._head(state);
+        if (head != null) {
+            state.queue.pollFirst();
+            state.queued--;
+            head.queued = false;
+        }
+
+        return head;
+    }
+
+    /**
+     * _head - Look at the send at the head of a lane, discarding those already dropped
+     */
+    private Pending _head(LaneState state) {
+        Pending head;
+        while ((head = state.queue.peekFirst()) != null && head.queued == false) {
+            state.queue.pollFirst();
+        }
+
+        return head;
+    }
+
+    /**
+     * _pump - Dispatch queued sends while there are free slots. One thread pumps at a time;
+     * a pump requested meanwhile makes it go round once more, so no recursion happens when
+     * a send completes straight away.
+     */
+    private void _pump() {
+        if (this.pumps.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            List<Pending> dispatch = new ArrayList<Pending>();
+            List<Pending> dropped = new ArrayList<Pending>();
+            synchronized (this.lock) {
+                long now = System.nanoTime();
+                this._expire(now, dropped);
+                this._escalate(now);
+                Pending next;
+                while ((next = this._next()) != null) {
+                    dispatch.add(next);
+                }
+            }
+            for (Pending pending : dropped) {
+                pending.future.complete(SendResult.failure("Deadline Exceeded", new DeadlineException(
+                    "Dropped after waiting " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.createdAt)
+                        + " ms in lane " + pending.lane.lane)));
+            }
+            for (Pending pending : dispatch) {
+                this._dispatch(pending);
+            }
+        } while (this.pumps.decrementAndGet() != 0);
+    }
+
+    /**
+     * _next - Take the next send to dispatch: from the lane with the lowest pass among those
+     * with sends waiting and room under their cap
+     */
+    private Pending _next() {
+        if (this.inFlight >= this.maxInFlight) {
+            return null;
+        }
+        LaneState chosen = null;
+        for (LaneState state : this.lanes.values()) {
+            if (state.queued == 0 || state.inFlight >= state.maxInFlight) {
+                continue;
+            }
+            if (chosen == null || state.pass < chosen.pass) {
+                chosen = state;
+            }
+        }
+        if (chosen == null) {
+            return null;
+        }
+        Pending pending = this._dequeue(chosen);
+        if (pending.deadline != 0 && ++this.staleDeadlines > 64
+            && this.staleDeadlines > this.deadlines.size() / 2) {
+            this._purgeDeadlines();
+        }
+        chosen.pass += STRIDE / chosen.weight;
+        this.pass = chosen.pass;
+        chosen.inFlight++;
+        this.inFlight++;
+
+        return pending;
+    }
+
+    /**
+     * _expire - Drop the queued sends whose deadline has passed, wherever they are in their
+     * lane. They are only marked here, and discarded once they reach the head of the lane.
+     */
+    private void _expire(long now, List<Pending> dropped) {
+        Pending pending;
+        while ((pending = this.deadlines.peek()) != null && now - pending.deadline >= 0) {
+            this.deadlines.poll();
+            if (pending.queued == false) {
+                this.staleDeadlines--;
+            } else {
+                pending.queued = false;
+                pending.lane.queued--;
+                pending.lane.dropped++;
+                dropped.add(pending);
+            }
+        }
+    }
+
+    /**
+     * _purgeDeadlines - Remove the sends already dispatched from the deadline heap, once
+     * they make up half of it, so it holds on to no more than the sends still queued
+     */
+    private void _purgeDeadlines() {
+        Iterator<Pending> entries = this.deadlines.iterator();
+        while (entries.hasNext()) {
+            if (entries.next().queued == false) {
+                entries.remove();
+            }
+        }
+        this.staleDeadlines = 0;
+    }
+
+    /**
+     * _escalate - Move sends that have waited too long up one lane. Each lane is in arrival
+     * order, so only its head needs checking.
+     */
+    private void _escalate(long now) {
+        Lane[] order = Lane.values();
+        for (int i = order.length - 1; i > 0; i--) {
+            LaneState state = this.lanes.get(order[i]);
+            if (state.escalateAfterNanos <= 0) {
+                continue;
+            }
+            LaneState higher = this.lanes.get(order[i - 1]);
+            Pending head;
+            while ((head = this._head(state)) != null && now - head.queuedAt >= state.escalateAfterNanos) {
+                this._dequeue(state);
+                state.escalated++;
+                // Restart the clock, so it only moves up again after the next lane's delay
+                head.queuedAt = now;
+                this._enqueue(higher, head);
+            }
+        }
+    }
+
+    private void _dispatch(final Pending pending) {
+        Message message = pending.message;
+        // The sender has it now; the deadline heap may still hold the Pending for a while
+        pending.message = null;
+        CompletableFuture<SendResult> sent;
+        try {
+            sent = this.sender.sendAsync(message);
+        } catch (RuntimeException e) {
+            sent = new CompletableFuture<SendResult>();
+            sent.completeExceptionally(e);
+        }
+        sent.whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable error) {
+                synchronized (lock) {
+                    pending.lane.inFlight--;
+                    inFlight--;
+                }
+                _pump();
+                if (error != null) {
+                    pending.future.completeExceptionally(error);
+                } else {
+                    pending.future.complete(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * A message waiting in a lane.
+     */
+    private static class Pending {
+        Message message;
+        final long createdAt,
+                   deadline;
+        final CompletableFuture<SendResult> future = new CompletableFuture<SendResult>();
+        // When it entered its current lane, for escalation
+        long queuedAt;
+        LaneState lane;
+        boolean queued = false;
+
+        Pending(Message message, long createdAt, long deadline) {
+            this.message = message;
+            this.createdAt = createdAt;
+            this.queuedAt = createdAt;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The queue, limits and counters of a lane. Guarded by the scheduler's lock.
+     */
+    private static class LaneState {
+        final Lane lane;
+        final ArrayDeque<Pending> queue = new ArrayDeque<Pending>();
+        int weight,
+            maxInFlight,
+            inFlight = 0,
+            queued = 0,
+            maxQueued = Integer.MAX_VALUE;
+        long escalateAfterNanos = 0,
+             pass = 0,
+             dropped = 0,
+             escalated = 0;
+
+        LaneState(Lane lane, int weight, int maxInFlight) {
+            this.lane = lane;
+            this.weight = weight;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package googleSendgridJava;
+
+/**
+ * RateLimiter - Holds sends back so that they stay under a number of requests and of
+ * recipients per second.
+ *
+ * Each limit is a token bucket that refills at its rate and holds up to burstSeconds worth of
+ * tokens, so a client that has been idle may send a short burst. A send takes one request
+ * token and one recipient token per recipient; when a bucket runs dry the send waits until
+ * the tokens it took have been refilled. A send with more recipients than the bucket holds
+ * is not refused; it is charged one full bucket.
+ *
+ * A limiter is thread-safe. Share one limiter between every client sending with the same
+ * account, since that is what the API's limits apply to.
+ */
+public class RateLimiter {
+
+    private final Bucket requests,
+                         recipients;
+
+    /**
+     * @param  requestsPerSecond     the most requests per second, 0 for no limit
+     * @param  recipientsPerSecond   the most recipients per second, 0 for no limit
+     */
+    public RateLimiter(double requestsPerSecond, double recipientsPerSecond) {
+        this(requestsPerSecond, recipientsPerSecond, 1.0);
+    }
+
+    /**
+     * @param  requestsPerSecond     the most requests per second, 0 for no limit
+     * @param  recipientsPerSecond   the most recipients per second, 0 for no limit
+     * @param  burstSeconds          how many seconds of unused capacity may be saved up
+     */
+    public RateLimiter(double requestsPerSecond, double recipientsPerSecond, double burstSeconds) {
+        this(requestsPerSecond, recipientsPerSecond, burstSeconds, System.nanoTime());
+    }
+
+    RateLimiter(double requestsPerSecond, double recipientsPerSecond, double burstSeconds, long now) {
+        if (requestsPerSecond < 0 || recipientsPerSecond < 0 || burstSeconds <= 0) {
+            throw new IllegalArgumentException("rates must not be negative and burstSeconds must be positive");
+        }
+        this.requests = (requestsPerSecond > 0) ? new Bucket(requestsPerSecond, burstSeconds, now) : null;
+        this.recipients = (recipientsPerSecond > 0) ? new Bucket(recipientsPerSecond, burstSeconds, now) : null;
+    }
+
+    /**
+     * acquire - Wait until a request with the given number of recipients may be sent
+     *
+     * @param  recipientCount   the number of recipients in the request
+     * @throws InterruptedException
+     */
+    public void acquire(int recipientCount) throws InterruptedException {
+        long waitNanos = this._reserve(recipientCount, System.nanoTime());
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        }
+    }
+
+    /**
+     * _reserve - Take the tokens for a request, and return how many nanoseconds to wait
+     * before sending it
+     */
+    long _reserve(int recipientCount, long now) {
+        long waitNanos = 0;
+        if (this.requests != null) {
+            waitNanos = this.requests.reserve(1, now);
+        }
+        if (this.recipients != null) {
+            waitNanos = Math.max(waitNanos, this.recipients.reserve(recipientCount, now));
+        }
+
+        return waitNanos;
+    }
+
+    /**
+     * A token bucket that lends tokens it does not have yet, and tells the borrower how long
+     * to wait for them.
+     */
+    private static class Bucket {
+        private final double perNano,
+                             capacity;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double perSecond, double burstSeconds, long now) {
+            this.perNano = perSecond / 1e9;
+            this.capacity = Math.max(1, perSecond * burstSeconds);
+            this.tokens = this.capacity;
+            this.refilledAt = now;
+        }
+
+        /**
+         * reserve - Take tokens, and return how long to wait before using them
+         */
+        synchronized long reserve(int count, long now) {
+            if (now > this.refilledAt) {
+                this.tokens = Math.min(this.capacity, this.tokens + (now - this.refilledAt) * this.perNano);
+                this.refilledAt = now;
+            }
+            // Never borrow more than a full bucket, so one huge request cannot stall
+            // everyone behind it for longer than it takes to fill the bucket once
+            double wanted = Math.min(count, this.capacity);
+            this.tokens -= wanted;
+
+            return (this.tokens >= 0) ? 0 : (long) Math.ceil(-this.tokens / this.perNano);
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * RecipientList - An immutable, compact list of recipients: email addresses and their names.
+ *
+ * Every address and name is packed as UTF-8 into one shared byte array, found through one
+ * array of offsets, so a recipient costs its bytes plus 8 bytes of index instead of two
+ * Strings and their list slots. The encoders write recipients straight from these bytes.
+ * Addresses and names are stored as UTF-8 the way String.getBytes() writes it, so an
+ * unpaired surrogate becomes '?'.
+ *
+ * A list is built with a RecipientList.Builder, whose build() does not copy anything, and
+ * slice() and chunks() split a list into smaller lists that share its storage. Lists are
+ * immutable and may be shared between threads.
+ */
+public final class RecipientList {
+
+    private static final RecipientList EMPTY = new RecipientList(new byte[0], new int[1], 0, 0);
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final int first,
+                      size;
+
+    /**
+     * Entry i of the list is entry first + i of the storage. Entry j has its address at
+     * offsets[2j] to offsets[2j + 1] and its name from there to offsets[2j + 2].
+     */
+    private RecipientList(byte[] data, int[] offsets, int first, int size) {
+        this.data = data;
+        this.offsets = offsets;
+        this.first = first;
+        this.size = size;
+    }
+
+    /**
+     * empty - A list without recipients
+     *
+     * @return  the empty list
+     */
+    public static RecipientList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * builder - Start a new list
+     *
+     * @return  a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * toBuilder - Start a new list initialized with this one. Nothing is copied until the
+     * builder is changed.
+     *
+     * @return  a new builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * getEmail - Get the address of one recipient
+     *
+     * @param  index   the recipient
+     * @return         the address, decoded into a new String
+     */
+    public String getEmail(int index) {
+        this._check(index);
+
+        return this._string(this.emailStart(index), this.emailEnd(index));
+    }
+
+    /**
+     * getName - Get the name of one recipient
+     *
+     * @param  index   the recipient
+     * @return         the name, "" where there is none
+     */
+    public String getName(int index) {
+        this._check(index);
+
+        return this._string(this.emailEnd(index), this.nameEnd(index));
+    }
+
+    /**
+     * emails - A view of the addresses, each decoded when it is read
+     *
+     * @return  an unmodifiable list
+     */
+    public List<String> emails() {
+        return new View(false);
+    }
+
+    /**
+     * names - A view of the names, each decoded when it is read, "" where there is none
+     *
+     * @return  an unmodifiable list
+     */
+    public List<String> names() {
+        return new View(true);
+    }
+
+    /**
+     * slice - The recipients from one index to another, sharing this list's storage
+     *
+     * @param  from   the first recipient, inclusive
+     * @param  to     the last recipient, exclusive
+     * @return        the slice
+     */
+    public RecipientList slice(int from, int to) {
+        if (from < 0 || to > this.size || from > to) {
+            throw new IndexOutOfBoundsException("slice(" + from + ", " + to + ") of " + this.size);
+        }
+        if (from == 0 && to == this.size) {
+            return this;
+        }
+
+        return new RecipientList(this.data, this.offsets, this.first + from, to - from);
+    }
+
+    /**
+     * chunks - Split the list into consecutive slices, to send a large list as several
+     * requests
+     *
+     * @param  chunkSize   the most recipients in a slice
+     * @return             the slices, all full but the last
+     */
+    public List<RecipientList> chunks(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        List<RecipientList> chunks = new ArrayList<RecipientList>((this.size + chunkSize - 1) / chunkSize);
+        for (int from = 0; from < this.size; from += chunkSize) {
+            chunks.add(this.slice(from, Math.min(this.size, from + chunkSize)));
+        }
+
+        return Collections.unmodifiableList(chunks);
+    }
+
+    /**
+     * data - The UTF-8 storage, read by the encoders between the offsets below
+     */
+    byte[] data() {
+        return this.data;
+    }
+
+    int emailStart(int index) {
+        return this.offsets[2 * (this.first + index)];
+    }
+
+    int emailEnd(int index) {
+        return this.offsets[2 * (this.first + index) + 1];
+    }
+
+    int nameEnd(int index) {
+        return this.offsets[2 * (this.first + index) + 2];
+    }
+
+    private String _string(int start, int end) {
+        return (start == end) ? "" : new String(this.data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private void _check(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + this.size);
+        }
+    }
+
+    private class View extends AbstractList<String> implements RandomAccess {
+        private final boolean names;
+
+        View(boolean names) {
+            this.names = names;
+        }
+
+        public String get(int index) {
+            return this.names ? getName(index) : getEmail(index);
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Builds RecipientLists by appending to growable arrays. A builder is not thread-safe,
+     * but it may be used to build any number of lists: build() shares the arrays with the
+     * list it returns, which is safe because the builder only ever writes past the end of
+     * the lists it has built.
+     *
+     * Every address added is checked and put in canonical form by EmailAddress, so a list
+     * only ever holds well formed addresses.
+     *
+     * With setDeduplicate(true), an address already in the builder is skipped when it has the
+     * same EmailAddress.dedupeKey() as one added before. Deduplication is off by default,
+     * since a message's substitutions are matched to its recipients by position.
+     */
+    public static final class Builder {
+        private byte[] data;
+        private int[] offsets;
+        private int first,
+                    size,
+                    length;
+        private boolean owned,
+                        shared = false,
+                        deduplicate = false;
+        // The dedupe keys of the addresses added, while deduplicating
+        private Set<String> keys;
+        private int duplicates = 0;
+
+        private Builder() {
+            this.data = new byte[256];
+            this.offsets = new int[33];
+            this.owned = true;
+        }
+
+        private Builder(RecipientList list) {
+            this.data = list.data;
+            this.offsets = list.offsets;
+            this.first = list.first;
+            this.size = list.size;
+            this.length = list.offsets[2 * (list.first + list.size)];
+            this.owned = false;
+        }
+
+        /**
+         * setDeduplicate - Skip addresses that reach a mailbox already added
+         *
+         * @param  deduplicate   true to skip duplicates
+         * @return               The builder.
+         */
+        public Builder setDeduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            this.keys = null;
+            if (deduplicate) {
+                this.keys = new HashSet<String>();
+                for (int i = 0; i < this.size; i++) {
+                    this.keys.add(EmailAddress.dedupeKey(this._email(i)));
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * add - Append a recipient without a name
+         *
+         * @param  email   the address
+         * @return         The builder.
+         * @throws IllegalArgumentException   when the address is not well formed
+         */
+        public Builder add(String email) {
+            return this.add(email, "");
+        }
+
+        /**
+         * add - Append a recipient
+         *
+         * @param  email   the address
+         * @param  name    the name, or ""
+         * @return         The builder.
+         * @throws IllegalArgumentException   when the address is not well formed
+         */
+        public Builder add(String email, String name) {
+            if (email == null) {
+                throw new IllegalArgumentException("A recipient needs an email address");
+            }
+
+            return this._add(EmailAddress.require(email), name);
+        }
+
+        /**
+         * _add - Append a recipient whose address is already in canonical form, such as one
+         * read back from a list that was built before
+         *
+         * @param  email   the address
+         * @param  name    the name, or ""
+         * @return         The builder.
+         */
+        Builder _add(String email, String name) {
+            this._own();
+            int start = this.length;
+            this._utf8(email);
+            int emailEnd = this.length;
+            if (name != null) {
+                this._utf8(name);
+            }
+            this._commit(start, emailEnd, this.length, email);
+
+            return this;
+        }
+
+        /**
+         * addAll - Append every recipient of a list
+         *
+         * @param  recipients   the list
+         * @return              The builder.
+         */
+        public Builder addAll(RecipientList recipients) {
+            if (this.size == 0 && this.deduplicate == false) {
+                // Nothing to copy into yet, so share the list's storage instead
+                return this._reset(recipients);
+            }
+            this._own();
+            for (int i = 0; i < recipients.size(); i++) {
+                int start = this.length,
+                    emailEnd = start + recipients.emailEnd(i) - recipients.emailStart(i);
+                this._bytes(recipients.data(), recipients.emailStart(i), recipients.nameEnd(i));
+                this._commit(start, emailEnd, this.length, this.deduplicate ? recipients.getEmail(i) : null);
+            }
+
+            return this;
+        }
+
+        /**
+         * addAll - Append a recipient without a name for every address an iterator returns.
+         * The addresses are consumed one at a time, so they need not all be in memory.
+         *
+         * @param  emails   the addresses
+         * @return          The builder.
+         * @throws IllegalArgumentException   when an address is not well formed
+         */
+        public Builder addAll(Iterator<String> emails) {
+            while (emails.hasNext()) {
+                this.add(emails.next());
+            }
+
+            return this;
+        }
+
+        /**
+         * addAll - Append the recipients in a UTF-8 text file: one per line, the address
+         * optionally followed by a tab and the name. Blank lines are skipped and spaces
+         * around the address and name are trimmed. The file is read in blocks straight into
+         * the builder's storage, and each address is checked and put in canonical form as
+         * add() does.
+         *
+         * @param  file   the file
+         * @return        The builder.
+         * @throws IOException
+         * @throws IllegalArgumentException   when an address is not well formed
+         */
+        public Builder addAll(Path file) throws IOException {
+            this._own();
+            InputStream in = Files.newInputStream(file);
+            try {
+                byte[] block = new byte[65536];
+                int line = this.length,
+                    read;
+                while ((read = in.read(block)) != -1) {
+                    int from = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (block[i] == '\n') {
+                            this._bytes(block, from, i);
+                            this._line(line);
+                            line = this.length;
+                            from = i + 1;
+                        }
+                    }
+                    this._bytes(block, from, read);
+                }
+                this._line(line);
+            } finally {
+                in.close();
+            }
+
+            return this;
+        }
+
+        /**
+         * clear - Remove every recipient
+         *
+         * @return   The builder.
+         */
+        public Builder clear() {
+            if (this.owned && this.shared == false) {
+                this.size = 0;
+                this.length = 0;
+            } else {
+                this.data = new byte[256];
+                this.offsets = new int[33];
+                this.first = 0;
+                this.size = 0;
+                this.length = 0;
+                this.owned = true;
+                this.shared = false;
+            }
+            if (this.deduplicate) {
+                this.keys.clear();
+            }
+
+            return this;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * getDuplicateCount - Get how many addresses deduplication has skipped
+         *
+         * @return  the number of skipped addresses
+         */
+        public int getDuplicateCount() {
+            return this.duplicates;
+        }
+
+        /**
+         * build - Take an immutable snapshot of the list, without copying it
+         *
+         * @return  the list
+         */
+        public RecipientList build() {
+            if (this.size == 0) {
+                return EMPTY;
+            }
+            this.shared = true;
+
+            return new RecipientList(this.data, this.offsets, this.first, this.size);
+        }
+
+        private Builder _reset(RecipientList recipients) {
+            this.data = recipients.data;
+            this.offsets = recipients.offsets;
+            this.first = recipients.first;
+            this.size = recipients.size;
+            this.length = recipients.offsets[2 * (recipients.first + recipients.size)];
+            this.owned = false;
+
+            return this;
+        }
+
+        /**
+         * _own - Copy storage shared with a list this builder did not build, before the
+         * first change, so that both can grow independently
+         */
+        private void _own() {
+            if (this.owned) {
+                return;
+            }
+            int start = this.offsets[2 * this.first],
+                end = this.length;
+            byte[] data = new byte[Math.max(256, (end - start) * 2)];
+            System.arraycopy(this.data, start, data, 0, end - start);
+            int[] offsets = new int[Math.max(33, 4 * this.size + 1)];
+            for (int i = 0; i <= 2 * this.size; i++) {
+                offsets[i] = this.offsets[2 * this.first + i] - start;
+            }
+            this.data = data;
+            this.offsets = offsets;
+            this.first = 0;
+            this.length = end - start;
+            this.owned = true;
+            this.shared = false;
+        }
+
+        /**
+         * _line - Turn the raw line at data[line, length) into an entry, trimmed, or drop it
+         * when it is blank
+         */
+        private void _line(int line) {
+            int end = this.length,
+                tab = line;
+            while (tab < end && this.data[tab] != '\t') {
+                tab++;
+            }
+            int emailStart = _skip(this.data, line, tab),
+                emailEnd = _trim(this.data, emailStart, tab),
+                nameStart = (tab < end) ? _skip(this.data, tab + 1, end) : end,
+                nameEnd = _trim(this.data, nameStart, end);
+            this.length = line;
+            if (emailStart == emailEnd) {
+                return;
+            }
+            String email = new String(this.data, emailStart, emailEnd - emailStart, StandardCharsets.UTF_8),
+                   canonical = EmailAddress.require(email);
+            if (canonical != email) {
+                // normalize() returns the same String only when it is canonical already
+                byte[] name = Arrays.copyOfRange(this.data, nameStart, nameEnd);
+                this._utf8(canonical);
+                int nameTo = this.length;
+                this._bytes(name, 0, name.length);
+                this._commit(line, nameTo, this.length, canonical);
+                return;
+            }
+            // Move the address and name down over the spaces and the tab
+            System.arraycopy(this.data, emailStart, this.data, line, emailEnd - emailStart);
+            int nameTo = line + emailEnd - emailStart;
+            System.arraycopy(this.data, nameStart, this.data, nameTo, nameEnd - nameStart);
+            this._commit(line, nameTo, nameTo + nameEnd - nameStart, email);
+        }
+
+        /**
+         * _commit - Record the bytes at data[start, end) as an entry, or drop them when
+         * deduplication finds the address already present
+         *
+         * @param  email   the address, needed only while deduplicating
+         */
+        private void _commit(int start, int emailEnd, int end, String email) {
+            if (this.deduplicate && this.keys.add(EmailAddress.dedupeKey(email)) == false) {
+                this.duplicates++;
+                this.length = start;
+                return;
+            }
+            int slot = 2 * (this.first + this.size);
+            if (slot + 3 > this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2 + 1);
+            }
+            this.offsets[slot] = start;
+            this.offsets[slot + 1] = emailEnd;
+            this.offsets[slot + 2] = end;
+            this.length = end;
+            this.size++;
+        }
+
+        /**
+         * _email - Decode the address of an entry already added
+         */
+        private String _email(int index) {
+            int slot = 2 * (this.first + index);
+
+            return new String(this.data, this.offsets[slot], this.offsets[slot + 1] - this.offsets[slot], StandardCharsets.UTF_8);
+        }
+
+        /**
+         * _utf8 - Append a string as UTF-8, the way String.getBytes() encodes it
+         */
+        private void _utf8(String value) {
+            this._ensure(value.length() * 3);
+            byte[] data = this.data;
+            int p = this.length;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    data[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    data[p++] = (byte) (0xC0 | (c >> 6));
+                    data[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int code = Character.toCodePoint(c, value.charAt(++i));
+                    data[p++] = (byte) (0xF0 | (code >> 18));
+                    data[p++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                    data[p++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                    data[p++] = (byte) (0x80 | (code & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    data[p++] = '?';
+                } else {
+                    data[p++] = (byte) (0xE0 | (c >> 12));
+                    data[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    data[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            this.length = p;
+        }
+
+        private void _bytes(byte[] bytes, int from, int to) {
+            this._ensure(to - from);
+            System.arraycopy(bytes, from, this.data, this.length, to - from);
+            this.length += to - from;
+        }
+
+        private void _ensure(int more) {
+            if (this.length + more > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.length + more));
+            }
+        }
+
+        private static int _skip(byte[] data, int from, int to) {
+            while (from < to && (data[from] == ' ' || data[from] == '\r')) {
+                from++;
+            }
+            return from;
+        }
+
+        private static int _trim(byte[] data, int from, int to) {
+            while (to > from && (data[to - 1] == ' ' || data[to - 1] == '\r')) {
+                to--;
+            }
+            return to;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package googleSendgridJava;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy - Decides which failed sends are retried, and how long to wait before each retry.
+ *
+ * By default a send is retried when the connection could not be established, when the API
+ * answers 429 (rate limited) and when it answers with a 5xx status. Delays grow exponentially
+ * from the base delay up to the maximum, with "full jitter": each delay is drawn uniformly
+ * between zero and the exponential value, so clients that failed together do not retry
+ * together. A Retry-After header sent by the API takes precedence over the computed delay.
+ * Local failures (see SendResult.isLocalFailure) are never retried.
+ *
+ * Configure a policy before handing it to a client; after that it is only read, and may be
+ * shared between threads.
+ */
+public class RetryPolicy {
+
+    private int maxAttempts;
+    private long baseDelay = 200,
+                 maxDelay  = 10000,
+                 maxRetryAfter = 60000;
+    private boolean retryConnectErrors = true,
+                    retryOtherIOErrors = false,
+                    retryRateLimited   = true,
+                    retryServerErrors  = true,
+                    honorRetryAfter    = true;
+
+    /**
+     * none - A policy that never retries
+     *
+     * @return  the policy
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(1);
+    }
+
+    /**
+     * @param  maxAttempts   the most times a message is sent, the first attempt included
+     */
+    public RetryPolicy(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * setBackoff - Set the delay before the first retry and the cap on later delays,
+     * 200ms and 10s by default
+     *
+     * @param  baseDelayMillis   the delay before the first retry
+     * @param  maxDelayMillis    the longest delay between two attempts
+     * @return                   the policy.
+     * @throws IllegalArgumentException   when the base delay is negative or over the cap
+     */
+    public RetryPolicy setBackoff(long baseDelayMillis, long maxDelayMillis) {
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("baseDelayMillis must be between 0 and maxDelayMillis");
+        }
+        this.baseDelay = baseDelayMillis;
+        this.maxDelay = maxDelayMillis;
+
+        return this;
+    }
+
+    /**
+     * setRetryConnectErrors - Retry when no connection could be made, true by default. The
+     * request never reached the API, so retrying cannot duplicate it.
+     *
+     * @param  retry   whether to retry
+     * @return         the policy.
+     */
+    public RetryPolicy setRetryConnectErrors(boolean retry) {
+        this.retryConnectErrors = retry;
+
+        return this;
+    }
+
+    /**
+     * setRetryOtherIOErrors - Retry on any other I/O error, such as a read timeout, false by
+     * default. The API may already have accepted such a request, so retrying can send the
+     * message twice.
+     *
+     * @param  retry   whether to retry
+     * @return         the policy.
+     */
+    public RetryPolicy setRetryOtherIOErrors(boolean retry) {
+        this.retryOtherIOErrors = retry;
+
+        return this;
+    }
+
+    /**
+     * setRetryRateLimited - Retry on 429 Too Many Requests, true by default
+     *
+     * @param  retry   whether to retry
+     * @return         the policy.
+     */
+    public RetryPolicy setRetryRateLimited(boolean retry) {
+        this.retryRateLimited = retry;
+
+        return this;
+    }
+
+    /**
+     * setRetryServerErrors - Retry on 5xx responses, true by default
+     *
+     * @param  retry   whether to retry
+     * @return         the policy.
+     */
+    public RetryPolicy setRetryServerErrors(boolean retry) {
+        this.retryServerErrors = retry;
+
+        return this;
+    }
+
+    /**
+     * setHonorRetryAfter - Wait as long as the API's Retry-After header asks, up to the given
+     * limit, instead of the computed delay. On by default, with a limit of 60s; a longer
+     * Retry-After ends the retries.
+     *
+     * @param  honor               whether to honor Retry-After
+     * @param  maxRetryAfterMillis the longest Retry-After to wait for
+     * @return                     the policy.
+     */
+    public RetryPolicy setHonorRetryAfter(boolean honor, long maxRetryAfterMillis) {
+        this.honorRetryAfter = honor;
+        this.maxRetryAfter = maxRetryAfterMillis;
+
+        return this;
+    }
+
+    /**
+     * isRetryable - Whether a failed attempt is of a kind this policy retries
+     *
+     * @param  result   the outcome of the attempt
+     * @return          true when the attempt may be retried
+     */
+    public boolean isRetryable(SendResult result) {
+        if (result.isSuccess() || result.isLocalFailure()) {
+            // A local failure would only fail the same way again
+            return false;
+        }
+        if (result.getStatus() == 0) {
+            Throwable cause = result.getCause();
+            if (cause instanceof CircuitBreaker.OpenException) {
+                return false;
+            }
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                || cause instanceof NoRouteToHostException) {
+                return this.retryConnectErrors;
+            }
+            return cause instanceof java.io.IOException && this.retryOtherIOErrors;
+        }
+        if (result.getStatus() == 429) {
+            return this.retryRateLimited;
+        }
+
+        return result.getStatus() >= 500 && this.retryServerErrors;
+    }
+
+    /**
+     * delayMillis - How long to wait before the next attempt, or -1 not to retry
+     *
+     * @param  attempt   the number of the attempt that just failed, starting at 1
+     * @param  result    the outcome of that attempt
+     * @return           the delay in milliseconds, or -1
+     */
+    public long delayMillis(int attempt, SendResult result) {
+        if (attempt >= this.maxAttempts || this.isRetryable(result) == false) {
+            return -1;
+        }
+        if (this.honorRetryAfter && result.getRetryAfterMillis() >= 0) {
+            return (result.getRetryAfterMillis() <= this.maxRetryAfter) ? result.getRetryAfterMillis() : -1;
+        }
+        // Doubled per attempt up to the cap, checked before shifting so it cannot wrap
+        int doublings = Math.min(attempt - 1, 62);
+        long ceiling = (this.baseDelay > (this.maxDelay >> doublings)) ? this.maxDelay : this.baseDelay << doublings;
+
+        return (ceiling == Long.MAX_VALUE) ? ThreadLocalRandom.current().nextLong(ceiling)
+            : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * parseRetryAfter - Parse a Retry-After header, either delay-seconds or an HTTP-date
+     *
+     * @param  value   the header value, or null
+     * @param  now     the current time in milliseconds
+     * @return         the delay in milliseconds, or -1 when absent or unreadable
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            // A delay too long to hold in milliseconds is longer than any limit anyway
+            return (seconds > Long.MAX_VALUE / 1000) ? Long.MAX_VALUE : Math.max(0, seconds * 1000);
+        } catch (NumberFormatException e) {
+            // not delay-seconds
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package googleSendgridJava;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SendExecutor - Runs asynchronous sends on an Executor while bounding how many of them are
+ * outstanding at once.
+ *
+ * submit() takes a permit before handing the task to the executor and the task gives it back
+ * when it finishes. When all permits are taken the caller blocks (or, with an acquire
+ * timeout, gets a future failed with RejectedExecutionException), which pushes back on
+ * producers instead of letting an unbounded queue of pending sends build up.
+ *
+ * The permit is given back before the task's future completes, so a callback on the future
+ * may submit the next send from the worker thread without waiting for its own slot.
+ */
+public class SendExecutor {
+
+    private static SendExecutor defaultExecutor;
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    // Tasks from submitWhenFree() waiting for a permit, started as permits are given back
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+    private long acquireTimeout = 0;
+
+    /**
+     * getDefault - Return the executor shared by sendAsync() calls that have not been given
+     * one of their own: 32 daemon threads, at most 1024 sends outstanding
+     *
+     * @return  the shared executor
+     */
+    public static synchronized SendExecutor getDefault() {
+        if (defaultExecutor == null) {
+            defaultExecutor = fixed(32, 1024);
+        }
+
+        return defaultExecutor;
+    }
+
+    /**
+     * fixed - A fixed pool of daemon threads
+     *
+     * @param  threads       the number of threads
+     * @param  maxInFlight   the most sends outstanding at once, running or queued
+     * @return               the executor
+     */
+    public static SendExecutor fixed(int threads, int maxInFlight) {
+        return new SendExecutor(Executors.newFixedThreadPool(threads, new DaemonThreadFactory()), maxInFlight);
+    }
+
+    /**
+     * virtualThreads - One virtual thread per send, on runtimes that have them (Java 21+).
+     * On older runtimes this falls back to a cached pool of daemon threads, which the
+     * in-flight limit still keeps bounded.
+     *
+     * @param  maxInFlight   the most sends outstanding at once
+     * @return               the executor
+     */
+    public static SendExecutor virtualThreads(int maxInFlight) {
+        ExecutorService executor;
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+        }
+
+        return new SendExecutor(executor, maxInFlight);
+    }
+
+    /**
+     * @param  executor      runs the sends
+     * @param  maxInFlight   the most sends outstanding at once, running or queued
+     */
+    public SendExecutor(Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * setAcquireTimeout - Set how long submit() blocks for a free slot before failing the
+     * send with a RejectedExecutionException. By default it blocks as long as it takes.
+     *
+     * @param  millis   timeout in milliseconds, 0 to wait forever
+     * @return          the executor.
+     */
+    public SendExecutor setAcquireTimeout(long millis) {
+        this.acquireTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * getMaxInFlight - Get the most sends outstanding at once
+     *
+     * @return  the in-flight limit
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * getInFlight - Get the number of sends currently outstanding
+     *
+     * @return  running plus queued sends
+     */
+    public int getInFlight() {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    /**
+     * submit - Run a task once a slot is free
+     *
+     * @param  task   the task
+     * @return        a future completed with the task's value, or exceptionally if the
+     *                task threw or could not be scheduled
+     */
+    public <T> CompletableFuture<T> submit(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            this._acquire();
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        this._execute(task, future);
+
+        return future;
+    }
+
+    /**
+     * submitWhenFree - Run a task once a slot is free, without blocking the caller: when
+     * every slot is taken the task waits, and starts on the next slot given back
+     *
+     * @param  task   the task
+     * @return        a future completed with the task's value, or exceptionally if the
+     *                task threw or could not be scheduled
+     */
+    public <T> CompletableFuture<T> submitWhenFree(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        this.waiting.add(new Runnable() {
+            public void run() {
+                _execute(task, future);
+            }
+        });
+        this._drain();
+
+        return future;
+    }
+
+    /**
+     * _execute - Hand a task holding a permit to the executor. The permit is given back
+     * before the future completes.
+     */
+    private <T> void _execute(final Callable<T> task, final CompletableFuture<T> future) {
+        try {
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    T value;
+                    try {
+                        value = task.call();
+                    } catch (Throwable t) {
+                        _release();
+                        future.completeExceptionally(t);
+                        return;
+                    }
+                    _release();
+                    future.complete(value);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this._release();
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * shutdown - Stop accepting sends, when the underlying executor can be shut down
+     */
+    public void shutdown() {
+        if (this.executor instanceof ExecutorService) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+    private void _release() {
+        this.permits.release();
+        this._drain();
+    }
+
+    /**
+     * _drain - Start waiting tasks while permits are free. Whoever adds a task or gives a
+     * permit back drains, so a task is never left waiting next to a free permit.
+     */
+    private void _drain() {
+        while (this.waiting.isEmpty() == false && this.permits.tryAcquire()) {
+            Runnable next = this.waiting.poll();
+            if (next == null) {
+                // Taken by another thread draining at the same time
+                this.permits.release();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    private void _acquire() {
+        try {
+            if (this.acquireTimeout <= 0) {
+                this.permits.acquire();
+            } else if (!this.permits.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException(this.maxInFlight + " sends already in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for a free slot", e);
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger pool = new AtomicInteger();
+        private final int poolNumber = pool.incrementAndGet();
+        private final AtomicInteger thread = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "sendgrid-" + this.poolNumber + "-send-" + this.thread.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package googleSendgridJava;
+
+/**
+ * SendMetrics - Receives timings and counts from the send pipeline.
+ *
+ * Every call is made on the thread doing the work, while it does it, so an implementation
+ * can also attach the phases to whatever tracing span is current on that thread. Calls come
+ * from many threads at once and must be cheap; NONE, the default, ignores them all.
+ */
+public interface SendMetrics {
+
+    /**
+     * The phases of a send, in the order they happen.
+     */
+    public static enum Phase {
+        /** Copying a Sendgrid object into a Message (toMessage()) */
+        PREPARE,
+        /** Encoding the form body, measured as the pass that computes its length */
+        ENCODE,
+        /** Waiting for one of the transport's in-flight slots */
+        ACQUIRE,
+        /** Compressing the request body, when the transport does */
+        COMPRESS,
+        /** Opening the connection, or taking one from the keep-alive cache */
+        CONNECT,
+        /** Writing the request body to the connection */
+        WRITE,
+        /** Waiting for the status line once the body is written */
+        FIRST_BYTE,
+        /** Reading the response body */
+        READ,
+        /** Interpreting the response body */
+        PARSE,
+        /** One whole attempt, from the limiters to the parsed result */
+        ATTEMPT
+    }
+
+    /**
+     * A SendMetrics that records nothing.
+     */
+    public static final SendMetrics NONE = new SendMetrics() {
+        public void recordPhase(Phase phase, long nanos) {
+        }
+
+        public void recordRequest(long bytes, int recipients) {
+        }
+
+        public void recordResult(SendResult result) {
+        }
+
+        public void recordRetry(SendResult result) {
+        }
+    };
+
+    /**
+     * recordPhase - One phase of a send has completed
+     *
+     * @param  phase   the phase
+     * @param  nanos   how long it took
+     */
+    public void recordPhase(Phase phase, long nanos);
+
+    /**
+     * recordRequest - A request is about to be sent
+     *
+     * @param  bytes        the size of the request body, or -1 when not known
+     * @param  recipients   the number of recipients in the request
+     */
+    public void recordRequest(long bytes, int recipients);
+
+    /**
+     * recordResult - An attempt has completed
+     *
+     * @param  result   the outcome of the attempt
+     */
+    public void recordResult(SendResult result);
+
+    /**
+     * recordRetry - A failed attempt will be retried
+     *
+     * @param  result   the outcome of the attempt that failed
+     */
+    public void recordRetry(SendResult result);
+}
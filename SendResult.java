@@ -0,0 +1,163 @@
+package googleSendgridJava;
+
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SendResult - The outcome of a single request to the SendGrid API.
+ *
+ * A result is either a success, an error reported by the API (with the HTTP status and the
+ * list of error strings it returned), or a failure to reach the API at all (with the cause).
+ */
+public class SendResult {
+
+    private final boolean success;
+    private final int status;
+    private final List<String> errors;
+    private final Throwable cause;
+    private final String message;
+    private final long retryAfterMillis;
+
+    private SendResult(boolean success, int status, List<String> errors, Throwable cause, String message,
+                       long retryAfterMillis) {
+        this.success = success;
+        this.status = status;
+        this.errors = errors;
+        this.cause = cause;
+        this.message = message;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * success - A request the API accepted
+     *
+     * @param  status   the HTTP status code
+     * @return          the result
+     */
+    public static SendResult success(int status) {
+        return new SendResult(true, status, Collections.<String>emptyList(), null, "success", -1);
+    }
+
+    /**
+     * apiError - A request the API answered with an error
+     *
+     * @param  status   the HTTP status code
+     * @param  errors   the error strings returned by the API
+     * @return          the result
+     */
+    public static SendResult apiError(int status, List<String> errors) {
+        return apiError(status, errors, -1);
+    }
+
+    /**
+     * apiError - A request the API answered with an error and a Retry-After header
+     *
+     * @param  status             the HTTP status code
+     * @param  errors             the error strings returned by the API
+     * @param  retryAfterMillis   the delay the API asked for, or -1
+     * @return                    the result
+     */
+    public static SendResult apiError(int status, List<String> errors, long retryAfterMillis) {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < errors.size(); i++) {
+            if (i != 0) {
+                message.append(", ");
+            }
+            message.append(errors.get(i));
+        }
+
+        return new SendResult(false, status, Collections.unmodifiableList(errors), null, message.toString(),
+                              retryAfterMillis);
+    }
+
+    /**
+     * failure - A request that never got an answer from the API
+     *
+     * @param  message   a short description of the failure
+     * @param  cause     the exception that caused it
+     * @return           the result
+     */
+    public static SendResult failure(String message, Throwable cause) {
+        return new SendResult(false, 0, Collections.<String>emptyList(), cause, message, -1);
+    }
+
+    /**
+     * isSuccess - Whether the API accepted the request
+     *
+     * @return  true on success
+     */
+    public boolean isSuccess() {
+        return this.success;
+    }
+
+    /**
+     * isLocalFailure - Whether the request failed on this side before the API could judge
+     * it: a body that cannot be read, a malformed url, no free connection in time, or an
+     * interrupted send. Such a failure says nothing about the health of the API.
+     *
+     * @return  true for a local failure
+     */
+    public boolean isLocalFailure() {
+        if (this.success || this.status != 0) {
+            return false;
+        }
+
+        // A SocketTimeoutException is an InterruptedIOException too, but the API was too slow
+        return this.cause instanceof Transport.LocalException || this.cause instanceof MalformedURLException
+            || this.cause instanceof InterruptedException
+            || (this.cause instanceof InterruptedIOException && (this.cause instanceof SocketTimeoutException) == false);
+    }
+
+    /**
+     * getStatus - Get the HTTP status code
+     *
+     * @return  the status code, or 0 when no response was received
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * getErrors - Get the error strings returned by the API
+     *
+     * @return  the errors, empty unless this is an API error
+     */
+    public List<String> getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * getCause - Get the exception that prevented the request from completing
+     *
+     * @return  the cause, or null
+     */
+    public Throwable getCause() {
+        return this.cause;
+    }
+
+    /**
+     * getRetryAfterMillis - Get how long the API asked the client to wait before retrying
+     *
+     * @return  the delay in milliseconds, or -1 when the API did not say
+     */
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+
+    /**
+     * getMessage - Get the server response message, in the same form as
+     * Sendgrid.getServerResponse()
+     *
+     * @return  the message
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    public String toString() {
+        return this.success ? "success" : "failure: " + this.message;
+    }
+}
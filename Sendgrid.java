@@ -1,16 +1,11 @@
 package googleSendgridJava;
 
-import java.net.HttpURLConnection;
 import java.util.*;
 import java.io.IOException;
-import java.util.Iterator;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.appengine.labs.repackaged.org.json.JSONException;
 import com.google.appengine.labs.repackaged.org.json.JSONObject;
@@ -18,7 +13,7 @@ import com.google.appengine.labs.repackaged.org.json.JSONArray;
 
 
 public class Sendgrid {
-    
+
     private String from,
                    from_name,
                    reply_to,
@@ -30,12 +25,28 @@ public class Sendgrid {
     private ArrayList<String> to_list  = new ArrayList<String>();
     private ArrayList<String> to_name_list  = new ArrayList<String>();
     private ArrayList<String> bcc_list = new ArrayList<String>();
+    private ArrayList<Attachment> attachment_list = new ArrayList<Attachment>();
     private JSONObject header_list = new JSONObject();
+    private final HeaderCache headerCache = new HeaderCache();
+    // The recipients as of the last send, and their "to" JSON; null once they change
+    private RecipientList recipients;
+    private String recipientsJson;
+    private boolean recipientsUseHeaders,
+                    recipientsExposed = false;
 
     protected String domain = "https://sendgrid.com/",
                      endpoint= "api/mail.send.json",
                      username,
                      password;
+    private Transport transport = HttpUrlConnectionTransport.getDefault();
+    private SendExecutor executor = SendExecutor.getDefault();
+    private RetryPolicy retryPolicy = RetryPolicy.none();
+    private CircuitBreaker circuitBreaker;
+    private RateLimiter rateLimiter;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private SendMetrics metrics = SendMetrics.NONE;
+    private DuplicateFilter duplicateFilter;
+    private SendgridClient client;
 
     public Sendgrid(String username, String password) {
         this.username = username;
@@ -48,11 +59,14 @@ public class Sendgrid {
     }
 
     /**
-     * getTos - Return the list of recipients
+     * getTos - Return the list of recipients. The list is live; once it has been handed
+     * out, the recipients are encoded afresh on every send.
      *
      * @return  List of recipients
      */
     public ArrayList<String> getTos() {
+        this.recipientsExposed = true;
+
         return this.to_list;
     }
 
@@ -77,8 +91,11 @@ public class Sendgrid {
      * @param    email   Recipient email address
      * @param    name    Recipient name
      * @return           The SendGrid object.
+     * @throws IllegalArgumentException   when the address is not well formed
      */
     public Sendgrid addTo(String email, String name) {
+        email = EmailAddress.require(email);
+        this.recipients = null;
         if (this._useHeaders() == true){
             String toAddress = (name.length() > 0) ? name + "<" + email + ">" : email;
             this.to_list.add(toAddress);
@@ -105,11 +122,13 @@ public class Sendgrid {
     }
 
     /**
-     * getTos - Return the list of names for recipients
+     * getTos - Return the list of names for recipients. The list is live, like getTos().
      *
      * @return  List of names
      */
     public ArrayList<String> getToNames() {
+        this.recipientsExposed = true;
+
         return this.to_name_list;
     }
 
@@ -127,9 +146,10 @@ public class Sendgrid {
      *
      * @param    email   An email address
      * @return           The SendGrid object.
+     * @throws IllegalArgumentException   when the address is not well formed
      */
     public Sendgrid setFrom(String email) {
-        this.from = email;
+        this.from = EmailAddress.require(email);
 
         return this;
     }
@@ -169,9 +189,10 @@ public class Sendgrid {
      *
      * @param  email   the email to reply to
      * @return         the SendGrid object.
+     * @throws IllegalArgumentException   when the address is not well formed
      */
     public Sendgrid setReplyTo(String email) {
-      this.reply_to = email;
+      this.reply_to = EmailAddress.require(email);
 
       return this;
     }
@@ -192,8 +213,10 @@ public class Sendgrid {
      * @param  email   an email address
      * @return         the SendGrid object.
      * @throws JSONException
+     * @throws IllegalArgumentException   when the address is not well formed
      */
     public Sendgrid setBcc(String email) throws JSONException {
+        email = EmailAddress.require(email);
         this.bcc_list = new ArrayList<String>();
         this.bcc_list.add(email);
         if (this._useHeaders() == true)
@@ -205,6 +228,61 @@ public class Sendgrid {
         return this;
     }
 
+    /**
+     * getAttachments - Get the list of attachments
+     *
+     * @return  List of attachments
+     */
+    public ArrayList<Attachment> getAttachments() {
+        return this.attachment_list;
+    }
+
+    /**
+     * addAttachment - Attach a file, which is streamed from disk when the email is sent
+     *
+     * @param  path   the file
+     * @return        the SendGrid object.
+     * @throws IOException
+     */
+    public Sendgrid addAttachment(Path path) throws IOException {
+        return this.addAttachment(Attachment.fromPath(path));
+    }
+
+    /**
+     * addAttachment - Attach the content of a stream, which is read when the email is sent.
+     * The email can then only be sent once.
+     *
+     * @param  name     the file name
+     * @param  stream   the content
+     * @return          the SendGrid object.
+     */
+    public Sendgrid addAttachment(String name, InputStream stream) {
+        return this.addAttachment(Attachment.fromStream(name, stream, -1));
+    }
+
+    /**
+     * addAttachment - Attach the remaining bytes of a buffer, which is not copied
+     *
+     * @param  name    the file name
+     * @param  bytes   the content
+     * @return         the SendGrid object.
+     */
+    public Sendgrid addAttachment(String name, ByteBuffer bytes) {
+        return this.addAttachment(Attachment.fromBytes(name, bytes));
+    }
+
+    /**
+     * addAttachment - Append an attachment to the list of attachments
+     *
+     * @param  attachment   the attachment
+     * @return              the SendGrid object.
+     */
+    public Sendgrid addAttachment(Attachment attachment) {
+        this.attachment_list.add(attachment);
+
+        return this;
+    }
+
     /** 
      * getSubject - Get the email subject
      * 
@@ -279,6 +357,7 @@ public class Sendgrid {
     public Sendgrid setCategories(String[] category_list) throws JSONException {
         JSONArray categories_json = new JSONArray(category_list);
         this.header_list.put("category", categories_json);
+        this.headerCache.replaced("category", false);
         this.addCategory("google_sendgrid_java_lib");
 
         return this;
@@ -294,6 +373,7 @@ public class Sendgrid {
     public Sendgrid setCategory(String category) throws JSONException {
         JSONArray json_category = new JSONArray(new String[]{category});
         this.header_list.put("category", json_category);
+        this.headerCache.replaced("category", false);
         this.addCategory("google_sendgrid_java_lib");
 
         return this;
@@ -309,6 +389,7 @@ public class Sendgrid {
     public Sendgrid addCategory(String category) throws JSONException {
         if (true == this.header_list.has("category")) {
             ((JSONArray) this.header_list.get("category")).put(category);
+            this.headerCache.changed("category");
         } else {
             this.setCategory(category);
         }
@@ -327,6 +408,7 @@ public class Sendgrid {
     public Sendgrid setSubstitutions(JSONObject key_value_pairs) {
         try {
             this.header_list.put("sub", key_value_pairs);
+            this.headerCache.replaced("sub", true);
         } catch (JSONException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -351,9 +433,11 @@ public class Sendgrid {
     public Sendgrid addSubstitution(String from_value, String[] to_values) throws JSONException {
       if (false == this.header_list.has("sub")) {
         this.header_list.put("sub", new JSONObject());
+        this.headerCache.replaced("sub", false);
       }
       JSONArray json_values = new JSONArray(to_values);
       ((JSONObject) this.header_list.get("sub")).put(from_value, json_values);
+      this.headerCache.changed("sub");
 
       return this;
     }
@@ -367,6 +451,7 @@ public class Sendgrid {
      */
     public Sendgrid setSections(JSONObject key_value_pairs) throws JSONException {
         this.header_list.put("section", key_value_pairs);
+        this.headerCache.replaced("section", true);
 
         return this;
     }
@@ -382,8 +467,10 @@ public class Sendgrid {
     public Sendgrid addSection(String from_value, String to_value) throws JSONException {
         if (false == this.header_list.has("section")) {
           this.header_list.put("section", new JSONObject() );
+          this.headerCache.replaced("section", false);
         }
         ((JSONObject) this.header_list.get("section")).put(from_value, to_value);
+        this.headerCache.changed("section");
 
         return this;
     }
@@ -396,6 +483,7 @@ public class Sendgrid {
     public Sendgrid setUniqueArguments(JSONObject key_value_pairs) {
         try {
             this.header_list.put("unique_args", key_value_pairs);
+            this.headerCache.replaced("unique_args", true);
         } catch (JSONException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -414,6 +502,7 @@ public class Sendgrid {
         if (false == this.header_list.has("unique_args")) {
           try {
               this.header_list.put("unique_args", new JSONObject());
+              this.headerCache.replaced("unique_args", false);
           } catch (JSONException e) {
               // TODO Auto-generated catch block
               e.printStackTrace();
@@ -421,6 +510,7 @@ public class Sendgrid {
         }
         try {
             ((JSONObject) this.header_list.get("unique_args")).put(key, value);
+            this.headerCache.changed("unique_args");
         } catch (JSONException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -437,6 +527,7 @@ public class Sendgrid {
     public Sendgrid setFilterSettings(JSONObject filter_settings) {
         try {
             this.header_list.put("filters", filter_settings);
+            this.headerCache.replaced("filters", true);
         } catch (JSONException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -456,6 +547,7 @@ public class Sendgrid {
     public Sendgrid addFilterSetting(String filter_name, String parameter_name, String parameter_value) throws JSONException {
         if (false == this.header_list.has("filters")) {
             this.header_list.put("filters", new JSONObject());
+            this.headerCache.replaced("filters", false);
         }
         if (false == ((JSONObject) this.header_list.get("filters")).has(filter_name)) {
             ((JSONObject) this.header_list.get("filters")).put(filter_name, new JSONObject());
@@ -465,16 +557,21 @@ public class Sendgrid {
         }
         ((JSONObject) ((JSONObject) ((JSONObject) this.header_list.get("filters")).get(filter_name)).get("settings"))
             .put(parameter_name, parameter_value);
+        this.headerCache.changed("filters");
 
         return this;
     }
 
     /**
-     * getHeaders - return the list of headers
+     * getHeaders - return the list of headers. The object is live: changes made to it are
+     * sent, but once it has been handed out, the header is encoded afresh on every send
+     * instead of only the sections changed since the last one.
      *
      * @return JSONObject with headers
      */
     public JSONObject getHeaders() {
+        this.headerCache.exposed();
+
         return this.header_list;
     }
 
@@ -487,6 +584,7 @@ public class Sendgrid {
      */
     public Sendgrid setHeaders(JSONObject key_value_pairs) {
         this.header_list = key_value_pairs;
+        this.headerCache.exposed();
 
         return this;
     }
@@ -500,6 +598,188 @@ public class Sendgrid {
         return this.serverResponse;
     }
 
+    /**
+     * getTransport - Get the transport used to reach the SendGrid API
+     *
+     * @return  The transport
+     */
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * setTransport - Set the transport used to reach the SendGrid API. By default every
+     * Sendgrid object shares HttpUrlConnectionTransport.getDefault() and its connections.
+     *
+     * @param    transport   the transport to use
+     * @return               The SendGrid object.
+     */
+    public Sendgrid setTransport(Transport transport) {
+        this.transport = transport;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getExecutor - Get the executor that runs sendAsync() requests
+     *
+     * @return  The executor
+     */
+    public SendExecutor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * setExecutor - Set the executor that runs sendAsync() requests. By default every
+     * Sendgrid object shares SendExecutor.getDefault().
+     *
+     * @param    executor   the executor to use
+     * @return              The SendGrid object.
+     */
+    public Sendgrid setExecutor(SendExecutor executor) {
+        this.executor = executor;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getRetryPolicy - Get which failed sends are retried
+     *
+     * @return  The retry policy
+     */
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    /**
+     * setRetryPolicy - Set which failed sends are retried. By default nothing is retried.
+     *
+     * @param    retryPolicy   the policy to use
+     * @return                 The SendGrid object.
+     */
+    public Sendgrid setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getCircuitBreaker - Get the circuit breaker guarding sends
+     *
+     * @return  The breaker, or null for none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * setCircuitBreaker - Set a circuit breaker to guard sends. Share one breaker between
+     * every Sendgrid object that uses the same account.
+     *
+     * @param    circuitBreaker   the breaker, or null for none
+     * @return                    The SendGrid object.
+     */
+    public Sendgrid setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getRateLimiter - Get the limit on requests and recipients per second
+     *
+     * @return  The limiter, or null for none
+     */
+    public RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    /**
+     * setRateLimiter - Set a limit on requests and recipients per second. Share one limiter
+     * between every Sendgrid object that uses the same account.
+     *
+     * @param    rateLimiter   the limiter, or null for none
+     * @return                 The SendGrid object.
+     */
+    public Sendgrid setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getConcurrencyLimiter - Get the adaptive limit on requests in flight
+     *
+     * @return  The limiter, or null for none
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    /**
+     * setConcurrencyLimiter - Set a limit on requests in flight that adapts to how the API
+     * responds. Share one limiter between every Sendgrid object that uses the same account.
+     *
+     * @param    concurrencyLimiter   the limiter, or null for none
+     * @return                        The SendGrid object.
+     */
+    public Sendgrid setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getMetrics - Get what records the timings and counts of this object's sends
+     *
+     * @return  The metrics
+     */
+    public SendMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * setMetrics - Set what records the timings and counts of this object's sends
+     *
+     * @param    metrics   the metrics, SendMetrics.NONE by default
+     * @return             The SendGrid object.
+     */
+    public Sendgrid setMetrics(SendMetrics metrics) {
+        this.metrics = metrics;
+        this.client = null;
+
+        return this;
+    }
+
+    /**
+     * getDuplicateFilter - Get the filter that answers a repeated send of the same email
+     *
+     * @return  The filter, or null for none
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return this.duplicateFilter;
+    }
+
+    /**
+     * setDuplicateFilter - Set a filter that answers a repeated send of the same email from
+     * the first send, without a request. Share one filter between every Sendgrid object.
+     *
+     * @param    duplicateFilter   the filter, or null for none
+     * @return                     The SendGrid object.
+     */
+    public Sendgrid setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+        this.client = null;
+
+        return this;
+    }
+
     /**
      * _arrayToUrlPart - Converts an ArrayList to a url friendly string
      *
@@ -508,59 +788,57 @@ public class Sendgrid {
      * @return         a url part that can be concatenated to a url request
      */
     protected String _arrayToUrlPart(ArrayList<String> array, String token) {
-        String string = "";
+        StringBuilder string = new StringBuilder();
         for(int i = 0;i < array.size();i++)
         {
-            try {
-                string += "&" + token + "[]=" + URLEncoder.encode(array.get(i), "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+            string.append("&").append(token).append("[]=");
+            TextEncoding.urlEncode(string, array.get(i));
         }
 
-        return string;
+        return string.toString();
     }
 
     /**
-     * _prepMessageData - Takes the mail message and returns a url friendly querystring
+     * _prepMessageData - Takes the mail message and returns a url friendly querystring.
+     * The parameters are in the order the request body writes them.
      *
      * @return the data query string to be posted
      * @throws JSONException 
      */
     protected Map<String, String> _prepMessageData() throws JSONException {
-        Map<String,String> params = new HashMap<String, String>();
+        Map<String,String> params = new LinkedHashMap<String, String>();
 
         params.put("api_user", this.username);
         params.put("api_key", this.password);
+
+        if (this._useHeaders() == true) {
+            // Assembled from the JSON of each section, encoded again only if it changed
+            StringBuilder headers = new StringBuilder("{");
+            this.headerCache.write(headers, this.header_list);
+            this._recipients(true);
+            headers.append("\"to\":").append(this.recipientsJson).append('}');
+            params.put("to", this.getFrom());
+            params.put("x-smtpapi", headers.toString());
+        } else {
+            params.put("to", this.to_list.toString());
+            if (this.to_name_list.size() > 0) {
+                params.put("toname", this.to_name_list.toString());
+            }
+        }
+
         params.put("subject", this.getSubject());
+        params.put("text",this.getText());
         if(this.getHtml() != null) {
             params.put("html", this.getHtml());
         }
+        params.put("from", this.getFrom());
         if(this.getFromName() != null) {
             params.put("fromname", this.getFromName());
         }
-        params.put("text",this.getText());
-        params.put("from", this.getFrom());
-
         if (this.getReplyTo() != null) {
             params.put("replyto", this.getReplyTo());
         }
 
-        if (this._useHeaders() == true) {
-            JSONObject headers = this.getHeaders();
-            params.put("to", this.getFrom());
-            JSONArray tos_json = new JSONArray(this.getTos());
-            headers.put("to", tos_json);
-            this.setHeaders(headers);
-            params.put("x-smtpapi", _escapeUnicode(this.getHeaders().toString()));
-        } else {
-            params.put("to", this.getTos().toString());
-            if (this.getToNames().size() > 0) {
-                params.put("toname", this.getToNames().toString());
-            }
-        }
-
         return params;
     }
 
@@ -592,89 +870,150 @@ public class Sendgrid {
      * @throws JSONException
      */
     public void send(WarningListener w) throws JSONException {
-        Map<String,String> data = new HashMap<String, String>();
-
-        data = this._prepMessageData();
-        StringBuffer requestParams = new StringBuffer();
-        Iterator<String> paramIterator = data.keySet().iterator();
-        while (paramIterator.hasNext()) {
-            final String key = paramIterator.next();
-            final String value = data.get(key);
-            if (key.equals("to") && this.getTos().size() > 0) {
-                if (this._useHeaders() == true){
-                    try {
-                        requestParams.append("to=" + URLEncoder.encode(value, "UTF-8") + "&");
-                    } catch (UnsupportedEncodingException e) {
-                        e.printStackTrace();
-                    }
-                } else{
-                    requestParams.append(this._arrayToUrlPart(this.getTos(), "to")+"&");
-                }
-            } else {
-                if (key.equals("toname") && this.getToNames().size() > 0) {
-                    requestParams.append(this._arrayToUrlPart(this.getToNames(), "toname").substring(1)+"&");
-                } else {
-                    try {
-                        requestParams.append(URLEncoder.encode(key, "UTF-8"));
-                    } catch (UnsupportedEncodingException e) {
-                        w.warning("Unsupported Encoding Exception", e);
-                    }
-                    requestParams.append("=");
-                    try {
-                        requestParams.append(URLEncoder.encode(value, "UTF-8"));
-                    } catch (UnsupportedEncodingException e) {
-                        w.warning("Unsupported Encoding Exception", e);
-                    }
-                    requestParams.append("&");
-                }
-            }
+        SendResult result = this._client().send(this._timedMessage());
+
+        serverResponse = result.getMessage();
+        if (result.isSuccess() == false) {
+            w.warning(result.getMessage(), result.getCause());
         }
-        String request = this.domain + this.endpoint;
+    }
 
-        if (this.getBccs().size() > 0){
-            request += "?" +this._arrayToUrlPart(this.getBccs(), "bcc").substring(1);
+    /**
+     * sendAsync - Send an email without blocking the calling thread. The message is copied
+     * before this method returns, so the Sendgrid object may be changed or reused right away.
+     * The future completes with the outcome of the request, failed or not, and does not
+     * change getServerResponse().
+     *
+     * @return the outcome of the request
+     * @throws JSONException
+     */
+    public CompletableFuture<SendResult> sendAsync() throws JSONException {
+        return this._client().sendAsync(this._timedMessage());
+    }
+
+    /**
+     * toMessage - Take an immutable snapshot of the mail message, which can be sent by any
+     * SendgridClient
+     *
+     * @return the message
+     * @throws JSONException
+     */
+    public Message toMessage() throws JSONException {
+        Boolean useHeaders = this._useHeaders();
+        Message.Builder message = Message.builder()
+            .setUseHeaders(useHeaders)
+            ._setEncodedRecipients(this._recipients(useHeaders), this.recipientsJson)
+            .setFrom(this.getFrom())
+            .setFromName(this.getFromName())
+            .setReplyTo(this.getReplyTo())
+            .setSubject(this.getSubject())
+            .setText(this.getText())
+            .setHtml(this.getHtml());
+        this.headerCache.apply(this.header_list, message);
+        for (String bcc : this.bcc_list) {
+            message.setBcc(bcc);
+        }
+        for (Attachment attachment : this.attachment_list) {
+            message.addAttachment(attachment);
         }
-        try {
-            URL url = new URL(request);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoOutput(true);
-            connection.setRequestMethod("POST");
-
-            OutputStreamWriter writer = new OutputStreamWriter(connection.getOutputStream());
-            writer.write(requestParams.toString());
-            // Get the response
-            writer.flush();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line, response = "";
-
-            while ((line = reader.readLine()) != null) {
-                // Process line...
-                response += line;
-            }
-            reader.close();
-            writer.close();
 
-            if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                // OK
-                serverResponse = "success";
+        return message.build();
+    }
+
+    /**
+     * _recipients - The recipients for a message, and their "to" JSON in recipientsJson
+     * when they go in the header, built again only when they have changed since the last
+     * send
+     *
+     * @param  useHeaders   whether the recipients go in the header
+     * @return              the recipients
+     */
+    private RecipientList _recipients(boolean useHeaders) {
+        if (this.recipients != null && this.recipientsExposed == false && this.recipientsUseHeaders == useHeaders) {
+            return this.recipients;
+        }
+        RecipientList.Builder recipients = RecipientList.builder();
+        for (int i = 0; i < this.to_list.size(); i++) {
+            if (useHeaders) {
+                _addFolded(recipients, this.to_list.get(i));
             } else {
-                // Server returned HTTP error code.
-                JSONObject apiResponse = new JSONObject(response);
-                JSONArray errorsObj = (JSONArray) apiResponse.get("errors");
-                for (int i = 0; i < errorsObj.length(); i++) {
-                    if (i != 0) {
-                        serverResponse += ", ";
-                    }
-                    serverResponse += errorsObj.get(i);
+                String name = (i < this.to_name_list.size()) ? this.to_name_list.get(i) : "";
+                recipients.add(this.to_list.get(i), name);
+            }
+        }
+        this.recipients = recipients.build();
+        this.recipientsUseHeaders = useHeaders;
+        this.recipientsJson = null;
+        if (useHeaders) {
+            StringBuilder json = new StringBuilder();
+            try {
+                SmtpApiWriter.writeRecipients(json, this.recipients);
+            } catch (IOException e) {
+                // Never thrown by a StringBuilder
+                throw new IllegalStateException(e);
+            }
+            this.recipientsJson = json.toString();
+        }
+
+        return this.recipients;
+    }
+
+    /**
+     * _addFolded - Add a recipient that addTo() has folded into "name<email>" for the header
+     * as its address and name, so the list holds the bare address and the header writer
+     * folds them together again
+     */
+    private static void _addFolded(RecipientList.Builder recipients, String to) {
+        if (to.endsWith(">")) {
+            // A quoted local part may hold a "<" as well, so take the last one that leaves
+            // a valid address
+            for (int open = to.lastIndexOf('<'); open >= 0; open = to.lastIndexOf('<', open - 1)) {
+                String email = to.substring(open + 1, to.length() - 1);
+                if (EmailAddress.isValid(email)) {
+                    recipients.add(email, to.substring(0, open));
+                    return;
                 }
-                w.warning(serverResponse, null);
             }
-        } catch (MalformedURLException e) {
-            w.warning("Malformed URL Exception", e);
-        } catch (IOException e) {
-            w.warning("IO Exception", e);
         }
+        recipients.add(to, "");
+    }
+
+    /**
+     * _timedMessage - toMessage(), recorded as the PREPARE phase
+     */
+    private Message _timedMessage() throws JSONException {
+        long start = System.nanoTime();
+        Message message = this.toMessage();
+        this.metrics.recordPhase(SendMetrics.Phase.PREPARE, System.nanoTime() - start);
+
+        return message;
+    }
+
+    /**
+     * _client - The client for this object's credentials, endpoint and send settings,
+     * rebuilt only when one of them changes. The setters drop the client; the credential and
+     * endpoint fields are protected, so they are compared instead.
+     */
+    private SendgridClient _client() {
+        SendgridClient client = this.client;
+        if (client == null
+            || client._isFor(this.username, this.password, this.domain + this.endpoint) == false) {
+            client = SendgridClient.builder(this.username, this.password)
+                .setDomain(this.domain)
+                .setEndpoint(this.endpoint)
+                .setTransport(this.transport)
+                .setExecutor(this.executor)
+                .setRetryPolicy(this.retryPolicy)
+                .setCircuitBreaker(this.circuitBreaker)
+                .setRateLimiter(this.rateLimiter)
+                .setConcurrencyLimiter(this.concurrencyLimiter)
+                .setMetrics(this.metrics)
+                .setDuplicateFilter(this.duplicateFilter)
+                .build();
+            this.client = client;
+        }
+
+        return client;
     }
 
     /**
@@ -738,18 +1077,4 @@ public class Sendgrid {
 
         return false;
     }
-    
-    private String _escapeUnicode(String input) {
-        StringBuilder sb = new StringBuilder();
-        int len = input.length();
-        for (int i = 0; i < len; i++) {
-          int code = Character.codePointAt(input, i);
-          if (code > 127) {
-            sb.append(String.format("\\u%x", code));
-          } else {
-            sb.append(String.format("%c", code));
-          }
-        }
-        return sb.toString();
-      }
 }
@@ -0,0 +1,643 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * SendgridClient - Sends Messages to the SendGrid web API.
+ *
+ * A client holds only the credentials and the objects used to reach the API, and never
+ * changes after it is built, so a single client can be shared by every thread in the
+ * process and send any number of messages in parallel.
+ *
+ * Failed sends are retried according to the client's RetryPolicy (none by default), and an
+ * optional CircuitBreaker fails sends at once while the API is known to be down. An optional
+ * RateLimiter and AdaptiveConcurrencyLimiter hold each attempt back until it fits within the
+ * account's throughput. An optional DuplicateFilter answers repeated sends of a message from
+ * the first send, without a request.
+ */
+public final class SendgridClient implements MessageSender {
+
+    private final String username,
+                         password,
+                         url;
+    private final Transport transport;
+    private final SendExecutor executor;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final RateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final SendMetrics metrics;
+    private final DuplicateFilter duplicateFilter;
+    private final long keySeed;
+
+    private static ScheduledExecutorService retryScheduler;
+
+    private SendgridClient(Builder builder) {
+        this.username = builder.username;
+        this.password = builder.password;
+        this.url = builder.domain + builder.endpoint;
+        this.transport = builder.transport;
+        this.executor = builder.executor;
+        this.retryPolicy = builder.retryPolicy;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.rateLimiter = builder.rateLimiter;
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.metrics = builder.metrics;
+        this.duplicateFilter = builder.duplicateFilter;
+        this.keySeed = XxHash64.hash(this.username + "\n" + this.url);
+    }
+
+    /**
+     * builder - Start configuring a client
+     *
+     * @param  username   the SendGrid username
+     * @param  password   the SendGrid password
+     * @return            a new builder
+     */
+    public static Builder builder(String username, String password) {
+        return new Builder(username, password);
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * getUrl - Get the url messages are posted to
+     *
+     * @return  the API endpoint url
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    public SendExecutor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * getRetryPolicy - Get the policy deciding which failed sends are retried
+     *
+     * @return  the policy, RetryPolicy.none() unless one was set
+     */
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    /**
+     * getCircuitBreaker - Get the circuit breaker guarding this client's sends
+     *
+     * @return  the breaker, or null when there is none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * getRateLimiter - Get the rate limiter this client's sends wait on
+     *
+     * @return  the limiter, or null when there is none
+     */
+    public RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    /**
+     * getConcurrencyLimiter - Get the limiter bounding this client's requests in flight
+     *
+     * @return  the limiter, or null when there is none
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    /**
+     * getMetrics - Get the metrics this client's sends are recorded in
+     *
+     * @return  the metrics, SendMetrics.NONE unless they were set
+     */
+    public SendMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * getDuplicateFilter - Get the filter suppressing repeated sends
+     *
+     * @return  the filter, or null when there is none
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return this.duplicateFilter;
+    }
+
+    /**
+     * _isFor - Whether this client was built with these credentials and url
+     */
+    boolean _isFor(String username, String password, String url) {
+        return _equals(this.username, username) && _equals(this.password, password) && _equals(this.url, url);
+    }
+
+    private static boolean _equals(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    /**
+     * send - Send a message, blocking until the API answers. Retries happen on the calling
+     * thread, which sleeps through the backoff delays.
+     *
+     * @param  message   the message
+     * @return           the outcome of the last attempt, or of the earlier send of the same
+     *                   message when the duplicate filter suppresses this one. A message with
+     *                   a stream attachment is never suppressed.
+     */
+    public SendResult send(Message message) {
+        // A stream attachment is not hashed, so the message cannot be told from another
+        if (this.duplicateFilter == null || message.isRepeatable() == false) {
+            return this._send(message);
+        }
+        long key = message.getContentHash() ^ this.keySeed;
+        CompletableFuture<SendResult> future = new CompletableFuture<SendResult>();
+        CompletableFuture<SendResult> earlier = this.duplicateFilter.claim(key, future);
+        if (earlier != null) {
+            try {
+                return earlier.join();
+            } catch (CompletionException e) {
+                // The earlier send threw rather than failed
+                return SendResult.failure("Unexpected Exception", e.getCause());
+            } catch (CancellationException e) {
+                return SendResult.failure("Cancelled", e);
+            }
+        }
+        SendResult result;
+        try {
+            result = this._send(message);
+        } catch (RuntimeException e) {
+            this.duplicateFilter.complete(key, future, null);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        this.duplicateFilter.complete(key, future, result);
+        future.complete(result);
+
+        return result;
+    }
+
+    /**
+     * _send - Send a message and retry it on the calling thread
+     */
+    private SendResult _send(Message message) {
+        String url = MessageEncoder.requestUrl(this.url, message);
+        Transport.Body body = this._encode(message);
+        int recipients = _recipientCount(message);
+        for (int attempt = 1; ; attempt++) {
+            SendResult result = this._attempt(url, body, recipients);
+            long delay = this._retryDelay(attempt, result, body);
+            if (delay < 0) {
+                return result;
+            }
+            this.metrics.recordRetry(result);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+        }
+    }
+
+    /**
+     * sendAsync - Send a message on the client's executor. A retry does not hold a thread
+     * or an in-flight slot while it waits out its backoff delay; it is resubmitted to the
+     * executor once the delay is over.
+     *
+     * @param  message   the message
+     * @return           a future completed with the outcome of the last attempt, or of the
+     *                   earlier send of the same message when the duplicate filter
+     *                   suppresses this one. A message with a stream attachment is never
+     *                   suppressed.
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message) {
+        final CompletableFuture<SendResult> future = new CompletableFuture<SendResult>();
+        if (this.duplicateFilter != null && message.isRepeatable()) {
+            final long key = message.getContentHash() ^ this.keySeed;
+            CompletableFuture<SendResult> earlier = this.duplicateFilter.claim(key, future);
+            if (earlier != null) {
+                // A future of its own, so the caller cannot complete the earlier one
+                final CompletableFuture<SendResult> copy = new CompletableFuture<SendResult>();
+                earlier.whenComplete(new BiConsumer<SendResult, Throwable>() {
+                    public void accept(SendResult result, Throwable error) {
+                        if (error != null) {
+                            copy.completeExceptionally(error);
+                        } else {
+                            copy.complete(result);
+                        }
+                    }
+                });
+                return copy;
+            }
+            future.whenComplete(new BiConsumer<SendResult, Throwable>() {
+                public void accept(SendResult result, Throwable error) {
+                    duplicateFilter.complete(key, future, result);
+                }
+            });
+        }
+        try {
+            this._submit(MessageEncoder.requestUrl(this.url, message), this._encode(message),
+                _recipientCount(message), 1, future);
+        } catch (RuntimeException e) {
+            // Completing the future frees the duplicate filter's claim, which would otherwise
+            // never expire and hold up every later send of the message
+            future.completeExceptionally(e);
+            throw e;
+        }
+
+        return future;
+    }
+
+    /**
+     * _submit - Run one attempt on the executor, and schedule the next one if it fails. A
+     * retry is handed over without blocking, as it comes from the shared retry thread.
+     */
+    private void _submit(final String url, final Transport.Body body, final int recipients, final int attempt,
+                         final CompletableFuture<SendResult> future) {
+        Callable<SendResult> task = new Callable<SendResult>() {
+            public SendResult call() {
+                return _attempt(url, body, recipients);
+            }
+        };
+        CompletableFuture<SendResult> sent = (attempt == 1) ? this.executor.submit(task)
+            : this.executor.submitWhenFree(task);
+        sent.whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable error) {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                    return;
+                }
+                long delay = _retryDelay(attempt, result, body);
+                if (delay < 0) {
+                    future.complete(result);
+                    return;
+                }
+                metrics.recordRetry(result);
+                _retryScheduler().schedule(new Runnable() {
+                    public void run() {
+                        _submit(url, body, recipients, attempt + 1, future);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * _retryDelay - The backoff before the next attempt, or -1 when there is none. A body
+     * that reads from a stream cannot be sent again, so it is never retried.
+     */
+    private long _retryDelay(int attempt, SendResult result, Transport.Body body) {
+        if (body.isRepeatable() == false) {
+            return -1;
+        }
+
+        return this.retryPolicy.delayMillis(attempt, result);
+    }
+
+    /**
+     * _attempt - Make one request, unless the circuit breaker refuses it, once the limiters
+     * allow it. The breaker is asked first, so a refused send takes no rate limiter tokens
+     * from the sends that follow it.
+     */
+    private SendResult _attempt(String url, Transport.Body body, int recipients) {
+        long ticket = (this.circuitBreaker != null) ? this.circuitBreaker.tryAcquire() : 0;
+        if (ticket == CircuitBreaker.REFUSED) {
+            return SendResult.failure("Circuit Breaker Open",
+                new CircuitBreaker.OpenException("Not sending while the SendGrid API is failing"));
+        }
+        try {
+            if (this.rateLimiter != null) {
+                this.rateLimiter.acquire(recipients);
+            }
+            if (this.concurrencyLimiter != null) {
+                this.concurrencyLimiter.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SendResult interrupted = SendResult.failure("Interrupted", e);
+            if (this.circuitBreaker != null) {
+                // A local failure, so it only ends the breaker's trial if this was one
+                this.circuitBreaker.record(ticket, interrupted);
+            }
+            return interrupted;
+        }
+        long start = System.nanoTime();
+        this.metrics.recordRequest(body.contentLength(), recipients);
+        AcquireTimer timer = (this.concurrencyLimiter != null) ? new AcquireTimer(this.metrics) : null;
+        SendResult result = null;
+        try {
+            result = this._post(url, body, (timer != null) ? timer : this.metrics);
+        } finally {
+            if (result == null) {
+                // The transport or the body threw: free the slot and end the breaker's trial,
+                // or they would stay taken for good. A bug on this side says nothing about
+                // the API, so it is not counted against it.
+                if (this.concurrencyLimiter != null) {
+                    this.concurrencyLimiter.cancel();
+                }
+                if (this.circuitBreaker != null) {
+                    this.circuitBreaker.record(ticket, SendResult.failure("Unexpected Exception",
+                        new Transport.LocalException("The transport or the request body threw")));
+                }
+            }
+        }
+        long latency = System.nanoTime() - start;
+        if (this.concurrencyLimiter != null) {
+            if (result.isLocalFailure()) {
+                // Not a measure of the API, so it must not move the limit
+                this.concurrencyLimiter.cancel();
+            } else {
+                // Timed from when the transport had a slot, so the limiter does not react to
+                // its own queueing
+                this.concurrencyLimiter.release(result, latency - timer.acquireNanos, body.contentLength());
+            }
+        }
+        if (this.circuitBreaker != null) {
+            this.circuitBreaker.record(ticket, result);
+        }
+        this.metrics.recordPhase(SendMetrics.Phase.ATTEMPT, latency);
+        this.metrics.recordResult(result);
+
+        return result;
+    }
+
+    /**
+     * _encode - Prepare the request body, and compute its length up front so the encoding
+     * pass is timed on its own
+     */
+    private Transport.Body _encode(Message message) {
+        long start = System.nanoTime();
+        Transport.Body body = MessageEncoder.body(message, this.username, this.password);
+        body.contentLength();
+        this.metrics.recordPhase(SendMetrics.Phase.ENCODE, System.nanoTime() - start);
+
+        return body;
+    }
+
+    /**
+     * _recipientCount - The number of recipients a message is delivered to
+     */
+    private static int _recipientCount(Message message) {
+        return message.getTos().size() + message.getBccs().size();
+    }
+
+    /**
+     * _retryScheduler - The daemon thread that waits out the backoff delays of asynchronous
+     * retries, shared by every client
+     */
+    private static synchronized ScheduledExecutorService _retryScheduler() {
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "sendgrid-retry");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return retryScheduler;
+    }
+
+    /**
+     * _post - Post an encoded message and interpret the response
+     */
+    private SendResult _post(String url, Transport.Body body, SendMetrics metrics) {
+        Transport.Response response;
+        try {
+            response = this.transport.post(url, MessageEncoder.contentType(body), body, metrics);
+        } catch (MalformedURLException e) {
+            return SendResult.failure("Malformed URL Exception", e);
+        } catch (IOException e) {
+            return SendResult.failure("IO Exception", e);
+        }
+
+        long start = System.nanoTime();
+        SendResult result = _parse(response);
+        this.metrics.recordPhase(SendMetrics.Phase.PARSE, System.nanoTime() - start);
+
+        return result;
+    }
+
+    /**
+     * _parse - Interpret an API response
+     */
+    private static SendResult _parse(Transport.Response response) {
+        if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+            // OK
+            return SendResult.success(response.getStatus());
+        }
+        // Server returned HTTP error code.
+        List<String> errors = ErrorParser.parse(response.getBody());
+        if (errors == null) {
+            // Not an API error document, e.g. a proxy error page
+            errors = new ArrayList<String>();
+            errors.add("HTTP " + response.getStatus() + ": " + response.getBody());
+        }
+
+        return SendResult.apiError(response.getStatus(), errors,
+            RetryPolicy.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+    }
+
+    /**
+     * Passes a transport's timings on, and keeps how long it waited for an in-flight slot.
+     */
+    private static final class AcquireTimer implements SendMetrics {
+        private final SendMetrics metrics;
+        long acquireNanos = 0;
+
+        AcquireTimer(SendMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public void recordPhase(Phase phase, long nanos) {
+            if (phase == Phase.ACQUIRE) {
+                this.acquireNanos += nanos;
+            }
+            this.metrics.recordPhase(phase, nanos);
+        }
+
+        public void recordRequest(long bytes, int recipients) {
+            this.metrics.recordRequest(bytes, recipients);
+        }
+
+        public void recordResult(SendResult result) {
+            this.metrics.recordResult(result);
+        }
+
+        public void recordRetry(SendResult result) {
+            this.metrics.recordRetry(result);
+        }
+    }
+
+    /**
+     * Configures a SendgridClient.
+     */
+    public static final class Builder {
+        private final String username,
+                             password;
+        private String domain = "https://sendgrid.com/",
+                       endpoint = "api/mail.send.json";
+        private Transport transport = HttpUrlConnectionTransport.getDefault();
+        private SendExecutor executor = SendExecutor.getDefault();
+        private RetryPolicy retryPolicy = RetryPolicy.none();
+        private CircuitBreaker circuitBreaker;
+        private RateLimiter rateLimiter;
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private SendMetrics metrics = SendMetrics.NONE;
+        private DuplicateFilter duplicateFilter;
+
+        private Builder(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        /**
+         * setDomain - Set the API base url, "https://sendgrid.com/" by default
+         *
+         * @param  domain   the base url, with a trailing slash
+         * @return          The builder.
+         */
+        public Builder setDomain(String domain) {
+            this.domain = domain;
+
+            return this;
+        }
+
+        /**
+         * setEndpoint - Set the API path, "api/mail.send.json" by default
+         *
+         * @param  endpoint   the path, relative to the domain
+         * @return            The builder.
+         */
+        public Builder setEndpoint(String endpoint) {
+            this.endpoint = endpoint;
+
+            return this;
+        }
+
+        /**
+         * setTransport - Set the transport, HttpUrlConnectionTransport.getDefault() by default
+         *
+         * @param  transport   the transport
+         * @return             The builder.
+         */
+        public Builder setTransport(Transport transport) {
+            this.transport = transport;
+
+            return this;
+        }
+
+        /**
+         * setExecutor - Set the executor for sendAsync(), SendExecutor.getDefault() by default
+         *
+         * @param  executor   the executor
+         * @return            The builder.
+         */
+        public Builder setExecutor(SendExecutor executor) {
+            this.executor = executor;
+
+            return this;
+        }
+
+        /**
+         * setRetryPolicy - Set which failed sends are retried, RetryPolicy.none() by default
+         *
+         * @param  retryPolicy   the policy
+         * @return               The builder.
+         */
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+
+            return this;
+        }
+
+        /**
+         * setCircuitBreaker - Set a circuit breaker to guard every attempt, none by default
+         *
+         * @param  circuitBreaker   the breaker, or null for none
+         * @return                  The builder.
+         */
+        public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+
+            return this;
+        }
+
+        /**
+         * setRateLimiter - Set a limit on requests and recipients per second, none by default
+         *
+         * @param  rateLimiter   the limiter, or null for none
+         * @return               The builder.
+         */
+        public Builder setRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+
+            return this;
+        }
+
+        /**
+         * setConcurrencyLimiter - Set a limit on requests in flight, none by default
+         *
+         * @param  concurrencyLimiter   the limiter, or null for none
+         * @return                      The builder.
+         */
+        public Builder setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+
+            return this;
+        }
+
+        /**
+         * setMetrics - Set what records the timings and counts of this client's sends,
+         * SendMetrics.NONE by default
+         *
+         * @param  metrics   the metrics
+         * @return           The builder.
+         */
+        public Builder setMetrics(SendMetrics metrics) {
+            this.metrics = metrics;
+
+            return this;
+        }
+
+        /**
+         * setDuplicateFilter - Set a filter that answers repeated sends of a message from
+         * the first send, none by default
+         *
+         * @param  duplicateFilter   the filter, or null for none
+         * @return                   The builder.
+         */
+        public Builder setDuplicateFilter(DuplicateFilter duplicateFilter) {
+            this.duplicateFilter = duplicateFilter;
+
+            return this;
+        }
+
+        public SendgridClient build() {
+            return new SendgridClient(this);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package googleSendgridJava;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * ShardedClient - Spreads sends over several SendGrid accounts or endpoints, each with its
+ * own SendgridClient.
+ *
+ * Every send goes to one shard, chosen among those its message may use: the shards routed
+ * to the message's first routed category, or all of them. WEIGHTED spreads sends in
+ * proportion to the shards' weights, interleaved rather than in runs; LEAST_OUTSTANDING
+ * picks the shard with the fewest sends in flight for its weight, which steers sends away
+ * from an account that is slow or held back by its rate limiter.
+ *
+ * Limits and health belong to each shard's client: give it its own RateLimiter for the
+ * account's limits, and a CircuitBreaker, which takes the shard out of rotation while it is
+ * open. When every shard a message may use is open, they are all tried anyway. A send the
+ * API did not accept (refused by an open breaker, or answered with 429) is retried once on
+ * each other shard the message may use, unless failover is turned off.
+ *
+ * The client is immutable once built and thread-safe.
+ */
+public final class ShardedClient implements MessageSender {
+
+    /**
+     * How sends are spread over the shards.
+     */
+    public static enum Strategy { WEIGHTED, LEAST_OUTSTANDING }
+
+    private final List<Shard> shards;
+    private final Map<String, List<Shard>> routes;
+    private final Strategy strategy;
+    private final boolean failover;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private ShardedClient(Builder builder) {
+        this.shards = Collections.unmodifiableList(new ArrayList<Shard>(builder.shards));
+        this.routes = new HashMap<String, List<Shard>>(builder.routes);
+        this.strategy = builder.strategy;
+        this.failover = builder.failover;
+    }
+
+    /**
+     * builder - Start configuring a sharded client
+     *
+     * @return  a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * getShards - Get the shards, in the order they were added
+     *
+     * @return  the shards
+     */
+    public List<Shard> getShards() {
+        return this.shards;
+    }
+
+    public Strategy getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * send - Send a message through one of the shards, blocking until the API answers
+     *
+     * @param  message   the message
+     * @return           the outcome of the send on the last shard tried
+     */
+    public SendResult send(Message message) {
+        List<Shard> candidates = this._candidates(message);
+        boolean[] tried = new boolean[candidates.size()];
+        while (true) {
+            int index = this._choose(candidates, tried);
+            Shard shard = candidates.get(index);
+            tried[index] = true;
+            shard.outstanding.incrementAndGet();
+            SendResult result;
+            try {
+                result = shard.client.send(message);
+            } finally {
+                shard.outstanding.decrementAndGet();
+            }
+            shard._record(result);
+            if (this._failOver(result, tried) == false) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * sendAsync - Send a message through one of the shards, on that shard's executor
+     *
+     * @param  message   the message
+     * @return           a future completed with the outcome of the send on the last shard
+     *                   tried
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message) {
+        CompletableFuture<SendResult> future = new CompletableFuture<SendResult>();
+        List<Shard> candidates = this._candidates(message);
+        this._sendAsync(message, candidates, new boolean[candidates.size()], future);
+
+        return future;
+    }
+
+    private void _sendAsync(final Message message, final List<Shard> candidates, final boolean[] tried,
+                            final CompletableFuture<SendResult> future) {
+        int index = this._choose(candidates, tried);
+        final Shard shard = candidates.get(index);
+        tried[index] = true;
+        shard.outstanding.incrementAndGet();
+        shard.client.sendAsync(message).whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable error) {
+                shard.outstanding.decrementAndGet();
+                if (error != null) {
+                    future.completeExceptionally(error);
+                    return;
+                }
+                shard._record(result);
+                if (_failOver(result, tried)) {
+                    _sendAsync(message, candidates, tried, future);
+                } else {
+                    future.complete(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * _candidates - The shards a message may be sent through
+     */
+    private List<Shard> _candidates(Message message) {
+        if (this.routes.isEmpty() == false) {
+            Object categories = message.getHeaders().get("category");
+            if (categories instanceof String) {
+                categories = Collections.singletonList(categories);
+            }
+            if (categories instanceof List) {
+                for (Object category : (List<?>) categories) {
+                    List<Shard> route = this.routes.get(String.valueOf(category));
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+        }
+
+        return this.shards;
+    }
+
+    /**
+     * _choose - Pick the shard for the next try, among the healthy candidates not tried yet
+     * or, when none is healthy, among all those not tried yet
+     *
+     * @return  the index of the shard in candidates
+     */
+    private int _choose(List<Shard> candidates, boolean[] tried) {
+        int chosen = this._choose(candidates, tried, true);
+
+        return (chosen >= 0) ? chosen : this._choose(candidates, tried, false);
+    }
+
+    private int _choose(List<Shard> candidates, boolean[] tried, boolean healthyOnly) {
+        int count = candidates.size();
+        if (this.strategy == Strategy.WEIGHTED) {
+            // Smooth weighted round robin: every shard earns its weight, the richest is
+            // chosen and pays back the total
+            synchronized (this) {
+                int chosen = -1;
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    Shard shard = candidates.get(i);
+                    if (tried[i] || (healthyOnly && shard.isHealthy() == false)) {
+                        continue;
+                    }
+                    shard.credit += shard.weight;
+                    total += shard.weight;
+                    if (chosen < 0 || shard.credit > candidates.get(chosen).credit) {
+                        chosen = i;
+                    }
+                }
+                if (chosen >= 0) {
+                    candidates.get(chosen).credit -= total;
+                }
+                return chosen;
+            }
+        }
+        // Start from a rotating offset, so ties do not all go to the first shard
+        int start = Math.floorMod(this.rotation.getAndIncrement(), count);
+        int chosen = -1;
+        double best = 0;
+        for (int n = 0; n < count; n++) {
+            int i = (start + n) % count;
+            Shard shard = candidates.get(i);
+            if (tried[i] || (healthyOnly && shard.isHealthy() == false)) {
+                continue;
+            }
+            double load = (shard.outstanding.get() + 1) / (double) shard.weight;
+            if (chosen < 0 || load < best) {
+                chosen = i;
+                best = load;
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * _failOver - Whether to try another shard after this result
+     */
+    private boolean _failOver(SendResult result, boolean[] tried) {
+        if (this.failover == false || result.isSuccess()) {
+            return false;
+        }
+        if (result.getStatus() != 429 && (result.getCause() instanceof CircuitBreaker.OpenException) == false) {
+            return false;
+        }
+        for (boolean t : tried) {
+            if (t == false) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * One account or endpoint, and the counters kept for it.
+     */
+    public static final class Shard {
+        private final SendgridClient client;
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong sent = new AtomicLong(),
+                                 failed = new AtomicLong();
+        // Guarded by the ShardedClient
+        private long credit = 0;
+
+        private Shard(SendgridClient client, int weight) {
+            this.client = client;
+            this.weight = weight;
+        }
+
+        public SendgridClient getClient() {
+            return this.client;
+        }
+
+        public int getWeight() {
+            return this.weight;
+        }
+
+        /**
+         * getOutstanding - Get the sends in flight on this shard, including those waiting on
+         * its limiters or retrying
+         *
+         * @return  the number of sends
+         */
+        public int getOutstanding() {
+            return this.outstanding.get();
+        }
+
+        /**
+         * getSentCount - Get the sends this shard completed successfully
+         *
+         * @return  the number of sends
+         */
+        public long getSentCount() {
+            return this.sent.get();
+        }
+
+        /**
+         * getFailureCount - Get the sends this shard completed with a transport error, a 429 or
+         * a 5xx
+         *
+         * @return  the number of sends
+         */
+        public long getFailureCount() {
+            return this.failed.get();
+        }
+
+        /**
+         * isHealthy - Whether the shard takes sends, which is unless its client's circuit
+         * breaker is open
+         *
+         * @return  true when the shard is in rotation
+         */
+        public boolean isHealthy() {
+            CircuitBreaker breaker = this.client.getCircuitBreaker();
+
+            return breaker == null || breaker.getState() != CircuitBreaker.State.OPEN;
+        }
+
+        private void _record(SendResult result) {
+            if (result.isSuccess()) {
+                this.sent.incrementAndGet();
+            } else if (CircuitBreaker.isFailure(result)) {
+                this.failed.incrementAndGet();
+            }
+        }
+
+        public String toString() {
+            return this.client.getUsername() + "@" + this.client.getUrl();
+        }
+    }
+
+    /**
+     * Configures a ShardedClient.
+     */
+    public static final class Builder {
+        private final List<Shard> shards = new ArrayList<Shard>();
+        private final Map<String, List<Shard>> routes = new HashMap<String, List<Shard>>();
+        private Strategy strategy = Strategy.WEIGHTED;
+        private boolean failover = true;
+
+        private Builder() {
+        }
+
+        /**
+         * addShard - Add an account with weight 1
+         *
+         * @param  client   the client for the account
+         * @return          The builder.
+         */
+        public Builder addShard(SendgridClient client) {
+            return this.addShard(client, 1);
+        }
+
+        /**
+         * addShard - Add an account
+         *
+         * @param  client   the client for the account
+         * @param  weight   its share of the sends, relative to the other shards
+         * @return          The builder.
+         */
+        public Builder addShard(SendgridClient client, int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("weight must be at least 1");
+            }
+            if (this._find(client) != null) {
+                throw new IllegalArgumentException("Shard already added: " + client.getUsername());
+            }
+            this.shards.add(new Shard(client, weight));
+
+            return this;
+        }
+
+        /**
+         * routeCategory - Send messages in a category through these shards only. A message
+         * follows the route of its first category that has one; messages with no routed
+         * category may use every shard.
+         *
+         * @param  category   the category
+         * @param  clients    clients already added with addShard()
+         * @return            The builder.
+         */
+        public Builder routeCategory(String category, SendgridClient... clients) {
+            if (clients.length == 0) {
+                throw new IllegalArgumentException("A route needs at least one shard");
+            }
+            List<Shard> route = new ArrayList<Shard>(clients.length);
+            for (SendgridClient client : clients) {
+                Shard shard = this._find(client);
+                if (shard == null) {
+                    throw new IllegalArgumentException("Not a shard: " + client.getUsername());
+                }
+                route.add(shard);
+            }
+            this.routes.put(category, Collections.unmodifiableList(route));
+
+            return this;
+        }
+
+        /**
+         * setStrategy - Set how sends are spread over the shards, WEIGHTED by default
+         *
+         * @param  strategy   the strategy
+         * @return            The builder.
+         */
+        public Builder setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+
+            return this;
+        }
+
+        /**
+         * setFailover - Set whether a send the API did not accept is retried on another
+         * shard, true by default
+         *
+         * @param  failover   whether to fail over
+         * @return            The builder.
+         */
+        public Builder setFailover(boolean failover) {
+            this.failover = failover;
+
+            return this;
+        }
+
+        public ShardedClient build() {
+            if (this.shards.isEmpty()) {
+                throw new IllegalStateException("No shards added");
+            }
+            return new ShardedClient(this);
+        }
+
+        private Shard _find(SendgridClient client) {
+            for (Shard shard : this.shards) {
+                if (shard.client == client) {
+                    return shard;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SmtpApiWriter - Serializes an X-SMTPAPI header straight to an Appendable.
+ *
+ * The header is written from the plain Java values a Message holds, with no intermediate
+ * JSON tree and no intermediate string. Every character outside printable ASCII is written
+ * as a JSON unicode escape while it is serialized, one per UTF-16 unit (so a character
+ * outside the BMP becomes an escaped surrogate pair), and the output is pure ASCII.
+ */
+final class SmtpApiWriter {
+
+    private SmtpApiWriter() {
+    }
+
+    /**
+     * writeHeader - Write a complete X-SMTPAPI header, copying the JSON of the values that
+     * are already encoded
+     *
+     * @param  out          where to write
+     * @param  headers      the header values of the message, without "to"
+     * @param  encoded      the JSON of the values already encoded, by key, and of the
+     *                      recipients under "to"
+     * @param  recipients   the recipients
+     * @throws IOException
+     */
+    static void writeHeader(Appendable out, Map<String, Object> headers, Map<String, String> encoded,
+                            RecipientList recipients) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : headers.entrySet()) {
+            if (first == false) {
+                out.append(',');
+            }
+            first = false;
+            writeString(out, entry.getKey());
+            out.append(':');
+            String json = encoded.get(entry.getKey());
+            if (json != null) {
+                out.append(json);
+            } else {
+                writeValue(out, entry.getValue());
+            }
+        }
+        if (first == false) {
+            out.append(',');
+        }
+        out.append("\"to\":");
+        String to = encoded.get("to");
+        if (to != null) {
+            out.append(to);
+        } else {
+            writeRecipients(out, recipients);
+        }
+        out.append('}');
+    }
+
+    /**
+     * writeRecipients - Write the "to" array, as "name<email>" where a name is given,
+     * decoding the recipients' UTF-8 bytes as they are escaped
+     *
+     * @param  out          where to write
+     * @param  recipients   the recipients
+     * @throws IOException
+     */
+    static void writeRecipients(Appendable out, RecipientList recipients) throws IOException {
+        byte[] data = recipients.data();
+        out.append('[');
+        for (int i = 0; i < recipients.size(); i++) {
+            if (i != 0) {
+                out.append(',');
+            }
+            int emailStart = recipients.emailStart(i),
+                emailEnd = recipients.emailEnd(i),
+                nameEnd = recipients.nameEnd(i);
+            out.append('"');
+            if (nameEnd > emailEnd) {
+                _escape(out, data, emailEnd, nameEnd);
+                out.append('<');
+                _escape(out, data, emailStart, emailEnd);
+                out.append('>');
+            } else {
+                _escape(out, data, emailStart, emailEnd);
+            }
+            out.append('"');
+        }
+        out.append(']');
+    }
+
+    /**
+     * writeValue - Write a Map, List, String, Number, Boolean or null as JSON
+     *
+     * @param  out     where to write
+     * @param  value   the value
+     * @throws IOException
+     */
+    static void writeValue(Appendable out, Object value) throws IOException {
+        if (value instanceof CharSequence) {
+            writeString(out, (CharSequence) value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (first == false) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                writeValue(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof List) {
+            out.append('[');
+            List<?> list = (List<?>) value;
+            for (int i = 0; i < list.size(); i++) {
+                if (i != 0) {
+                    out.append(',');
+                }
+                writeValue(out, list.get(i));
+            }
+            out.append(']');
+        } else if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value.toString());
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * writeString - Write a quoted, escaped JSON string
+     *
+     * @param  out     where to write
+     * @param  value   the string
+     * @throws IOException
+     */
+    static void writeString(Appendable out, CharSequence value) throws IOException {
+        out.append('"');
+        TextEncoding.escapeJson(out, value, 0, value.length());
+        out.append('"');
+    }
+
+    /**
+     * _escape - Escape UTF-8 bytes as the characters they decode to, with U+FFFD for a
+     * malformed sequence, like new String(bytes, UTF_8)
+     */
+    private static void _escape(Appendable out, byte[] data, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                _escape(out, (char) b);
+                i++;
+                continue;
+            }
+            int extra = (b >= 0xF0) ? 3 : (b >= 0xE0) ? 2 : (b >= 0xC0) ? 1 : -1;
+            int code = b & (0x3F >> extra);
+            boolean valid = (extra > 0) && (i + extra < end);
+            for (int k = 1; valid && k <= extra; k++) {
+                int next = data[i + k] & 0xFF;
+                valid = (next & 0xC0) == 0x80;
+                code = (code << 6) | (next & 0x3F);
+            }
+            if (valid == false) {
+                _escape(out, '\uFFFD');
+                i++;
+            } else if (code >= 0x10000) {
+                _escape(out, Character.highSurrogate(code));
+                _escape(out, Character.lowSurrogate(code));
+                i += extra + 1;
+            } else {
+                _escape(out, (char) code);
+                i += extra + 1;
+            }
+        }
+    }
+
+    private static void _escape(Appendable out, char c) throws IOException {
+        TextEncoding.escapeJson(out, c);
+    }
+}
@@ -0,0 +1,312 @@
+package googleSendgridJava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template - A message whose invariant parts are encoded once, to be sent many times to
+ * different recipients.
+ *
+ * compile() form-encodes everything a message sends except its recipients, substitutions
+ * ("sub") and unique arguments ("unique_args"): the subject, text, html, sender, and every
+ * other X-SMTPAPI header value such as categories and filters. The result is kept as bytes.
+ * Each Instance then only supplies the parts that vary, and sending it encodes just those
+ * and copies the cached bytes around them. The header keeps the key order of the compiled
+ * message, so the body is byte for byte the one the same message would encode to in full.
+ *
+ * An instance builds an ordinary immutable Message, which any SendgridClient, BatchSender
+ * or Outbox accepts. A message made from it with toBuilder() is a plain message again and
+ * is encoded in full. Templates are immutable and may be shared between threads.
+ */
+public final class Template {
+
+    /**
+     * The X-SMTPAPI keys an Instance may set; every other header value is fixed.
+     */
+    static final List<String> VARIABLE_HEADERS = Collections.unmodifiableList(Arrays.asList("sub", "unique_args"));
+
+    private final Message base;
+    // The JSON of each fixed header value, as "key":value, form encoded, in the base's order
+    private final Map<String, byte[]> fixedJson;
+    private final byte[] prefix,
+                         suffix;
+
+    private Template(Message base) {
+        this.base = base;
+
+        try {
+            // Everything between api_key and the header values
+            ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+            FormEncoder form = new FormEncoder(prefix, true);
+            if (base.isUseHeaders()) {
+                form.param("to", base.getFrom());
+                form.beginParam("x-smtpapi");
+                form.append('{');
+            }
+            form.flush();
+            this.prefix = prefix.toByteArray();
+
+            Map<String, byte[]> fixedJson = new LinkedHashMap<String, byte[]>();
+            for (Map.Entry<String, Object> entry : base.getHeaders().entrySet()) {
+                if (VARIABLE_HEADERS.contains(entry.getKey())) {
+                    continue;
+                }
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                form = new FormEncoder(json, true);
+                SmtpApiWriter.writeString(form, entry.getKey());
+                form.append(':');
+                SmtpApiWriter.writeValue(form, entry.getValue());
+                form.flush();
+                fixedJson.put(entry.getKey(), json.toByteArray());
+            }
+            this.fixedJson = Collections.unmodifiableMap(fixedJson);
+
+            // Everything after the header
+            ByteArrayOutputStream suffix = new ByteArrayOutputStream();
+            form = new FormEncoder(suffix, true);
+            form.param("subject", base.getSubject());
+            form.param("text", base.getText());
+            form.param("html", base.getHtml());
+            form.param("from", base.getFrom());
+            form.param("fromname", base.getFromName());
+            form.param("replyto", base.getReplyTo());
+            form.flush();
+            this.suffix = suffix.toByteArray();
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * compile - Encode the invariant parts of a message. The message's own recipients are
+     * not part of the template; its substitutions and unique arguments are the defaults of
+     * every instance.
+     *
+     * @param  message   the message
+     * @return           the template
+     */
+    public static Template compile(Message message) {
+        return new Template(message);
+    }
+
+    /**
+     * getMessage - Get the message the template was compiled from
+     *
+     * @return  the message
+     */
+    public Message getMessage() {
+        return this.base;
+    }
+
+    /**
+     * instance - Start a message from this template
+     *
+     * @return  a new instance, with no recipients
+     */
+    public Instance instance() {
+        return new Instance();
+    }
+
+    /**
+     * body - The form body of a message instantiated from this template
+     */
+    Transport.Body body(Message message, String apiUser, String apiKey) {
+        return new TemplateBody(message, apiUser, apiKey);
+    }
+
+    /**
+     * The recipients, substitutions and unique arguments of one message from a template.
+     * An instance is not thread-safe, but build() takes a snapshot, so it may be reused.
+     */
+    public final class Instance {
+        private final RecipientList.Builder recipients = RecipientList.builder();
+        private Map<String, Object> substitutions;
+        private Map<String, Object> uniqueArguments;
+
+        private Instance() {
+        }
+
+        /**
+         * addTo - Append a recipient
+         *
+         * @param    email   Recipient email address
+         * @return           The instance.
+         */
+        public Instance addTo(String email) {
+            return this.addTo(email, "");
+        }
+
+        /**
+         * addTo - Append a recipient
+         *
+         * @param    email   Recipient email address
+         * @param    name    Recipient name, or ""
+         * @return           The instance.
+         * @throws IllegalArgumentException   when the address is not well formed
+         */
+        public Instance addTo(String email, String name) {
+            this.recipients.add(email, name);
+
+            return this;
+        }
+
+        /**
+         * addRecipients - Append every recipient of a list, shared rather than copied when
+         * the instance has no recipients yet
+         *
+         * @param    recipients   the recipients
+         * @return                The instance.
+         */
+        public Instance addRecipients(RecipientList recipients) {
+            this.recipients.addAll(recipients);
+
+            return this;
+        }
+
+        /**
+         * addSubstitution - Substitute a value for list of values, one per recipient. The
+         * first substitution replaces the template's substitutions.
+         *
+         * @param  from_value   the value to be replaced
+         * @param  to_values    the values to replace it with
+         * @return              The instance.
+         */
+        public Instance addSubstitution(String from_value, String... to_values) {
+            if (this.substitutions == null) {
+                this.substitutions = new LinkedHashMap<String, Object>();
+            }
+            this.substitutions.put(from_value, Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(to_values))));
+
+            return this;
+        }
+
+        /**
+         * addUniqueArgument - Set a unique argument. The first one replaces the template's
+         * unique arguments.
+         *
+         * @param  key     the key
+         * @param  value   the value
+         * @return         The instance.
+         */
+        public Instance addUniqueArgument(String key, String value) {
+            if (this.uniqueArguments == null) {
+                this.uniqueArguments = new LinkedHashMap<String, Object>();
+            }
+            this.uniqueArguments.put(key, value);
+
+            return this;
+        }
+
+        /**
+         * build - Take an immutable snapshot of the message
+         *
+         * @return  the message
+         */
+        public Message build() {
+            // In the base's order, so the message encodes exactly like the plain message
+            // with the same headers
+            Map<String, Object> headers = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Object> entry : base.getHeaders().entrySet()) {
+                if (VARIABLE_HEADERS.contains(entry.getKey())) {
+                    this._put(headers, entry.getKey());
+                } else {
+                    headers.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String key : VARIABLE_HEADERS) {
+                if (headers.containsKey(key) == false) {
+                    this._put(headers, key);
+                }
+            }
+
+            return new Message(Template.this, base, this.recipients.build(), Collections.unmodifiableMap(headers));
+        }
+
+        private void _put(Map<String, Object> headers, String key) {
+            Map<String, Object> values = key.equals("sub") ? this.substitutions : this.uniqueArguments;
+            if (values != null) {
+                headers.put(key, Collections.unmodifiableMap(new LinkedHashMap<String, Object>(values)));
+            } else if (base.getHeaders().containsKey(key)) {
+                headers.put(key, base.getHeaders().get(key));
+            }
+        }
+    }
+
+    /**
+     * The body of a templated message: the credentials, the cached prefix, the variable
+     * header values and recipients, and the cached suffix.
+     */
+    private class TemplateBody implements Transport.Body {
+        private final Message message;
+        private final String apiUser,
+                             apiKey;
+        private long length = -1;
+
+        TemplateBody(Message message, String apiUser, String apiKey) {
+            this.message = message;
+            this.apiUser = apiUser;
+            this.apiKey = apiKey;
+        }
+
+        public long contentLength() {
+            if (this.length < 0) {
+                FormEncoder counter = new FormEncoder(null);
+                try {
+                    this._encode(counter);
+                } catch (IOException e) {
+                    // Counting never touches a stream
+                    throw new IllegalStateException(e);
+                }
+                this.length = counter.count();
+            }
+
+            return this.length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            FormEncoder encoder = new FormEncoder(out);
+            this._encode(encoder);
+            encoder.flush();
+        }
+
+        private void _encode(FormEncoder form) throws IOException {
+            form.param("api_user", this.apiUser);
+            form.param("api_key", this.apiKey);
+            form.raw(prefix);
+            if (this.message.isUseHeaders()) {
+                boolean comma = false;
+                for (Map.Entry<String, Object> entry : this.message.getHeaders().entrySet()) {
+                    if (comma) {
+                        form.append(',');
+                    }
+                    comma = true;
+                    byte[] json = fixedJson.get(entry.getKey());
+                    if (json != null) {
+                        form.raw(json);
+                    } else {
+                        SmtpApiWriter.writeString(form, entry.getKey());
+                        form.append(':');
+                        SmtpApiWriter.writeValue(form, entry.getValue());
+                    }
+                }
+                if (comma) {
+                    form.append(',');
+                }
+                form.append("\"to\":");
+                SmtpApiWriter.writeRecipients(form, this.message.getRecipients());
+                form.append('}');
+            } else {
+                MessageEncoder.writeRecipientParams(form, this.message.getRecipients());
+            }
+            form.raw(suffix);
+        }
+    }
+}
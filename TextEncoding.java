@@ -0,0 +1,161 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+
+/**
+ * TextEncoding - Table driven percent-encoding and JSON escaping.
+ *
+ * Every ASCII character is classified by a lookup in a 128 entry table instead of a chain
+ * of comparisons, and runs of characters that need no encoding are copied in bulk. Text
+ * outside ASCII is handled a UTF-16 unit at a time, so a character outside the BMP, such as
+ * an emoji, is escaped for JSON as the pair of its surrogates, and percent-encoded as its
+ * four UTF-8 bytes.
+ */
+final class TextEncoding {
+
+    /** A character copied as it is. */
+    static final byte SAFE = 0;
+    /** A space, written as '+' in a form value. */
+    static final byte SPACE = 1;
+    /** A character written as %XX. */
+    static final byte PERCENT = 2;
+
+    /**
+     * FORM - How each ASCII character is written in an application/x-www-form-urlencoded
+     * value, the same way as URLEncoder
+     */
+    static final byte[] FORM = new byte[128];
+
+    /**
+     * JSON - The character that follows the backslash when an ASCII character is escaped in
+     * a JSON string, 'u' for a unicode escape, or 0 for one copied as it is
+     */
+    static final char[] JSON = new char[128];
+
+    static final char[] LOWER_HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    static final char[] UPPER_HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            boolean alphanumeric = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            FORM[c] = (alphanumeric || c == '.' || c == '-' || c == '*' || c == '_') ? SAFE
+                : (c == ' ') ? SPACE
+                : PERCENT;
+            JSON[c] = (c < 0x20 || c == 0x7F) ? 'u' : 0;
+        }
+        JSON['"'] = '"';
+        JSON['\\'] = '\\';
+        JSON['\n'] = 'n';
+        JSON['\r'] = 'r';
+        JSON['\t'] = 't';
+    }
+
+    private TextEncoding() {
+    }
+
+    /**
+     * urlEncode - Percent-encode a value as UTF-8, with the same output as
+     * URLEncoder.encode(value, "UTF-8") and without looking up a charset
+     *
+     * @param  out     where to append
+     * @param  value   the value
+     */
+    static void urlEncode(StringBuilder out, CharSequence value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                byte kind = FORM[c];
+                if (kind == SAFE) {
+                    int run = i + 1;
+                    while (run < length && (c = value.charAt(run)) < 0x80 && FORM[c] == SAFE) {
+                        run++;
+                    }
+                    out.append(value, i, run);
+                    i = run - 1;
+                } else if (kind == SPACE) {
+                    out.append('+');
+                } else {
+                    _percent(out, c);
+                }
+            } else if (c < 0x800) {
+                _percent(out, 0xC0 | (c >> 6));
+                _percent(out, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                _percent(out, 0xF0 | (code >> 18));
+                _percent(out, 0x80 | ((code >> 12) & 0x3F));
+                _percent(out, 0x80 | ((code >> 6) & 0x3F));
+                _percent(out, 0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, which the UTF-8 encoder replaces with '?'
+                _percent(out, '?');
+            } else {
+                _percent(out, 0xE0 | (c >> 12));
+                _percent(out, 0x80 | ((c >> 6) & 0x3F));
+                _percent(out, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * escapeJson - Write the contents of a JSON string, escaping quotes, backslashes,
+     * control characters and everything outside ASCII, so the output is pure printable ASCII
+     *
+     * @param  out     where to write
+     * @param  value   the text
+     * @param  start   the first character to write
+     * @param  end     the end of the text, exclusive
+     * @throws IOException
+     */
+    static void escapeJson(Appendable out, CharSequence value, int start, int end) throws IOException {
+        int run = start;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && JSON[c] == 0) {
+                continue;
+            }
+            if (run < i) {
+                out.append(value, run, i);
+            }
+            escapeJson(out, c);
+            run = i + 1;
+        }
+        if (run < end) {
+            out.append(value, run, end);
+        }
+    }
+
+    /**
+     * escapeJson - Write one character of a JSON string, escaped if it needs to be
+     *
+     * @param  out   where to write
+     * @param  c     the character
+     * @throws IOException
+     */
+    static void escapeJson(Appendable out, char c) throws IOException {
+        char escape = (c < 0x80) ? JSON[c] : 'u';
+        if (escape == 0) {
+            out.append(c);
+        } else if (escape == 'u') {
+            _unicodeEscape(out, c);
+        } else {
+            out.append('\\').append(escape);
+        }
+    }
+
+    private static void _unicodeEscape(Appendable out, char c) throws IOException {
+        out.append('\\').append('u')
+            .append(LOWER_HEX[(c >> 12) & 0xF]).append(LOWER_HEX[(c >> 8) & 0xF])
+            .append(LOWER_HEX[(c >> 4) & 0xF]).append(LOWER_HEX[c & 0xF]);
+    }
+
+    private static void _percent(StringBuilder out, int b) {
+        out.append('%').append(UPPER_HEX[(b >> 4) & 0xF]).append(UPPER_HEX[b & 0xF]);
+    }
+}
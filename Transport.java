@@ -0,0 +1,169 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport - Carries an encoded request to the SendGrid web API and returns its response.
+ *
+ * Implementations must be safe to share between threads, so that a single transport (and
+ * its pool of connections) can be reused by every Sendgrid object in the process. Tests can
+ * plug in their own implementation to stand in for sendgrid.com.
+ */
+public interface Transport {
+
+    /**
+     * post - POST a request body to the given url
+     *
+     * @param  url           the full request url, including any query string
+     * @param  contentType   the value of the Content-Type header
+     * @param  body          the request body
+     * @return               the server response
+     * @throws IOException   when the request could not be completed
+     */
+    public Response post(String url, String contentType, Body body) throws IOException;
+
+    /**
+     * post - POST a request body, reporting how long each phase of the exchange took.
+     * Transports that cannot tell the phases apart just post.
+     *
+     * @param  url           the full request url, including any query string
+     * @param  contentType   the value of the Content-Type header
+     * @param  body          the request body
+     * @param  metrics       receives the CONNECT, WRITE, FIRST_BYTE and READ timings
+     * @return               the server response
+     * @throws IOException   when the request could not be completed
+     */
+    public default Response post(String url, String contentType, Body body, SendMetrics metrics)
+            throws IOException {
+        return this.post(url, contentType, body);
+    }
+
+    /**
+     * Thrown when a request could not be made for a reason on this side rather than the
+     * API's: a request body whose source cannot be read, or no free connection in time. Such
+     * a failure says nothing about the health of the API, so it does not count towards a
+     * CircuitBreaker or an AdaptiveConcurrencyLimiter, and it is not retried.
+     */
+    public static class LocalException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LocalException(String message) {
+            super(message);
+        }
+
+        public LocalException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * A request body that knows how to write itself to a connection.
+     */
+    public static interface Body {
+        /**
+         * contentLength - The exact number of bytes writeTo will produce
+         *
+         * @return  the length in bytes, or -1 when it is not known in advance
+         */
+        public long contentLength();
+
+        /**
+         * writeTo - Write the body to the given stream
+         *
+         * @param  out   the connection output stream
+         * @throws IOException   a LocalException when the content cannot be read
+         */
+        public void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * isRepeatable - Whether writeTo can be called more than once. A body that cannot
+         * is never retried.
+         *
+         * @return  true unless the body reads from a stream
+         */
+        public default boolean isRepeatable() {
+            return true;
+        }
+    }
+
+    /**
+     * A body backed by an array of bytes.
+     */
+    public static class Bytes implements Body {
+        private final byte[] bytes;
+
+        public Bytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public long contentLength() {
+            return this.bytes.length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(this.bytes);
+        }
+    }
+
+    /**
+     * The status and body returned by the server.
+     */
+    public static class Response {
+        private final int status;
+        private final String body;
+        private final Map<String, List<String>> headers;
+
+        public Response(int status, String body) {
+            this(status, body, Collections.<String, List<String>>emptyMap());
+        }
+
+        /**
+         * @param  status    the HTTP status code
+         * @param  body      the response body
+         * @param  headers   the response headers, as returned by URLConnection.getHeaderFields()
+         */
+        public Response(int status, String body, Map<String, List<String>> headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        /**
+         * getStatus - Get the HTTP status code
+         *
+         * @return  the HTTP status code
+         */
+        public int getStatus() {
+            return this.status;
+        }
+
+        /**
+         * getBody - Get the response body
+         *
+         * @return  the response body, never null
+         */
+        public String getBody() {
+            return this.body;
+        }
+
+        /**
+         * getHeader - Get the first value of a response header
+         *
+         * @param  name   the header name, in any case
+         * @return        the value, or null when the header is absent
+         */
+        public String getHeader(String name) {
+            for (Map.Entry<String, List<String>> header : this.headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue().size() > 0) {
+                    return header.getValue().get(0);
+                }
+            }
+
+            return null;
+        }
+    }
+}
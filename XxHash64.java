@@ -0,0 +1,152 @@
+package googleSendgridJava;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * XxHash64 - The 64 bit xxHash of everything written to it.
+ *
+ * A fast, well distributed, non-cryptographic hash, computed as the bytes stream through, so
+ * an encoder can write a message into it without the encoded bytes ever being held in memory.
+ * The output matches the reference XXH64 implementation.
+ */
+final class XxHash64 extends OutputStream {
+
+    private static final long P1 = 0x9E3779B185EBCA87L,
+                              P2 = 0xC2B2AE3D27D4EB4FL,
+                              P3 = 0x165667B19E3779F9L,
+                              P4 = 0x85EBCA77C2B2AE63L,
+                              P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private long v1,
+                 v2,
+                 v3,
+                 v4,
+                 total = 0;
+    private final byte[] buffer = new byte[32];
+    private int buffered = 0;
+
+    XxHash64() {
+        this(0);
+    }
+
+    XxHash64(long seed) {
+        this.seed = seed;
+        this.v1 = seed + P1 + P2;
+        this.v2 = seed + P2;
+        this.v3 = seed;
+        this.v4 = seed - P1;
+    }
+
+    /**
+     * hash - The hash of a string's UTF-8 bytes
+     *
+     * @param  value   the string
+     * @return         the hash
+     */
+    static long hash(String value) {
+        XxHash64 hash = new XxHash64();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        hash.write(bytes, 0, bytes.length);
+
+        return hash.getValue();
+    }
+
+    public void write(int b) {
+        this.buffer[this.buffered++] = (byte) b;
+        this.total++;
+        if (this.buffered == 32) {
+            this._stripe(this.buffer, 0);
+            this.buffered = 0;
+        }
+    }
+
+    public void write(byte[] b, int off, int len) {
+        this.total += len;
+        if (this.buffered > 0) {
+            int fill = Math.min(len, 32 - this.buffered);
+            System.arraycopy(b, off, this.buffer, this.buffered, fill);
+            this.buffered += fill;
+            off += fill;
+            len -= fill;
+            if (this.buffered < 32) {
+                return;
+            }
+            this._stripe(this.buffer, 0);
+            this.buffered = 0;
+        }
+        for (; len >= 32; off += 32, len -= 32) {
+            this._stripe(b, off);
+        }
+        System.arraycopy(b, off, this.buffer, 0, len);
+        this.buffered = len;
+    }
+
+    /**
+     * getValue - The hash of the bytes written so far
+     *
+     * @return  the hash
+     */
+    long getValue() {
+        long h;
+        if (this.total >= 32) {
+            h = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7)
+                + Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+            h = _merge(h, this.v1);
+            h = _merge(h, this.v2);
+            h = _merge(h, this.v3);
+            h = _merge(h, this.v4);
+        } else {
+            h = this.seed + P5;
+        }
+        h += this.total;
+
+        int i = 0;
+        for (; i + 8 <= this.buffered; i += 8) {
+            h ^= _round(0, _long(this.buffer, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i + 4 <= this.buffered) {
+            h ^= (_int(this.buffer, i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < this.buffered; i++) {
+            h ^= (this.buffer[i] & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+
+        return h;
+    }
+
+    private void _stripe(byte[] b, int off) {
+        this.v1 = _round(this.v1, _long(b, off));
+        this.v2 = _round(this.v2, _long(b, off + 8));
+        this.v3 = _round(this.v3, _long(b, off + 16));
+        this.v4 = _round(this.v4, _long(b, off + 24));
+    }
+
+    private static long _round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long _merge(long acc, long value) {
+        return (acc ^ _round(0, value)) * P1 + P4;
+    }
+
+    private static long _long(byte[] b, int i) {
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24
+            | (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int _int(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
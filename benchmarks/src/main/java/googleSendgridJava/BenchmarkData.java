@@ -0,0 +1,67 @@
+package googleSendgridJava;
+
+import java.util.Random;
+
+/**
+ * BenchmarkData - Deterministic message content for the benchmarks.
+ */
+final class BenchmarkData {
+
+    private static final String ASCII = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 .,<>&=%\"";
+    private static final String[] NON_ASCII = {
+        "é", "ü", "ß", "中", "文", "€", "😀", "📧"
+    };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * text - A string of about the given length where roughly nonAsciiRatio of the characters
+     * are outside ASCII, some of them outside the BMP
+     */
+    static String text(int length, double nonAsciiRatio, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 2);
+        while (text.length() < length) {
+            if (random.nextDouble() < nonAsciiRatio) {
+                text.append(NON_ASCII[random.nextInt(NON_ASCII.length)]);
+            } else {
+                text.append(ASCII.charAt(random.nextInt(ASCII.length())));
+            }
+        }
+
+        return text.toString();
+    }
+
+    static String email(int i) {
+        return "recipient" + i + "@example.com";
+    }
+
+    static String name(int i, double nonAsciiRatio) {
+        return text(12, nonAsciiRatio, i);
+    }
+
+    /**
+     * sendgrid - A legacy Sendgrid object with the given number of recipients, one
+     * substitution and a couple of filter settings
+     */
+    static Sendgrid sendgrid(int recipients, int bodySize, double nonAsciiRatio) throws Exception {
+        Sendgrid mail = new Sendgrid("bench_user", "bench_key");
+        String[] names = new String[recipients];
+        for (int i = 0; i < recipients; i++) {
+            mail.addTo(email(i));
+            names[i] = name(i, nonAsciiRatio);
+        }
+        mail.setFrom("sender@example.com")
+            .setFromName("Sender")
+            .setSubject(text(60, nonAsciiRatio, 1))
+            .setText(text(bodySize, nonAsciiRatio, 2))
+            .setHtml("<html><body>" + text(bodySize, nonAsciiRatio, 3) + "</body></html>");
+        mail.addSubstitution("%name%", names)
+            .addFilterSetting("footer", "enable", "1")
+            .addFilterSetting("footer", "text/plain", text(40, nonAsciiRatio, 4));
+        mail.addCategory("benchmark");
+
+        return mail;
+    }
+}
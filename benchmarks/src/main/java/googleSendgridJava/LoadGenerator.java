@@ -0,0 +1,259 @@
+package googleSendgridJava;
+
+import java.net.http.HttpClient;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * LoadGenerator - Drives a SendgridClient at a target request rate and reports the
+ * throughput and latency it achieved.
+ *
+ * The load is open: requests are started on a fixed schedule whether or not earlier ones
+ * have completed, as production traffic arrives, and each latency is measured from when the
+ * request was due to start, not from when it did. A client that falls behind therefore shows
+ * its queueing in the percentiles instead of quietly lowering the rate (the "coordinated
+ * omission" of closed-loop benchmarks).
+ *
+ * Run against an embedded StubServer with injected latency and errors:
+ *
+ *   java -cp target/benchmarks.jar googleSendgridJava.LoadGenerator --rate 500 --duration 30 \
+ *       --latency 50 --jitter 100 --rate-limit-rate 0.01 --server-error-rate 0.01 --retries 3
+ *
+ * or against another endpoint with --domain. --transport picks HttpUrlConnectionTransport
+ * ("urlconnection", the default) or HttpClientTransport over HTTP/2 ("http2") or HTTP/1.1
+ * ("http1").
+ */
+public class LoadGenerator {
+
+    private final SendgridClient client;
+    private final Message message;
+    private final Histogram latency = new Histogram();
+    private final AtomicLong successes = new AtomicLong(),
+                             apiErrors = new AtomicLong(),
+                             failures = new AtomicLong(),
+                             completed = new AtomicLong();
+    private final Map<Integer, AtomicLong> statuses = new LinkedHashMap<Integer, AtomicLong>();
+
+    /**
+     * @param  client    the client under test
+     * @param  message   the message every request sends
+     */
+    public LoadGenerator(SendgridClient client, Message message) {
+        this.client = client;
+        this.message = message;
+    }
+
+    /**
+     * run - Send at a fixed rate for a while, then wait for the last sends to complete
+     *
+     * @param  requestsPerSecond   the target rate
+     * @param  durationMillis      how long to keep starting requests
+     * @return                     the report
+     * @throws InterruptedException
+     */
+    public Report run(double requestsPerSecond, long durationMillis) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long started = 0;
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            this._send(due);
+            started++;
+        }
+        long issued = System.nanoTime();
+        while (this.completed.get() < started) {
+            Thread.sleep(1);
+        }
+
+        return new Report(started, issued - start, System.nanoTime() - start);
+    }
+
+    /**
+     * _send - Start one request, due at the given time
+     */
+    private void _send(final long due) {
+        this.client.sendAsync(this.message).whenComplete(new BiConsumer<SendResult, Throwable>() {
+            public void accept(SendResult result, Throwable error) {
+                latency.record(System.nanoTime() - due);
+                if (error != null) {
+                    failures.incrementAndGet();
+                } else if (result.isSuccess()) {
+                    successes.incrementAndGet();
+                } else if (result.getStatus() == 0) {
+                    failures.incrementAndGet();
+                } else {
+                    apiErrors.incrementAndGet();
+                }
+                int status = (error != null) ? 0 : result.getStatus();
+                synchronized (statuses) {
+                    AtomicLong count = statuses.get(status);
+                    if (count == null) {
+                        count = new AtomicLong();
+                        statuses.put(status, count);
+                    }
+                    count.incrementAndGet();
+                }
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public class Report {
+        private final long requests,
+                           issueNanos,
+                           totalNanos;
+
+        Report(long requests, long issueNanos, long totalNanos) {
+            this.requests = requests;
+            this.issueNanos = issueNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getRequests() {
+            return this.requests;
+        }
+
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        public long getApiErrors() {
+            return apiErrors.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * getLatency - Get the latency of each send, retries included, in nanoseconds
+         *
+         * @return  the latencies
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * getThroughput - Get the requests completed per second, over the whole run
+         *
+         * @return  requests per second
+         */
+        public double getThroughput() {
+            return this.requests * 1e9 / this.totalNanos;
+        }
+
+        /**
+         * getOfferedRate - Get the requests started per second
+         *
+         * @return  requests per second
+         */
+        public double getOfferedRate() {
+            return this.requests * 1e9 / this.issueNanos;
+        }
+
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("requests      %d (%d ok, %d api errors, %d failures)%n",
+                this.requests, this.getSuccesses(), this.getApiErrors(), this.getFailures()));
+            synchronized (statuses) {
+                report.append(String.format("statuses      %s%n", statuses));
+            }
+            report.append(String.format("offered       %.1f req/s%n", this.getOfferedRate()));
+            report.append(String.format("throughput    %.1f req/s%n", this.getThroughput()));
+            report.append(String.format("latency ms    p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f  mean %.2f%n",
+                latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6,
+                latency.getPercentile(99) / 1e6, latency.getPercentile(99.9) / 1e6,
+                latency.getMax() / 1e6, latency.getMean() / 1e6));
+
+            return report.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        options.put("rate", "200");
+        options.put("duration", "10");
+        options.put("recipients", "1");
+        options.put("body-size", "1024");
+        options.put("threads", "32");
+        options.put("max-in-flight", "1024");
+        options.put("connections", "64");
+        options.put("transport", "urlconnection");
+        options.put("retries", "1");
+        options.put("latency", "20");
+        options.put("jitter", "20");
+        options.put("error-rate", "0");
+        options.put("server-error-rate", "0");
+        options.put("rate-limit-rate", "0");
+        options.put("domain", "");
+        for (int i = 0; i < args.length; i += 2) {
+            String key = args[i].replaceFirst("^--", "");
+            if (options.containsKey(key) == false || i + 1 >= args.length) {
+                System.err.println("usage: LoadGenerator [--option value]..., options and defaults: " + options);
+                System.exit(2);
+            }
+            options.put(key, args[i + 1]);
+        }
+
+        StubServer stub = null;
+        String domain = options.get("domain");
+        if (domain.isEmpty()) {
+            stub = new StubServer()
+                .setLatency(Long.parseLong(options.get("latency")), Long.parseLong(options.get("jitter")))
+                .setErrorRate(Double.parseDouble(options.get("error-rate")))
+                .setServerErrorRate(Double.parseDouble(options.get("server-error-rate")))
+                .setRateLimitRate(Double.parseDouble(options.get("rate-limit-rate")), 1)
+                .setThreads(Integer.parseInt(options.get("connections")))
+                .start();
+            domain = stub.getDomain();
+        }
+
+        int connections = Integer.parseInt(options.get("connections"));
+        Transport transport;
+        if (options.get("transport").equals("http2")) {
+            transport = new HttpClientTransport(connections);
+        } else if (options.get("transport").equals("http1")) {
+            transport = new HttpClientTransport(connections).setVersion(HttpClient.Version.HTTP_1_1);
+        } else {
+            transport = new HttpUrlConnectionTransport(connections);
+        }
+        InMemorySendMetrics metrics = new InMemorySendMetrics();
+        SendgridClient client = SendgridClient.builder("bench_user", "bench_key")
+            .setDomain(domain)
+            .setTransport(transport)
+            .setExecutor(SendExecutor.fixed(Integer.parseInt(options.get("threads")),
+                Integer.parseInt(options.get("max-in-flight"))))
+            .setRetryPolicy(new RetryPolicy(Integer.parseInt(options.get("retries"))))
+            .setMetrics(metrics)
+            .build();
+        Message message = BenchmarkData.sendgrid(Integer.parseInt(options.get("recipients")),
+            Integer.parseInt(options.get("body-size")), 0.0).toMessage();
+
+        System.out.println("load          " + options);
+        Report report = new LoadGenerator(client, message)
+            .run(Double.parseDouble(options.get("rate")), TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("duration"))));
+        System.out.print(report);
+        System.out.println("client        " + metrics.toString().replace("\n", "\n              "));
+        if (stub != null) {
+            System.out.println("stub          " + stub.getRequestCount() + " requests, "
+                + stub.getRecipientCount() + " recipients accepted, statuses " + stub.getStatusCounts());
+            stub.stop();
+        }
+        System.exit(0);
+    }
+}
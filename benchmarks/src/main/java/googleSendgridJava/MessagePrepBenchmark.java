@@ -0,0 +1,141 @@
+package googleSendgridJava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+/**
+ * MessagePrepBenchmark - Message preparation and request encoding, without any network.
+ *
+ * Run with "-prof gc" to get allocation rates alongside throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagePrepBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int recipients;
+
+    @Param({"1024", "102400"})
+    public int bodySize;
+
+    @Param({"0.0", "0.1"})
+    public double nonAsciiRatio;
+
+    private Sendgrid mail;
+    private Message message;
+    private String[] names;
+    private String html;
+    // Reused, as the encoders append to the request being built
+    private final StringBuilder out = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.mail = BenchmarkData.sendgrid(this.recipients, this.bodySize, this.nonAsciiRatio);
+        this.message = this.mail.toMessage();
+        this.html = this.mail.getHtml();
+        this.names = new String[this.recipients];
+        for (int i = 0; i < this.recipients; i++) {
+            this.names[i] = BenchmarkData.name(i, this.nonAsciiRatio);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> prepMessageData() throws Exception {
+        return this.mail._prepMessageData();
+    }
+
+    @Benchmark
+    public String arrayToUrlPart() {
+        return this.mail._arrayToUrlPart(this.mail.getTos(), "to");
+    }
+
+    @Benchmark
+    public Message toMessageAfterSubstitution() throws Exception {
+        // A resend where only "sub" changed; the other sections and "to" come from the cache
+        this.mail.addSubstitution("%name%", this.names);
+
+        return this.mail.toMessage();
+    }
+
+    @Benchmark
+    public int urlEncode() {
+        this.out.setLength(0);
+        TextEncoding.urlEncode(this.out, this.html);
+
+        return this.out.length();
+    }
+
+    @Benchmark
+    public int escapeJson() throws IOException {
+        // How X-SMTPAPI strings are written, surrogate pairs included
+        this.out.setLength(0);
+        TextEncoding.escapeJson(this.out, this.html, 0, this.html.length());
+
+        return this.out.length();
+    }
+
+    @Benchmark
+    public JSONObject buildHeaders() throws Exception {
+        Sendgrid mail = new Sendgrid("bench_user", "bench_key");
+        mail.addSubstitution("%name%", this.names)
+            .addSubstitution("%code%", this.names)
+            .addFilterSetting("footer", "enable", "1")
+            .addFilterSetting("footer", "text/plain", "footer")
+            .addFilterSetting("clicktrack", "enable", "1");
+
+        return mail.getHeaders();
+    }
+
+    @Benchmark
+    public Message toMessage() throws Exception {
+        return this.mail.toMessage();
+    }
+
+    @Benchmark
+    public void encodeBody(Blackhole blackhole) throws IOException {
+        Transport.Body body = MessageEncoder.body(this.message, "bench_user", "bench_key");
+        blackhole.consume(body.contentLength());
+        body.writeTo(new NullOutputStream(blackhole));
+    }
+
+    /**
+     * Swallows the body, standing in for the connection output stream.
+     */
+    static final class NullOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        NullOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void write(int b) {
+            this.blackhole.consume(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            this.blackhole.consume(b);
+        }
+    }
+}
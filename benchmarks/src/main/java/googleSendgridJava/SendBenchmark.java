@@ -0,0 +1,97 @@
+package googleSendgridJava;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SendBenchmark - A complete send() against an in-process StubServer on localhost, so the
+ * numbers include encoding, the HTTP exchange and response handling but no real network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+
+    @Param({"1", "1000"})
+    public int recipients;
+
+    @Param({"1024", "102400"})
+    public int bodySize;
+
+    @Param({"0.0", "0.1"})
+    public double nonAsciiRatio;
+
+    private StubServer server;
+    private Sendgrid mail;
+    private SendgridClient client;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.server = new StubServer().setThreads(8).start();
+
+        String domain = this.server.getDomain();
+        Transport transport = new HttpUrlConnectionTransport(64);
+
+        this.mail = new BenchmarkSendgrid(domain);
+        this.mail.setTransport(transport);
+        this.client = SendgridClient.builder("bench_user", "bench_key")
+            .setDomain(domain)
+            .setTransport(transport)
+            .build();
+        this.message = BenchmarkData.sendgrid(this.recipients, this.bodySize, this.nonAsciiRatio).toMessage();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.server.stop();
+    }
+
+    @Benchmark
+    public String legacySend() throws Exception {
+        this.mail.send();
+
+        return this.mail.getServerResponse();
+    }
+
+    @Benchmark
+    public SendResult clientSend() {
+        return this.client.send(this.message);
+    }
+
+    /**
+     * A Sendgrid pointed at the stub server, with the same content as the client message.
+     */
+    private class BenchmarkSendgrid extends Sendgrid {
+        BenchmarkSendgrid(String domain) throws Exception {
+            super("bench_user", "bench_key");
+            this.domain = domain;
+            Sendgrid content = BenchmarkData.sendgrid(recipients, bodySize, nonAsciiRatio);
+            for (String to : content.getTos()) {
+                this.addTo(to);
+            }
+            this.setFrom(content.getFrom())
+                .setFromName(content.getFromName())
+                .setSubject(content.getSubject())
+                .setText(content.getText())
+                .setHtml(content.getHtml())
+                .setHeaders(content.getHeaders());
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package googleSendgridJava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.appengine.labs.repackaged.org.json.JSONArray;
+import com.google.appengine.labs.repackaged.org.json.JSONException;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * StubServer - An embeddable stand-in for the SendGrid mail.send.json endpoint, on
+ * localhost.
+ *
+ * Requests are parsed and validated the way the API does: url-encoded and multipart form
+ * bodies, the bcc[] query parameters and the X-SMTPAPI header. A valid request is answered
+ * with {"message":"success"}, an invalid one with status 400 and an "errors" list. Latency,
+ * API errors, server errors and 429 rate limiting can be injected at random, to exercise
+ * the client's error paths and to plan capacity without touching the real API.
+ *
+ * Point a client at getDomain(), with the default endpoint.
+ */
+public class StubServer {
+
+    static final String ENDPOINT = "/api/mail.send.json";
+
+    private static final byte[] SUCCESS = "{\"message\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+
+    private String apiUser,
+                   apiKey;
+    private long latencyMillis = 0,
+                 jitterMillis = 0;
+    private double errorRate = 0,
+                   serverErrorRate = 0,
+                   rateLimitRate = 0;
+    private int retryAfterSeconds = 1;
+    private int threads = 16;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong(),
+                             recipients = new AtomicLong(),
+                             bytes = new AtomicLong();
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    /**
+     * setCredentials - Accept only these credentials, any by default
+     *
+     * @param  apiUser   the expected api_user
+     * @param  apiKey    the expected api_key
+     * @return           the StubServer.
+     */
+    public StubServer setCredentials(String apiUser, String apiKey) {
+        this.apiUser = apiUser;
+        this.apiKey = apiKey;
+
+        return this;
+    }
+
+    /**
+     * setLatency - Delay every response, 0 by default
+     *
+     * @param  latencyMillis   the fixed delay
+     * @param  jitterMillis    a random extra delay of up to this much
+     * @return                 the StubServer.
+     */
+    public StubServer setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+
+        return this;
+    }
+
+    /**
+     * setErrorRate - Answer this fraction of valid requests with a 400 API error
+     *
+     * @param  errorRate   between 0 and 1
+     * @return             the StubServer.
+     */
+    public StubServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+
+        return this;
+    }
+
+    /**
+     * setServerErrorRate - Answer this fraction of requests with a 500 or a 503
+     *
+     * @param  serverErrorRate   between 0 and 1
+     * @return                   the StubServer.
+     */
+    public StubServer setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+
+        return this;
+    }
+
+    /**
+     * setRateLimitRate - Answer this fraction of requests with a 429 and a Retry-After header
+     *
+     * @param  rateLimitRate       between 0 and 1
+     * @param  retryAfterSeconds   the Retry-After value
+     * @return                     the StubServer.
+     */
+    public StubServer setRateLimitRate(double rateLimitRate, int retryAfterSeconds) {
+        this.rateLimitRate = rateLimitRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        return this;
+    }
+
+    /**
+     * setThreads - Set how many requests are handled at once, 16 by default
+     *
+     * @param  threads   the number of handler threads
+     * @return           the StubServer.
+     */
+    public StubServer setThreads(int threads) {
+        this.threads = threads;
+
+        return this;
+    }
+
+    /**
+     * start - Listen on an ephemeral port of 127.0.0.1
+     *
+     * @return  the StubServer.
+     * @throws IOException
+     */
+    public StubServer start() throws IOException {
+        return this.start(0);
+    }
+
+    /**
+     * start - Listen on a port of 127.0.0.1
+     *
+     * @param  port   the port, or 0 for any free port
+     * @return        the StubServer.
+     * @throws IOException
+     */
+    public StubServer start(int port) throws IOException {
+        // Otherwise Nagle's algorithm holds back the response body until the client's delayed
+        // ACK of the headers, adding ~40ms to every request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.executor = Executors.newFixedThreadPool(this.threads);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.server.createContext(ENDPOINT, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    _handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.setExecutor(this.executor);
+        this.server.start();
+
+        return this;
+    }
+
+    /**
+     * stop - Stop listening and drop the handler threads
+     */
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * getDomain - The url to give SendgridClient.Builder.setDomain()
+     *
+     * @return  the base url, with a trailing slash
+     */
+    public String getDomain() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+    }
+
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * getRecipientCount - Get the recipients of every request answered with success
+     *
+     * @return  the number of recipients
+     */
+    public long getRecipientCount() {
+        return this.recipients.get();
+    }
+
+    /**
+     * getBytesReceived - Get the size of every request body received
+     *
+     * @return  the number of bytes
+     */
+    public long getBytesReceived() {
+        return this.bytes.get();
+    }
+
+    /**
+     * getStatusCounts - Get how many responses were sent with each status
+     *
+     * @return  status code to count, for the codes used
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new LinkedHashMap<Integer, Long>();
+        for (int status = 0; status < this.statuses.length(); status++) {
+            if (this.statuses.get(status) > 0) {
+                counts.put(status, this.statuses.get(status));
+            }
+        }
+
+        return counts;
+    }
+
+    private void _handle(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        byte[] body = _readAll(exchange.getRequestBody());
+        this.bytes.addAndGet(body.length);
+
+        long delay = this.latencyMillis
+            + ((this.jitterMillis > 0) ? ThreadLocalRandom.current().nextLong(this.jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if ("POST".equals(exchange.getRequestMethod()) == false) {
+            this._respond(exchange, 405, _errors("Method not allowed"));
+            return;
+        }
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < this.rateLimitRate) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(this.retryAfterSeconds));
+            this._respond(exchange, 429, _errors("Too many requests"));
+            return;
+        }
+        roll -= this.rateLimitRate;
+        if (roll < this.serverErrorRate) {
+            int status = (ThreadLocalRandom.current().nextBoolean()) ? 500 : 503;
+            this._respond(exchange, status, _errors("Internal server error"));
+            return;
+        }
+
+        Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+        try {
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                _parseUrlEncoded(query, params);
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("multipart/form-data")) {
+                _parseMultipart(body, contentType, params);
+            } else {
+                _parseUrlEncoded(new String(body, StandardCharsets.US_ASCII), params);
+            }
+        } catch (IllegalArgumentException e) {
+            this._respond(exchange, 400, _errors("Malformed request body: " + e.getMessage()));
+            return;
+        }
+
+        List<String> errors = new ArrayList<String>();
+        int count = this._validate(params, errors);
+        if (errors.isEmpty() == false) {
+            this._respond(exchange, 400, _errors(errors.toArray(new String[errors.size()])));
+            return;
+        }
+        if (roll - this.serverErrorRate < this.errorRate) {
+            this._respond(exchange, 400, _errors("Injected error"));
+            return;
+        }
+        this.recipients.addAndGet(count);
+        this._respond(exchange, 200, SUCCESS);
+    }
+
+    /**
+     * _validate - Check a request the way mail.send.json does
+     *
+     * @return  the number of recipients, when there are no errors
+     */
+    private int _validate(Map<String, List<String>> params, List<String> errors) {
+        String apiUser = _first(params, "api_user"),
+               apiKey = _first(params, "api_key");
+        if (apiUser == null || apiKey == null
+            || (this.apiUser != null && (this.apiUser.equals(apiUser) == false || this.apiKey.equals(apiKey) == false))) {
+            errors.add("Bad username / password");
+            return 0;
+        }
+
+        int count = _list(params, "to[]").size() + _list(params, "bcc[]").size();
+        String header = _first(params, "x-smtpapi");
+        if (header != null) {
+            try {
+                JSONObject smtpapi = new JSONObject(header);
+                if (smtpapi.has("to")) {
+                    JSONArray to = smtpapi.getJSONArray("to");
+                    count += to.length();
+                    if (smtpapi.has("sub")) {
+                        JSONObject sub = smtpapi.getJSONObject("sub");
+                        Iterator<?> tags = sub.keys();
+                        while (tags.hasNext()) {
+                            String tag = (String) tags.next();
+                            if (sub.getJSONArray(tag).length() != to.length()) {
+                                errors.add("Substitution " + tag + " has " + sub.getJSONArray(tag).length()
+                                    + " values for " + to.length() + " recipients");
+                            }
+                        }
+                    }
+                } else {
+                    count += _list(params, "to").size();
+                }
+            } catch (JSONException e) {
+                errors.add("Invalid JSON in x-smtpapi: " + e.getMessage());
+            }
+        } else {
+            count += _list(params, "to").size();
+        }
+        if (_list(params, "toname[]").size() > 0 && _list(params, "toname[]").size() != _list(params, "to[]").size()) {
+            errors.add("toname[] and to[] do not have the same number of values");
+        }
+
+        if (count == 0) {
+            errors.add("Missing destination email");
+        }
+        if (_first(params, "subject") == null) {
+            errors.add("Missing subject");
+        }
+        if (_first(params, "text") == null && _first(params, "html") == null) {
+            errors.add("Missing email body");
+        }
+        if (_first(params, "from") == null || _first(params, "from").isEmpty()) {
+            errors.add("Empty from email address (required)");
+        }
+
+        return count;
+    }
+
+    private void _respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        this.statuses.incrementAndGet(status);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] _errors(String... errors) {
+        JSONObject response = new JSONObject();
+        try {
+            response.put("message", "error");
+            response.put("errors", new JSONArray(Arrays.asList(errors)));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] _readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void _parseUrlEncoded(String form, Map<String, List<String>> params) {
+        if (form.isEmpty()) {
+            return;
+        }
+        try {
+            for (String pair : form.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode((eq < 0) ? pair : pair.substring(0, eq), "UTF-8"),
+                       value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                _list(params, key).add(value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * _parseMultipart - Collect the fields of a multipart/form-data body. File parts are
+     * counted as a field holding the file name.
+     */
+    private static void _parseMultipart(byte[] body, String contentType, Map<String, List<String>> params) {
+        int at = contentType.indexOf("boundary=");
+        if (at < 0) {
+            throw new IllegalArgumentException("no boundary");
+        }
+        String text = new String(body, StandardCharsets.UTF_8);
+        String delimiter = "--" + contentType.substring(at + "boundary=".length()).trim();
+        int position = text.indexOf(delimiter);
+        while (position >= 0) {
+            int start = position + delimiter.length();
+            if (text.startsWith("--", start)) {
+                return;
+            }
+            int headersEnd = text.indexOf("\r\n\r\n", start);
+            int next = text.indexOf("\r\n" + delimiter, headersEnd);
+            if (headersEnd < 0 || next < 0) {
+                throw new IllegalArgumentException("truncated part");
+            }
+            String headers = text.substring(start, headersEnd);
+            String name = _headerParameter(headers, "name");
+            String filename = _headerParameter(headers, "filename");
+            if (name != null) {
+                _list(params, name).add((filename != null) ? filename : text.substring(headersEnd + 4, next));
+            }
+            position = next + 2;
+        }
+        throw new IllegalArgumentException("missing closing boundary");
+    }
+
+    private static String _headerParameter(String headers, String parameter) {
+        int at = headers.indexOf("; " + parameter + "=\"");
+        if (at < 0) {
+            return null;
+        }
+        int start = at + parameter.length() + 4;
+
+        return headers.substring(start, headers.indexOf('"', start));
+    }
+
+    private static String _first(Map<String, List<String>> params, String key) {
+        List<String> values = params.get(key);
+
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+    private static List<String> _list(Map<String, List<String>> params, String key) {
+        List<String> values = params.get(key);
+        if (values == null) {
+            values = new ArrayList<String>();
+            params.put(key, values);
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,373 @@
+package googleSendgridJava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * HttpClientTransport - A Transport built on java.net.http.HttpClient, which speaks HTTP/2.
+ *
+ * Over HTTP/2 every request to a host is a stream multiplexed on one connection, so hundreds
+ * of sends in flight share a handful of sockets and TLS sessions instead of needing one
+ * each, and a slow response does not hold up the requests behind it. Servers that do not
+ * offer HTTP/2 are spoken to over HTTP/1.1, with pooled keep-alive connections.
+ *
+ * post() is still a blocking call, like every Transport: each send in flight holds the
+ * thread that sends it, usually one of a SendExecutor's, until its response arrives. What
+ * the sends share is the connections, so size the executor for the concurrency wanted.
+ *
+ * Requires Java 11 or later, and so is not available on App Engine's URLFetch; use
+ * HttpUrlConnectionTransport there. This class is compiled separately from the rest of the
+ * library and is only loaded when it is used.
+ *
+ * Bodies of up to maxBufferedBody bytes are encoded into memory and handed to the client as
+ * a single buffer, which it writes without blocking a thread. Larger bodies, such as those
+ * with file attachments, are streamed through a pipe by a writer thread. Responses
+ * compressed with gzip or deflate are decoded transparently. The number of requests in
+ * flight at once is bounded by a semaphore.
+ *
+ * Configure the transport before its first request; the HttpClient is built then.
+ */
+public class HttpClientTransport implements Transport {
+
+    private static final ExecutorService bodyWriters = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "sendgrid-body-writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private HttpClient client;
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private int connectTimeout = 10000,
+                readTimeout    = 30000;
+    private long acquireTimeout = 0;
+    private int maxBufferedBody = 4 * 1024 * 1024;
+    private boolean acceptCompression = true;
+
+    /**
+     * @param  maxInFlight   the most requests this transport will have outstanding at once
+     */
+    public HttpClientTransport(int maxInFlight) {
+        this(null, maxInFlight);
+    }
+
+    /**
+     * @param  client        the client to send with, for a custom SSLContext, proxy or
+     *                       executor. Its own version and connect timeout apply.
+     * @param  maxInFlight   the most requests this transport will have outstanding at once
+     */
+    public HttpClientTransport(HttpClient client, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight, true);
+    }
+
+    /**
+     * getMaxInFlight - Get the most requests this transport will have outstanding at once
+     *
+     * @return  the in-flight limit
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * setVersion - Set the HTTP version to ask for, HTTP_2 by default
+     *
+     * @param  version   the version
+     * @return           the transport.
+     */
+    public HttpClientTransport setVersion(HttpClient.Version version) {
+        this.version = version;
+
+        return this;
+    }
+
+    /**
+     * setConnectTimeout - Set the connect timeout
+     *
+     * @param  millis   timeout in milliseconds, 0 for none
+     * @return          the transport.
+     */
+    public HttpClientTransport setConnectTimeout(int millis) {
+        this.connectTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setReadTimeout - Set how long to wait for the response to a request once it is sent
+     *
+     * @param  millis   timeout in milliseconds, 0 for none
+     * @return          the transport.
+     */
+    public HttpClientTransport setReadTimeout(int millis) {
+        this.readTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setAcquireTimeout - Set how long post() waits for one of the maxInFlight slots before
+     * failing with an IOException. By default it waits as long as it takes.
+     *
+     * @param  millis   timeout in milliseconds, 0 to wait indefinitely
+     * @return          the transport.
+     */
+    public HttpClientTransport setAcquireTimeout(long millis) {
+        this.acquireTimeout = millis;
+
+        return this;
+    }
+
+    /**
+     * setMaxBufferedBody - Set the largest body encoded into memory before it is sent; larger
+     * bodies, and those of unknown length, are streamed. 4 MB by default.
+     *
+     * @param  bytes   the largest buffered body
+     * @return         the transport.
+     */
+    public HttpClientTransport setMaxBufferedBody(int bytes) {
+        this.maxBufferedBody = bytes;
+
+        return this;
+    }
+
+    /**
+     * setAcceptCompression - Ask for gzip or deflate compressed responses, which are decoded
+     * transparently. On by default.
+     *
+     * @param  accept   whether to send Accept-Encoding
+     * @return          the transport.
+     */
+    public HttpClientTransport setAcceptCompression(boolean accept) {
+        this.acceptCompression = accept;
+
+        return this;
+    }
+
+    /**
+     * getClient - Get the HttpClient requests are sent with, building it if needed
+     *
+     * @return  the client
+     */
+    public synchronized HttpClient getClient() {
+        if (this.client == null) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(this.version)
+                .followRedirects(HttpClient.Redirect.NEVER);
+            if (this.connectTimeout > 0) {
+                builder.connectTimeout(Duration.ofMillis(this.connectTimeout));
+            }
+            this.client = builder.build();
+        }
+
+        return this.client;
+    }
+
+    public Response post(String url, String contentType, Body body) throws IOException {
+        return this.post(url, contentType, body, SendMetrics.NONE);
+    }
+
+    public Response post(String url, String contentType, Body body, SendMetrics metrics) throws IOException {
+        // Only ACQUIRE is reported: HttpClient does not expose the other phases
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+
+        // Acquired before the body is encoded, so callers waiting for a slot hold no buffer
+        long waiting = System.nanoTime();
+        this._acquire();
+        metrics.recordPhase(SendMetrics.Phase.ACQUIRE, System.nanoTime() - waiting);
+        AtomicReference<InputStream> pipe = new AtomicReference<InputStream>();
+        AtomicReference<IOException> writeError = new AtomicReference<IOException>();
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentType)
+                .POST(this._publisher(body, pipe, writeError));
+            if (this.acceptCompression) {
+                request.header("Accept-Encoding", "gzip, deflate");
+            }
+            if (this.readTimeout > 0) {
+                request.timeout(Duration.ofMillis(this.readTimeout));
+            }
+            HttpResponse<byte[]> response = this.getClient().send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            String encoding = response.headers().firstValue("Content-Encoding").orElse(null);
+
+            return new Response(response.statusCode(), this._decode(response.body(), encoding), response.headers().map());
+        } catch (HttpConnectTimeoutException e) {
+            // Nothing was sent, so it is retried like any other connect error
+            ConnectException connect = new ConnectException(e.getMessage());
+            connect.initCause(e);
+            throw connect;
+        } catch (IOException e) {
+            // The client reports a body that broke off as too few bytes; report why it did
+            IOException written = writeError.get();
+            if (written != null && written != e) {
+                written.addSuppressed(e);
+                throw written;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the response");
+        } finally {
+            this.inFlight.release();
+            // The exchange may have ended before the whole body was read, as with an early
+            // error response or a timeout: closing the pipe stops its writer thread
+            _close(pipe.getAndSet(null));
+        }
+    }
+
+    private void _acquire() throws IOException {
+        try {
+            if (this.acquireTimeout <= 0) {
+                this.inFlight.acquire();
+            } else if (!this.inFlight.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS)) {
+                throw new Transport.LocalException("Timed out waiting for one of " + this.maxInFlight + " requests in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a request slot");
+        }
+    }
+
+    /**
+     * _publisher - Encode a small body into a buffer, or stream a large one through a pipe.
+     * The reading end of the current pipe is kept in pipe, for post() to close, and the
+     * exception the body failed with, if any, in writeError.
+     */
+    private HttpRequest.BodyPublisher _publisher(final Body body, final AtomicReference<InputStream> pipe,
+            final AtomicReference<IOException> writeError) throws IOException {
+        long length = body.contentLength();
+        if (length >= 0 && length <= this.maxBufferedBody) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length);
+            body.writeTo(buffer);
+            return HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray());
+        }
+
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+            public InputStream get() {
+                final PipedOutputStream out = new PipedOutputStream();
+                PipedInputStream in;
+                try {
+                    in = new PipedInputStream(out, 64 * 1024);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                // The client asks again when it resends the body; the earlier pipe is done with
+                _close(pipe.getAndSet(in));
+                bodyWriters.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            body.writeTo(out);
+                        } catch (IOException e) {
+                            writeError.compareAndSet(null, e);
+                        } catch (RuntimeException e) {
+                            writeError.compareAndSet(null, new Transport.LocalException("The request body failed", e));
+                        } finally {
+                            try {
+                                out.close();
+                            } catch (IOException e) {
+                                // Reader already gone
+                            }
+                        }
+                    }
+                });
+                return new WriterInputStream(in, writeError);
+            }
+        });
+        if (length < 0) {
+            return stream;
+        }
+        // ofInputStream() does not know the length; declare it, so HTTP/1.1 servers get a
+        // Content-Length instead of a chunked body
+        return HttpRequest.BodyPublishers.fromPublisher(stream, length);
+    }
+
+    private static void _close(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * _decode - Undo a response's Content-Encoding
+     */
+    private String _decode(byte[] body, String contentEncoding) throws IOException {
+        if (body.length == 0) {
+            return "";
+        }
+        if (body.length > HttpUrlConnectionTransport.MAX_RESPONSE) {
+            throw new IOException("Response longer than " + HttpUrlConnectionTransport.MAX_RESPONSE + " bytes");
+        }
+
+        return HttpUrlConnectionTransport.readResponse(new ByteArrayInputStream(body), contentEncoding);
+    }
+
+    /**
+     * The reading end of a body pipe. Where the writer failed, the end of the pipe is an
+     * error rather than the end of the body, so a body of unknown length is not sent as if
+     * it were complete.
+     */
+    private static class WriterInputStream extends FilterInputStream {
+        private final AtomicReference<IOException> writeError;
+
+        WriterInputStream(InputStream in, AtomicReference<IOException> writeError) {
+            super(in);
+            this.writeError = writeError;
+        }
+
+        public int read() throws IOException {
+            return this._check(super.read());
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return this._check(super.read(b, off, len));
+        }
+
+        private int _check(int read) throws IOException {
+            IOException error;
+            if (read == -1 && (error = this.writeError.get()) != null) {
+                throw new IOException("The request body failed", error);
+            }
+
+            return read;
+        }
+    }
+}
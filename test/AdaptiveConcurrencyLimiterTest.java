@@ -0,0 +1,91 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final SendResult OK = SendResult.success(200);
+
+    private static void send(AdaptiveConcurrencyLimiter limiter, long latencyNanos, long bodyLength) throws Exception {
+        limiter.acquire();
+        limiter.release(OK, latencyNanos, bodyLength);
+    }
+
+    @Test
+    public void largeRequestsAreNotComparedWithSmallOnes() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+        for (int i = 0; i < 10; i++) {
+            send(limiter, 1000000, 2000);
+            send(limiter, 50000000, 500000);
+            send(limiter, 80000000, -1);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void slowRoundOfTheSameSizeBacksOff() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+        send(limiter, 1000000, 2000);
+        for (int i = 0; i < 9; i++) {
+            send(limiter, 5000000, 3000);
+        }
+        assertEquals(7, limiter.getLimit());
+    }
+
+    @Test
+    public void oneSlowRequestDoesNotBackOff() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+        for (int i = 0; i < 9; i++) {
+            send(limiter, 1000000, 2000);
+        }
+        send(limiter, 5000000, 2000);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void burstOfFailuresBacksOffOncePerRound() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+        SendResult down = SendResult.failure("IO Exception", new IOException("reset"));
+        for (int i = 0; i < 8; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < 8; i++) {
+            limiter.release(down, 1000000, 2000);
+        }
+        assertEquals(7, limiter.getLimit());
+
+        // The round lasts 10 requests: the next cut comes from the round after it
+        send(limiter, 1000000, 2000);
+        send(limiter, 1000000, 2000);
+        limiter.acquire();
+        limiter.release(down, 1000000, 2000);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void limitGrowsWhenItHoldsRequestsBack() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 8);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.acquire();
+            limiter.release(OK, 1000000, 2000);
+            limiter.release(OK, 1000000, 2000);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void bucketsGrowByFactorsOfFour() {
+        assertEquals(0, AdaptiveConcurrencyLimiter._bucket(0));
+        assertEquals(0, AdaptiveConcurrencyLimiter._bucket(4096));
+        assertEquals(1, AdaptiveConcurrencyLimiter._bucket(4097));
+        assertEquals(1, AdaptiveConcurrencyLimiter._bucket(16384));
+        assertEquals(2, AdaptiveConcurrencyLimiter._bucket(16385));
+        assertEquals(7, AdaptiveConcurrencyLimiter._bucket(1L << 40));
+        assertEquals(7, AdaptiveConcurrencyLimiter._bucket(-1));
+    }
+}
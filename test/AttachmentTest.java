@@ -0,0 +1,273 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class AttachmentTest {
+
+    private HttpServer server;
+    // Requests whose body the server read to the end
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    InputStream in = exchange.getRequestBody();
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                    received.incrementAndGet();
+                    byte[] response = "{\"message\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    exchange.getResponseBody().write(response);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * A body that writes a few bytes of what it promised, then fails like an unreadable file
+     */
+    private static class BrokenBody implements Transport.Body {
+        final long length;
+        final Transport.LocalException error = new Transport.LocalException("source went away");
+
+        BrokenBody(long length) {
+            this.length = length;
+        }
+
+        public long contentLength() {
+            return this.length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(new byte[16]);
+            throw this.error;
+        }
+    }
+
+    @Test
+    public void fileIsSentAtTheLengthItHadWhenAttached() throws Exception {
+        Path file = Files.createTempFile("attachment", ".txt");
+        try {
+            Files.write(file, "12345".getBytes(StandardCharsets.US_ASCII));
+            Attachment attachment = Attachment.fromPath(file);
+
+            Files.write(file, "6789".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            attachment.writeTo(out);
+            assertArrayEquals("12345".getBytes(StandardCharsets.US_ASCII), out.toByteArray());
+
+            Files.write(file, "123".getBytes(StandardCharsets.US_ASCII));
+            try {
+                attachment.writeTo(new ByteArrayOutputStream());
+                fail("sent a file shorter than the request length");
+            } catch (Transport.LocalException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void contentTypeMustBeAMediaType() {
+        Attachment attachment = Attachment.fromBytes("a.txt", ByteBuffer.allocate(1));
+        assertEquals("application/octet-stream", attachment.withContentType(null).getContentType());
+        assertEquals("text/plain", attachment.withContentType("text/plain").getContentType());
+        assertEquals("text/plain; charset=utf-8; name=\"a b.txt\"",
+            attachment.withContentType("text/plain; charset=utf-8; name=\"a b.txt\"").getContentType());
+
+        String[] invalid = {"", "text", "text/", "/plain", "text/plain;", "text/plain; charset",
+            "text/plain\r\nX-Injected: yes", "text/plaın", "text/plain; name=\"open", "text/plain; name=\"a\nb\""};
+        for (String contentType : invalid) {
+            try {
+                attachment.withContentType(contentType);
+                fail("accepted " + contentType);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void transportReportsTheBodyFailureAndSendsNoPartialRequest() throws Exception {
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(2);
+        for (long length : new long[] {1024, -1}) {
+            BrokenBody body = new BrokenBody(length);
+            try {
+                transport.post(this.url(), "application/octet-stream", body);
+                fail("sent a body that failed part way");
+            } catch (Transport.LocalException e) {
+                assertSame(body.error, e);
+            }
+        }
+        // Give the server the chance to see a request wrongly ended as complete
+        Thread.sleep(200);
+        assertEquals(0, this.received.get());
+    }
+
+    @Test
+    public void shrunkFileIsALocalFailure() throws Exception {
+        Path file = Files.createTempFile("attachment", ".txt");
+        try {
+            Files.write(file, new byte[4096]);
+            Message message = Message.builder()
+                .setFrom("sender@example.com")
+                .addTo("recipient@example.com")
+                .setSubject("Subject")
+                .setText("Text")
+                .addAttachment(Attachment.fromPath(file))
+                .build();
+            Files.write(file, new byte[16]);
+
+            CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+            SendgridClient client = SendgridClient.builder("user", "key")
+                .setDomain(this.url())
+                .setTransport(new HttpUrlConnectionTransport(2))
+                .setCircuitBreaker(breaker)
+                .build();
+            SendResult result = client.send(message);
+
+            assertTrue(result.isLocalFailure());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(0, this.received.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void streamOfTheWrongLengthIsALocalFailure() throws Exception {
+        byte[] content = new byte[100];
+        try {
+            Attachment.fromStream("short.bin", new ByteArrayInputStream(content), 101).writeTo(new ByteArrayOutputStream());
+            fail("sent a stream shorter than its length");
+        } catch (Transport.LocalException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("shorter"));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Attachment.fromStream("long.bin", new ByteArrayInputStream(content), 99).writeTo(out);
+            fail("sent a stream longer than its length");
+        } catch (Transport.LocalException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("longer"));
+        }
+        // Never past the length the request announced
+        assertEquals(99, out.size());
+
+        out = new ByteArrayOutputStream();
+        Attachment.fromStream("exact.bin", new ByteArrayInputStream(content), 100).writeTo(out);
+        assertEquals(100, out.size());
+        out = new ByteArrayOutputStream();
+        Attachment.fromStream("unknown.bin", new ByteArrayInputStream(content), -1).writeTo(out);
+        assertEquals(100, out.size());
+    }
+
+    @Test
+    public void streamOfTheWrongLengthDoesNotCountAgainstTheApi() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setDomain(this.url())
+            .setTransport(new HttpUrlConnectionTransport(2))
+            .setCircuitBreaker(breaker)
+            .build();
+        for (int declared : new int[] {4097, 4095}) {
+            Message message = Message.builder()
+                .setFrom("sender@example.com")
+                .addTo("recipient@example.com")
+                .setSubject("Subject")
+                .setText("Text")
+                .addAttachment(Attachment.fromStream("a.bin", new ByteArrayInputStream(new byte[4096]), declared))
+                .build();
+            SendResult result = client.send(message);
+
+            assertTrue(result.isLocalFailure());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+        assertEquals(0, this.received.get());
+    }
+
+    @Test
+    public void fileReadFailureIsALocalFailureButAConnectionFailureIsNot() throws Exception {
+        // Opens, but fails once read
+        Path directory = Files.createTempDirectory("attachment");
+        try {
+            Attachment unreadable = Attachment.fromPath("a.bin", directory);
+            if (unreadable.getLength() > 0) {
+                try {
+                    unreadable.writeTo(new ByteArrayOutputStream());
+                    fail("read a directory");
+                } catch (Transport.LocalException e) {
+                    // expected
+                }
+            }
+        } finally {
+            Files.delete(directory);
+        }
+
+        Path file = Files.createTempFile("attachment", ".bin");
+        try {
+            Files.write(file, new byte[4096]);
+            final IOException broken = new IOException("connection reset");
+            OutputStream connection = new OutputStream() {
+                public void write(int b) throws IOException {
+                    throw broken;
+                }
+
+                public void write(byte[] b, int off, int len) throws IOException {
+                    throw broken;
+                }
+            };
+            try {
+                Attachment.fromPath(file).writeTo(connection);
+                fail("wrote to a broken connection");
+            } catch (IOException e) {
+                assertSame(broken, e);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class BatchSenderTest {
+
+    /**
+     * A sender that keeps the messages it is given and succeeds at once.
+     */
+    private static class Recorder implements MessageSender {
+        final List<Message> sent = new ArrayList<Message>();
+
+        public SendResult send(Message message) {
+            synchronized (this.sent) {
+                this.sent.add(message);
+            }
+            return SendResult.success(200);
+        }
+
+        public CompletableFuture<SendResult> sendAsync(Message message) {
+            return CompletableFuture.completedFuture(this.send(message));
+        }
+    }
+
+    private static Message template() {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Hello -name-")
+            .build();
+    }
+
+    @Test
+    public void substitutionsAreCopiedWhenAdded() {
+        Recorder recorder = new Recorder();
+        BatchSender sender = new BatchSender(recorder, template()).setLinger(0);
+
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("-name-", "Ada");
+        sender.add("ada@example.com", values);
+        values.put("-name-", "Grace");
+        sender.add("grace@example.com", values);
+        values.clear();
+        sender.flush();
+
+        assertEquals(1, recorder.sent.size());
+        Map<?, ?> sub = (Map<?, ?>) recorder.sent.get(0).getHeaders().get("sub");
+        assertEquals(Arrays.asList("Ada", "Grace"), sub.get("-name-"));
+    }
+
+    /**
+     * awaitBlockedLinger - Wait until the linger task is running and blocked on the sender's lock
+     */
+    private static void awaitBlockedLinger() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("sendgrid-batch-linger") && thread.getState() == Thread.State.BLOCKED) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("the linger task never ran");
+    }
+
+    @Test
+    public void lateLingerTaskLeavesTheNextBatchAlone() throws Exception {
+        Recorder recorder = new Recorder();
+        BatchSender sender = new BatchSender(recorder, template()).setMaxBatchSize(2).setLinger(10);
+        Field field = BatchSender.class.getDeclaredField("lock");
+        field.setAccessible(true);
+        Object lock = field.get(sender);
+
+        sender.add("ada@example.com");
+        synchronized (lock) {
+            // The linger task of the first batch fires, and waits for the lock
+            awaitBlockedLinger();
+            // Filling the batch takes it, too late to cancel that task
+            sender.add("grace@example.com");
+            sender.setLinger(60000);
+            sender.add("linus@example.com");
+        }
+        // The late task must not send the next batch, which lingers for a minute
+        Thread.sleep(200);
+        assertEquals(1, recorder.sent.size());
+        assertEquals(Arrays.asList("ada@example.com", "grace@example.com"), recorder.sent.get(0).getTos());
+
+        sender.flush();
+        assertEquals(2, recorder.sent.size());
+        assertEquals(Arrays.asList("linus@example.com"), recorder.sent.get(1).getTos());
+    }
+}
@@ -0,0 +1,96 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class CampaignImporterTest {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+
+    private final MessageSender sender = new MessageSender() {
+        public SendResult send(Message message) {
+            sent.addAll(message.getTos());
+            return SendResult.success(200);
+        }
+
+        public CompletableFuture<SendResult> sendAsync(Message message) {
+            return CompletableFuture.completedFuture(this.send(message));
+        }
+    };
+
+    private CampaignImporter.Builder importer(CampaignImporter.Format format) {
+        Template template = Template.compile(Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .build());
+
+        return CampaignImporter.builder(this.sender, template)
+            .setFormat(format)
+            .setMaxRecordLength(100)
+            .setListener(new CampaignImporter.Listener() {
+                public void rejected(long line, String reason) {
+                    rejected.add(line + " " + reason);
+                }
+
+                public void completed(RecipientList recipients, SendResult result) {
+                }
+            });
+    }
+
+    private CampaignImporter.Report run(CampaignImporter.Builder importer, String file) throws Exception {
+        byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+
+        return importer.build().run(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+    @Test
+    public void unterminatedQuoteIsRejected() throws Exception {
+        CampaignImporter.Report report = run(importer(CampaignImporter.Format.CSV),
+            "email,name\na@example.com,A\nb@example.com,\"B\nc@example.com,C\n");
+
+        assertEquals(2, report.getRows());
+        assertEquals(1, report.getRejected());
+        assertEquals("[a@example.com]", this.sent.toString());
+        assertEquals("[3 Unterminated quoted field]", this.rejected.toString());
+    }
+
+    @Test
+    public void longCsvRecordIsRejected() throws Exception {
+        CampaignImporter.Report report = run(importer(CampaignImporter.Format.CSV),
+            "email,name\na@example.com," + repeat('x', 500) + "\nb@example.com,B\n");
+
+        assertEquals(1, report.getRejected());
+        assertEquals("[b@example.com]", this.sent.toString());
+        assertEquals("[2 Record longer than 100 characters]", this.rejected.toString());
+    }
+
+    @Test
+    public void longJsonLineIsRejected() throws Exception {
+        CampaignImporter.Report report = run(importer(CampaignImporter.Format.JSONL),
+            "{\"email\":\"a@example.com\",\"name\":\"" + repeat('x', 500) + "\"}\n"
+            + "{\"email\":\"b@example.com\"}\n");
+
+        assertEquals(1, report.getRejected());
+        assertEquals("[b@example.com]", this.sent.toString());
+        assertEquals("[1 Line longer than 100 characters]", this.rejected.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final SendResult OK = SendResult.success(200);
+    private static final SendResult DOWN = SendResult.failure("IO Exception", null);
+
+    /**
+     * A breaker whose clock only moves when told to.
+     */
+    private static class Breaker extends CircuitBreaker {
+        long now = 0;
+
+        Breaker(int failureThreshold, long openMillis) {
+            super(failureThreshold, openMillis);
+        }
+
+        long _now() {
+            return this.now;
+        }
+    }
+
+    @Test
+    public void lateSuccessDoesNotCloseAnOpenBreaker() {
+        Breaker breaker = new Breaker(1, 1000);
+        long early = breaker.tryAcquire();
+        long failing = breaker.tryAcquire();
+        breaker.record(failing, DOWN);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.record(early, OK);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REFUSED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void onlyTheTrialDecidesWhenHalfOpen() {
+        Breaker breaker = new Breaker(1, 1000);
+        long early = breaker.tryAcquire();
+        breaker.record(breaker.tryAcquire(), DOWN);
+        breaker.now = 1000;
+        long trial = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REFUSED, trial);
+
+        breaker.record(early, DOWN);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REFUSED, breaker.tryAcquire());
+
+        breaker.record(trial, OK);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedTrialReopens() {
+        Breaker breaker = new Breaker(2, 1000);
+        breaker.record(breaker.tryAcquire(), DOWN);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.record(breaker.tryAcquire(), DOWN);
+        breaker.now = 1000;
+        breaker.record(breaker.tryAcquire(), DOWN);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REFUSED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void localFailuresDoNotCount() {
+        SendResult local = SendResult.failure("IO Exception", new Transport.LocalException("no file"));
+        assertTrue(local.isLocalFailure());
+        assertFalse(new RetryPolicy(3).isRetryable(local));
+
+        Breaker breaker = new Breaker(1, 1000);
+        breaker.record(breaker.tryAcquire(), local);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(breaker.tryAcquire(), DOWN);
+        breaker.now = 1000;
+        breaker.record(breaker.tryAcquire(), local);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        long trial = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REFUSED, trial);
+        breaker.record(trial, OK);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
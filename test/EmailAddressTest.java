@@ -0,0 +1,150 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EmailAddressTest {
+
+    private static String repeat(char c, int count) {
+        StringBuilder s = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            s.append(c);
+        }
+
+        return s.toString();
+    }
+
+    private static boolean isCached(String domain) {
+        synchronized (EmailAddress.domains) {
+            return EmailAddress.domains.containsKey(domain);
+        }
+    }
+
+    @Test
+    public void acceptsDotAtomAndQuotedLocalParts() {
+        String[] valid = {
+            "user@example.com",
+            "first.last@example.com",
+            "user+tag@sub.example.co.uk",
+            "!#$%&'*+-/=?^_`{|}~@example.com",
+            "josé@example.com",
+            "\"john doe\"@example.com",
+            "\"a@b\"@example.com",
+            "\"quote \\\" inside\"@example.com",
+            "\"..\"@example.com",
+            "user@xn--bcher-kva.example",
+            "user@a-b.c1",
+        };
+        for (String address : valid) {
+            // Canonical already, so returned as it is
+            assertSame(address, address, EmailAddress.normalize(address));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedAddresses() {
+        String[] invalid = {
+            null,
+            "",
+            "user",
+            "@example.com",
+            "user@",
+            "user@@example.com",
+            "first..last@example.com",
+            ".user@example.com",
+            "user.@example.com",
+            "us er@example.com",
+            "user(comment)@example.com",
+            "\"unterminated@example.com",
+            "\"quoted\"tail@example.com",
+            "\"tab\t\"@example.com",
+            "user@localhost",
+            "user@example..com",
+            "user@.example.com",
+            "user@example.com.",
+            "user@-example.com",
+            "user@example-.com",
+            "user@exa_mple.com",
+            "user@example.123",
+            repeat('a', 65) + "@example.com",
+            "user@" + repeat('a', 64) + ".com",
+            "user@é́xample..com",
+        };
+        for (String address : invalid) {
+            assertNull(address, EmailAddress.normalize(address));
+            assertFalse(address, EmailAddress.isValid(address));
+        }
+    }
+
+    @Test
+    public void enforcesTheLengthLimits() {
+        String local = repeat('a', 64);
+        assertTrue(EmailAddress.isValid(local + "@example.com"));
+        assertTrue(EmailAddress.isValid("user@" + repeat('a', 63) + ".com"));
+
+        // 254 characters in all, and one more
+        String domain = repeat('b', 63) + "." + repeat('c', 63) + "." + repeat('d', 57) + ".com";
+        assertEquals(254, (local + "@" + domain).length());
+        assertTrue(EmailAddress.isValid(local + "@" + domain));
+        assertFalse(EmailAddress.isValid(local + "@" + "e" + domain));
+    }
+
+    @Test
+    public void convertsInternationalDomainsThroughTheCache() {
+        assertEquals("user@xn--bcher-kva.example", EmailAddress.normalize("user@Bücher.Example"));
+        assertTrue(isCached("Bücher.Example"));
+        assertEquals("User@example.com", EmailAddress.normalize("User@EXAMPLE.com"));
+        assertEquals("josé@xn--mnchen-3ya.de", EmailAddress.normalize("josé@MÜNCHEN.de"));
+        // Invalid once converted, and remembered as such
+        assertNull(EmailAddress.normalize("user@Ex_ample.com"));
+        assertTrue(isCached("Ex_ample.com"));
+        assertNull(EmailAddress.normalize("user@Ex_ample.com"));
+    }
+
+    @Test
+    public void cacheEvictsTheLeastRecentlyUsedDomain() {
+        EmailAddress.normalize("user@Oldest.Example");
+        EmailAddress.normalize("user@Kept.Example");
+        for (int i = 0; i < EmailAddress.MAX_CACHED_DOMAINS - 1; i++) {
+            if (i % 100 == 0) {
+                // Used again, so it stays
+                EmailAddress.normalize("user@Kept.Example");
+            }
+            EmailAddress.normalize("user@Filler" + i + ".Example");
+        }
+
+        assertFalse(isCached("Oldest.Example"));
+        assertTrue(isCached("Kept.Example"));
+        synchronized (EmailAddress.domains) {
+            assertTrue(EmailAddress.domains.size() <= EmailAddress.MAX_CACHED_DOMAINS);
+        }
+    }
+
+    @Test
+    public void acceptsIpv4Literals() {
+        assertSame("user@[192.0.2.1]", EmailAddress.normalize("user@[192.0.2.1]"));
+        assertTrue(EmailAddress.isValid("user@[255.255.255.255]"));
+        String[] invalid = {"user@[256.0.0.1]", "user@[1.2.3]", "user@[1.2.3.4.5]", "user@[1..2.3]",
+            "user@[1.2.3.]", "user@[]", "user@[1.2.3.4", "user@[a.b.c.d]"};
+        for (String address : invalid) {
+            assertFalse(address, EmailAddress.isValid(address));
+        }
+    }
+
+    @Test
+    public void dedupeKeyFoldsTheCaseOfTheWholeAddress() {
+        assertEquals("john.doe@example.com", EmailAddress.dedupeKey("John.Doe@Example.COM"));
+        assertEquals(EmailAddress.dedupeKey("JOHN@example.com"), EmailAddress.dedupeKey("john@EXAMPLE.com"));
+        assertEquals("émile@example.com", EmailAddress.dedupeKey("Émile@example.com"));
+        assertEquals(EmailAddress.dedupeKey("Émile@example.com"), EmailAddress.dedupeKey("émile@example.com"));
+        assertEquals("user@xn--bcher-kva.example", EmailAddress.dedupeKey("USER@BÜCHER.example"));
+        assertNull(EmailAddress.dedupeKey("not an address"));
+        // normalize keeps the local part as given
+        assertEquals("John@example.com", EmailAddress.normalize("John@Example.com"));
+    }
+}
@@ -0,0 +1,182 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.appengine.labs.repackaged.org.json.JSONArray;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+public class EncoderTest {
+
+    private static final String[] VALUES = values();
+
+    private static String[] values() {
+        StringBuilder ascii = new StringBuilder();
+        for (char c = 0; c < 0x80; c++) {
+            ascii.append(c);
+        }
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            // Longer than the encoders' buffers, with multi-byte characters across their ends
+            mixed.append("abc é€😀 ");
+        }
+
+        return new String[] {"", "plain", "a b+c/d?e=f&g", ascii.toString(), "café", "€uro", "😀 smile",
+            "lone \ud800 high", "lone \udc00 low", "ends high \ud800", mixed.toString()};
+    }
+
+    /**
+     * appendInChunks - Append a value a few characters at a time, never splitting a surrogate pair
+     */
+    private static void appendInChunks(Appendable out, String value) throws Exception {
+        int start = 0;
+        while (start < value.length()) {
+            int end = Math.min(value.length(), start + 7);
+            if (end < value.length() && Character.isHighSurrogate(value.charAt(end - 1))) {
+                end++;
+            }
+            out.append(value, start, end);
+            start = end;
+        }
+    }
+
+    @Test
+    public void formEncoderMatchesUrlEncoder() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        FormEncoder wholeForm = new FormEncoder(whole);
+        FormEncoder bytesForm = new FormEncoder(bytes);
+        FormEncoder chunksForm = new FormEncoder(chunks);
+        FormEncoder counter = new FormEncoder(null);
+        for (int i = 0; i < VALUES.length; i++) {
+            String key = "key " + i + "[é]";
+            String value = VALUES[i];
+            if (i > 0) {
+                expected.append('&');
+            }
+            expected.append(URLEncoder.encode(key, "UTF-8")).append('=').append(URLEncoder.encode(value, "UTF-8"));
+
+            wholeForm.param(key, value);
+            byte[] utf8 = ("<" + value + ">").getBytes(StandardCharsets.UTF_8);
+            bytesForm.param(key, utf8, 1, utf8.length - 1);
+            chunksForm.beginParam(key);
+            appendInChunks(chunksForm, value);
+            counter.param(key, value);
+        }
+        wholeForm.flush();
+        bytesForm.flush();
+        chunksForm.flush();
+
+        assertEquals(expected.toString(), new String(whole.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(expected.toString(), new String(chunks.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(expected.length(), counter.count());
+    }
+
+    @Test
+    public void multipartEncoderWritesUtf8Parts() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        MultipartEncoder wholeParts = new MultipartEncoder(whole, "b0undary");
+        MultipartEncoder chunkParts = new MultipartEncoder(chunks, "b0undary");
+        MultipartEncoder counter = new MultipartEncoder(null, "b0undary");
+        for (int i = 0; i < VALUES.length; i++) {
+            String name = "field \"" + i + "\"\r\n";
+            expected.append((i == 0) ? "" : "\r\n").append("--b0undary\r\n")
+                .append("Content-Disposition: form-data; name=\"field %22" + i + "%22%0D%0A\"\r\n\r\n")
+                .append(VALUES[i]);
+
+            wholeParts.field(name, VALUES[i]);
+            chunkParts.beginField(name);
+            appendInChunks(chunkParts, VALUES[i]);
+            counter.field(name, VALUES[i]);
+        }
+        Attachment file = Attachment.fromBytes("ré\"sumé.txt", ByteBuffer.wrap("file content".getBytes(StandardCharsets.UTF_8)))
+            .withContentType("text/plain; charset=utf-8");
+        expected.append("\r\n--b0undary\r\n")
+            .append("Content-Disposition: form-data; name=\"files[résumé]\"; filename=\"ré%22sumé.txt\"\r\n")
+            .append("Content-Type: text/plain; charset=utf-8\r\n\r\nfile content")
+            .append("\r\n--b0undary--\r\n");
+        for (MultipartEncoder parts : Arrays.asList(wholeParts, chunkParts, counter)) {
+            parts.file("files[résumé]", file);
+            parts.finish();
+        }
+
+        // getBytes replaces lone surrogates with '?' as the encoder does
+        byte[] reference = expected.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(new String(reference, StandardCharsets.UTF_8), new String(whole.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(new String(reference, StandardCharsets.UTF_8), new String(chunks.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(reference.length, counter.count());
+    }
+
+    private static Object fromJson(Object value) throws Exception {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (Iterator<?> keys = object.keys(); keys.hasNext(); ) {
+                String key = (String) keys.next();
+                map.put(key, fromJson(object.get(key)));
+            }
+            return map;
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<Object>();
+            for (int i = 0; i < array.length(); i++) {
+                list.add(fromJson(array.get(i)));
+            }
+            return list;
+        }
+
+        return (value == JSONObject.NULL) ? null : value;
+    }
+
+    @Test
+    public void smtpApiWriterWritesJsonThatParsesBack() throws Exception {
+        Map<String, Object> header = new LinkedHashMap<String, Object>();
+        header.put("to", Arrays.asList(VALUES));
+        Map<String, Object> sub = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < VALUES.length; i++) {
+            sub.put("-" + VALUES[i] + "-", Arrays.asList(VALUES[i], "x"));
+        }
+        header.put("sub", sub);
+        Map<String, Object> settings = new LinkedHashMap<String, Object>();
+        settings.put("enable", 1);
+        settings.put("ratio", 0.5);
+        settings.put("on", true);
+        settings.put("none", null);
+        header.put("filters", settings);
+
+        StringBuilder json = new StringBuilder();
+        SmtpApiWriter.writeValue(json, header);
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            assertTrue("not printable ASCII at " + i, c >= 0x20 && c < 0x7F);
+        }
+        assertEquals(header, fromJson(new JSONObject(json.toString())));
+
+        // Written straight into a form parameter, it is the URL encoded JSON
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FormEncoder form = new FormEncoder(out);
+        form.beginParam("x-smtpapi");
+        SmtpApiWriter.writeValue(form, header);
+        form.flush();
+        assertEquals("x-smtpapi=" + URLEncoder.encode(json.toString(), "UTF-8"),
+            new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,100 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ErrorParserTest {
+
+    private static SendResult sendAnswered(final int status, final String body) {
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(new Transport() {
+                public Response post(String url, String contentType, Body request) {
+                    return new Response(status, body);
+                }
+            })
+            .build();
+
+        return client.send(Message.builder()
+            .setFrom("sender@example.com")
+            .addTo("recipient@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .build());
+    }
+
+    @Test
+    public void readsTheErrorsAndSkipsEverythingElse() {
+        assertEquals(Arrays.asList("Bad username / password", "Missing subject"),
+            ErrorParser.parse("{\"message\": \"error\", \"errors\": [\"Bad username / password\", \"Missing subject\"]}"));
+        assertEquals(Arrays.asList("first"), ErrorParser.parse(
+            " {\n\t\"meta\": {\"nested\": [1, {\"a\": \"]}\"}, [\"[\"]], \"done\": true},"
+                + " \"count\": -1.5e3, \"none\": null, \"errors\": [ \"first\" ] } "));
+        assertEquals(Collections.emptyList(), ErrorParser.parse("{\"message\":\"error\",\"errors\":[]}"));
+    }
+
+    @Test
+    public void decodesEscapes() {
+        assertEquals(Arrays.asList("say \"hi\"\\ / \b\f\n\r\t", "caf\u00e9 \ud83d\ude00"),
+            ErrorParser.parse("{\"errors\":[\"say \\\"hi\\\"\\\\ \\/ \\b\\f\\n\\r\\t\", \"caf\\u00e9 \\uD83D\\ude00\"]}"));
+        // An escaped key is still recognised
+        assertEquals(Arrays.asList("x"), ErrorParser.parse("{\"err\\u006frs\":[\"x\"]}"));
+    }
+
+    @Test
+    public void keepsOtherErrorValuesAsTheirJson() {
+        List<String> errors = ErrorParser.parse("{\"errors\":[\"text\", 42, true, null, {\"field\":\"to\"}, [1,2]]}");
+        assertEquals(Arrays.asList("text", "42", "true", "null", "{\"field\":\"to\"}", "[1,2]"), errors);
+    }
+
+    @Test
+    public void rejectsWhatIsNotAnErrorDocument() {
+        String[] bodies = {
+            "",
+            "   ",
+            "<html><body><h1>502 Bad Gateway</h1></body></html>",
+            "[\"errors\"]",
+            "{}",
+            "{\"message\":\"error\"}",
+            // Only an array of errors is one
+            "{\"errors\":\"not a list\"}",
+            "{\"errors\":{\"0\":\"x\"}}",
+            // Truncated anywhere
+            "{\"errors\":[\"abc",
+            "{\"errors\":[\"abc\"",
+            "{\"errors\":[\"abc\"]",
+            "{\"errors\":[\"\\u00e",
+            "{\"errors\":[\"ab\\",
+            "{\"meta\":{\"a\":[1,2",
+            "{\"errors\"",
+            // Malformed
+            "{\"errors\":[\"\\uzzzz\"]}",
+            "{\"errors\" [\"x\"]}",
+            "{errors:[\"x\"]}",
+            "{\"a\":,\"errors\":[\"x\"]}",
+        };
+        for (String body : bodies) {
+            assertNull(body, ErrorParser.parse(body));
+        }
+    }
+
+    @Test
+    public void clientFallsBackToTheStatusAndBody() {
+        String page = "<html><body><h1>502 Bad Gateway</h1></body></html>";
+        SendResult result = sendAnswered(502, page);
+        assertEquals(502, result.getStatus());
+        assertEquals(Arrays.asList("HTTP 502: " + page), result.getErrors());
+
+        // An "errors" value that is not an array no longer fails with a ClassCastException
+        String body = "{\"message\":\"error\",\"errors\":\"Bad username / password\"}";
+        assertEquals(Arrays.asList("HTTP 400: " + body), sendAnswered(400, body).getErrors());
+
+        assertEquals(Arrays.asList("Bad username / password"),
+            sendAnswered(400, "{\"message\":\"error\",\"errors\":[\"Bad username / password\"]}").getErrors());
+    }
+}
@@ -0,0 +1,63 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithoutGaps() {
+        int last = Histogram._index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histogram._upperBound(last));
+        assertEquals(0, Histogram._index(0));
+        long lower = 0;
+        for (int i = 0; i <= last; i++) {
+            long upper = Histogram._upperBound(i);
+            assertEquals(i, Histogram._index(lower));
+            assertEquals(i, Histogram._index(upper));
+            // Exact below 128, then within 1/64 of the value
+            if (i < 128) {
+                assertEquals(lower, upper);
+            } else {
+                assertTrue("bucket " + i, upper - lower < lower / 64);
+            }
+            lower = upper + 1;
+        }
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfItsBucket() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        // Counted exactly
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 0);
+
+        histogram = new Histogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000L);
+        }
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 5000000 && p50 < 5000000 * (1 + 1.0 / 64));
+        // Never beyond the largest value recorded
+        assertEquals(10000000, histogram.getPercentile(100));
+        assertEquals(10000000, histogram.getMax());
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+}
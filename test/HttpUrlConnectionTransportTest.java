@@ -0,0 +1,203 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpUrlConnectionTransportTest {
+
+    private static final String SUCCESS = "{\"message\":\"success\"}";
+
+    private HttpServer server;
+    // What the server answers with next
+    private volatile String contentEncoding;
+    private volatile byte[] response;
+    // What the server received last
+    private volatile String requestEncoding;
+    private volatile byte[] request;
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                    request = readAll(exchange.getRequestBody());
+                    if (contentEncoding != null) {
+                        exchange.getResponseHeaders().set("Content-Encoding", contentEncoding);
+                    }
+                    exchange.sendResponseHeaders(200, response.length);
+                    exchange.getResponseBody().write(response);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    private Transport.Response post() throws IOException {
+        return new HttpUrlConnectionTransport(1).post(this.url(), "text/plain", new Transport.Bytes(new byte[0]));
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            all.write(buffer, 0, n);
+        }
+
+        return all.toByteArray();
+    }
+
+    private static byte[] repeated(int length) {
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            raw[i] = (byte) ('a' + i % 4);
+        }
+
+        return raw;
+    }
+
+    private static byte[] deflate(byte[] raw, boolean nowrap) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        OutputStream out = new DeflaterOutputStream(compressed, deflater);
+        out.write(raw);
+        out.close();
+        deflater.end();
+
+        return compressed.toByteArray();
+    }
+
+    @Test
+    public void decodesEveryContentEncoding() throws Exception {
+        byte[] raw = SUCCESS.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        OutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write(raw);
+        gzip.close();
+        this.contentEncoding = "gzip";
+        this.response = gzipped.toByteArray();
+        assertEquals(SUCCESS, this.post().getBody());
+
+        this.contentEncoding = "deflate";
+        this.response = deflate(raw, false);
+        assertEquals(SUCCESS, this.post().getBody());
+
+        // Raw deflate, without the zlib wrapper, as some servers send it
+        this.response = deflate(raw, true);
+        assertEquals(SUCCESS, this.post().getBody());
+
+        this.response = new byte[0];
+        assertEquals("", this.post().getBody());
+    }
+
+    @Test
+    public void refusesAnOversizedResponse() throws Exception {
+        byte[] raw = new byte[HttpUrlConnectionTransport.MAX_RESPONSE];
+        Arrays.fill(raw, (byte) 'a');
+        this.contentEncoding = null;
+        this.response = raw;
+        assertEquals(raw.length, this.post().getBody().length());
+
+        // A compression bomb: small on the wire, over the limit once decoded
+        this.contentEncoding = "deflate";
+        this.response = deflate(Arrays.copyOf(raw, raw.length + 1), false);
+        try {
+            this.post();
+            fail("read an oversized response");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Response longer than"));
+        }
+    }
+
+    @Test
+    public void compressesRequestsFromTheThresholdUp() throws Exception {
+        this.response = SUCCESS.getBytes(StandardCharsets.UTF_8);
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(1)
+            .setRequestCompression(HttpUrlConnectionTransport.Compression.GZIP, 1000);
+
+        byte[] small = repeated(999);
+        assertEquals(200, transport.post(this.url(), "text/plain", new Transport.Bytes(small)).getStatus());
+        assertNull(this.requestEncoding);
+        assertArrayEquals(small, this.request);
+
+        byte[] large = repeated(1000);
+        assertEquals(200, transport.post(this.url(), "text/plain", new Transport.Bytes(large)).getStatus());
+        assertEquals("gzip", this.requestEncoding);
+        assertTrue(this.request.length < large.length);
+        assertArrayEquals(large, readAll(new GZIPInputStream(new ByteArrayInputStream(this.request))));
+
+        transport.setRequestCompression(HttpUrlConnectionTransport.Compression.DEFLATE, 1000);
+        transport.post(this.url(), "text/plain", new Transport.Bytes(large));
+        assertEquals("deflate", this.requestEncoding);
+        assertArrayEquals(large, readAll(new InflaterInputStream(new ByteArrayInputStream(this.request))));
+
+        transport.setRequestCompression(HttpUrlConnectionTransport.Compression.NONE, 0);
+        transport.post(this.url(), "text/plain", new Transport.Bytes(large));
+        assertNull(this.requestEncoding);
+        assertArrayEquals(large, this.request);
+    }
+
+    @Test
+    public void sendsABodyThatDoesNotShrinkAsItIs() throws Exception {
+        this.response = SUCCESS.getBytes(StandardCharsets.UTF_8);
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(1)
+            .setRequestCompression(HttpUrlConnectionTransport.Compression.GZIP, 0);
+
+        byte[] noise = new byte[4096];
+        new Random(42).nextBytes(noise);
+        assertEquals(200, transport.post(this.url(), "text/plain", new Transport.Bytes(noise)).getStatus());
+        assertNull(this.requestEncoding);
+        assertArrayEquals(noise, this.request);
+    }
+
+    @Test
+    public void neverCompressesAMultipartBody() throws Exception {
+        this.response = SUCCESS.getBytes(StandardCharsets.UTF_8);
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(1)
+            .setRequestCompression(HttpUrlConnectionTransport.Compression.GZIP, 0);
+
+        byte[] large = repeated(10000);
+        transport.post(this.url(), "multipart/form-data; boundary=x", new Transport.Bytes(large));
+        assertNull(this.requestEncoding);
+        assertArrayEquals(large, this.request);
+    }
+}
@@ -0,0 +1,46 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class InMemorySendMetricsTest {
+
+    @Test
+    public void countsOutcomes() {
+        InMemorySendMetrics metrics = new InMemorySendMetrics();
+        metrics.recordResult(SendResult.success(200));
+        metrics.recordResult(SendResult.apiError(400, Arrays.asList("Missing subject", "Missing text")));
+        metrics.recordResult(SendResult.apiError(400, Arrays.asList("Missing subject")));
+        metrics.recordResult(SendResult.failure("IO Exception", null));
+        metrics.recordRequest(100, 3);
+        metrics.recordRequest(50, 1);
+
+        assertEquals(1, metrics.getSuccesses());
+        assertEquals(2, metrics.getApiErrors());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(150, metrics.getBytesSent());
+        assertEquals(2, metrics.getRecipientsPerRequest().getCount());
+        assertEquals(Long.valueOf(2), metrics.getErrorCounts().get("Missing subject"));
+        assertEquals(Long.valueOf(1), metrics.getErrorCounts().get("Missing text"));
+    }
+
+    @Test
+    public void distinctErrorsAreCapped() {
+        InMemorySendMetrics metrics = new InMemorySendMetrics();
+        int distinct = InMemorySendMetrics.MAX_ERROR_KEYS + 50;
+        for (int i = 0; i < distinct; i++) {
+            metrics.recordResult(SendResult.apiError(400, Arrays.asList("Invalid email: user" + i + "@example.com")));
+        }
+        // A string already counted keeps its own counter
+        metrics.recordResult(SendResult.apiError(400, Arrays.asList("Invalid email: user0@example.com")));
+
+        Map<String, Long> counts = metrics.getErrorCounts();
+        assertEquals(InMemorySendMetrics.MAX_ERROR_KEYS + 1, counts.size());
+        assertEquals(Long.valueOf(50), counts.get("other"));
+        assertEquals(Long.valueOf(2), counts.get("Invalid email: user0@example.com"));
+    }
+}
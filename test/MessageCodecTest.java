@@ -0,0 +1,62 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+public class MessageCodecTest {
+
+    private static Message roundTrip(Message message) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageCodec.write(new DataOutputStream(bytes), message);
+
+        return MessageCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static String to(Message message) throws Exception {
+        StringBuilder json = new StringBuilder();
+        SmtpApiWriter.writeRecipients(json, message.getRecipients());
+
+        return json.toString();
+    }
+
+    @Test
+    public void namedRecipientsSurviveARoundTrip() throws Exception {
+        Sendgrid mail = new Sendgrid("user", "key");
+        mail.setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text");
+        mail.addTo("ada@example.com", "Ada Lovelace");
+        mail.addTo("grace@example.com");
+        Message message = mail.toMessage();
+
+        Message read = roundTrip(message);
+        assertEquals(2, read.getRecipients().size());
+        assertEquals("ada@example.com", read.getRecipients().getEmail(0));
+        assertEquals("Ada Lovelace", read.getRecipients().getName(0));
+        assertEquals("grace@example.com", read.getRecipients().getEmail(1));
+        assertEquals("[\"Ada Lovelace<ada@example.com>\",\"grace@example.com\"]", to(read));
+        assertEquals(to(message), to(read));
+    }
+
+    @Test
+    public void builtMessagesSurviveARoundTrip() throws Exception {
+        Message message = Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .addTo("ada@example.com", "Ada")
+            .setBcc("audit@example.com")
+            .build();
+
+        Message read = roundTrip(message);
+        assertEquals(to(message), to(read));
+        assertEquals(message.getBccs(), read.getBccs());
+        assertEquals(message.getFrom(), read.getFrom());
+    }
+}
@@ -0,0 +1,185 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboxTest {
+
+    private File directory;
+
+    /**
+     * A sender that fails a message locally when its subject says so, and sends the rest.
+     */
+    private static class Sender implements MessageSender {
+        final List<String> sent = new ArrayList<String>();
+
+        public synchronized SendResult send(Message message) {
+            if (message.getSubject().equals("broken")) {
+                return SendResult.failure("IO Exception", new Transport.LocalException("Cannot read attachment"));
+            }
+            this.sent.add(message.getSubject());
+            return SendResult.success(200);
+        }
+
+        public CompletableFuture<SendResult> sendAsync(Message message) {
+            return CompletableFuture.completedFuture(this.send(message));
+        }
+    }
+
+    @Before
+    public void createDirectory() throws Exception {
+        this.directory = Files.createTempDirectory("outbox").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : this.directory.listFiles()) {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    private static Message message(String subject) {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject(subject)
+            .setText("Text")
+            .addTo("recipient@example.com")
+            .build();
+    }
+
+    @Test
+    public void localFailureIsDroppedInsteadOfBlockingTheLog() throws Exception {
+        Sender sender = new Sender();
+        final List<SendResult> dropped = new ArrayList<SendResult>();
+        Outbox outbox = Outbox.builder(this.directory, sender)
+            .setRetryDelay(10, 20)
+            .setListener(new Outbox.Listener() {
+                public void dropped(Message message, SendResult result) {
+                    dropped.add(result);
+                }
+            })
+            .open();
+        try {
+            outbox.append(message("broken"));
+            outbox.append(message("after"));
+            assertTrue(outbox.awaitDrained(5000));
+        } finally {
+            outbox.close();
+        }
+        assertEquals(1, dropped.size());
+        assertTrue(dropped.get(0).isLocalFailure());
+        assertEquals(1, sender.sent.size());
+        assertEquals("after", sender.sent.get(0));
+    }
+
+    @Test
+    public void throwingListenerDoesNotStopTheDrainer() throws Exception {
+        Sender sender = new Sender();
+        Outbox outbox = Outbox.builder(this.directory, sender)
+            .setRetryDelay(10, 20)
+            .setListener(new Outbox.Listener() {
+                public void dropped(Message message, SendResult result) {
+                    throw new IllegalStateException("listener bug");
+                }
+            })
+            .open();
+        try {
+            outbox.append(message("broken"));
+            assertTrue(outbox.awaitDrained(5000));
+            outbox.append(message("after"));
+            assertTrue(outbox.awaitDrained(5000));
+        } finally {
+            outbox.close();
+        }
+        assertEquals(1, sender.sent.size());
+        assertEquals("after", sender.sent.get(0));
+    }
+
+    @Test
+    public void failedCheckpointIsLogged() throws Exception {
+        // A directory where the checkpoint's temporary file goes, so it cannot be written
+        assertTrue(new File(this.directory, "checkpoint.tmp").mkdir());
+        final List<LogRecord> warnings = new ArrayList<LogRecord>();
+        final CountDownLatch logged = new CountDownLatch(1);
+        Handler handler = new Handler() {
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    synchronized (warnings) {
+                        warnings.add(record);
+                    }
+                    logged.countDown();
+                }
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(Outbox.class.getName());
+        logger.addHandler(handler);
+        Sender sender = new Sender();
+        Outbox outbox = Outbox.builder(this.directory, sender).open();
+        try {
+            outbox.append(message("sent"));
+            assertTrue(logged.await(5, TimeUnit.SECONDS));
+        } finally {
+            outbox.close();
+            logger.removeHandler(handler);
+        }
+        synchronized (warnings) {
+            assertTrue(warnings.get(0).getMessage(), warnings.get(0).getMessage().contains("checkpoint"));
+            assertTrue(warnings.get(0).getThrown() instanceof IOException);
+        }
+        assertEquals(1, sender.sent.size());
+    }
+
+    @Test
+    public void builderRejectsSettingsThatWouldStallTheDrainer() {
+        Outbox.Builder builder = Outbox.builder(this.directory, new Sender());
+        for (int size : new int[] {0, -1}) {
+            try {
+                builder.setBatchSize(size);
+                fail("accepted a batch size of " + size);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                builder.setSegmentSize(size);
+                fail("accepted a segment size of " + size);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        long[][] delays = {{-1, 100}, {0, 100}, {100, 10}};
+        for (long[] delay : delays) {
+            try {
+                builder.setRetryDelay(delay[0], delay[1]);
+                fail("accepted a retry delay of " + delay[0] + " to " + delay[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        builder.setBatchSize(1).setSegmentSize(1).setRetryDelay(1, 1);
+    }
+}
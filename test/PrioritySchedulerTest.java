@@ -0,0 +1,227 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import googleSendgridJava.PriorityScheduler.Lane;
+
+import org.junit.Test;
+
+public class PrioritySchedulerTest {
+
+    private static final Transport OK = new Transport() {
+        public Response post(String url, String contentType, Body body) {
+            return new Response(200, "{\"message\":\"success\"}");
+        }
+    };
+
+    /**
+     * A sender that keeps every send in flight until the test completes it, and records the
+     * order they were handed over in.
+     */
+    private static class HeldSender implements MessageSender {
+        final List<Message> sent = new ArrayList<Message>();
+        final List<CompletableFuture<SendResult>> held = new ArrayList<CompletableFuture<SendResult>>();
+
+        public SendResult send(Message message) {
+            return this.sendAsync(message).join();
+        }
+
+        public synchronized CompletableFuture<SendResult> sendAsync(Message message) {
+            CompletableFuture<SendResult> future = new CompletableFuture<SendResult>();
+            this.sent.add(message);
+            this.held.add(future);
+            return future;
+        }
+
+        /**
+         * Complete the oldest send still in flight
+         */
+        void completeOne() {
+            CompletableFuture<SendResult> future;
+            synchronized (this) {
+                future = this.held.remove(0);
+            }
+            future.complete(SendResult.success(200));
+        }
+
+        synchronized int inFlight() {
+            return this.held.size();
+        }
+
+        synchronized String subject(int i) {
+            return this.sent.get(i).getSubject();
+        }
+    }
+
+    private static Message message(String subject) {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .addTo("recipient@example.com")
+            .setSubject(subject)
+            .setText("Text")
+            .build();
+    }
+
+    private static Message message(int i) {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .addTo("recipient" + i + "@example.com")
+            .setSubject("Subject " + i)
+            .setText("Text")
+            .build();
+    }
+
+    private static void assertAllSent(PriorityScheduler scheduler, int sends) throws Exception {
+        List<CompletableFuture<SendResult>> futures = new ArrayList<CompletableFuture<SendResult>>();
+        for (int i = 0; i < sends; i++) {
+            futures.add(scheduler.sendAsync(message(i)));
+        }
+        for (CompletableFuture<SendResult> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+        for (PriorityScheduler.Lane lane : PriorityScheduler.Lane.values()) {
+            assertEquals(0, scheduler.getInFlight(lane));
+            assertEquals(0, scheduler.getQueued(lane));
+        }
+    }
+
+    @Test
+    public void oneSlotOnEachSide() throws Exception {
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(OK)
+            .setExecutor(SendExecutor.fixed(4, 1))
+            .build();
+
+        assertAllSent(new PriorityScheduler(client, 1), 10);
+    }
+
+    @Test
+    public void equalLimits() throws Exception {
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(OK)
+            .setExecutor(SendExecutor.fixed(8, 8))
+            .build();
+
+        assertAllSent(new PriorityScheduler(client, 8), 1000);
+    }
+
+    @Test
+    public void transactionalTakesTheFirstFreeSlot() {
+        HeldSender sender = new HeldSender();
+        PriorityScheduler scheduler = new PriorityScheduler(sender, 8);
+        for (int i = 0; i < 100; i++) {
+            scheduler.sendAsync(message("bulk"), Lane.BULK);
+            scheduler.sendAsync(message("normal"), Lane.NORMAL);
+        }
+        for (int i = 0; i < 7; i++) {
+            sender.completeOne();
+        }
+        assertEquals(8, sender.inFlight());
+
+        int before = sender.sent.size();
+        scheduler.sendAsync(message("transactional"), Lane.TRANSACTIONAL);
+        assertEquals(1, scheduler.getQueued(Lane.TRANSACTIONAL));
+        sender.completeOne();
+
+        assertEquals(before + 1, sender.sent.size());
+        assertEquals("transactional", sender.subject(before));
+    }
+
+    @Test
+    public void waitingLanesShareSlotsByWeight() {
+        HeldSender sender = new HeldSender();
+        PriorityScheduler scheduler = new PriorityScheduler(sender, 1);
+        scheduler.sendAsync(message("first"), Lane.TRANSACTIONAL);
+        for (int i = 0; i < 50; i++) {
+            scheduler.sendAsync(message("normal"), Lane.NORMAL);
+            scheduler.sendAsync(message("bulk"), Lane.BULK);
+        }
+        for (int i = 0; i < 50; i++) {
+            sender.completeOne();
+        }
+
+        int normal = 0;
+        for (int i = 1; i <= 50; i++) {
+            if (sender.subject(i).equals("normal")) {
+                normal++;
+            }
+        }
+        // NORMAL has weight 4 and BULK weight 1 by default
+        assertEquals(40, normal);
+    }
+
+    @Test
+    public void lanesStayUnderTheirCaps() {
+        HeldSender sender = new HeldSender();
+        PriorityScheduler scheduler = new PriorityScheduler(sender, 8);
+        for (int i = 0; i < 20; i++) {
+            scheduler.sendAsync(message("bulk"), Lane.BULK);
+        }
+        // All but a quarter of the slots
+        assertEquals(6, scheduler.getInFlight(Lane.BULK));
+        assertEquals(14, scheduler.getQueued(Lane.BULK));
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.sendAsync(message("normal"), Lane.NORMAL);
+        }
+        assertEquals(2, scheduler.getInFlight(Lane.NORMAL));
+        assertEquals(8, sender.inFlight());
+
+        scheduler.setLane(Lane.BULK, 1, 2);
+        for (int i = 0; i < 4; i++) {
+            sender.completeOne();
+        }
+        // Bulk sends completing over the new cap make room for NORMAL only
+        assertEquals(2, scheduler.getInFlight(Lane.BULK));
+        assertEquals(6, scheduler.getInFlight(Lane.NORMAL));
+    }
+
+    @Test
+    public void sendPastItsDeadlineIsDropped() throws Exception {
+        HeldSender sender = new HeldSender();
+        PriorityScheduler scheduler = new PriorityScheduler(sender, 1);
+        scheduler.sendAsync(message("first"), Lane.TRANSACTIONAL);
+        CompletableFuture<SendResult> late = scheduler.sendAsync(message("late"), Lane.BULK, 20);
+        CompletableFuture<SendResult> patient = scheduler.sendAsync(message("patient"), Lane.BULK);
+        Thread.sleep(50);
+        sender.completeOne();
+
+        SendResult result = late.get(5, TimeUnit.SECONDS);
+        assertFalse(result.isSuccess());
+        assertTrue(result.getCause() instanceof PriorityScheduler.DeadlineException);
+        assertEquals(1, scheduler.getDroppedCount(Lane.BULK));
+        assertEquals(2, sender.sent.size());
+        assertEquals("patient", sender.subject(1));
+
+        sender.completeOne();
+        assertTrue(patient.get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void sendWaitingTooLongMovesUpALane() throws Exception {
+        HeldSender sender = new HeldSender();
+        PriorityScheduler scheduler = new PriorityScheduler(sender, 1)
+            .setEscalateAfter(Lane.BULK, 20);
+        scheduler.sendAsync(message("first"), Lane.TRANSACTIONAL);
+        scheduler.sendAsync(message("bulk"), Lane.BULK);
+        Thread.sleep(50);
+        // Queuing a send checks for escalation
+        scheduler.sendAsync(message("second"), Lane.TRANSACTIONAL);
+
+        assertEquals(1, scheduler.getEscalatedCount(Lane.BULK));
+        assertEquals(0, scheduler.getQueued(Lane.BULK));
+        assertEquals(1, scheduler.getQueued(Lane.NORMAL));
+
+        sender.completeOne();
+        sender.completeOne();
+        assertEquals("second", sender.subject(1));
+        assertEquals("bulk", sender.subject(2));
+    }
+}
@@ -0,0 +1,76 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void fullBucketLetsABurstThroughThenHoldsBack() {
+        RateLimiter limiter = new RateLimiter(10, 0, 1, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter._reserve(1, 0));
+        }
+        // One token short, refilled in a tenth of a second
+        assertEquals(SECOND / 10, limiter._reserve(1, 0));
+        assertEquals(2 * SECOND / 10, limiter._reserve(1, 0));
+    }
+
+    @Test
+    public void bucketRefillsAtItsRate() {
+        RateLimiter limiter = new RateLimiter(0, 100, 1, 0);
+        assertEquals(0, limiter._reserve(100, 0));
+        assertEquals(SECOND / 2, limiter._reserve(50, 0));
+
+        // Half a second later the debt is paid off, half a second more refills 50
+        assertEquals(0, limiter._reserve(50, SECOND));
+        assertEquals(SECOND / 10, limiter._reserve(10, SECOND));
+    }
+
+    @Test
+    public void idleTimeSavesUpNoMoreThanTheBurst() {
+        RateLimiter limiter = new RateLimiter(10, 0, 2, 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, limiter._reserve(1, 0));
+        }
+        // A minute idle fills the bucket to its 20 tokens, and no further
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, limiter._reserve(1, 60 * SECOND));
+        }
+        assertEquals(SECOND / 10, limiter._reserve(1, 60 * SECOND));
+    }
+
+    @Test
+    public void requestLargerThanTheBucketIsChargedOneFullBucket() {
+        RateLimiter limiter = new RateLimiter(0, 100, 1, 0);
+        // Not refused, and not charged the 1000 it asked for
+        assertEquals(0, limiter._reserve(1000, 0));
+        assertEquals(SECOND / 100, limiter._reserve(1, 0));
+
+        // Starting from an empty bucket it waits for one bucketful
+        RateLimiter drained = new RateLimiter(0, 100, 1, 0);
+        drained._reserve(100, 0);
+        assertEquals(SECOND, drained._reserve(1000, 0));
+    }
+
+    @Test
+    public void waitsForTheSlowerOfTheTwoBuckets() {
+        RateLimiter limiter = new RateLimiter(10, 100, 1, 0);
+        assertEquals(0, limiter._reserve(100, 0));
+        // A request token is left, but the recipients must refill
+        assertEquals(SECOND / 5, limiter._reserve(20, 0));
+        for (int i = 0; i < 8; i++) {
+            limiter._reserve(0, 0);
+        }
+        // Out of both: one request token is 0.1s away, one recipient 0.21s away
+        assertEquals(21 * SECOND / 100, limiter._reserve(1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeRate() {
+        new RateLimiter(-1, 10);
+    }
+}
@@ -0,0 +1,69 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RecipientListTest {
+
+    @Test
+    public void addressesAreCheckedAndNormalized() {
+        RecipientList.Builder builder = RecipientList.builder().add("Jane@Bücher.DE", "Jane");
+        try {
+            builder.add("not an address");
+            fail("accepted a malformed address");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            builder.addAll(Arrays.asList("ok@example.com", "bad@").iterator());
+            fail("accepted a malformed address");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        RecipientList list = builder.build();
+        assertEquals(Arrays.asList("Jane@xn--bcher-kva.de", "ok@example.com"), list.emails());
+        assertEquals("Jane", list.getName(0));
+    }
+
+    @Test
+    public void fileAddressesAreCheckedAndNormalized() throws Exception {
+        Path file = Files.createTempFile("recipients", ".txt");
+        try {
+            Files.write(file, " Ada@Example.COM \tAda\n\ngrace@example.com\r\n".getBytes(StandardCharsets.UTF_8));
+            RecipientList list = RecipientList.builder().addAll(file).build();
+            assertEquals(Arrays.asList("Ada@example.com", "grace@example.com"), list.emails());
+            assertEquals(Arrays.asList("Ada", ""), list.names());
+
+            Files.write(file, "ok@example.com\nnot an address\n".getBytes(StandardCharsets.UTF_8));
+            try {
+                RecipientList.builder().addAll(file);
+                fail("accepted a malformed address");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void duplicatesMatchTheDedupeKey() {
+        RecipientList.Builder builder = RecipientList.builder()
+            .add("ada@xn--bcher-kva.de")
+            .setDeduplicate(true)
+            .add("ADA@Bücher.de")
+            .add("grace@example.com")
+            .addAll(RecipientList.builder().add("Grace@EXAMPLE.com").build());
+
+        assertEquals(Arrays.asList("ada@xn--bcher-kva.de", "grace@example.com"), builder.build().emails());
+        assertEquals(2, builder.getDuplicateCount());
+    }
+}
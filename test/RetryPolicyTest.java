@@ -0,0 +1,55 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void hugeRetryAfterEndsTheRetries() {
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfter("9223372036854775807", 0));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfter("9223372036854776", 0));
+        assertEquals(120000, RetryPolicy.parseRetryAfter(" 120 ", 0));
+        assertEquals(0, RetryPolicy.parseRetryAfter("-5", 0));
+
+        SendResult limited = SendResult.apiError(429, Collections.singletonList("slow down"),
+            RetryPolicy.parseRetryAfter("9223372036854775807", 0));
+        assertEquals(-1, new RetryPolicy(3).delayMillis(1, limited));
+    }
+
+    @Test
+    public void backoffStaysWithinItsCapForEveryAttempt() {
+        SendResult unavailable = SendResult.apiError(503, Collections.singletonList("unavailable"), -1);
+        long[][] backoffs = {{1, Long.MAX_VALUE}, {(1L << 40) + 1, Long.MAX_VALUE}, {3L << 32, 1L << 60},
+            {Long.MAX_VALUE, Long.MAX_VALUE}, {0, 0}, {200, 10000}};
+        for (long[] backoff : backoffs) {
+            RetryPolicy policy = new RetryPolicy(Integer.MAX_VALUE).setBackoff(backoff[0], backoff[1]);
+            for (int attempt = 1; attempt <= 100; attempt++) {
+                long delay = policy.delayMillis(attempt, unavailable);
+                assertTrue(delay >= 0 && delay <= backoff[1]);
+            }
+            // Never more than the doubled base while under the cap
+            for (int attempt = 1; attempt <= 63 && backoff[0] <= (backoff[1] >> (attempt - 1)); attempt++) {
+                assertTrue(policy.delayMillis(attempt, unavailable) <= backoff[0] << (attempt - 1));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsABackoffOutOfOrder() {
+        long[][] invalid = {{-1, 100}, {200, 100}, {0, -1}};
+        for (long[] backoff : invalid) {
+            try {
+                new RetryPolicy(3).setBackoff(backoff[0], backoff[1]);
+                fail("accepted a backoff of " + backoff[0] + " to " + backoff[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
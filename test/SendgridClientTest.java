@@ -0,0 +1,273 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SendgridClientTest {
+
+    /**
+     * A transport that answers 200, or throws while broken is set.
+     */
+    private static class FlakyTransport implements Transport {
+        volatile boolean broken = true;
+
+        public Response post(String url, String contentType, Body body) {
+            if (this.broken) {
+                throw new IllegalStateException("broken transport");
+            }
+            return new Response(200, "{\"message\":\"success\"}");
+        }
+    }
+
+    /**
+     * A transport that counts its requests and answers all of them with the same status.
+     */
+    private static class CountingTransport implements Transport {
+        final AtomicInteger posts = new AtomicInteger();
+        final int status;
+
+        CountingTransport(int status) {
+            this.status = status;
+        }
+
+        public Response post(String url, String contentType, Body body) {
+            this.posts.incrementAndGet();
+            return new Response(this.status, "{\"message\":\"" + ((this.status == 200) ? "success" : "error") + "\"}");
+        }
+    }
+
+    private static Message message() {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .addTo("recipient@example.com")
+            .build();
+    }
+
+    @Test
+    public void transportExceptionFreesTheLimiterAndEndsTheTrial() {
+        FlakyTransport transport = new FlakyTransport();
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(transport)
+            .setCircuitBreaker(breaker)
+            .setConcurrencyLimiter(limiter)
+            .build();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.send(message());
+                fail("the transport exception was swallowed");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(0, limiter.getInFlight());
+            // A bug on this side is not held against the API
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+
+        transport.broken = false;
+        assertTrue(client.send(message()).isSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void refusedSendTakesNoRateLimiterTokens() {
+        final AtomicInteger reserved = new AtomicInteger();
+        RateLimiter rateLimiter = new RateLimiter(1000, 1000) {
+            long _reserve(int recipientCount, long now) {
+                reserved.incrementAndGet();
+                return super._reserve(recipientCount, now);
+            }
+        };
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(new CountingTransport(503))
+            .setCircuitBreaker(new CircuitBreaker(1, 60000))
+            .setRateLimiter(rateLimiter)
+            .build();
+
+        assertEquals(503, client.send(message()).getStatus());
+        SendResult refused = client.send(message());
+        assertTrue(refused.getCause() instanceof CircuitBreaker.OpenException);
+        assertEquals(1, reserved.get());
+    }
+
+    @Test
+    public void messageWithAStreamAttachmentIsNotRetried() {
+        CountingTransport transport = new CountingTransport(503);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(transport)
+            .setRetryPolicy(new RetryPolicy(3).setBackoff(1, 1))
+            .build();
+        Message.Builder message = Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .addTo("recipient@example.com");
+
+        client.send(message.addAttachment(Attachment.fromBytes("a.txt", ByteBuffer.wrap(new byte[] {1}))).build());
+        assertEquals(3, transport.posts.getAndSet(0));
+
+        client.send(message.addAttachment(Attachment.fromStream("b.txt", new ByteArrayInputStream(new byte[] {2}), 1)).build());
+        assertEquals(1, transport.posts.get());
+    }
+
+    @Test
+    public void changedFileIsNotADuplicate() throws Exception {
+        CountingTransport transport = new CountingTransport(200);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(transport)
+            .setDuplicateFilter(new DuplicateFilter(100, 60000))
+            .build();
+        Path file = Files.createTempFile("attachment", ".txt");
+        try {
+            Files.write(file, "first".getBytes(StandardCharsets.US_ASCII));
+            Message message = message().toBuilder().addAttachment(Attachment.fromPath(file)).build();
+            client.send(message);
+            client.send(message);
+            assertEquals(1, transport.posts.get());
+
+            Files.write(file, "other".getBytes(StandardCharsets.US_ASCII));
+            client.send(message);
+            assertEquals(2, transport.posts.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void messageWithAStreamAttachmentIsNeverADuplicate() {
+        CountingTransport transport = new CountingTransport(200);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(transport)
+            .setDuplicateFilter(new DuplicateFilter(100, 60000))
+            .build();
+        Message[] messages = new Message[2];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = message().toBuilder()
+                .addAttachment(Attachment.fromStream("a.txt", new ByteArrayInputStream(new byte[] {1}), 1))
+                .build();
+        }
+        // The hash no longer depends on the stream's identity
+        assertEquals(messages[0].getContentHash(), messages[1].getContentHash());
+
+        client.send(messages[0]);
+        client.send(messages[1]);
+        assertEquals(2, transport.posts.get());
+    }
+
+    @Test
+    public void interruptedSendIsALocalFailureButATimeoutIsNot() {
+        final IOException[] error = new IOException[1];
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(new Transport() {
+                public Response post(String url, String contentType, Body body) throws IOException {
+                    throw error[0];
+                }
+            })
+            .setCircuitBreaker(breaker)
+            .build();
+
+        error[0] = new InterruptedIOException("Interrupted waiting for a connection");
+        assertTrue(client.send(message()).isLocalFailure());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        error[0] = new SocketTimeoutException("Read timed out");
+        assertFalse(client.send(message()).isLocalFailure());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void encodingFailureFreesTheDuplicateClaim() throws Exception {
+        final boolean[] broken = {true};
+        SendMetrics metrics = new InMemorySendMetrics() {
+            public void recordPhase(Phase phase, long nanos) {
+                if (broken[0] && phase == Phase.ENCODE) {
+                    throw new IllegalStateException("broken metrics");
+                }
+                super.recordPhase(phase, nanos);
+            }
+        };
+        CountingTransport transport = new CountingTransport(200);
+        DuplicateFilter filter = new DuplicateFilter(100, 60000);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(transport)
+            .setMetrics(metrics)
+            .setDuplicateFilter(filter)
+            .build();
+
+        try {
+            client.sendAsync(message());
+            fail("the encoding exception was swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, filter.size());
+
+        broken[0] = false;
+        assertTrue(client.sendAsync(message()).get(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(1, transport.posts.get());
+    }
+
+    @Test
+    public void duplicateOfASendThatThrewGetsAFailure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        SendgridClient client = SendgridClient.builder("user", "key")
+            .setTransport(new Transport() {
+                public Response post(String url, String contentType, Body body) throws IOException {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("broken transport");
+                }
+            })
+            .setDuplicateFilter(new DuplicateFilter(100, 60000))
+            .build();
+
+        CompletableFuture<SendResult> first = client.sendAsync(message());
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // release at once
+                }
+                release.countDown();
+            }
+        }).start();
+        // Waits for the first send, which throws
+        SendResult result = client.send(message());
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getCause() instanceof IllegalStateException);
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            fail("the first send did not throw");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
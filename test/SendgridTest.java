@@ -0,0 +1,141 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.appengine.labs.repackaged.org.json.JSONArray;
+import com.google.appengine.labs.repackaged.org.json.JSONObject;
+
+public class SendgridTest {
+
+    private static int count(String text, String part) {
+        int found = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            found++;
+        }
+
+        return found;
+    }
+
+    @Test
+    public void headerHasOneToWhenTheHeadersHoldOne() throws Exception {
+        Sendgrid mail = new Sendgrid("user", "key");
+        mail.setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text");
+        mail.setHeaders(new JSONObject().put("to", new String[] { "stale@example.com" }));
+        mail.addTo("recipient@example.com");
+        mail.getHeaders().put("to", "other@example.com");
+
+        Map<String, String> params = mail._prepMessageData();
+        String header = params.get("x-smtpapi");
+        assertEquals(header, 1, count(header, "\"to\":"));
+        assertEquals(header, 1, count(header, "recipient@example.com"));
+        assertEquals(header, 0, count(header, "stale@example.com"));
+    }
+
+    private static Sendgrid mail() throws Exception {
+        Sendgrid mail = new Sendgrid("user", "key");
+        mail.setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .addTo("recipient@example.com");
+        mail.addCategory("news")
+            .addFilterSetting("footer", "enable", "1");
+
+        return mail;
+    }
+
+    @Test
+    public void unchangedSectionsAreNotEncodedAgain() throws Exception {
+        Sendgrid mail = mail();
+        Message first = mail.toMessage();
+        Message second = mail.toMessage();
+        assertSame(first.encodedHeaders().get("category"), second.encodedHeaders().get("category"));
+        assertSame(first.encodedHeaders().get("filters"), second.encodedHeaders().get("filters"));
+
+        mail.addCategory("weekly");
+        Message third = mail.toMessage();
+        assertTrue(third.encodedHeaders().get("category").contains("weekly"));
+        assertSame(first.encodedHeaders().get("filters"), third.encodedHeaders().get("filters"));
+    }
+
+    @Test
+    public void sharedSectionIsEncodedOnEverySend() throws Exception {
+        Sendgrid mail = mail();
+        JSONObject substitutions = new JSONObject();
+        mail.setSubstitutions(substitutions);
+        Message first = mail.toMessage();
+
+        // Changed behind the cache's back
+        substitutions.put("-name-", new JSONArray().put("Ann"));
+        Message second = mail.toMessage();
+        assertEquals("{}", first.encodedHeaders().get("sub"));
+        assertEquals("{\"-name-\":[\"Ann\"]}", second.encodedHeaders().get("sub"));
+        assertSame(first.encodedHeaders().get("category"), second.encodedHeaders().get("category"));
+    }
+
+    @Test
+    public void exposedHeaderIsEncodedOnEverySend() throws Exception {
+        Sendgrid mail = mail();
+        mail.toMessage();
+        JSONObject headers = mail.getHeaders();
+        headers.getJSONObject("filters").getJSONObject("footer").getJSONObject("settings").put("text/plain", "Bye");
+
+        Message message = mail.toMessage();
+        assertTrue(message.encodedHeaders().get("filters").contains("Bye"));
+        headers.put("category", new JSONArray().put("changed"));
+        assertEquals("[\"changed\"]", mail.toMessage().encodedHeaders().get("category"));
+    }
+
+    @Test
+    public void bccFilterIsEncodedOnceAndSent() throws Exception {
+        Sendgrid mail = mail();
+        mail.setBcc("bcc@example.com");
+        Message first = mail.toMessage();
+        Message second = mail.toMessage();
+        assertEquals(Collections.singletonList("bcc@example.com"), first.getBccs());
+        String filters = first.encodedHeaders().get("filters");
+        assertTrue(filters, filters.contains("\"bcc\":{\"settings\":{\"enable\":\"1\",\"email\":\"bcc@example.com\"}}"));
+        assertSame(filters, second.encodedHeaders().get("filters"));
+
+        // The header the message encodes to holds the filter once
+        String header = mail._prepMessageData().get("x-smtpapi");
+        assertEquals(header, 1, count(header, "bcc@example.com"));
+        assertEquals(header, 1, count(header, "\"bcc\":"));
+        assertEquals(new JSONObject(header).getJSONObject("filters").toString(),
+            new JSONObject(filters).toString());
+
+        mail.setBcc("other@example.com");
+        String changed = mail.toMessage().encodedHeaders().get("filters");
+        assertTrue(changed, changed.contains("other@example.com"));
+        assertFalse(changed, changed.contains("bcc@example.com"));
+    }
+
+    @Test
+    public void messageBuilderBccKeepsTheOtherFilters() throws Exception {
+        Message message = Message.builder()
+            .setFrom("sender@example.com")
+            .setSubject("Subject")
+            .setText("Text")
+            .addTo("recipient@example.com")
+            .addFilterSetting("footer", "enable", "1")
+            .setBcc("bcc@example.com")
+            .build();
+        Map<?, ?> filters = (Map<?, ?>) message.getHeaders().get("filters");
+        assertEquals(2, filters.size());
+        assertEquals("bcc@example.com", ((Map<?, ?>) ((Map<?, ?>) filters.get("bcc")).get("settings")).get("email"));
+
+        // Rebuilt from a message that already carries the filter, it is the same message
+        Message copy = message.toBuilder().build();
+        assertEquals(message.getHeaders(), copy.getHeaders());
+        assertEquals(message.getContentHash(), copy.getContentHash());
+    }
+}
@@ -0,0 +1,203 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ShardedClientTest {
+
+    // The shard each request went to, in order
+    private final List<String> posts = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * A transport for one shard that records its requests and answers them all with the
+     * same status.
+     */
+    private class ShardTransport implements Transport {
+        final String name;
+        volatile int status = 200;
+
+        ShardTransport(String name) {
+            this.name = name;
+        }
+
+        public Response post(String url, String contentType, Body body) {
+            posts.add(this.name);
+            return new Response(this.status, "{\"message\":\"" + ((this.status == 200) ? "success" : "error") + "\"}");
+        }
+    }
+
+    private static SendgridClient client(String name, Transport transport, CircuitBreaker breaker) {
+        return SendgridClient.builder(name, "key")
+            .setTransport(transport)
+            .setCircuitBreaker(breaker)
+            .build();
+    }
+
+    private static Message message(String... categories) {
+        Message.Builder message = Message.builder()
+            .setFrom("sender@example.com")
+            .addTo("recipient@example.com")
+            .setSubject("Subject")
+            .setText("Text");
+        if (categories.length > 0) {
+            message.setCategories(categories);
+        }
+
+        return message.build();
+    }
+
+    @Test
+    public void weightedSpreadsSendsInterleaved() {
+        ShardedClient client = ShardedClient.builder()
+            .addShard(client("a", new ShardTransport("a"), null), 5)
+            .addShard(client("b", new ShardTransport("b"), null))
+            .addShard(client("c", new ShardTransport("c"), null))
+            .build();
+
+        for (int i = 0; i < 7; i++) {
+            assertTrue(client.send(message()).isSuccess());
+        }
+        // Smooth weighted round robin: a's five sends are spread out, not in a run
+        assertEquals(Arrays.asList("a", "a", "b", "a", "c", "a", "a"), this.posts);
+
+        for (int i = 0; i < 63; i++) {
+            client.send(message());
+        }
+        assertEquals(50, client.getShards().get(0).getSentCount());
+        assertEquals(10, client.getShards().get(1).getSentCount());
+        assertEquals(10, client.getShards().get(2).getSentCount());
+    }
+
+    @Test
+    public void leastOutstandingAvoidsABusyShard() throws Exception {
+        final CountDownLatch answer = new CountDownLatch(1);
+        Transport slow = new ShardTransport("a") {
+            public Response post(String url, String contentType, Body body) {
+                try {
+                    answer.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.post(url, contentType, body);
+            }
+        };
+        ShardedClient client = ShardedClient.builder()
+            .addShard(client("a", slow, null))
+            .addShard(client("b", new ShardTransport("b"), null))
+            .setStrategy(ShardedClient.Strategy.LEAST_OUTSTANDING)
+            .build();
+        ShardedClient.Shard a = client.getShards().get(0),
+                            b = client.getShards().get(1);
+
+        // Both are idle, and the rotation starts at the first shard
+        CompletableFuture<SendResult> held = client.sendAsync(message());
+        assertEquals(1, a.getOutstanding());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(client.send(message()).isSuccess());
+        }
+        assertEquals(5, b.getSentCount());
+
+        answer.countDown();
+        assertTrue(held.get(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(0, a.getOutstanding());
+    }
+
+    @Test
+    public void routedCategoryUsesItsShardsOnly() {
+        SendgridClient a = client("a", new ShardTransport("a"), null),
+                       b = client("b", new ShardTransport("b"), null);
+        ShardedClient client = ShardedClient.builder()
+            .addShard(a, 10)
+            .addShard(b)
+            .routeCategory("receipts", b)
+            .build();
+
+        for (int i = 0; i < 4; i++) {
+            client.send(message("newsletter", "receipts"));
+        }
+        assertEquals(Arrays.asList("b", "b", "b", "b"), this.posts);
+
+        this.posts.clear();
+        for (int i = 0; i < 11; i++) {
+            client.send(message("newsletter"));
+        }
+        assertEquals(10, Collections.frequency(this.posts, "a"));
+        assertEquals(1, Collections.frequency(this.posts, "b"));
+    }
+
+    @Test
+    public void shardWithAnOpenBreakerIsSkipped() {
+        ShardTransport failing = new ShardTransport("a");
+        failing.status = 503;
+        ShardedClient client = ShardedClient.builder()
+            .addShard(client("a", failing, new CircuitBreaker(1, 60000)))
+            .addShard(client("b", new ShardTransport("b"), new CircuitBreaker(1, 60000)))
+            .build();
+        ShardedClient.Shard a = client.getShards().get(0);
+
+        // A 503 is not failed over, but it opens a's breaker
+        assertEquals(503, client.send(message()).getStatus());
+        assertFalse(a.isHealthy());
+        assertEquals(1, a.getFailureCount());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(client.send(message()).isSuccess());
+        }
+        assertEquals(Arrays.asList("a", "b", "b", "b", "b"), this.posts);
+    }
+
+    @Test
+    public void rateLimitedSendFailsOver() {
+        ShardTransport limited = new ShardTransport("a");
+        limited.status = 429;
+        SendgridClient a = client("a", limited, null),
+                       b = client("b", new ShardTransport("b"), null);
+
+        ShardedClient client = ShardedClient.builder().addShard(a).addShard(b).build();
+        assertTrue(client.send(message()).isSuccess());
+        assertEquals(Arrays.asList("a", "b"), this.posts);
+        assertEquals(1, client.getShards().get(1).getSentCount());
+
+        this.posts.clear();
+        ShardedClient noFailover = ShardedClient.builder().addShard(a).addShard(b).setFailover(false).build();
+        assertEquals(429, noFailover.send(message()).getStatus());
+        assertEquals(Arrays.asList("a"), this.posts);
+    }
+
+    @Test
+    public void everyShardIsTriedWhenAllBreakersAreOpen() throws Exception {
+        ShardTransport first = new ShardTransport("a"),
+                       second = new ShardTransport("b");
+        first.status = 503;
+        second.status = 503;
+        ShardedClient client = ShardedClient.builder()
+            .addShard(client("a", first, new CircuitBreaker(1, 60000)))
+            .addShard(client("b", second, new CircuitBreaker(1, 60000)))
+            .build();
+        client.send(message());
+        client.send(message());
+        for (ShardedClient.Shard shard : client.getShards()) {
+            assertFalse(shard.isHealthy());
+        }
+
+        // Each open breaker refuses in turn, so the send fails over to the next shard
+        this.posts.clear();
+        SendResult result = client.sendAsync(message()).get(5, TimeUnit.SECONDS);
+        assertTrue(result.getCause() instanceof CircuitBreaker.OpenException);
+        assertTrue(this.posts.isEmpty());
+        for (ShardedClient.Shard shard : client.getShards()) {
+            assertEquals(2, shard.getFailureCount());
+        }
+    }
+}
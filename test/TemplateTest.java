@@ -0,0 +1,99 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TemplateTest {
+
+    private static byte[] encode(Message message) throws Exception {
+        Transport.Body body = MessageEncoder.body(message, "user", "key");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertEquals(out.size(), body.contentLength());
+
+        return out.toByteArray();
+    }
+
+    private static void assertSameBody(Message plain, Message templated) throws Exception {
+        assertEquals(new ArrayList<String>(plain.getHeaders().keySet()),
+            new ArrayList<String>(templated.getHeaders().keySet()));
+        assertEquals(new String(encode(plain), "US-ASCII"), new String(encode(templated), "US-ASCII"));
+        assertArrayEquals(encode(plain), encode(templated.toBuilder().build()));
+        assertEquals(plain.getContentHash(), templated.getContentHash());
+    }
+
+    private static Message.Builder base() {
+        return Message.builder()
+            .setFrom("sender@example.com")
+            .setFromName("Sender Ñame")
+            .setSubject("Hello -name-")
+            .setText("Hi -name-, café & more")
+            .setHtml("<p>Hi -name-</p>");
+    }
+
+    @Test
+    public void substitutionsBeforeOtherHeadersKeepTheirPlace() throws Exception {
+        Template template = Template.compile(base()
+            .addSubstitution("-name-", "default")
+            .addFilterSetting("footer", "enable", "1")
+            .addCategory("welcome")
+            .build());
+
+        Message templated = template.instance()
+            .addTo("a@example.com")
+            .addTo("b@example.com", "Bee")
+            .addSubstitution("-name-", "A", "B")
+            .build();
+        Message plain = base()
+            .addSubstitution("-name-", "A", "B")
+            .addFilterSetting("footer", "enable", "1")
+            .addCategory("welcome")
+            .addTo("a@example.com")
+            .addTo("b@example.com", "Bee")
+            .build();
+
+        // The builder starts every message with the library's category
+        assertEquals(Arrays.asList("category", "sub", "filters"), new ArrayList<String>(templated.getHeaders().keySet()));
+        assertSameBody(plain, templated);
+    }
+
+    @Test
+    public void instanceValuesNotInTheBaseComeLast() throws Exception {
+        Template template = Template.compile(base()
+            .addCategory("receipt")
+            .addUniqueArgument("campaign", "7")
+            .addFilterSetting("clicktrack", "enable", "0")
+            .build());
+
+        // The base's unique arguments, and substitutions of the instance's own
+        Message templated = template.instance()
+            .addTo("a@example.com")
+            .addSubstitution("-name-", "A")
+            .build();
+        Message plain = base()
+            .addCategory("receipt")
+            .addUniqueArgument("campaign", "7")
+            .addFilterSetting("clicktrack", "enable", "0")
+            .addTo("a@example.com")
+            .addSubstitution("-name-", "A")
+            .build();
+
+        assertSameBody(plain, templated);
+    }
+
+    @Test
+    public void withoutHeaderValuesOrHeaders() throws Exception {
+        Template template = Template.compile(base().build());
+        assertSameBody(base().addTo("a@example.com").build(), template.instance().addTo("a@example.com").build());
+
+        template = Template.compile(base().setUseHeaders(false).addCategory("plain").build());
+        assertSameBody(base().setUseHeaders(false).addCategory("plain").addTo("a@example.com", "A").build(),
+            template.instance().addTo("a@example.com", "A").build());
+    }
+}
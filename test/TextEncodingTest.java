@@ -0,0 +1,40 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URLEncoder;
+
+import org.junit.Test;
+
+public class TextEncodingTest {
+
+    private static String escapeJson(String value) throws Exception {
+        StringBuilder out = new StringBuilder();
+        TextEncoding.escapeJson(out, value, 0, value.length());
+
+        return out.toString();
+    }
+
+    private static String urlEncode(String value) {
+        StringBuilder out = new StringBuilder();
+        TextEncoding.urlEncode(out, value);
+
+        return out.toString();
+    }
+
+    @Test
+    public void escapesCharactersOutsideTheBmpAsSurrogatePairs() throws Exception {
+        assertEquals("Hi \\ud83d\\ude00!", escapeJson("Hi 😀!"));
+    }
+
+    @Test
+    public void escapesWithFourHexDigits() throws Exception {
+        assertEquals("caf\\u00e9 \\\"\\\\\\n\\u001f", escapeJson("café \"\\\n\u001f"));
+    }
+
+    @Test
+    public void urlEncodesLikeUrlEncoder() throws Exception {
+        String value = "a b+c/é€😀~*._-\ud800x";
+        assertEquals(URLEncoder.encode(value, "UTF-8"), urlEncode(value));
+    }
+}
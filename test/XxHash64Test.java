@@ -0,0 +1,53 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class XxHash64Test {
+
+    private static long hash(String value, long seed) {
+        XxHash64 hash = new XxHash64(seed);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        hash.write(bytes, 0, bytes.length);
+
+        return hash.getValue();
+    }
+
+    @Test
+    public void matchesTheReferenceImplementation() {
+        // Vectors from the reference XXH64
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash("a"));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc"));
+        assertEquals(0x32DD38952C4BC720L, XxHash64.hash("xxhash"));
+        assertEquals(0xB559B98D844E0635L, hash("xxhash", 20141025));
+        // Longer than a 32 byte stripe
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64.hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void streamingMatchesOneWrite() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        long whole = XxHash64.hash(text.toString());
+
+        for (int chunk : new int[] {1, 3, 7, 31, 32, 33, 100}) {
+            XxHash64 hash = new XxHash64();
+            for (int off = 0; off < bytes.length; off += chunk) {
+                int len = Math.min(chunk, bytes.length - off);
+                if (len == 1) {
+                    hash.write(bytes[off]);
+                } else {
+                    hash.write(bytes, off, len);
+                }
+            }
+            assertEquals("chunks of " + chunk, whole, hash.getValue());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package googleSendgridJava;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpClientTransportTest {
+
+    private static final byte[] SUCCESS = "{\"message\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    // Requests whose body the server read to the end, and the last such body
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile byte[] request;
+    // Released to let a stalled exchange finish
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    InputStream in = exchange.getRequestBody();
+                    byte[] buffer = new byte[8192];
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        body.write(buffer, 0, n);
+                    }
+                    request = body.toByteArray();
+                    received.incrementAndGet();
+                    exchange.sendResponseHeaders(200, SUCCESS.length);
+                    exchange.getResponseBody().write(SUCCESS);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.createContext("/stall", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                // Reads none of the body, and answers only once the test is over
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.handlers = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.handlers);
+        this.server.start();
+    }
+
+    @After
+    public void stopServer() {
+        this.release.countDown();
+        this.server.stop(0);
+        this.handlers.shutdownNow();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+    private static HttpClientTransport transport() {
+        return new HttpClientTransport(2)
+            .setVersion(HttpClient.Version.HTTP_1_1)
+            .setMaxBufferedBody(1024);
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + (i >> 8));
+        }
+
+        return content;
+    }
+
+    /**
+     * A body written in small pieces, which fails after failAfter bytes when that is not -1,
+     * and counts down done when its writer has returned.
+     */
+    private static class PiecewiseBody implements Transport.Body {
+        final byte[] content;
+        final long declared;
+        final long failAfter;
+        final Transport.LocalException error = new Transport.LocalException("source went away");
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile IOException stopped;
+
+        PiecewiseBody(byte[] content, long declared, long failAfter) {
+            this.content = content;
+            this.declared = declared;
+            this.failAfter = failAfter;
+        }
+
+        public long contentLength() {
+            return this.declared;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            try {
+                for (int i = 0; i < this.content.length; i += 1000) {
+                    if (this.failAfter >= 0 && i >= this.failAfter) {
+                        throw this.error;
+                    }
+                    out.write(this.content, i, Math.min(1000, this.content.length - i));
+                }
+            } catch (IOException e) {
+                if (e != this.error) {
+                    this.stopped = e;
+                }
+                throw e;
+            } finally {
+                this.done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void streamsABodyLargerThanTheBufferThroughThePipe() throws Exception {
+        HttpClientTransport transport = transport();
+        byte[] content = content(1 << 20);
+        for (long declared : new long[] {content.length, -1}) {
+            PiecewiseBody body = new PiecewiseBody(content, declared, -1);
+            Transport.Response response = transport.post(this.url("/"), "application/octet-stream", body);
+
+            assertEquals(200, response.getStatus());
+            assertTrue(body.done.await(5, TimeUnit.SECONDS));
+            assertArrayEquals(content, this.request);
+        }
+
+        // A small body is buffered and sent the same
+        transport.post(this.url("/"), "text/plain", new Transport.Bytes(content(100)));
+        assertArrayEquals(content(100), this.request);
+        assertEquals(3, this.received.get());
+    }
+
+    @Test
+    public void failingBodyWriterFailsThePostWithItsError() throws Exception {
+        HttpClientTransport transport = transport();
+        byte[] content = content(1 << 20);
+        for (long declared : new long[] {content.length, -1}) {
+            PiecewiseBody body = new PiecewiseBody(content, declared, 200000);
+            try {
+                transport.post(this.url("/"), "application/octet-stream", body);
+                fail("sent a body that failed part way");
+            } catch (IOException e) {
+                assertSame(body.error, e);
+            }
+        }
+        // A request cut short is never taken for a whole one
+        Thread.sleep(200);
+        assertEquals(0, this.received.get());
+
+        // Both slots were given back
+        assertEquals(200, transport.post(this.url("/"), "text/plain", new Transport.Bytes(content(10))).getStatus());
+    }
+
+    @Test
+    public void exchangeEndingEarlyStopsTheBodyWriter() throws Exception {
+        HttpClientTransport transport = transport().setReadTimeout(500);
+        // Far more than the pipe and the socket buffers hold, so the writer is blocked
+        PiecewiseBody body = new PiecewiseBody(content(64 << 20), 64 << 20, -1);
+        try {
+            transport.post(this.url("/stall"), "application/octet-stream", body);
+            fail("the exchange did not time out");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertTrue("the body writer was left blocked on the pipe", body.done.await(5, TimeUnit.SECONDS));
+        assertTrue(body.stopped != null);
+    }
+}